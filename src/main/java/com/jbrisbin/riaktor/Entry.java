@@ -1,20 +1,39 @@
 package com.jbrisbin.riaktor;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author Jon Brisbin
  */
 public class Entry<T> {
 
-	private final String  bucket;
-	private final String  key;
-	private final Headers headers;
-	private final T       data;
+	private final String         bucket;
+	private final String         key;
+	private final Headers        headers;
+	private final T              data;
+	private final boolean        unchanged;
+	private final List<Entry<T>> siblings;
 
 	Entry(String bucket, String key, Headers headers, T data) {
+		this(bucket, key, headers, data, false);
+	}
+
+	Entry(String bucket, String key, Headers headers, T data, boolean unchanged) {
+		this(bucket, key, headers, data, unchanged, Collections.<Entry<T>>emptyList());
+	}
+
+	Entry(String bucket, String key, Headers headers, T data, List<Entry<T>> siblings) {
+		this(bucket, key, headers, data, false, siblings);
+	}
+
+	private Entry(String bucket, String key, Headers headers, T data, boolean unchanged, List<Entry<T>> siblings) {
 		this.bucket = bucket;
 		this.key = key;
 		this.headers = headers;
 		this.data = data;
+		this.unchanged = unchanged;
+		this.siblings = siblings;
 	}
 
 	public String getBucket() {
@@ -33,6 +52,25 @@ public class Entry<T> {
 		return data;
 	}
 
+	/**
+	 * Whether this entry is the result of a conditional get for an object that hasn't changed. An unchanged entry has no
+	 * data and its headers contain only the vclock the get was conditional on.
+	 *
+	 * @return {@literal true} if the object hasn't changed
+	 */
+	public boolean isUnchanged() {
+		return unchanged;
+	}
+
+	/**
+	 * Get the siblings the conflict resolver was given to produce this entry, each with its own headers.
+	 *
+	 * @return the siblings, or an empty list if the object had none
+	 */
+	public List<Entry<T>> getSiblings() {
+		return siblings;
+	}
+
 	@Override
 	public String toString() {
 		return "Entry{" +
@@ -40,6 +78,7 @@ public class Entry<T> {
 				", key='" + key + '\'' +
 				", headers=" + headers +
 				", data=" + data +
+				", unchanged=" + unchanged +
 				'}';
 	}
 
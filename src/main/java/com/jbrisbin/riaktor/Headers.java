@@ -2,35 +2,58 @@ package com.jbrisbin.riaktor;
 
 import com.basho.riak.protobuf.RiakKvPB;
 import com.basho.riak.protobuf.RiakPB;
+import com.google.protobuf.ByteString;
+import reactor.tuple.Tuple;
+import reactor.tuple.Tuple2;
 
 import java.util.*;
 
 /**
+ * The metadata of an object. Lookups by name go through an index of the names that is built the first time one is
+ * looked up, so they take the same time however many entries there are, and each value is only decoded from UTF-8 the
+ * first time it is read.
+ *
  * @author Jon Brisbin
  */
 public final class Headers extends AbstractMap<String, String> {
 
-	private final Set<Entry<String, String>> entries;
-	private final List<Link>                 links;
-	private final byte[]                     vclock;
-	private final long                       lastModified;
+	private static final Index EMPTY = new Index(Collections.<RiakPB.RpbPair>emptyList());
 
-	Headers(Set<Entry<String, String>> entries,
+	private final List<RiakPB.RpbPair> pairs;
+	private final List<Link>           links;
+	private final List<RiakPB.RpbPair> indexPairs;
+	private final ByteString           vclock;
+	private final long                 lastModified;
+	private final String               contentType;
+	private final EntrySet             entries = new EntrySet();
+
+	private volatile Index                        index;
+	private volatile List<Tuple2<String, String>> indexes;
+
+	Headers(List<RiakPB.RpbPair> pairs,
 	        List<Link> links,
-	        byte[] vclock,
-	        long lastModified) {
-		this.entries = entries;
+	        List<RiakPB.RpbPair> indexPairs,
+	        ByteString vclock,
+	        long lastModified,
+	        String contentType) {
+		this.pairs = pairs;
 		this.links = links;
+		this.indexPairs = indexPairs;
 		this.vclock = vclock;
 		this.lastModified = lastModified;
+		this.contentType = contentType;
 	}
 
-	static Headers from(byte[] vclock,
+	static Headers from(ByteString vclock,
 	                    RiakKvPB.RpbContent content) {
 		if(null == content) {
-			return new Headers(null, null, null, -1L);
+			return new Headers(Collections.<RiakPB.RpbPair>emptyList(),
+			                   Collections.<Link>emptyList(),
+			                   Collections.<RiakPB.RpbPair>emptyList(),
+			                   vclock,
+			                   -1L,
+			                   null);
 		}
-		Set<Entry<String, String>> entries = new LazyRpbPairEntrySet(content.getUsermetaList());
 
 		List<Link> links = new ArrayList<>();
 		for(RiakKvPB.RpbLink link : content.getLinksList()) {
@@ -39,17 +62,46 @@ public final class Headers extends AbstractMap<String, String> {
 			                   link.getTag().toStringUtf8()));
 		}
 
-		return new Headers(entries,
+		return new Headers(content.getUsermetaList(),
 		                   links,
+		                   content.getIndexesList(),
 		                   vclock,
-		                   content.getLastMod());
+		                   content.getLastMod(),
+		                   (content.hasContentType() ? content.getContentType().toStringUtf8() : null));
 	}
 
 	public List<Link> getLinks() {
 		return links;
 	}
 
+	/**
+	 * Get the secondary index entries of the object, in the order Riak returned them.
+	 *
+	 * @return the name and value of each entry
+	 */
+	public List<Tuple2<String, String>> getIndexes() {
+		List<Tuple2<String, String>> idx = indexes;
+		if(null == idx) {
+			idx = new ArrayList<>(indexPairs.size());
+			for(RiakPB.RpbPair pair : indexPairs) {
+				idx.add(Tuple.of(pair.getKey().toStringUtf8(), pair.getValue().toStringUtf8()));
+			}
+			indexes = idx = Collections.unmodifiableList(idx);
+		}
+		return idx;
+	}
+
+	/**
+	 * @return a copy of the vclock
+	 */
 	public byte[] getVclock() {
+		return (null != vclock ? vclock.toByteArray() : null);
+	}
+
+	/**
+	 * Get the vclock as it came back from Riak, to send with a later request without copying it.
+	 */
+	ByteString rawVclock() {
 		return vclock;
 	}
 
@@ -57,6 +109,27 @@ public final class Headers extends AbstractMap<String, String> {
 		return lastModified;
 	}
 
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public String get(Object name) {
+		Index idx = index();
+		int i = idx.indexOf(name);
+		return (i < 0 ? null : idx.value(i));
+	}
+
+	@Override
+	public boolean containsKey(Object name) {
+		return index().indexOf(name) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return index().names.length;
+	}
+
 	@Override
 	public Set<Entry<String, String>> entrySet() {
 		return entries;
@@ -65,53 +138,41 @@ public final class Headers extends AbstractMap<String, String> {
 	@Override
 	public String toString() {
 		return "Headers{" +
-				"entries=" + entries +
+				"entries=" + entrySet() +
 				", links=" + links +
-				", vclock=byte[" + vclock.length + "]" +
+				", vclock=byte[" + (null != vclock ? vclock.size() : 0) + "]" +
 				", lastModified=" + lastModified +
 				'}';
 	}
 
-	private static class LazyRpbPairEntrySet extends AbstractSet<Entry<String, String>> {
-		private final List<RiakPB.RpbPair> pairs;
-
-		private LazyRpbPairEntrySet(List<RiakPB.RpbPair> pairs) {
-			this.pairs = pairs;
+	private Index index() {
+		Index idx = index;
+		if(null == idx) {
+			// building the index twice on a race is harmless, since both are the same
+			index = idx = (pairs.isEmpty() ? EMPTY : new Index(pairs));
 		}
+		return idx;
+	}
 
+	private class EntrySet extends AbstractSet<Entry<String, String>> {
 		@Override
 		public Iterator<Entry<String, String>> iterator() {
+			final Index idx = index();
 			return new Iterator<Entry<String, String>>() {
-				Iterator<RiakPB.RpbPair> iter = pairs.iterator();
+				int next;
 
+				@Override
 				public boolean hasNext() {
-					return iter.hasNext();
+					return next < idx.names.length;
 				}
 
 				@Override
 				public Entry<String, String> next() {
-					final RiakPB.RpbPair pair = iter.next();
-
-					return new Entry<String, String>() {
-						@Override
-						public String getKey() {
-							return pair.getKey().toStringUtf8();
-						}
-
-						@Override
-						public String getValue() {
-							return pair.getValue().toStringUtf8();
-						}
-
-						@Override
-						public String setValue(String value) {
-							throw new IllegalStateException("This Iterator is read-only.");
-						}
-
-						public String toString() {
-							return getKey() + ": " + getValue();
-						}
-					};
+					if(next >= idx.names.length) {
+						throw new NoSuchElementException();
+					}
+					int i = next++;
+					return new SimpleImmutableEntry<>(idx.names[i], idx.value(i));
 				}
 
 				@Override
@@ -123,7 +184,79 @@ public final class Headers extends AbstractMap<String, String> {
 
 		@Override
 		public int size() {
-			return 0;
+			return index().names.length;
+		}
+	}
+
+	/**
+	 * An open-addressing table of the names, which are each decoded once when it's built. When a name appears more than
+	 * once, only the first value is kept.
+	 */
+	private static final class Index {
+		private final String[]     names;
+		private final ByteString[] rawValues;
+		private final String[]     values;
+		private final int[]        slots;
+		private final int          mask;
+
+		private Index(List<RiakPB.RpbPair> pairs) {
+			int capacity = 2;
+			while(capacity < pairs.size() * 2) {
+				capacity <<= 1;
+			}
+			this.mask = capacity - 1;
+			// slots hold the position of a name plus one, so 0 marks an empty slot
+			this.slots = new int[capacity];
+
+			String[] names = new String[pairs.size()];
+			ByteString[] rawValues = new ByteString[pairs.size()];
+			int size = 0;
+			for(RiakPB.RpbPair pair : pairs) {
+				String name = pair.getKey().toStringUtf8();
+				int slot = hash(name) & mask;
+				while(slots[slot] != 0 && !names[slots[slot] - 1].equals(name)) {
+					slot = (slot + 1) & mask;
+				}
+				if(slots[slot] != 0) {
+					continue;
+				}
+				names[size] = name;
+				rawValues[size] = pair.getValue();
+				slots[slot] = ++size;
+			}
+			this.names = (size == names.length ? names : Arrays.copyOf(names, size));
+			this.rawValues = rawValues;
+			this.values = new String[size];
+		}
+
+		private int indexOf(Object name) {
+			if(!(name instanceof String)) {
+				return -1;
+			}
+			int slot = hash(name) & mask;
+			int i;
+			while((i = slots[slot]) != 0) {
+				if(names[i - 1].equals(name)) {
+					return i - 1;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private String value(int i) {
+			String value = values[i];
+			if(null == value) {
+				// a String is safe to publish through a race, so at worst a value is decoded more than once
+				values[i] = value = rawValues[i].toStringUtf8();
+			}
+			return value;
+		}
+
+		private static int hash(Object name) {
+			int h = name.hashCode();
+			return h ^ (h >>> 16);
 		}
 	}
+
 }
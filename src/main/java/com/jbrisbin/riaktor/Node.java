@@ -0,0 +1,557 @@
+package com.jbrisbin.riaktor;
+
+import com.basho.riak.protobuf.RiakPB;
+import com.google.protobuf.Message;
+import com.jbrisbin.riaktor.encoding.RpbCodec;
+import com.jbrisbin.riaktor.event.EventType;
+import com.jbrisbin.riaktor.event.RiakEvent;
+import com.jbrisbin.riaktor.policy.CircuitBreaker;
+import com.jbrisbin.riaktor.policy.RetryPolicy;
+import com.jbrisbin.riaktor.stream.ReadControl;
+import com.jbrisbin.riaktor.support.TransportOptions;
+import com.jbrisbin.riaktor.trace.Phase;
+import com.jbrisbin.riaktor.trace.Trace;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.SocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.composable.Deferred;
+import reactor.function.Consumer;
+import reactor.function.Function;
+import reactor.io.Buffer;
+import reactor.queue.BlockingQueueFactory;
+import reactor.tcp.Reconnect;
+import reactor.tcp.TcpClient;
+import reactor.tcp.TcpConnection;
+import reactor.tcp.netty.NettyTcpConnection;
+import reactor.tuple.Tuple;
+import reactor.tuple.Tuple3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single Riak node and the pool of connections Riaktor keeps open to it. Responses are matched to requests in the
+ * order the requests were sent, so each connection keeps its own queue of requests waiting on a response, along with
+ * the time each request was sent so the node's {@link CircuitBreaker} can track latency. A request whose response is
+ * streamed in several frames stays at the head of its queue until the last frame arrives. A streamed request whose
+ * reading may be paused gets a connection of its own instead of one from the pool.
+ * <p>
+ * A pooled connection whose oldest request has gone without a response for too long is closed by {@link
+ * #expire(long)}, failing every request on it with a {@link SocketTimeoutException} that counts against the node's
+ * {@link CircuitBreaker}, so a node that accepts connections but has stopped answering is noticed without waiting for
+ * the socket to time out.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public class Node implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(Node.class);
+
+	private final InetSocketAddress                      address;
+	private final TcpClient<RiakEvent<Message>, RiakEvent<Message>> client;
+	private final Reconnect                              reconnect;
+	private final CircuitBreaker                         circuitBreaker;
+	private final AtomicInteger                          nextConnection;
+	private final Function<RiakEvent<Message>, Buffer>   encoder;
+	private final int                                    writeBatchSize;
+	private final long                                   writeLinger;
+	private final TransportOptions                       transport;
+
+	private volatile Connection[] connections = new Connection[0];
+
+	Node(InetSocketAddress address,
+	     TcpClient<RiakEvent<Message>, RiakEvent<Message>> client,
+	     Reconnect reconnect,
+	     CircuitBreaker circuitBreaker,
+	     Function<RiakEvent<Message>, Buffer> encoder,
+	     int writeBatchSize,
+	     long writeLinger,
+	     TransportOptions transport) {
+		this.address = address;
+		this.client = client;
+		this.reconnect = reconnect;
+		this.circuitBreaker = circuitBreaker;
+		this.nextConnection = new AtomicInteger();
+		this.encoder = encoder;
+		this.writeBatchSize = writeBatchSize;
+		this.writeLinger = writeLinger;
+		this.transport = transport;
+	}
+
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	public boolean isConnected() {
+		return connections.length > 0;
+	}
+
+	/**
+	 * Get the number of connections currently open to this node.
+	 *
+	 * @return the number of open connections
+	 */
+	public int getConnectionCount() {
+		return connections.length;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Whether this node is connected and its {@link CircuitBreaker} allows requests.
+	 *
+	 * @return {@literal true} if requests can be sent to this node
+	 */
+	public boolean isAvailable() {
+		return connections.length > 0 && circuitBreaker.allowsRequests();
+	}
+
+	/**
+	 * Open connections to this node. The connections are all opened at once rather than one after the other, and {@code
+	 * onOpen} is called as each one is established.
+	 *
+	 * @param count
+	 * 		the number of connections to open
+	 * @param onOpen
+	 * 		called every time a connection is established
+	 * @param onError
+	 * 		called if a connection can't be established and won't be retried
+	 */
+	void open(int count, final Consumer<Node> onOpen, final Consumer<Throwable> onError) {
+		final Consumer<TcpConnection<RiakEvent<Message>, RiakEvent<Message>>> connected
+				= new Consumer<TcpConnection<RiakEvent<Message>, RiakEvent<Message>>>() {
+			@Override
+			public void accept(TcpConnection<RiakEvent<Message>, RiakEvent<Message>> conn) {
+				connected(conn);
+				onOpen.accept(Node.this);
+			}
+		};
+
+		for(int i = 0; i < count; i++) {
+			if(null == reconnect) {
+				client.open()
+				      .onError(onError)
+				      .onSuccess(connected);
+			} else {
+				client.open(reconnect)
+				      .consume(connected);
+			}
+		}
+	}
+
+	/**
+	 * Send a request to this node over the next connection in its pool.
+	 *
+	 * @param d
+	 * 		the {@link Deferred} to notify of the response or {@literal null} to discard it
+	 * @param ev
+	 * 		the request to send
+	 *
+	 * @return {@literal true} if the request was sent, {@literal false} if this node is not connected
+	 */
+	boolean send(Deferred d, RiakEvent ev) {
+		if(d instanceof ReadControl.Aware && ((ReadControl.Aware)d).pausesReads()) {
+			return sendAlone((ReadControl.Aware)d, d, ev);
+		}
+		Connection[] conns;
+		while((conns = connections).length > 0) {
+			Connection conn = conns[(nextConnection.getAndIncrement() & Integer.MAX_VALUE) % conns.length];
+			if(conn.send(d, ev)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Send a request whose response may have reading paused over a connection of its own, which is closed once the
+	 * response is complete. Pausing a pooled connection would hold up the responses to every request sent on it after
+	 * this one.
+	 *
+	 * @return {@literal true} if the connection is being opened, {@literal false} if this node is not connected
+	 */
+	private boolean sendAlone(final ReadControl.Aware reads, final Deferred d, final RiakEvent ev) {
+		if(connections.length == 0) {
+			return false;
+		}
+		client.open()
+		      .onError(new Consumer<Throwable>() {
+			      @Override
+			      public void accept(Throwable t) {
+				      d.accept(t);
+			      }
+		      })
+		      .onSuccess(new Consumer<TcpConnection<RiakEvent<Message>, RiakEvent<Message>>>() {
+			      @Override
+			      public void accept(TcpConnection<RiakEvent<Message>, RiakEvent<Message>> tcpConn) {
+				      Connection conn = new Connection(tcpConn, true);
+				      listen(conn);
+				      reads.readControl(conn);
+				      if(!conn.send(d, ev)) {
+					      d.accept(new IOException("Connection to " + address + " closed"));
+				      }
+			      }
+		      });
+		return true;
+	}
+
+	/**
+	 * Send an {@code RpbPingReq} to probe this node if its {@link CircuitBreaker} has tripped.
+	 *
+	 * @param d
+	 * 		the {@link Deferred} to notify when the node answers
+	 *
+	 * @return {@literal true} if a probe was sent
+	 */
+	boolean probe(Deferred d) {
+		if(!circuitBreaker.probe()) {
+			return false;
+		}
+		if(!send(d, ping())) {
+			circuitBreaker.onProbe(false);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Ping every connection that has nothing in flight and hasn't sent a request for the given time, so NATs and
+	 * firewalls between us and the node don't drop it.
+	 *
+	 * @param idleTime
+	 * 		the time in nanoseconds after which an idle connection is pinged
+	 */
+	void keepAlive(long idleTime) {
+		long now = System.nanoTime();
+		for(Connection conn : connections) {
+			if(now - conn.lastSend >= idleTime && conn.responseQueue.isEmpty()) {
+				conn.send(null, ping());
+			}
+		}
+	}
+
+	/**
+	 * Close every pooled connection whose oldest request has gone longer than the given time without a response, or
+	 * without a frame of a streamed response. The requests waiting on it fail and count against the node, and are
+	 * retried on another node if their {@link RetryPolicy} allows.
+	 *
+	 * @param deadline
+	 * 		the time in nanoseconds to wait for a response
+	 */
+	void expire(long deadline) {
+		long now = System.nanoTime();
+		for(Connection conn : connections) {
+			Tuple3<Deferred, Long, Trace> req = conn.responseQueue.peek();
+			if(null == req || now - Math.max(req.getT2(), conn.lastReceive) <= deadline) {
+				continue;
+			}
+			String msg = "No response from " + address + " in " + TimeUnit.NANOSECONDS.toMillis(deadline) + "ms";
+			if(LOG.isWarnEnabled()) {
+				LOG.warn("{}, closing {}", msg, conn.conn);
+			}
+			conn.closeCause = new SocketTimeoutException(msg);
+			conn.conn.close();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		client.close();
+	}
+
+	@Override
+	public String toString() {
+		return "Node{" +
+				"address=" + address +
+				", connections=" + connections.length +
+				", circuitBreaker=" + circuitBreaker +
+				'}';
+	}
+
+	private static RiakEvent<Message> ping() {
+		return new RiakEvent<>(null, EventType.PingReq);
+	}
+
+	private void connected(TcpConnection<RiakEvent<Message>, RiakEvent<Message>> tcpConn) {
+		Connection conn = new Connection(tcpConn, false);
+		synchronized(this) {
+			Connection[] conns = Arrays.copyOf(connections, connections.length + 1);
+			conns[conns.length - 1] = conn;
+			connections = conns;
+		}
+		listen(conn);
+	}
+
+	/**
+	 * Hand the responses read from a connection to the requests waiting on them, and fail those requests if the
+	 * connection closes.
+	 */
+	private void listen(final Connection conn) {
+		final TcpConnection<RiakEvent<Message>, RiakEvent<Message>> tcpConn = conn.conn;
+		tcpConn.on().close(new Runnable() {
+			@Override
+			public void run() {
+				closed(conn);
+				IOException cause = conn.closeCause;
+				conn.failPending(null != cause ? cause : new IOException("Connection to " + address + " closed"));
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Connection closed {}", tcpConn);
+				}
+			}
+		});
+
+		tcpConn.consume(new Consumer<RiakEvent<Message>>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public void accept(RiakEvent<Message> ev) {
+				conn.lastReceive = System.nanoTime();
+				Message msg = ev.getData();
+				if(RpbCodec.isPartial(msg)) {
+					Tuple3<Deferred, Long, Trace> req = conn.responseQueue.peek();
+					if(null != req && null != req.getT1()) {
+						req.getT1().accept(msg);
+					}
+					return;
+				}
+
+				Tuple3<Deferred, Long, Trace> req = conn.responseQueue.poll();
+				if(null == req) {
+					return;
+				}
+				Deferred d = req.getT1();
+				Trace trace = req.getT3();
+				if(null != trace) {
+					trace.mark(Phase.NETWORK, ev.getReceived());
+					trace.mark(Phase.DECODE, ev.getDecoded());
+					trace.mark(Phase.DISPATCH);
+				}
+
+				if(msg instanceof RiakPB.RpbErrorResp) {
+					RiakPB.RpbErrorResp err = (RiakPB.RpbErrorResp)msg;
+					RiakException ex = new RiakException(err.getErrmsg().toStringUtf8(), err.getErrcode());
+					if(RetryPolicy.TRANSIENT_ERRORS.test(ex)) {
+						tripped(circuitBreaker.onFailure());
+					} else {
+						tripped(circuitBreaker.onSuccess(System.nanoTime() - req.getT2()));
+					}
+					if(null != d) {
+						d.accept(ex);
+					}
+				} else {
+					tripped(circuitBreaker.onSuccess(System.nanoTime() - req.getT2()));
+					if(null != d) {
+						d.accept(msg);
+					}
+				}
+				if(conn.dedicated) {
+					// only ever carries the one request
+					tcpConn.close();
+				}
+			}
+		});
+	}
+
+	private synchronized void closed(Connection conn) {
+		Connection[] conns = connections;
+		for(int i = 0; i < conns.length; i++) {
+			if(conns[i] == conn) {
+				Connection[] remaining = new Connection[conns.length - 1];
+				System.arraycopy(conns, 0, remaining, 0, i);
+				System.arraycopy(conns, i + 1, remaining, i, conns.length - i - 1);
+				connections = remaining;
+				return;
+			}
+		}
+	}
+
+	private void tripped(boolean tripped) {
+		if(tripped && LOG.isWarnEnabled()) {
+			LOG.warn("Circuit breaker for {} tripped: {}", address, circuitBreaker);
+		}
+	}
+
+	/**
+	 * A connection to this node. Requests from any thread are put on a lock-free queue and written by a single writer on
+	 * the connection's I/O thread, which encodes up to {@code writeBatchSize} of them into one buffer and flushes it
+	 * once, so a burst of requests costs one write instead of one per request. While more than the high water mark of
+	 * the channel is waiting to be written, requests are left on the queue.
+	 */
+	private class Connection implements ReadControl, Runnable {
+		private final TcpConnection<RiakEvent<Message>, RiakEvent<Message>> conn;
+		private final SocketChannel                              channel;
+		private final Queue<Tuple3<Deferred, Long, Trace>>       responseQueue;
+		private final Queue<Tuple3<Deferred, RiakEvent, Long>>   submissions;
+		private final AtomicBoolean                              writing;
+		private final boolean                                    dedicated;
+
+		private volatile long        lastSend    = System.nanoTime();
+		private volatile long        lastReceive = System.nanoTime();
+		private volatile boolean     open        = true;
+		private volatile IOException closeCause;
+
+		private Connection(TcpConnection<RiakEvent<Message>, RiakEvent<Message>> conn, boolean dedicated) {
+			this.conn = conn;
+			this.dedicated = dedicated;
+			this.channel = (conn instanceof NettyTcpConnection ? ((NettyTcpConnection)conn).channel() : null);
+			this.responseQueue = BlockingQueueFactory.createQueue();
+			this.submissions = new ConcurrentLinkedQueue<>();
+			this.writing = new AtomicBoolean();
+			if(null != channel) {
+				transport.configure(channel.config());
+				channel.pipeline().addFirst(new ChannelInboundHandlerAdapter() {
+					@Override
+					public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+						// pick up the requests that queued while too much was waiting to be written
+						if(channel.isWritable() && !submissions.isEmpty() && writing.compareAndSet(false, true)) {
+							Connection.this.run();
+						}
+						ctx.fireChannelWritabilityChanged();
+					}
+				});
+			}
+		}
+
+		private boolean send(Deferred d, RiakEvent ev) {
+			if(!open) {
+				return false;
+			}
+			long now = System.nanoTime();
+			lastSend = now;
+
+			if(null == channel) {
+				synchronized(this) {
+					if(!open) {
+						return false;
+					}
+					responseQueue.add(Tuple.of(d, now, queued(ev)));
+					conn.send(ev);
+				}
+				return true;
+			}
+
+			submissions.add(Tuple.of(d, ev, now));
+			if(writing.compareAndSet(false, true)) {
+				if(writeLinger > 0) {
+					channel.eventLoop().schedule(this, writeLinger, TimeUnit.NANOSECONDS);
+				} else {
+					channel.eventLoop().execute(this);
+				}
+			}
+			if(!open) {
+				// closed while the request was being queued, so it may never be written
+				failSubmissions(new IOException("Connection to " + address + " closed"));
+			}
+			return true;
+		}
+
+		/**
+		 * Write the next batch of queued requests. Only ever runs on the connection's I/O thread.
+		 */
+		@SuppressWarnings("unchecked")
+		@Override
+		public void run() {
+			if(!channel.isWritable()) {
+				// leave the requests queued until the channel's outbound buffer drains below the low water mark
+				writing.set(false);
+				return;
+			}
+			ByteBuf buf = null;
+			Tuple3<Deferred, RiakEvent, Long> req;
+			for(int i = 0; i < writeBatchSize && null != (req = submissions.poll()); i++) {
+				Buffer frame;
+				try {
+					frame = encoder.apply(req.getT2());
+				} catch(RuntimeException e) {
+					if(null != req.getT1()) {
+						req.getT1().accept(e);
+					}
+					continue;
+				}
+				if(null == buf) {
+					buf = channel.alloc().ioBuffer();
+				}
+				// frames are prefixed with their length, as LengthPrefixedCodec does
+				buf.writeInt(frame.remaining());
+				buf.writeBytes(frame.byteBuffer());
+				responseQueue.add(Tuple.of(req.getT1(), req.getT3(), queued(req.getT2())));
+			}
+			if(null != buf) {
+				channel.writeAndFlush(buf);
+			}
+
+			writing.set(false);
+			// go round the event loop again for the next batch so reads aren't held up
+			if(!submissions.isEmpty() && writing.compareAndSet(false, true)) {
+				channel.eventLoop().execute(this);
+			}
+		}
+
+		/**
+		 * Mark a request as written, if it is traced.
+		 *
+		 * @return the {@link Trace} of the request or {@literal null} if it isn't traced
+		 */
+		private Trace queued(RiakEvent ev) {
+			Trace trace = ev.getTrace();
+			if(null != trace) {
+				trace.mark(Phase.QUEUE);
+			}
+			return trace;
+		}
+
+		@Override
+		public void pause() {
+			autoRead(false);
+		}
+
+		@Override
+		public void resume() {
+			autoRead(true);
+		}
+
+		private void autoRead(boolean autoRead) {
+			if(null != channel) {
+				channel.config().setAutoRead(autoRead);
+			}
+		}
+
+		private void failPending(Throwable t) {
+			synchronized(this) {
+				open = false;
+			}
+			failSubmissions(t);
+			Tuple3<Deferred, Long, Trace> req;
+			while(null != (req = responseQueue.poll())) {
+				// these reached the node but never got an answer, which counts against it like an error would
+				tripped(circuitBreaker.onFailure());
+				if(null != req.getT1()) {
+					req.getT1().accept(t);
+				}
+			}
+		}
+
+		private void failSubmissions(Throwable t) {
+			Tuple3<Deferred, RiakEvent, Long> req;
+			while(null != (req = submissions.poll())) {
+				if(null != req.getT1()) {
+					req.getT1().accept(t);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+package com.jbrisbin.riaktor;
+
+/**
+ * Thrown when Riak responds to a request with an {@code RpbErrorResp}.
+ *
+ * @author Jon Brisbin
+ */
+public class RiakException extends IllegalStateException {
+
+	private static final long serialVersionUID = -3291563094527419807L;
+
+	private final int errcode;
+
+	public RiakException(String errmsg, int errcode) {
+		super(errmsg);
+		this.errcode = errcode;
+	}
+
+	public int getErrcode() {
+		return errcode;
+	}
+
+}
@@ -4,15 +4,43 @@ import com.basho.riak.protobuf.RiakKvPB;
 import com.basho.riak.protobuf.RiakPB;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Message;
+import com.jbrisbin.riaktor.cache.NegativeCache;
+import com.jbrisbin.riaktor.encoding.LengthPrefixedCodec;
 import com.jbrisbin.riaktor.encoding.RpbCodec;
 import com.jbrisbin.riaktor.event.EventType;
 import com.jbrisbin.riaktor.event.RiakEvent;
+import com.jbrisbin.riaktor.op.CounterOperation;
 import com.jbrisbin.riaktor.op.DeleteOperation;
 import com.jbrisbin.riaktor.op.GetOperation;
+import com.jbrisbin.riaktor.op.IndexOperation;
+import com.jbrisbin.riaktor.op.LinkWalkOperation;
 import com.jbrisbin.riaktor.op.ListKeysOperation;
+import com.jbrisbin.riaktor.op.MapReduceOperation;
 import com.jbrisbin.riaktor.op.PutOperation;
+import com.jbrisbin.riaktor.op.UpdateOperation;
+import com.jbrisbin.riaktor.policy.CircuitBreaker;
+import com.jbrisbin.riaktor.policy.CircuitBreakerPolicy;
+import com.jbrisbin.riaktor.policy.HedgePolicy;
+import com.jbrisbin.riaktor.policy.NegativeCachePolicy;
+import com.jbrisbin.riaktor.policy.RetryPolicy;
+import com.jbrisbin.riaktor.ring.Ring;
+import com.jbrisbin.riaktor.ring.RingProvider;
 import com.jbrisbin.riaktor.spec.QuorumSpec;
+import com.jbrisbin.riaktor.stream.FramePublisher;
+import com.jbrisbin.riaktor.stream.LinkWalkPublisher;
+import com.jbrisbin.riaktor.stream.RequestPublisher;
+import com.jbrisbin.riaktor.support.ByteStringCache;
+import com.jbrisbin.riaktor.support.RequestBudget;
+import com.jbrisbin.riaktor.support.RequestJournal;
+import com.jbrisbin.riaktor.support.ScalableBloomFilter;
+import com.jbrisbin.riaktor.support.TransportOptions;
 import com.jbrisbin.riaktor.support.TypeMeta;
+import com.jbrisbin.riaktor.trace.Phase;
+import com.jbrisbin.riaktor.trace.Trace;
+import com.jbrisbin.riaktor.trace.Tracer;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.convert.Converter;
@@ -20,20 +48,18 @@ import reactor.core.Environment;
 import reactor.core.Reactor;
 import reactor.core.composable.Deferred;
 import reactor.core.composable.Promise;
-import reactor.core.composable.Stream;
 import reactor.core.composable.spec.Promises;
-import reactor.core.composable.spec.Streams;
 import reactor.event.Event;
 import reactor.event.dispatch.Dispatcher;
 import reactor.event.registry.Registration;
 import reactor.function.Consumer;
 import reactor.function.Function;
+import reactor.function.Predicate;
+import reactor.io.Buffer;
 import reactor.queue.BlockingQueueFactory;
+import reactor.support.NamedDaemonThreadFactory;
 import reactor.tcp.Reconnect;
 import reactor.tcp.TcpClient;
-import reactor.tcp.TcpConnection;
-import reactor.tcp.config.ClientSocketOptions;
-import reactor.tcp.encoding.LengthFieldCodec;
 import reactor.tcp.netty.NettyTcpClient;
 import reactor.tcp.spec.TcpClientSpec;
 import reactor.tuple.Tuple;
@@ -45,7 +71,22 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static reactor.event.selector.Selectors.T;
 
@@ -54,24 +95,77 @@ import static reactor.event.selector.Selectors.T;
  */
 public class Riaktor implements Closeable {
 
-	private static final Logger LOG = LoggerFactory.getLogger(Riaktor.class);
+	private static final Logger     LOG                   = LoggerFactory.getLogger(Riaktor.class);
+	private static final long       RING_REFRESH_INTERVAL = 10;
+	private static final int        CHANNEL_BUFFER_SIZE   = 8192;
+	private static final int        MAX_INTERNED_NAMES    = 1024;
+	private static final ByteString JSON                  = ByteString.copyFromUtf8("application/json");
+
+	// request builders are cleared and reused by each thread instead of allocated per request
+	private static final ThreadLocal<RequestBuilders> BUILDERS = new ThreadLocal<RequestBuilders>() {
+		@Override
+		protected RequestBuilders initialValue() {
+			return new RequestBuilders();
+		}
+	};
+
+	private static final Function<Message, Void>                          DELETED
+			= new Function<Message, Void>() {
+		@Override
+		public Void apply(Message msg) {
+			return null;
+		}
+	};
+	private static final Function<RiakKvPB.RpbCounterUpdateResp, Long>    COUNTER_UPDATED
+			= new Function<RiakKvPB.RpbCounterUpdateResp, Long>() {
+		@Override
+		public Long apply(RiakKvPB.RpbCounterUpdateResp resp) {
+			return (resp.hasValue() ? resp.getValue() : null);
+		}
+	};
+	private static final Function<RiakKvPB.RpbCounterGetResp, Long>       COUNTER_VALUE
+			= new Function<RiakKvPB.RpbCounterGetResp, Long>() {
+		@Override
+		public Long apply(RiakKvPB.RpbCounterGetResp resp) {
+			return (resp.hasValue() ? resp.getValue() : 0L);
+		}
+	};
 
 	private final Environment                            env;
 	private final Dispatcher                             dispatcher;
 	private final int                                    timeout;
 	private final Reactor                                reactor;
 	private final ByteString                             defaultContentType;
-	private final Reconnect                              reconnect;
-	private final TcpClient<Message, RiakEvent<Message>> client;
-	private final Queue<RiakEvent>                       requestQueue;
-	private final Queue<Deferred>                        responseQueue;
+	private final HedgePolicy                            hedgePolicy;
+	private final Map<EventType, RetryPolicy>            retryPolicies;
+	private final RequestBudget                          retryBudget;
+	private final CircuitBreakerPolicy                   circuitBreakerPolicy;
+	private final int                                    connectionsPerNode;
+	private final long                                   warmupTimeout;
+	private final long                                   requestDeadline;
+	private final long                                   keepAliveInterval;
+	private final RequestJournal                         journal;
+	private final Map<Long, Deferred>                    journaled;
+	private final JournalReplay                          journalReplay;
+	private final RingProvider                           ringProvider;
+	private final int                                    nVal;
+	private final TransportOptions                       transport;
+	private final Tracer                                 tracer;
+	private final Dispatcher                             conversionDispatcher;
+	private final Map<String, NegativeCache>             negativeCaches;
+	private final List<Node>                             nodes;
+	private final AtomicInteger                          nextNode;
+	private final ScheduledExecutorService               scheduler;
+	private final Queue<Tuple2<Deferred, RiakEvent>>     requestQueue;
+	private final ByteStringCache                        names;
 
 	private final List<Tuple3<String, String, Converter>> converters
 			= new ArrayList<>();
 	private final Map<ByteString, Converter>              converterCache
 			= Collections.synchronizedMap(new HashMap<ByteString, Converter>());
 
-	private volatile TcpConnection<Message, RiakEvent<Message>> connection;
+	private volatile boolean started;
+	private volatile Routes  routes;
 
 	public Riaktor(Environment env,
 	               Reactor reactor,
@@ -79,18 +173,61 @@ public class Riaktor implements Closeable {
 	               List<URI> connectURIs,
 	               Map<String, Converter> converters,
 	               String defaultContentType) {
+		this(env, reactor, settings(timeout, connectURIs, converters, defaultContentType));
+	}
+
+	/**
+	 * Create a {@code Riaktor} with the given settings, which are read once here. Changing them afterwards has no effect.
+	 *
+	 * @param env
+	 * 		the {@link Environment} to create promises and streams in
+	 * @param reactor
+	 * 		the {@link Reactor} to dispatch responses on
+	 * @param settings
+	 * 		the {@link RiaktorSettings} to use
+	 */
+	public Riaktor(Environment env, Reactor reactor, RiaktorSettings settings) {
 		Assert.notNull(env, "Environment cannot be null.");
 		Assert.notNull(reactor, "Reactor cannot be null.");
-		Assert.notNull(converters, "Converters cannot be null.");
+		Assert.notNull(settings, "Settings cannot be null.");
+		Assert.notNull(settings.retryBudget(), "Retry budget cannot be null.");
+		Assert.notNull(settings.circuitBreakerPolicy(), "Circuit breaker policy cannot be null.");
+		Assert.isTrue(settings.connectionsPerNode() > 0, "Connections per node must be greater than 0.");
+		Assert.isTrue(settings.writeBatchSize() > 0, "Write batch size must be greater than 0.");
+		Assert.notNull(settings.transport(), "Transport options cannot be null.");
+		Assert.notNull(settings.tracer(), "Tracer cannot be null.");
 		this.env = env;
 		this.reactor = reactor;
 		this.dispatcher = reactor.getDispatcher();
-		this.timeout = timeout;
-		this.defaultContentType = ByteString.copyFromUtf8(defaultContentType);
+		this.timeout = settings.timeout();
+		this.names = new ByteStringCache(MAX_INTERNED_NAMES);
+		this.defaultContentType = names.get(settings.defaultContentType());
+		this.hedgePolicy = settings.hedgePolicy();
+		this.retryPolicies = new EnumMap<>(settings.retryPolicies());
+		this.retryBudget = settings.retryBudget();
+		this.circuitBreakerPolicy = settings.circuitBreakerPolicy();
+		this.connectionsPerNode = settings.connectionsPerNode();
+		this.warmupTimeout = settings.warmupTimeout();
+		this.requestDeadline = settings.requestDeadline();
+		this.keepAliveInterval = settings.keepAliveInterval();
+		this.journal = settings.journal();
+		this.journaled = new ConcurrentHashMap<>();
+		this.journalReplay = new JournalReplay();
+		this.ringProvider = settings.ringProvider();
+		this.nVal = settings.nVal();
+		this.transport = settings.transport();
+		this.tracer = settings.tracer();
+		this.conversionDispatcher = settings.conversionDispatcher();
+		Map<String, NegativeCache> negativeCaches = new HashMap<>();
+		for(Map.Entry<String, NegativeCachePolicy> entry : settings.negativeCachePolicies().entrySet()) {
+			negativeCaches.put(entry.getKey(), new NegativeCache(entry.getKey(), entry.getValue()));
+		}
+		this.negativeCaches = Collections.unmodifiableMap(negativeCaches);
+		this.nextNode = new AtomicInteger();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("riaktor-scheduler"));
 		this.requestQueue = BlockingQueueFactory.createQueue();
-		this.responseQueue = BlockingQueueFactory.createQueue();
 
-		for(final Map.Entry<String, Converter> entry : converters.entrySet()) {
+		for(final Map.Entry<String, Converter> entry : settings.converters().entrySet()) {
 			String[] parts = entry.getKey().split("/");
 			Assert.isTrue(parts.length == 2, "Invalid RFC 1590 Content-Type pattern: " + entry.getKey());
 
@@ -102,59 +239,78 @@ public class Riaktor implements Closeable {
 
 		}
 
+		// failures of a connection fail the requests sent on it, so errors that get this far belong to no request
 		this.reactor.on(T(Throwable.class), new Consumer<Event<Throwable>>() {
 			@Override
 			public void accept(Event<Throwable> ev) {
-				if(null == responseQueue.peek()) {
-					if(LOG.isWarnEnabled()) {
-						LOG.warn("Error received but no request waiting on response: {}", ev.getData());
-					}
-					return;
+				if(LOG.isWarnEnabled()) {
+					LOG.warn("Error not tied to any request: {}", ev.getData().toString(), ev.getData());
 				}
-				responseQueue.remove().accept(ev.getData());
 			}
 		});
 
-		InetSocketAddress connectAddr;
-		if(null == connectURIs || connectURIs.isEmpty()) {
-			connectAddr = new InetSocketAddress("localhost", 8087);
-			reconnect = null;
+		Function<RiakEvent<Message>, Buffer> encoder = new RpbCodec().encoder();
+		int writeBatchSize = settings.writeBatchSize();
+		long writeLinger = settings.writeLinger();
+		List<URI> connectURIs = settings.connectURIs();
+		if(connectURIs.isEmpty()) {
+			InetSocketAddress connectAddr = new InetSocketAddress("localhost", 8087);
+			this.nodes = Collections.singletonList(new Node(connectAddr,
+			                                                createClient(connectAddr),
+			                                                null,
+			                                                new CircuitBreaker(circuitBreakerPolicy),
+			                                                encoder,
+			                                                writeBatchSize,
+			                                                writeLinger,
+			                                                transport));
 		} else {
-			URI firstUri = connectURIs.get(0);
-			connectAddr = new InetSocketAddress(firstUri.getHost(), firstUri.getPort());
-
-			final int len = connectURIs.size();
-			final List<InetSocketAddress> addresses = new ArrayList<>(len);
+			List<Node> nodes = new ArrayList<>(connectURIs.size());
 			for(URI u : connectURIs) {
-				addresses.add(new InetSocketAddress(u.getHost(), u.getPort()));
-			}
-
-			reconnect = new Reconnect() {
-				@Override
-				public Tuple2<InetSocketAddress, Long> reconnect(InetSocketAddress currentAddress, int attempt) {
-					InetSocketAddress nextAddr = addresses.get(attempt % len);
-					long timeout = (attempt == 0 ? 0 : (long)Riaktor.this.timeout);
-					if(LOG.isInfoEnabled()) {
-						LOG.info("Reconnecting to {} after {}", nextAddr, (attempt == 0 ? 0 : (long)Riaktor.this.timeout));
+				final InetSocketAddress addr = new InetSocketAddress(u.getHost(), u.getPort());
+				Reconnect reconnect = new Reconnect() {
+					@Override
+					public Tuple2<InetSocketAddress, Long> reconnect(InetSocketAddress currentAddress, int attempt) {
+						long timeout = (attempt == 0 ? 0 : (long)Riaktor.this.timeout);
+						if(LOG.isInfoEnabled()) {
+							LOG.info("Reconnecting to {} after {}", addr, timeout);
+						}
+						return Tuple.of(addr, timeout);
 					}
-					return Tuple.of(nextAddr, timeout);
-				}
-			};
+				};
+				nodes.add(new Node(addr,
+				                   createClient(addr),
+				                   reconnect,
+				                   new CircuitBreaker(circuitBreakerPolicy),
+				                   encoder,
+				                   writeBatchSize,
+				                   writeLinger,
+				                   transport));
+			}
+			this.nodes = Collections.unmodifiableList(nodes);
 		}
 
 		if(LOG.isDebugEnabled()) {
-			LOG.debug("\t  Connect:\t{}", connectAddr);
-			LOG.debug("\tReconnect:\t{}", reconnect);
+			LOG.debug("\t    Nodes:\t{}", nodes);
 			LOG.debug("\t  Timeout:\t{}", timeout);
+			LOG.debug("\t Per node:\t{}", connectionsPerNode);
 		}
+	}
 
-		client = new TcpClientSpec<Message, RiakEvent<Message>>(NettyTcpClient.class)
-				.env(env)
-				.dispatcher(dispatcher)
-				.codec(new LengthFieldCodec<>(new RpbCodec()))
-				.options(new ClientSocketOptions().timeout(timeout))
-				.connect(connectAddr)
-				.get();
+	private static RiaktorSettings settings(int timeout,
+	                                        List<URI> connectURIs,
+	                                        Map<String, Converter> converters,
+	                                        String defaultContentType) {
+		Assert.notNull(converters, "Converters cannot be null.");
+		RiaktorSettings settings = new RiaktorSettings().timeout(timeout).defaultContentType(defaultContentType);
+		if(null != connectURIs) {
+			for(URI uri : connectURIs) {
+				settings.connect(uri);
+			}
+		}
+		for(Map.Entry<String, Converter> entry : converters.entrySet()) {
+			settings.converter(entry.getKey(), entry.getValue());
+		}
+		return settings;
 	}
 
 	public Registration<Consumer<Event<Throwable>>> when(Class<Throwable> type,
@@ -162,127 +318,203 @@ public class Riaktor implements Closeable {
 		return reactor.on(T(type), consumer);
 	}
 
+	/**
+	 * Get the nodes this {@code Riaktor} sends requests to, along with their connection and circuit breaker state.
+	 *
+	 * @return the nodes
+	 */
+	public List<Node> nodes() {
+		return nodes;
+	}
+
+	/**
+	 * Get the {@link Environment} this {@code Riaktor} creates its promises and streams in.
+	 *
+	 * @return the environment
+	 */
+	public Environment environment() {
+		return env;
+	}
+
+	/**
+	 * Open the configured number of connections to every node. The returned {@link Promise} completes once every
+	 * connection is open or, if the warm-up deadline passes first, as soon as at least one connection is open. It fails
+	 * if every attempt to connect fails, or if no connection is open by the deadline.
+	 *
+	 * @return a {@link Promise} that completes when this {@code Riaktor} is ready to send requests
+	 */
 	public Promise<Riaktor> start() {
-		if(null != connection) {
+		if(started) {
 			throw new IllegalStateException("This Riaktor has already been started.");
 		}
+		started = true;
 
-		final Consumer<Message> msgConsumer = new Consumer<Message>() {
-			@SuppressWarnings("unchecked")
+		final Deferred<Riaktor, Promise<Riaktor>> d = promise();
+		final AtomicBoolean warm = new AtomicBoolean();
+		final AtomicBoolean deadlinePassed = new AtomicBoolean();
+		final int connections = nodes.size() * connectionsPerNode;
+		final AtomicInteger pending = new AtomicInteger(connections);
+		final AtomicInteger failed = new AtomicInteger();
+
+		Consumer<Node> onOpen = new Consumer<Node>() {
 			@Override
-			public void accept(Message msg) {
-				if(null == responseQueue.peek()) {
-					return;
+			public void accept(Node node) {
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Connected to {}", node.getAddress());
+				}
+				drainRequestQueue();
+				if((pending.decrementAndGet() <= 0 || deadlinePassed.get()) && warm.compareAndSet(false, true)) {
+					d.accept(Riaktor.this);
+				}
+			}
+		};
+		Consumer<Throwable> onError = new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				reactor.notify(t.getClass(), Event.wrap(t));
+				// nodes without reconnect give up after one attempt, so the rest may never settle the promise
+				boolean allFailed = (failed.incrementAndGet() >= connections);
+				if(pending.decrementAndGet() <= 0 && warm.compareAndSet(false, true)) {
+					if(allFailed) {
+						d.accept(t);
+					} else {
+						d.accept(Riaktor.this);
+					}
 				}
+			}
+		};
+
+		for(Node node : nodes) {
+			node.open(connectionsPerNode, onOpen, onError);
+		}
 
-				Deferred d = responseQueue.remove();
-				if(msg instanceof RiakPB.RpbErrorResp) {
-					d.accept(new IllegalStateException(((RiakPB.RpbErrorResp)msg).getErrmsg()
-					                                                             .toStringUtf8()));
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				deadlinePassed.set(true);
+				int open = 0;
+				for(Node node : nodes) {
+					open += node.getConnectionCount();
+				}
+				if(!warm.compareAndSet(false, true)) {
+					return;
+				}
+				if(open > 0) {
+					if(LOG.isWarnEnabled()) {
+						LOG.warn("Only {} of {} connections open after warm-up, starting anyway: {}",
+						         open, connections, nodes);
+					}
+					d.accept(Riaktor.this);
 				} else {
-					d.accept(msg);
+					d.accept(new IOException("No connection to " + nodes + " was open after warm-up."));
 				}
 			}
-		};
+		}, warmupTimeout, TimeUnit.NANOSECONDS);
 
-		if(null == reconnect) {
-			return client.open()
-			             .onError(new Consumer<Throwable>() {
-				             @Override
-				             public void accept(Throwable t) {
-					             reactor.notify(t.getClass(), Event.wrap(t));
-				             }
-			             })
-			             .onSuccess(new Consumer<TcpConnection<Message, RiakEvent<Message>>>() {
-				             @Override
-				             public void accept(final TcpConnection<Message, RiakEvent<Message>> conn) {
-					             synchronized(client) {
-						             Riaktor.this.connection = conn;
-						             client.notifyAll();
-					             }
-
-					             drainRequestQueue();
-
-					             conn.on().close(new Runnable() {
-						             @Override
-						             public void run() {
-							             synchronized(client) {
-								             Riaktor.this.connection = null;
-							             }
-							             if(LOG.isDebugEnabled()) {
-								             LOG.debug("Connection closed {}", conn);
-							             }
-						             }
-					             });
-					             conn.consume(msgConsumer);
-				             }
-			             })
-			             .map(new Function<TcpConnection<Message, RiakEvent<Message>>, Riaktor>() {
-				             @Override
-				             public Riaktor apply(TcpConnection<Message, RiakEvent<Message>> conn) {
-					             return Riaktor.this;
-				             }
-			             });
-		} else {
-			final Deferred<TcpConnection<Message, RiakEvent<Message>>, Promise<TcpConnection<Message, RiakEvent<Message>>>> d
-					= promise();
-
-			client.open(reconnect)
-			      .consume(new Consumer<TcpConnection<Message, RiakEvent<Message>>>() {
-				      @Override
-				      public void accept(TcpConnection<Message, RiakEvent<Message>> conn) {
-					      synchronized(client) {
-						      Riaktor.this.connection = conn;
-						      client.notifyAll();
-					      }
-
-					      conn.on().close(new Runnable() {
-						      @Override
-						      public void run() {
-							      synchronized(client) {
-								      Riaktor.this.connection = null;
-							      }
-						      }
-					      });
-					      conn.consume(msgConsumer);
-
-					      d.accept(conn);
-
-					      drainRequestQueue();
-				      }
-			      });
-
-			return d.compose().map(new Function<TcpConnection<Message, RiakEvent<Message>>, Riaktor>() {
+		long probeInterval = circuitBreakerPolicy.probeInterval();
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				probeNodes();
+			}
+		}, probeInterval, probeInterval, TimeUnit.NANOSECONDS);
+
+		if(null != ringProvider) {
+			refreshRing();
+			scheduler.scheduleWithFixedDelay(new Runnable() {
 				@Override
-				public Riaktor apply(TcpConnection<Message, RiakEvent<Message>> conn) {
-					return Riaktor.this;
+				public void run() {
+					refreshRing();
 				}
-			});
+			}, RING_REFRESH_INTERVAL, RING_REFRESH_INTERVAL, TimeUnit.SECONDS);
+		}
+
+		if(null != journal && journal.fsync() == RequestJournal.Fsync.PERIODIC) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					journal.force();
+				}
+			}, 1, 1, TimeUnit.SECONDS);
+		}
+
+		if(requestDeadline > 0) {
+			long interval = Math.max(requestDeadline / 4, TimeUnit.MILLISECONDS.toNanos(10));
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					for(Node node : nodes) {
+						node.expire(requestDeadline);
+					}
+				}
+			}, interval, interval, TimeUnit.NANOSECONDS);
+		}
+
+		if(keepAliveInterval > 0) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					for(Node node : nodes) {
+						node.keepAlive(keepAliveInterval);
+					}
+				}
+			}, keepAliveInterval, keepAliveInterval, TimeUnit.NANOSECONDS);
 		}
+
+		return d.compose();
+	}
+
+	public <T> PutOperation<T> put(String bucket, String key, T obj) {
+		return put(bucket, key, obj, null);
+	}
+
+	/**
+	 * Create a put that, if {@code expected} is given, only writes the object if it hasn't changed since it was read.
+	 *
+	 * @param expected
+	 * 		the vclock the object was read with, {@link ByteString#EMPTY} if it didn't exist, or {@literal null} to write
+	 * 		it unconditionally
+	 */
+	private <T> PutOperation<T> put(String bucket, String key, T obj, ByteString expected) {
+		return put(bucket, key, obj, expected, true);
 	}
 
+	/**
+	 * Create a put that sends the vclock {@code expected} as it is, only writing the object if it hasn't changed since
+	 * it was read when {@code conditional} is {@literal true}.
+	 */
 	@SuppressWarnings("unchecked")
-	public <T> PutOperation<T> put(final String bucket,
-	                               final String key,
-	                               final T obj) {
+	private <T> PutOperation<T> put(final String bucket,
+	                                final String key,
+	                                final T obj,
+	                                final ByteString expected,
+	                                final boolean conditional) {
 		Assert.notNull(bucket, "Bucket cannot be null.");
 		Assert.notNull(obj, "Object cannot be null.");
 
 		final Class<T> type = (Class<T>)obj.getClass();
-		final Deferred<RiakKvPB.RpbPutResp, Promise<RiakKvPB.RpbPutResp>> d = promise();
-		final RiakKvPB.RpbPutReq.Builder b = RiakKvPB.RpbPutReq.newBuilder()
-		                                             .setTimeout(timeout)
-		                                             .setBucket(ByteString.copyFromUtf8(bucket));
-		if(null != key) {
-			b.setKey(ByteString.copyFromUtf8(key));
-		}
 
-		final TypeMeta typeMeta = TypeMeta.fromType(obj.getClass());
-		final byte[] vclock = typeMeta.vclockSupplier(obj).get();
+		// raw values are sent as they are, so there's nothing to introspect
+		final TypeMeta typeMeta = (isRaw(type) ? null : TypeMeta.fromType(type));
+		final byte[] vclock = (null != typeMeta ? typeMeta.vclockSupplier(obj).get() : null);
 
 		return new PutOperation<T>() {
 			@Override
 			public Promise<Entry<T>> commit() {
+				final NegativeCache nc = negativeCaches.get(bucket);
+				if(null != nc && null != key) {
+					nc.put(key);
+				}
+				Trace trace = tracer.start(EventType.PutReq, traceContext());
+				final Deferred<RiakKvPB.RpbPutResp, Promise<RiakKvPB.RpbPutResp>> d = conversion();
+				RequestBuilders builders = BUILDERS.get();
+				RiakKvPB.RpbPutReq.Builder b = builders.putReq.clear()
+				                                              .setTimeout(timeout)
+				                                              .setBucket(names.get(bucket));
+				if(null != key) {
+					b.setKey(ByteString.copyFromUtf8(key));
+				}
+
 				if(!returnBody()) {
 					b.setReturnBody(false);
 					b.setReturnHead(true);
@@ -304,89 +536,213 @@ public class Riaktor implements Closeable {
 					if(q.hasNval()) {
 						b.setNVal(q.nval());
 					}
-					if(null != ifNoneMatch()) {
-						b.setIfNoneMatch(true);
-					}
+				}
+				if(null != ifNoneMatch()) {
+					b.setIfNoneMatch(true);
 				}
 
 				if(null != vclock()) {
 					b.setVclock(ByteString.copyFrom(vclock()));
+				} else if(null != expected && !expected.isEmpty()) {
+					b.setVclock(expected);
 				} else if(null != vclock) {
 					b.setVclock(ByteString.copyFrom(vclock));
 				}
+				if(null != expected && conditional) {
+					if(expected.isEmpty()) {
+						b.setIfNoneMatch(true);
+					} else {
+						b.setIfNotModified(true);
+					}
+				}
+
+				// only retry puts by default if they can't create a sibling or a second object by being applied twice
+				RetryPolicy retry = retry();
+				if(null == retry) {
+					retry = (b.hasKey() && (b.hasVclock() || b.getIfNoneMatch())
+					         ? retryPolicies.get(EventType.PutReq)
+					         : RetryPolicy.NONE);
+				}
 
-				RiakKvPB.RpbContent.Builder content = RiakKvPB.RpbContent.newBuilder();
+				RiakKvPB.RpbContent.Builder content = builders.content.clear();
 				ByteString contentType = defaultContentType;
 				if(null != contentType()) {
-					contentType = ByteString.copyFromUtf8(contentType());
+					contentType = names.get(contentType());
 				}
 				content.setContentType(contentType);
 
 				Converter c;
-				byte[] contentBytes;
-				if(type != byte[].class && null != (c = converterFor(contentType))) {
-					contentBytes = c.convert(obj, byte[].class);
+				if(obj instanceof ByteString) {
+					content.setValue((ByteString)obj);
+				} else if(obj instanceof ByteBuffer) {
+					content.setValue(ByteString.copyFrom(((ByteBuffer)obj).duplicate()));
+				} else if(type != byte[].class && null != (c = converterFor(contentType))) {
+					content.setValue(ByteString.copyFrom(c.convert(obj, byte[].class)));
 				} else {
-					contentBytes = (byte[])obj;
+					content.setValue(ByteString.copyFrom((byte[])obj));
 				}
-				content.setValue(ByteString.copyFrom(contentBytes));
 
 				Map<String, String> metadata = metadata();
-				Map<String, String> objMeta = typeMeta.metadataSupplier(obj).get();
+				Map<String, String> objMeta = (null != typeMeta ? typeMeta.metadataSupplier(obj).get() : null);
 				if(null != objMeta && !objMeta.isEmpty()) {
 					metadata.putAll(objMeta);
 				}
 				if(!metadata.isEmpty()) {
 					for(Map.Entry<String, String> entry : metadata.entrySet()) {
-						content.addUsermeta(RiakPB.RpbPair.newBuilder()
-						                          .setKey(ByteString.copyFromUtf8(entry.getKey()))
-						                          .setValue(ByteString.copyFromUtf8(entry.getValue()))
-						                          .build());
+						content.addUsermeta(builders.pair.clear()
+						                                 .setKey(names.get(entry.getKey()))
+						                                 .setValue(ByteString.copyFromUtf8(entry.getValue()))
+						                                 .build());
 					}
 				}
+				List<Tuple2<String, String>> indexes = indexes();
+				if(null != typeMeta && typeMeta.hasIndexes()) {
+					indexes = new ArrayList<>(indexes);
+					indexes.addAll(typeMeta.indexesSupplier(obj).get());
+				}
+				for(Tuple2<String, String> index : indexes) {
+					content.addIndexes(builders.pair.clear()
+					                                .setKey(names.get(index.getT1()))
+					                                .setValue(ByteString.copyFromUtf8(index.getT2()))
+					                                .build());
+				}
+				for(Link link : links()) {
+					content.addLinks(builders.link.clear()
+					                              .setBucket(names.get(link.getBucket()))
+					                              .setKey(ByteString.copyFromUtf8(link.getKey()))
+					                              .setTag(names.get(link.getTag()))
+					                              .build());
+				}
 
 				b.setContent(content.build());
 
-				request(d, new RiakEvent<>(b.build(), EventType.PutReq));
-
-				return d.compose().map(new Function<RiakKvPB.RpbPutResp, Entry<T>>() {
+				// map before sending, since a response that arrives while map() is attaching is lost
+				final boolean returnBody = returnBody();
+				final Function<List<T>, T> resolver = conflictResolver();
+				Promise<Entry<T>> p = d.compose().map(new Function<RiakKvPB.RpbPutResp, Entry<T>>() {
 					@Override
 					public Entry<T> apply(RiakKvPB.RpbPutResp rpbPutResp) {
 						String skey;
 						if(null == key) {
 							skey = rpbPutResp.getKey().toStringUtf8();
+							if(null != nc) {
+								nc.put(skey);
+							}
 						} else {
 							skey = key;
 						}
+						if(!returnBody) {
+							// only the head came back, so there's no value to convert
+							RiakKvPB.RpbContent content = (rpbPutResp.getContentCount() > 0
+							                               ? rpbPutResp.getContent(0)
+							                               : null);
+							return new Entry<>(bucket, skey, Headers.from(rpbPutResp.getVclock(), content), null);
+						}
 						return new ResponseMapFunction<RiakKvPB.RpbPutResp, T>(
 								rpbPutResp.getContentList(),
 								type,
-								null,
-								rpbPutResp.getVclock().toByteArray(),
+								resolver,
+								rpbPutResp.getVclock(),
 								bucket,
 								skey
 						).apply(rpbPutResp);
 					}
 				});
+
+				traced(p, trace);
+				execute(d, new RiakEvent<>(b.build(), EventType.PutReq).setTrace(trace), retry, null);
+				return p;
 			}
 		};
 	}
 
+	/**
+	 * Store the contents of a file. The file is memory-mapped rather than read onto the heap, so the only copy made is
+	 * the one into the request itself.
+	 *
+	 * @param bucket
+	 * 		the bucket to store the object in
+	 * @param key
+	 * 		the key to store the object under or {@literal null} to have Riak generate one
+	 * @param file
+	 * 		the file to store
+	 *
+	 * @return a {@link PutOperation} for the file's contents, with a content type of {@code application/octet-stream}
+	 *
+	 * @throws IOException
+	 * 		if the file can't be mapped
+	 */
+	public PutOperation<ByteBuffer> put(String bucket, String key, Path file) throws IOException {
+		Assert.notNull(file, "File cannot be null.");
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return put(bucket, key, channel);
+		}
+	}
+
+	/**
+	 * Store everything that is left to read from a channel. A {@link FileChannel} is memory-mapped from its current
+	 * position rather than read onto the heap. Other channels are read into the request in small pieces, so the value
+	 * is never held in an intermediate {@code byte[]}.
+	 *
+	 * @param bucket
+	 * 		the bucket to store the object in
+	 * @param key
+	 * 		the key to store the object under or {@literal null} to have Riak generate one
+	 * @param channel
+	 * 		the channel to read the value from, which is read to the end but not closed
+	 *
+	 * @return a {@link PutOperation} for the channel's contents, with a content type of {@code
+	 * application/octet-stream}
+	 *
+	 * @throws IOException
+	 * 		if the channel can't be read
+	 */
+	public PutOperation<ByteBuffer> put(String bucket, String key, ReadableByteChannel channel) throws IOException {
+		Assert.notNull(channel, "Channel cannot be null.");
+
+		ByteBuffer value;
+		if(channel instanceof FileChannel) {
+			FileChannel fc = (FileChannel)channel;
+			long position = fc.position();
+			value = fc.map(FileChannel.MapMode.READ_ONLY, position, fc.size() - position);
+			fc.position(fc.size());
+		} else {
+			ByteString.Output out = ByteString.newOutput();
+			ByteBuffer buffer = ByteBuffer.allocate(CHANNEL_BUFFER_SIZE);
+			while(channel.read(buffer) >= 0) {
+				out.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			out.write(buffer.array(), 0, buffer.position());
+			value = out.toByteString().asReadOnlyByteBuffer();
+		}
+		return this.<ByteBuffer>put(bucket, key, value).contentType("application/octet-stream");
+	}
+
 	public <T> GetOperation<T> get(final String bucket,
 	                               final String key,
 	                               final Class<T> asType) {
 		Assert.notNull(bucket, "Bucket cannot be null.");
 		Assert.notNull(key, "Key cannot be null.");
 
-		final Deferred<RiakKvPB.RpbGetResp, Promise<RiakKvPB.RpbGetResp>> d = promise();
-		final RiakKvPB.RpbGetReq.Builder b = RiakKvPB.RpbGetReq.newBuilder()
-		                                             .setTimeout(timeout)
-		                                             .setBucket(ByteString.copyFromUtf8(bucket))
-		                                             .setKey(ByteString.copyFromUtf8(key));
-
-		return new GetOperation<T>() {
+		GetOperation<T> op = new GetOperation<T>() {
 			@Override
 			public Promise<Entry<T>> commit() {
+				final NegativeCache nc = negativeCaches.get(bucket);
+				if(null != nc && nc.isMissing(key)) {
+					Deferred<Entry<T>, Promise<Entry<T>>> missing = promise();
+					missing.accept((Entry<T>)null);
+					return missing.compose();
+				}
+				final long stamp = (null != nc ? nc.stamp() : 0);
+
+				Trace trace = tracer.start(EventType.GetReq, traceContext());
+				final Deferred<RiakKvPB.RpbGetResp, Promise<RiakKvPB.RpbGetResp>> d = conversion();
+				RiakKvPB.RpbGetReq.Builder b = BUILDERS.get().getReq.clear()
+				                                                    .setTimeout(timeout)
+				                                                    .setBucket(names.get(bucket))
+				                                                    .setKey(ByteString.copyFromUtf8(key));
+
 				QuorumSpec q = quorum();
 				if(null != q) {
 					if(q.hasR()) {
@@ -400,24 +756,297 @@ public class Riaktor implements Closeable {
 					}
 					b.setBasicQuorum(q.basic());
 				}
+				if(head()) {
+					b.setHead(true);
+				}
+				final ByteString ifModified = (null != ifModified() ? ByteString.copyFrom(ifModified()) : null);
+				if(null != ifModified) {
+					b.setIfModified(ifModified);
+				}
+				final boolean head = head();
+				final String etag = ifNoneMatch();
 
-				request(d, new RiakEvent<>(b.build(), EventType.GetReq));
-
-				return d.compose().map(new Function<RiakKvPB.RpbGetResp, Entry<T>>() {
+				Promise<Entry<T>> p = d.compose().map(new Function<RiakKvPB.RpbGetResp, Entry<T>>() {
 					@Override
 					public Entry<T> apply(RiakKvPB.RpbGetResp rpbGetResp) {
+						if(rpbGetResp.getUnchanged()) {
+							return new Entry<>(bucket, key, Headers.from(ifModified, null), null, true);
+						}
+
+						ByteString vclock = rpbGetResp.getVclock();
+						if(rpbGetResp.getContentCount() == 0) {
+							if(null != nc) {
+								nc.missing(key, stamp);
+							}
+							return null;
+						}
+						RiakKvPB.RpbContent content = rpbGetResp.getContent(0);
+						if(null != etag
+								&& rpbGetResp.getContentCount() == 1
+								&& etag.equals(content.getVtag().toStringUtf8())) {
+							return new Entry<>(bucket, key, Headers.from(vclock, content), null, true);
+						}
+						if(head) {
+							return new Entry<>(bucket, key, Headers.from(vclock, content), null);
+						}
+
 						return new ResponseMapFunction<RiakKvPB.RpbGetResp, T>(
 								rpbGetResp.getContentList(),
 								asType,
 								conflictResolver(),
-								rpbGetResp.getVclock().toByteArray(),
+								vclock,
 								bucket,
 								key
 						).apply(rpbGetResp);
 					}
 				});
+
+				traced(p, trace);
+				execute(d, new RiakEvent<>(b.build(), EventType.GetReq).setTrace(trace), retry(), hedge());
+				return p;
 			}
 		};
+		return op.hedge(hedgePolicy);
+	}
+
+	/**
+	 * Change an object by reading it, applying a function to its value and writing the result back. The write carries
+	 * the vclock the object was read with and {@code if_not_modified}, or {@code if_none_match} if the object didn't
+	 * exist, so it fails if somebody else wrote the object in between. The object is then read again and the function
+	 * applied to the new value, for as long as {@link UpdateOperation#conflictRetry()} allows. If the write went through
+	 * but left siblings, the function isn't applied again: the siblings are resolved and the resolution written over
+	 * them with the vclock the write returned.
+	 *
+	 * @param bucket
+	 * 		the bucket the object is in
+	 * @param key
+	 * 		the key of the object
+	 * @param asType
+	 * 		the type to convert the value to
+	 * @param fn
+	 * 		computes the new value from the current one, which is {@literal null} if the object doesn't exist. It is
+	 * 		called again for each retry. If it returns {@literal null}, nothing is written.
+	 * @param <T>
+	 * 		the type of the value
+	 *
+	 * @return an {@link UpdateOperation} whose {@link Entry} is the object as written, or as it was read if nothing was
+	 * written
+	 */
+	public <T> UpdateOperation<T> update(final String bucket,
+	                                     final String key,
+	                                     final Class<T> asType,
+	                                     final Function<T, T> fn) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(key, "Key cannot be null.");
+		Assert.notNull(asType, "Type cannot be null.");
+		Assert.notNull(fn, "Function cannot be null.");
+
+		return new UpdateOperation<T>() {
+			@Override
+			public Promise<Entry<T>> commit() {
+				Deferred<Entry<T>, Promise<Entry<T>>> d = promise();
+				update(this, bucket, key, asType, fn, d, 1);
+				return d.compose();
+			}
+		};
+	}
+
+	private <T> void update(final UpdateOperation<T> op,
+	                        final String bucket,
+	                        final String key,
+	                        final Class<T> asType,
+	                        final Function<T, T> fn,
+	                        final Deferred<Entry<T>, Promise<Entry<T>>> d,
+	                        final int attempt) {
+		final Consumer<Throwable> conflict = new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				RetryPolicy retry = op.conflictRetry();
+				if(!retry.shouldRetry(attempt, t)) {
+					d.accept(t);
+					return;
+				}
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Retrying update of {}/{} after attempt {} conflicted: {}", bucket, key, attempt, t.getMessage());
+				}
+				scheduler.schedule(new Runnable() {
+					@Override
+					public void run() {
+						update(op, bucket, key, asType, fn, d, attempt + 1);
+					}
+				}, retry.backoff(attempt), TimeUnit.NANOSECONDS);
+			}
+		};
+
+		GetOperation<T> get = get(bucket, key, asType).conflictResolver(op.conflictResolver());
+		get.quorum(op.quorum());
+		get.retry(op.retry());
+		get.traceContext(op.traceContext());
+		Promise<Entry<T>> p = get.commit();
+		p.onSuccess(new Consumer<Entry<T>>() {
+			@Override
+			public void accept(final Entry<T> entry) {
+				T updated;
+				try {
+					updated = fn.apply(null != entry ? entry.getData() : null);
+				} catch(RuntimeException e) {
+					d.accept(e);
+					return;
+				}
+				if(null == updated) {
+					d.accept(entry);
+					return;
+				}
+
+				// the vclock is sent back as it came, without copying it out of the response
+				ByteString vclock = (null != entry && null != entry.getHeaders() ? entry.getHeaders().rawVclock() : null);
+				PutOperation<T> put = put(bucket, key, updated, (null != vclock ? vclock : ByteString.EMPTY));
+				put.quorum(op.quorum());
+				put.retry(op.retry());
+				put.traceContext(op.traceContext());
+				final Function<List<T>, T> resolver = resolver(op, updated);
+				put.conflictResolver(resolver);
+				Promise<Entry<T>> written = put.commit();
+				written.onSuccess(new Consumer<Entry<T>>() {
+					@Override
+					public void accept(Entry<T> entry) {
+						if(null == entry || entry.getSiblings().isEmpty()) {
+							d.accept(entry);
+						} else {
+							// the value has been written, so settle the siblings it left instead of calling fn again
+							resolve(op, entry, resolver, d);
+						}
+					}
+				});
+				written.onError(conflict);
+			}
+		});
+		p.onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				// reading again won't get rid of siblings there is no resolver for
+				if(t instanceof SiblingsException) {
+					d.accept(t);
+				} else {
+					conflict.accept(t);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Write the resolution of the siblings an update's write left over them, with the vclock that write returned. The
+	 * update completes with whatever comes back, siblings or not.
+	 */
+	private <T> void resolve(UpdateOperation<T> op,
+	                         Entry<T> entry,
+	                         Function<List<T>, T> resolver,
+	                         final Deferred<Entry<T>, Promise<Entry<T>>> d) {
+		// the vclock already scopes the write to the siblings it settles, so it is sent without a precondition
+		PutOperation<T> put = put(entry.getBucket(),
+		                          entry.getKey(),
+		                          entry.getData(),
+		                          entry.getHeaders().rawVclock(),
+		                          false);
+		put.conflictResolver(resolver);
+		put.quorum(op.quorum());
+		put.retry(op.retry());
+		put.traceContext(op.traceContext());
+		Promise<Entry<T>> p = put.commit();
+		p.onSuccess(new Consumer<Entry<T>>() {
+			@Override
+			public void accept(Entry<T> entry) {
+				d.accept(entry);
+			}
+		});
+		p.onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				d.accept(t);
+			}
+		});
+	}
+
+	/**
+	 * Get the resolver for siblings that come back from an update's write: the update's own, or one that picks the value
+	 * that was just written.
+	 */
+	private static <T> Function<List<T>, T> resolver(UpdateOperation<T> op, final T updated) {
+		if(null != op.conflictResolver()) {
+			return op.conflictResolver();
+		}
+		return new Function<List<T>, T>() {
+			@Override
+			public T apply(List<T> siblings) {
+				return updated;
+			}
+		};
+	}
+
+	/**
+	 * Fetch an object and write its value to a channel. The value is written straight from the response, without
+	 * converting it or copying it into a {@code byte[]}.
+	 *
+	 * @param bucket
+	 * 		the bucket the object is in
+	 * @param key
+	 * 		the key of the object
+	 * @param channel
+	 * 		the channel to write the value to, which is not closed
+	 *
+	 * @return a {@link GetOperation} whose {@link Entry} holds the number of bytes written
+	 */
+	public GetOperation<Long> getTo(final String bucket,
+	                                final String key,
+	                                final WritableByteChannel channel) {
+		Assert.notNull(channel, "Channel cannot be null.");
+		final GetOperation<ByteBuffer> get = get(bucket, key, ByteBuffer.class);
+
+		return new GetOperation<Long>() {
+			@Override
+			public Promise<Entry<Long>> commit() {
+				get.quorum(quorum());
+				get.retry(retry());
+				get.hedge(hedge());
+				get.ifNoneMatch(ifNoneMatch());
+				get.ifModified(ifModified());
+				get.traceContext(traceContext());
+				final Deferred<Entry<Long>, Promise<Entry<Long>>> d = promise();
+				// the get has already been sent by the time commit() returns, so chain with onSuccess() rather than map()
+				Promise<Entry<ByteBuffer>> p = get.commit();
+				p.onSuccess(new Consumer<Entry<ByteBuffer>>() {
+					@Override
+					public void accept(Entry<ByteBuffer> entry) {
+						if(null == entry) {
+							d.accept((Entry<Long>)null);
+							return;
+						}
+						if(entry.isUnchanged()) {
+							d.accept(new Entry<Long>(bucket, key, entry.getHeaders(), null, true));
+							return;
+						}
+						ByteBuffer value = entry.getData();
+						long written = 0;
+						try {
+							while(value.hasRemaining()) {
+								written += channel.write(value);
+							}
+						} catch(IOException e) {
+							d.accept(e);
+							return;
+						}
+						d.accept(new Entry<>(bucket, key, entry.getHeaders(), written));
+					}
+				});
+				p.onError(new Consumer<Throwable>() {
+					@Override
+					public void accept(Throwable t) {
+						d.accept(t);
+					}
+				});
+				return d.compose();
+			}
+		}.hedge(hedgePolicy);
 	}
 
 	public DeleteOperation delete(final String bucket,
@@ -425,15 +1054,18 @@ public class Riaktor implements Closeable {
 		Assert.notNull(bucket, "Bucket cannot be null.");
 		Assert.notNull(key, "Key cannot be null.");
 
-		final Deferred<Message, Promise<Message>> d = promise();
-		final RiakKvPB.RpbDelReq.Builder b = RiakKvPB.RpbDelReq.newBuilder()
-		                                             .setTimeout(timeout)
-		                                             .setBucket(ByteString.copyFromUtf8(bucket))
-		                                             .setKey(ByteString.copyFromUtf8(key));
-
 		return new DeleteOperation() {
 			@Override
 			public Promise<Void> commit() {
+				final NegativeCache nc = negativeCaches.get(bucket);
+				final long stamp = (null != nc ? nc.delete(key) : 0);
+				Trace trace = tracer.start(EventType.DelReq, traceContext());
+				Deferred<Message, Promise<Message>> d = promise();
+				RiakKvPB.RpbDelReq.Builder b = BUILDERS.get().delReq.clear()
+				                                                    .setTimeout(timeout)
+				                                                    .setBucket(names.get(bucket))
+				                                                    .setKey(ByteString.copyFromUtf8(key));
+
 				QuorumSpec q = quorum();
 				if(null != q) {
 					if(q.hasW()) {
@@ -459,89 +1091,1014 @@ public class Riaktor implements Closeable {
 					}
 				}
 
-				request(d, new RiakEvent<>(b.build(), EventType.DelReq));
-
-				return d.compose().map(new Function<Message, Void>() {
+				// remember the key as missing before the caller hears about the delete, so a get right after it is answered
+				// from the cache
+				Promise<Void> p = d.compose().map(null == nc ? DELETED : new Function<Message, Void>() {
 					@Override
 					public Void apply(Message msg) {
+						nc.missing(key, stamp);
 						return null;
 					}
 				});
+
+				traced(p, trace);
+				execute(d, new RiakEvent<>(b.build(), EventType.DelReq).setTrace(trace), retry(), null);
+				return p;
 			}
 		};
 	}
 
-	public ListKeysOperation listKeys(final String bucket) {
+	/**
+	 * Add the given amount to a counter.
+	 *
+	 * @param bucket
+	 * 		the bucket the counter is in, which must have {@code allow_mult} set
+	 * @param key
+	 * 		the key of the counter
+	 * @param amount
+	 * 		the amount to add, which may be negative
+	 *
+	 * @return a {@link CounterOperation} for the increment
+	 */
+	public CounterOperation increment(final String bucket,
+	                                  final String key,
+	                                  final long amount) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(key, "Key cannot be null.");
+
+		return new CounterOperation() {
+			@Override
+			public Promise<Long> commit() {
+				Trace trace = tracer.start(EventType.CounterUpdateReq, traceContext());
+				Deferred<RiakKvPB.RpbCounterUpdateResp, Promise<RiakKvPB.RpbCounterUpdateResp>> d = promise();
+				RiakKvPB.RpbCounterUpdateReq.Builder b = BUILDERS.get().counterUpdateReq.clear()
+				                                                                        .setBucket(names.get(bucket))
+				                                                                        .setKey(ByteString.copyFromUtf8(key))
+				                                                                        .setAmount(amount);
+
+				QuorumSpec q = quorum();
+				if(null != q) {
+					if(q.hasW()) {
+						b.setW(q.w());
+					}
+					if(q.hasDw()) {
+						b.setDw(q.dw());
+					}
+					if(q.hasPw()) {
+						b.setPw(q.pw());
+					}
+				}
+				b.setReturnvalue(returnValue());
+
+				Promise<Long> p = d.compose().map(COUNTER_UPDATED);
+
+				traced(p, trace);
+				execute(d, new RiakEvent<>(b.build(), EventType.CounterUpdateReq).setTrace(trace), retry(), null);
+				return p;
+			}
+		};
+	}
+
+	/**
+	 * Fetch the value of a counter. A counter that doesn't exist has a value of {@literal 0}.
+	 *
+	 * @param bucket
+	 * 		the bucket the counter is in
+	 * @param key
+	 * 		the key of the counter
+	 *
+	 * @return a {@link CounterOperation} for the fetch
+	 */
+	public CounterOperation counter(final String bucket,
+	                                final String key) {
 		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(key, "Key cannot be null.");
 
-		final Deferred<RiakKvPB.RpbListKeysResp, Promise<RiakKvPB.RpbListKeysResp>> d = promise();
-		final RiakKvPB.RpbListKeysReq.Builder b = RiakKvPB.RpbListKeysReq.newBuilder()
-		                                                  .setTimeout(timeout)
-		                                                  .setBucket(ByteString.copyFromUtf8(bucket));
+		return new CounterOperation() {
+			@Override
+			public Promise<Long> commit() {
+				Trace trace = tracer.start(EventType.CounterGetReq, traceContext());
+				Deferred<RiakKvPB.RpbCounterGetResp, Promise<RiakKvPB.RpbCounterGetResp>> d = promise();
+				RiakKvPB.RpbCounterGetReq.Builder b = BUILDERS.get().counterGetReq.clear()
+				                                                                  .setBucket(names.get(bucket))
+				                                                                  .setKey(ByteString.copyFromUtf8(key));
+
+				QuorumSpec q = quorum();
+				if(null != q) {
+					if(q.hasR()) {
+						b.setR(q.r());
+					}
+					if(q.hasPr()) {
+						b.setPr(q.pr());
+					}
+					b.setBasicQuorum(q.basic());
+				}
+
+				Promise<Long> p = d.compose().map(COUNTER_VALUE);
+
+				traced(p, trace);
+				execute(d, new RiakEvent<>(b.build(), EventType.CounterGetReq).setTrace(trace), retry(), null);
+				return p;
+			}
+		};
+	}
+
+	public ListKeysOperation listKeys(final String bucket) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
 
 		return new ListKeysOperation() {
 			@Override
 			public Promise<List<String>> commit() {
-				request(d, new RiakEvent<>(b.build(), EventType.ListKeysReq));
+				return collect(publish());
+			}
+
+			@Override
+			public Publisher<String> publish() {
+				return new FramePublisher<String>() {
+					@Override
+					protected void send(Deferred<Message, Promise<Message>> frames) {
+						RiakKvPB.RpbListKeysReq.Builder b = BUILDERS.get().listKeysReq.clear()
+						                                                              .setTimeout(timeout)
+						                                                              .setBucket(names.get(bucket));
+						request(frames, new RiakEvent<>(b.build(), EventType.ListKeysReq));
+					}
+
+					@Override
+					protected void decode(Message frame, Queue<String> items) {
+						for(ByteString key : ((RiakKvPB.RpbListKeysResp)frame).getKeysList()) {
+							items.add(key.toStringUtf8());
+						}
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Get the {@link NegativeCache} kept for a bucket.
+	 *
+	 * @param bucket
+	 * 		the bucket
+	 *
+	 * @return the bucket's negative cache or {@literal null} if none is kept for it
+	 */
+	public NegativeCache negativeCache(String bucket) {
+		return negativeCaches.get(bucket);
+	}
 
-				return d.compose().map(new Function<RiakKvPB.RpbListKeysResp, List<String>>() {
+	/**
+	 * Load the keys of a bucket into its {@link NegativeCache}, so gets for keys that don't exist are answered without
+	 * asking Riak. Listing keys is expensive, so this is only done when asked for.
+	 *
+	 * @param bucket
+	 * 		the bucket, which must have a negative cache
+	 *
+	 * @return a {@link Promise} of the number of keys loaded
+	 */
+	public Promise<Long> loadKeys(String bucket) {
+		return loadKeys(bucket, listKeys(bucket).publish());
+	}
+
+	/**
+	 * Load the keys of a bucket into its {@link NegativeCache} from a {@link Publisher} of every key in the bucket, like
+	 * one reading them from a snapshot.
+	 *
+	 * @param bucket
+	 * 		the bucket, which must have a negative cache
+	 * @param keys
+	 * 		the keys in the bucket
+	 *
+	 * @return a {@link Promise} of the number of keys loaded
+	 */
+	public Promise<Long> loadKeys(String bucket, Publisher<String> keys) {
+		final NegativeCache nc = negativeCaches.get(bucket);
+		Assert.notNull(nc, "No negative cache is kept for bucket " + bucket + ".");
+		Assert.notNull(keys, "Keys cannot be null.");
+
+		final ScalableBloomFilter filter = nc.loading();
+		final Deferred<Long, Promise<Long>> d = promise();
+		keys.subscribe(new Subscriber<String>() {
+			private long count;
+
+			@Override
+			public void onSubscribe(Subscription subscription) {
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(String key) {
+				filter.add(key);
+				count++;
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				d.accept(t);
+			}
+
+			@Override
+			public void onComplete() {
+				nc.loaded(filter);
+				d.accept(count);
+			}
+		});
+		return d.compose();
+	}
+
+	/**
+	 * Find the keys of the objects in a bucket whose entry in a secondary index equals the given value.
+	 *
+	 * @param bucket
+	 * 		the bucket to query
+	 * @param index
+	 * 		the name of the index, e.g. {@code email_bin}
+	 * @param value
+	 * 		the value to match
+	 *
+	 * @return an {@link IndexOperation} for the query
+	 */
+	public IndexOperation index(String bucket, String index, String value) {
+		Assert.notNull(value, "Value cannot be null.");
+		return index(bucket, index, value, null, null);
+	}
+
+	/**
+	 * Find the keys of the objects in a bucket whose entry in a secondary index is between the given values, inclusive.
+	 *
+	 * @param bucket
+	 * 		the bucket to query
+	 * @param index
+	 * 		the name of the index, e.g. {@code age_int}
+	 * @param min
+	 * 		the lowest value to match
+	 * @param max
+	 * 		the highest value to match
+	 *
+	 * @return an {@link IndexOperation} for the query
+	 */
+	public IndexOperation index(String bucket, String index, String min, String max) {
+		Assert.notNull(min, "Min cannot be null.");
+		Assert.notNull(max, "Max cannot be null.");
+		return index(bucket, index, null, min, max);
+	}
+
+	/**
+	 * Run a MapReduce job.
+	 *
+	 * @param job
+	 * 		the job, as JSON
+	 * @param asType
+	 * 		the type to convert each response to
+	 * @param <T>
+	 * 		the type of the responses
+	 *
+	 * @return a {@link MapReduceOperation} for the job
+	 */
+	public <T> MapReduceOperation<T> mapReduce(final String job, final Class<T> asType) {
+		Assert.notNull(job, "Job cannot be null.");
+		Assert.notNull(asType, "Type cannot be null.");
+
+		return new MapReduceOperation<T>() {
+			@Override
+			public Promise<List<T>> commit() {
+				return collect(publish());
+			}
+
+			@Override
+			public Publisher<T> publish() {
+				return new FramePublisher<T>() {
+					@Override
+					protected void send(Deferred<Message, Promise<Message>> frames) {
+						RiakKvPB.RpbMapRedReq.Builder b = BUILDERS.get().mapRedReq.clear()
+						                                                          .setRequest(ByteString.copyFromUtf8(job))
+						                                                          .setContentType(JSON);
+						request(frames, new RiakEvent<>(b.build(), EventType.MapRedReq));
+					}
+
+					@SuppressWarnings("unchecked")
 					@Override
-					public List<String> apply(RiakKvPB.RpbListKeysResp rpbListKeysResp) {
-						List<String> l = new ArrayList<>();
-						for(ByteString byteString : rpbListKeysResp.getKeysList()) {
-							l.add(byteString.toStringUtf8());
+					protected void decode(Message frame, Queue<T> items) {
+						RiakKvPB.RpbMapRedResp resp = (RiakKvPB.RpbMapRedResp)frame;
+						if(!resp.hasResponse()) {
+							return;
 						}
-						return l;
+						ByteString response = resp.getResponse();
+						if(asType == ByteString.class) {
+							items.add((T)response);
+						} else if(ByteBuffer.class.isAssignableFrom(asType)) {
+							items.add((T)response.asReadOnlyByteBuffer());
+						} else if(asType == byte[].class) {
+							items.add((T)response.toByteArray());
+						} else {
+							items.add(converterFor(JSON).convert(response.toByteArray(), asType));
+						}
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Get several objects from a bucket. A get is sent for each key as the subscriber asks for results, with at most as
+	 * many outstanding as there are connections.
+	 *
+	 * @param bucket
+	 * 		the bucket the objects are in
+	 * @param keys
+	 * 		the keys of the objects
+	 * @param asType
+	 * 		the type to convert the values to
+	 * @param <T>
+	 * 		the type of the values
+	 *
+	 * @return a {@link Publisher} of an {@link Entry} for each key, in the order of the keys
+	 */
+	public <T> Publisher<Entry<T>> getAll(String bucket, Collection<String> keys, Class<T> asType) {
+		return getAll(bucket, keys, asType, Math.max(1, nodes.size() * connectionsPerNode));
+	}
+
+	/**
+	 * Get several objects from a bucket. A get is sent for each key as the subscriber asks for results. Objects that
+	 * don't exist are published as an {@link Entry} with no headers or data, since a {@link Publisher} can't publish
+	 * {@literal null}.
+	 *
+	 * @param bucket
+	 * 		the bucket the objects are in
+	 * @param keys
+	 * 		the keys of the objects
+	 * @param asType
+	 * 		the type to convert the values to
+	 * @param parallelism
+	 * 		the maximum number of gets outstanding at a time
+	 * @param <T>
+	 * 		the type of the values
+	 *
+	 * @return a {@link Publisher} of an {@link Entry} for each key, in the order of the keys
+	 */
+	public <T> Publisher<Entry<T>> getAll(final String bucket,
+	                                      Collection<String> keys,
+	                                      final Class<T> asType,
+	                                      int parallelism) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(keys, "Keys cannot be null.");
+
+		final List<String> keyList = new ArrayList<>(keys);
+		return new RequestPublisher<Entry<T>>(keyList.size(), parallelism) {
+			@Override
+			protected Promise<Entry<T>> request(int index) {
+				final String key = keyList.get(index);
+				final Deferred<Entry<T>, Promise<Entry<T>>> d = promise();
+				Promise<Entry<T>> p = get(bucket, key, asType).commit();
+				p.onSuccess(new Consumer<Entry<T>>() {
+					@Override
+					public void accept(Entry<T> entry) {
+						d.accept(null != entry ? entry : new Entry<T>(bucket, key, null, null));
+					}
+				});
+				p.onError(new Consumer<Throwable>() {
+					@Override
+					public void accept(Throwable t) {
+						d.accept(t);
 					}
 				});
+				return d.compose();
+			}
+		};
+	}
+
+	/**
+	 * Walk the links from an object. At each level, every object linked from the level before it is fetched at once as
+	 * a pipelined multi-get, so each level costs about one round trip however many objects it has. Objects are
+	 * published level by level, each only once however many links lead to it, and objects that don't exist are skipped.
+	 *
+	 * @param from
+	 * 		the entry to start from
+	 * @param tag
+	 * 		the tag of the links to follow, or {@literal null} to follow every link
+	 * @param depth
+	 * 		the number of levels to follow links for
+	 * @param asType
+	 * 		the type to convert the values to
+	 * @param <T>
+	 * 		the type of the values
+	 *
+	 * @return a {@link LinkWalkOperation} for the walk
+	 */
+	public <T> LinkWalkOperation<T> walk(final Entry<?> from,
+	                                     final String tag,
+	                                     final int depth,
+	                                     final Class<T> asType) {
+		Assert.notNull(from, "Entry cannot be null.");
+		Assert.isTrue(depth > 0, "Depth must be greater than 0.");
+		Assert.notNull(asType, "Type cannot be null.");
+
+		return new LinkWalkOperation<T>() {
+			@Override
+			public Promise<List<Entry<T>>> commit() {
+				return collect(publish());
+			}
+
+			@Override
+			public Publisher<Entry<T>> publish() {
+				final boolean mapReduce = mapReduce();
+				int parallelism = (parallelism() > 0 ? parallelism() : Math.max(1, nodes.size() * connectionsPerNode));
+				return new LinkWalkPublisher<T>(from, tag, depth, fanOut(), parallelism) {
+					@Override
+					protected Promise<Entry<T>> fetch(Link link) {
+						return get(link.getBucket(), link.getKey(), asType).commit();
+					}
+
+					@Override
+					protected Promise<List<List<Link>>> follow() {
+						return (mapReduce ? followLinks(from, tag, depth) : null);
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Find the links of each level of a walk with a MapReduce job of one link phase per level, each of which keeps its
+	 * results.
+	 */
+	private Promise<List<List<Link>>> followLinks(Entry<?> from, String tag, final int depth) {
+		List<Map<String, Object>> query = new ArrayList<>();
+		for(int i = 0; i < depth; i++) {
+			Map<String, Object> phase = new LinkedHashMap<>();
+			phase.put("bucket", "_");
+			phase.put("tag", (null != tag ? tag : "_"));
+			phase.put("keep", true);
+			query.add(Collections.<String, Object>singletonMap("link", phase));
+		}
+		Map<String, Object> job = new LinkedHashMap<>();
+		job.put("inputs", Collections.singletonList(Arrays.asList(from.getBucket(), from.getKey())));
+		job.put("query", query);
+		final ByteString request = ByteString.copyFrom(converterFor(JSON).convert(job, byte[].class));
+
+		final Deferred<List<List<Link>>, Promise<List<List<Link>>>> d = promise();
+		collect(new FramePublisher<Tuple2<Integer, List<List<String>>>>() {
+			@Override
+			protected void send(Deferred<Message, Promise<Message>> frames) {
+				RiakKvPB.RpbMapRedReq.Builder b = BUILDERS.get().mapRedReq.clear()
+				                                                          .setRequest(request)
+				                                                          .setContentType(JSON);
+				request(frames, new RiakEvent<>(b.build(), EventType.MapRedReq));
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			protected void decode(Message frame, Queue<Tuple2<Integer, List<List<String>>>> items) {
+				RiakKvPB.RpbMapRedResp resp = (RiakKvPB.RpbMapRedResp)frame;
+				if(resp.hasResponse()) {
+					items.add(Tuple.of(resp.getPhase(),
+					                   (List<List<String>>)converterFor(JSON).convert(resp.getResponse().toByteArray(),
+					                                                                  List.class)));
+				}
+			}
+		}).onSuccess(new Consumer<List<Tuple2<Integer, List<List<String>>>>>() {
+			@Override
+			public void accept(List<Tuple2<Integer, List<List<String>>>> responses) {
+				// a phase's results may come back in several responses, from any number of nodes
+				List<List<Link>> levels = new ArrayList<>();
+				for(int i = 0; i < depth; i++) {
+					levels.add(new ArrayList<Link>());
+				}
+				for(Tuple2<Integer, List<List<String>>> response : responses) {
+					if(response.getT1() < 0 || response.getT1() >= depth) {
+						continue;
+					}
+					List<Link> level = levels.get(response.getT1());
+					for(List<String> link : response.getT2()) {
+						level.add(new Link(link.get(0), link.get(1), (link.size() > 2 ? link.get(2) : null)));
+					}
+				}
+				d.accept(levels);
+			}
+		}).onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				d.accept(t);
+			}
+		});
+		return d.compose();
+	}
+
+	private IndexOperation index(final String bucket,
+	                             final String index,
+	                             final String value,
+	                             final String min,
+	                             final String max) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(index, "Index cannot be null.");
+
+		return new IndexOperation() {
+			@Override
+			public Promise<List<String>> commit() {
+				return collect(publish());
+			}
+
+			@Override
+			public Publisher<String> publish() {
+				return new FramePublisher<String>() {
+					@Override
+					protected void send(Deferred<Message, Promise<Message>> frames) {
+						// always streamed, since the last frame is only marked done when the results are streamed
+						RiakKvPB.RpbIndexReq.Builder b = BUILDERS.get().indexReq.clear()
+						                                                        .setBucket(names.get(bucket))
+						                                                        .setIndex(names.get(index))
+						                                                        .setStream(true);
+						if(null != value) {
+							b.setQtype(RiakKvPB.RpbIndexReq.IndexQueryType.eq)
+							 .setKey(ByteString.copyFromUtf8(value));
+						} else {
+							b.setQtype(RiakKvPB.RpbIndexReq.IndexQueryType.range)
+							 .setRangeMin(ByteString.copyFromUtf8(min))
+							 .setRangeMax(ByteString.copyFromUtf8(max));
+						}
+						if(maxResults() > 0) {
+							b.setMaxResults(maxResults());
+						}
+						request(frames, new RiakEvent<>(b.build(), EventType.IndexReq));
+					}
+
+					@Override
+					protected void decode(Message frame, Queue<String> items) {
+						for(ByteString key : ((RiakKvPB.RpbIndexResp)frame).getKeysList()) {
+							items.add(key.toStringUtf8());
+						}
+					}
+				};
 			}
 		};
 	}
 
 	@Override
 	public void close() throws IOException {
-		if(null != client) {
-			client.close();
+		scheduler.shutdownNow();
+		for(Node node : nodes) {
+			node.close();
+		}
+		if(null != journal) {
+			journal.close();
 		}
 	}
 
+	private TcpClient<RiakEvent<Message>, RiakEvent<Message>> createClient(InetSocketAddress addr) {
+		return new TcpClientSpec<RiakEvent<Message>, RiakEvent<Message>>(NettyTcpClient.class)
+				.env(env)
+				.dispatcher(dispatcher)
+				.codec(new LengthPrefixedCodec<>(new RpbCodec()))
+				.options(transport.socketOptions(timeout))
+				.connect(addr)
+				.get();
+	}
+
 	private <T> Deferred<T, Promise<T>> promise() {
 		return Promises.<T>defer().env(env).synchronousDispatcher().get();
 	}
 
-	private <T> Deferred<T, Stream<T>> stream() {
-		return Streams.<T>defer().env(env).synchronousDispatcher().get();
+	/**
+	 * Create the {@link Deferred} a response is converted from. If there is a conversion {@link Dispatcher}, the
+	 * response is converted on it rather than on the thread that delivers responses, so a large value doesn't hold up
+	 * the responses behind it.
+	 */
+	private <T> Deferred<T, Promise<T>> conversion() {
+		if(null == conversionDispatcher) {
+			return promise();
+		}
+		return Promises.<T>defer().env(env).dispatcher(conversionDispatcher).get();
+	}
+
+	/**
+	 * Finish the {@link Trace} of a request once its result is available, which is after the response has been
+	 * converted, or once it fails.
+	 */
+	private <T> void traced(Promise<T> p, final Trace trace) {
+		if(null == trace) {
+			return;
+		}
+		p.onSuccess(new Consumer<T>() {
+			@Override
+			public void accept(T result) {
+				trace.mark(Phase.CONVERT);
+				tracer.complete(trace, null);
+			}
+		}).onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				tracer.complete(trace, t);
+			}
+		});
+	}
+
+	/**
+	 * Subscribe to a {@link Publisher} with unbounded demand and collect every item it publishes.
+	 */
+	private <T> Promise<List<T>> collect(Publisher<T> publisher) {
+		final Deferred<List<T>, Promise<List<T>>> d = promise();
+		publisher.subscribe(new Subscriber<T>() {
+			private final List<T> items = new ArrayList<>();
+
+			@Override
+			public void onSubscribe(Subscription subscription) {
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(T item) {
+				items.add(item);
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				d.accept(t);
+			}
+
+			@Override
+			public void onComplete() {
+				d.accept(items);
+			}
+		});
+		return d.compose();
 	}
 
 	private void request(Deferred d, RiakEvent ev) {
-		if(null != d) {
-			responseQueue.add(d);
+		request(d, ev, null);
+	}
+
+	/**
+	 * Send a request to the next connected node other than {@code exclude}, or queue it until a node is connected.
+	 * Writes are queued in the {@link RequestJournal}, if there is one, and go through it for as long as it holds
+	 * requests that haven't been replayed so they stay in order.
+	 *
+	 * @return the {@link Node} the request was sent to or {@literal null} if it was queued
+	 */
+	private Node request(Deferred d, RiakEvent ev, Node exclude) {
+		boolean journaling = (null != journal && RequestJournal.isJournaled(ev.getType()));
+		Node node;
+		if(!journaling || journal.isEmpty()) {
+			if(null != (node = send(d, ev, exclude))) {
+				return node;
+			}
+			if(LOG.isWarnEnabled()) {
+				LOG.warn("Connection not established. Queueing request.");
+			}
+		}
+
+		if(journaling) {
+			try {
+				long seq = journal.append((RiakEvent<Message>)ev);
+				if(null != d) {
+					journaled.put(seq, d);
+				}
+				drainRequestQueue();
+				return null;
+			} catch(IOException e) {
+				if(LOG.isErrorEnabled()) {
+					LOG.error("Could not journal request, queueing it in memory instead.", e);
+				}
+			}
+		}
+		requestQueue.add(Tuple.of(d, ev));
+		return null;
+	}
+
+	/**
+	 * Send a request to the next connected node other than {@code exclude}.
+	 *
+	 * @return the {@link Node} the request was sent to or {@literal null} if no node is available
+	 */
+	private Node send(Deferred d, RiakEvent ev, Node exclude) {
+		Node node;
+		while(null != (node = selectNode(ev, exclude))) {
+			if(node.send(d, ev)) {
+				return node;
+			}
+		}
+		if(null != exclude && exclude.isAvailable() && exclude.send(d, ev)) {
+			// the node to avoid is the only one left
+			return exclude;
+		}
+		return null;
+	}
+
+	/**
+	 * Pick the node to send a request to. If the ring is known, a get, put or delete goes to a node holding one of the
+	 * object's primary replicas. Otherwise, or if none of those nodes are available, this round-robins over the
+	 * available nodes. When a node to skip is given, the round-robin search starts at the node after it so that picking
+	 * an alternate doesn't disturb the round-robin order.
+	 *
+	 * @param ev
+	 * 		the request to send
+	 * @param exclude
+	 * 		a node to skip or {@literal null}
+	 *
+	 * @return the next available node or {@literal null} if none are available
+	 */
+	private Node selectNode(RiakEvent ev, Node exclude) {
+		Node[] replicas = replicasFor(ev);
+		if(null != replicas) {
+			int len = replicas.length;
+			int start = ThreadLocalRandom.current().nextInt(len);
+			for(int i = 0; i < len; i++) {
+				Node node = replicas[(start + i) % len];
+				if(node != exclude && node.isAvailable()) {
+					return node;
+				}
+			}
+		}
+
+		int len = nodes.size();
+		int start = (null == exclude
+		             ? nextNode.getAndIncrement() & Integer.MAX_VALUE
+		             : nodes.indexOf(exclude) + 1);
+		for(int i = 0; i < len; i++) {
+			Node node = nodes.get((start + i) % len);
+			if(node != exclude && node.isAvailable()) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	private Node[] replicasFor(RiakEvent ev) {
+		Routes routes = this.routes;
+		if(null == routes || null == ev) {
+			return null;
+		}
+
+		Object msg = ev.getData();
+		ByteString bucket;
+		ByteString key;
+		if(msg instanceof RiakKvPB.RpbGetReq) {
+			bucket = ((RiakKvPB.RpbGetReq)msg).getBucket();
+			key = ((RiakKvPB.RpbGetReq)msg).getKey();
+		} else if(msg instanceof RiakKvPB.RpbPutReq && ((RiakKvPB.RpbPutReq)msg).hasKey()) {
+			bucket = ((RiakKvPB.RpbPutReq)msg).getBucket();
+			key = ((RiakKvPB.RpbPutReq)msg).getKey();
+		} else if(msg instanceof RiakKvPB.RpbDelReq) {
+			bucket = ((RiakKvPB.RpbDelReq)msg).getBucket();
+			key = ((RiakKvPB.RpbDelReq)msg).getKey();
+		} else {
+			return null;
+		}
+		return routes.replicas[routes.ring.partition(Ring.hash(bucket, key))];
+	}
+
+	/**
+	 * Get the latest ring from the {@link RingProvider} and work out which of our nodes hold the primary replicas for
+	 * each partition.
+	 */
+	private void refreshRing() {
+		Ring ring;
+		try {
+			ring = ringProvider.ring();
+		} catch(RuntimeException e) {
+			if(LOG.isWarnEnabled()) {
+				LOG.warn("Could not get ring: " + e.getMessage(), e);
+			}
+			return;
 		}
+		Routes current = routes;
+		if(null == ring || (null != current && current.ring == ring)) {
+			return;
+		}
+
+		int size = ring.size();
+		List<InetSocketAddress> owners = ring.owners();
+		Node[][] replicas = new Node[size][];
+		for(int partition = 0; partition < size; partition++) {
+			List<Node> preflist = new ArrayList<>(nVal);
+			for(int i = 0; i < Math.min(nVal, size); i++) {
+				InetSocketAddress owner = owners.get((partition + i) % size);
+				for(Node node : nodes) {
+					if(node.getAddress().equals(owner) && !preflist.contains(node)) {
+						preflist.add(node);
+					}
+				}
+			}
+			replicas[partition] = (preflist.isEmpty() ? null : preflist.toArray(new Node[preflist.size()]));
+		}
+		routes = new Routes(ring, replicas);
+
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("Routing requests by {}", ring);
+		}
+	}
 
-		synchronized(client) {
-			if(null != connection) {
-				connection.send(ev);
+
+	/**
+	 * Send a request, applying the {@link RetryPolicy} and {@link HedgePolicy} if they are set.
+	 *
+	 * @param d
+	 * 		the {@link Deferred} to notify of the final response
+	 * @param ev
+	 * 		the request to send
+	 * @param retry
+	 * 		the {@link RetryPolicy} to use or {@literal null} to use the default for this type of request
+	 * @param hedge
+	 * 		the {@link HedgePolicy} to use or {@literal null} to not hedge
+	 */
+	private void execute(Deferred d, RiakEvent ev, RetryPolicy retry, HedgePolicy hedge) {
+		Trace trace = ev.getTrace();
+		if(null != trace) {
+			trace.mark(Phase.ENCODE);
+		}
+		if(null == retry) {
+			retry = retryPolicies.get(ev.getType());
+		}
+		if(null == retry || retry.maxAttempts() < 2) {
+			if(null != hedge) {
+				hedgedRequest(d, ev, hedge, null);
 			} else {
-				if(LOG.isWarnEnabled()) {
-					LOG.warn("Connection not established. Queueing request.");
+				request(d, ev);
+			}
+			return;
+		}
+
+		retryBudget.deposit();
+		attempt(d, ev, retry, hedge, 1, null);
+	}
+
+	private void attempt(final Deferred d,
+	                     final RiakEvent ev,
+	                     final RetryPolicy retry,
+	                     final HedgePolicy hedge,
+	                     final int attempt,
+	                     Node exclude) {
+		final Deferred<Message, Promise<Message>> a = promise();
+		final Node node = (null != hedge ? hedgedRequest(a, ev, hedge, exclude) : request(a, ev, exclude));
+
+		a.compose().onSuccess(new Consumer<Message>() {
+			@Override
+			public void accept(Message msg) {
+				d.accept(msg);
+			}
+		}).onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				if(!retry.shouldRetry(attempt, t) || !retryBudget.tryAcquire()) {
+					d.accept(t);
+					return;
+				}
+
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("Retrying {} after attempt {} failed: {}", ev.getType(), attempt, t.getMessage());
 				}
-				requestQueue.add(ev);
+				scheduler.schedule(new Runnable() {
+					@Override
+					public void run() {
+						attempt(d, ev, retry, hedge, attempt + 1, node);
+					}
+				}, retry.backoff(attempt), TimeUnit.NANOSECONDS);
 			}
+		});
+	}
+
+	/**
+	 * Send a get and, if it hasn't completed by the time the {@link HedgePolicy} allows, send the same request to a
+	 * second node. The first response wins and the other is discarded.
+	 *
+	 * @return the {@link Node} the request was first sent to or {@literal null} if it was queued
+	 */
+	private Node hedgedRequest(final Deferred d, final RiakEvent ev, final HedgePolicy hedge, Node exclude) {
+		hedge.budget().deposit();
+
+		final long start = System.nanoTime();
+		final AtomicBoolean complete = new AtomicBoolean();
+		final AtomicInteger outstanding = new AtomicInteger(1);
+		final AtomicReference<ScheduledFuture<?>> pendingHedge = new AtomicReference<>();
+
+		final Consumer<Message> onSuccess = new Consumer<Message>() {
+			@Override
+			public void accept(Message msg) {
+				if(complete.compareAndSet(false, true)) {
+					// the response of whichever request loses is still read off its connection, but goes nowhere
+					ScheduledFuture<?> f = pendingHedge.getAndSet(null);
+					if(null != f) {
+						f.cancel(false);
+					}
+					hedge.latencies().record(System.nanoTime() - start);
+					d.accept(msg);
+				}
+			}
+		};
+		final Consumer<Throwable> onError = new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				if(outstanding.decrementAndGet() == 0 && complete.compareAndSet(false, true)) {
+					d.accept(t);
+				}
+			}
+		};
+
+		Deferred<Message, Promise<Message>> primary = promise();
+		primary.compose().onSuccess(onSuccess).onError(onError);
+		final Node primaryNode = request(primary, ev, exclude);
+
+		long delay = hedge.delay();
+		if(null == primaryNode || delay < 0 || nodes.size() < 2) {
+			return primaryNode;
+		}
+
+		ScheduledFuture<?> f = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				pendingHedge.set(null);
+				if(complete.get()) {
+					return;
+				}
+				Node node = selectNode(ev, primaryNode);
+				if(null == node || !hedge.budget().tryAcquire()) {
+					return;
+				}
+
+				outstanding.incrementAndGet();
+				Deferred<Message, Promise<Message>> secondary = promise();
+				secondary.compose().onSuccess(onSuccess).onError(onError);
+				if(!node.send(secondary, ev)) {
+					outstanding.decrementAndGet();
+				} else if(LOG.isTraceEnabled()) {
+					LOG.trace("Hedged request to {}", node.getAddress());
+				}
+			}
+		}, delay, TimeUnit.NANOSECONDS);
+		pendingHedge.set(f);
+		if(complete.get() && pendingHedge.compareAndSet(f, null)) {
+			// answered while the hedge was being scheduled
+			f.cancel(false);
+		}
+
+		return primaryNode;
+	}
+
+	/**
+	 * Send an {@code RpbPingReq} to every node whose circuit breaker has tripped. A node that answers within the
+	 * slow-call timeout starts receiving requests again.
+	 */
+	private void probeNodes() {
+		final long slowCallTimeout = circuitBreakerPolicy.slowCallTimeout();
+		for(final Node node : nodes) {
+			final long start = System.nanoTime();
+			final AtomicBoolean answered = new AtomicBoolean();
+			final Deferred<Message, Promise<Message>> d = promise();
+			d.compose().onSuccess(new Consumer<Message>() {
+				@Override
+				public void accept(Message msg) {
+					answered.set(true);
+					if(node.getCircuitBreaker().onProbe(System.nanoTime() - start <= slowCallTimeout)) {
+						if(LOG.isInfoEnabled()) {
+							LOG.info("Circuit breaker for {} closed", node.getAddress());
+						}
+						drainRequestQueue();
+					}
+				}
+			}).onError(new Consumer<Throwable>() {
+				@Override
+				public void accept(Throwable t) {
+					answered.set(true);
+					node.getCircuitBreaker().onProbe(false);
+				}
+			});
+
+			if(!node.probe(d)) {
+				continue;
+			}
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if(!answered.get()) {
+						node.getCircuitBreaker().onProbe(false);
+					}
+				}
+			}, circuitBreakerPolicy.probeInterval(), TimeUnit.NANOSECONDS);
 		}
 	}
 
 	private void drainRequestQueue() {
-		synchronized(client) {
-			if(null == requestQueue.peek()) {
+		if(null != journal && !journal.replay(journalReplay)) {
+			// nothing connected anymore, so leave the rest for next time
+			return;
+		}
+
+		Tuple2<Deferred, RiakEvent> req;
+		while(null != (req = requestQueue.poll())) {
+			if(null == request(req.getT1(), req.getT2(), null)) {
+				// nothing connected anymore, so the request went back on the queue
 				return;
 			}
-			RiakEvent ev;
-			while(null != (ev = requestQueue.remove())) {
-				request(null, ev);
-			}
 		}
 	}
 
+	/**
+	 * Whether objects of the given type are stored as they are rather than converted.
+	 */
+	private static boolean isRaw(Class<?> type) {
+		return type == byte[].class
+				|| type == ByteString.class
+				|| (null != type && ByteBuffer.class.isAssignableFrom(type));
+	}
+
 	private Converter converterFor(ByteString contentType) {
 		Converter converter = converterCache.get(contentType);
 		if(null == converter) {
@@ -569,24 +2126,77 @@ public class Riaktor implements Closeable {
 		return converter;
 	}
 
+	/**
+	 * Sends each journaled request as it's replayed, completing the {@link Deferred} of the caller that made the
+	 * request if it was journaled by this process.
+	 */
+	private class JournalReplay implements Predicate<Tuple2<Long, RiakEvent<Message>>> {
+		@Override
+		public boolean test(Tuple2<Long, RiakEvent<Message>> req) {
+			Deferred d = journaled.remove(req.getT1());
+			if(null == d) {
+				// journaled before a restart, so nobody is waiting on the response
+				Deferred<Message, Promise<Message>> replayed = promise();
+				replayed.compose().onError(new Consumer<Throwable>() {
+					@Override
+					public void accept(Throwable t) {
+						if(LOG.isErrorEnabled()) {
+							LOG.error("Replayed request failed: " + t.getMessage(), t);
+						}
+					}
+				});
+				d = replayed;
+			}
+			if(null != send(d, req.getT2(), null)) {
+				return true;
+			}
+			journaled.put(req.getT1(), d);
+			return false;
+		}
+	}
+
+	private static class RequestBuilders {
+		private final RiakKvPB.RpbGetReq.Builder           getReq           = RiakKvPB.RpbGetReq.newBuilder();
+		private final RiakKvPB.RpbPutReq.Builder           putReq           = RiakKvPB.RpbPutReq.newBuilder();
+		private final RiakKvPB.RpbContent.Builder          content          = RiakKvPB.RpbContent.newBuilder();
+		private final RiakPB.RpbPair.Builder               pair             = RiakPB.RpbPair.newBuilder();
+		private final RiakKvPB.RpbLink.Builder             link             = RiakKvPB.RpbLink.newBuilder();
+		private final RiakKvPB.RpbDelReq.Builder           delReq           = RiakKvPB.RpbDelReq.newBuilder();
+		private final RiakKvPB.RpbCounterUpdateReq.Builder counterUpdateReq = RiakKvPB.RpbCounterUpdateReq.newBuilder();
+		private final RiakKvPB.RpbCounterGetReq.Builder    counterGetReq    = RiakKvPB.RpbCounterGetReq.newBuilder();
+		private final RiakKvPB.RpbListKeysReq.Builder      listKeysReq      = RiakKvPB.RpbListKeysReq.newBuilder();
+		private final RiakKvPB.RpbIndexReq.Builder         indexReq         = RiakKvPB.RpbIndexReq.newBuilder();
+		private final RiakKvPB.RpbMapRedReq.Builder        mapRedReq        = RiakKvPB.RpbMapRedReq.newBuilder();
+	}
+
+	private static class Routes {
+		private final Ring     ring;
+		private final Node[][] replicas;
+
+		private Routes(Ring ring, Node[][] replicas) {
+			this.ring = ring;
+			this.replicas = replicas;
+		}
+	}
+
 	private class ResponseMapFunction<M, T> implements Function<M, Entry<T>> {
 		private final List<RiakKvPB.RpbContent> contents;
 		private final Class<T>                  asType;
 		private final TypeMeta                  typeMeta;
 		private final Function<List<T>, T>      conflictResolver;
-		private final byte[]                    vclock;
+		private final ByteString                vclock;
 		private final String                    bucket;
 		private final String                    key;
 
 		private ResponseMapFunction(List<RiakKvPB.RpbContent> contents,
 		                            Class<T> asType,
 		                            Function<List<T>, T> conflictResolver,
-		                            byte[] vclock,
+		                            ByteString vclock,
 		                            String bucket,
 		                            String key) {
 			this.contents = contents;
 			this.asType = asType;
-			this.typeMeta = TypeMeta.fromType(asType);
+			this.typeMeta = (isRaw(asType) ? null : TypeMeta.fromType(asType));
 			this.conflictResolver = conflictResolver;
 			this.vclock = vclock;
 			this.bucket = bucket;
@@ -601,7 +2211,11 @@ public class Riaktor implements Closeable {
 			for(RiakKvPB.RpbContent content : contents) {
 				T obj;
 				Converter c;
-				if(null != asType
+				if(asType == ByteString.class) {
+					obj = (T)content.getValue();
+				} else if(null != asType && ByteBuffer.class.isAssignableFrom(asType)) {
+					obj = (T)content.getValue().asReadOnlyByteBuffer();
+				} else if(null != asType
 						&& asType != byte[].class
 						&& null != (c = converterFor(content.getContentType()))) {
 					obj = c.convert(content.getValue().toByteArray(), asType);
@@ -622,7 +2236,7 @@ public class Riaktor implements Closeable {
 				obj = null;
 			} else if(objs.size() > 1) {
 				if(null == conflictResolver) {
-					throw new IllegalStateException("Siblings found but no conflict resolver set.");
+					throw new SiblingsException(bucket, key, objs.size());
 				}
 				obj = conflictResolver.apply(objs);
 			} else {
@@ -634,15 +2248,27 @@ public class Riaktor implements Closeable {
 			}
 
 			Headers hdrs = null;
-			if(!headers.isEmpty() && headers.size() == 1) {
+			List<Entry<T>> siblings = Collections.emptyList();
+			if(headers.size() == 1) {
 				hdrs = headers.get(0);
+			} else if(headers.size() > 1) {
+				// resolved siblings have no metadata of their own, but writing them back needs the vclock
+				hdrs = Headers.from(vclock, null);
+				siblings = new ArrayList<>(objs.size());
+				for(int i = 0; i < objs.size(); i++) {
+					siblings.add(new Entry<>(bucket, key, headers.get(i), objs.get(i)));
+				}
 			}
 
-			typeMeta.metadataConsumer(obj).accept(hdrs);
-			typeMeta.vclockConsumer(obj).accept(vclock);
-			typeMeta.keyConsumer(obj).accept(key);
+			if(null != typeMeta) {
+				typeMeta.metadataConsumer(obj).accept(headers.size() == 1 ? hdrs : null);
+				if(typeMeta.hasVclock()) {
+					typeMeta.vclockConsumer(obj).accept(vclock.toByteArray());
+				}
+				typeMeta.keyConsumer(obj).accept(key);
+			}
 
-			return new Entry<>(bucket, key, hdrs, obj);
+			return new Entry<>(bucket, key, hdrs, obj, siblings);
 		}
 	}
 
@@ -0,0 +1,203 @@
+package com.jbrisbin.riaktor;
+
+import com.jbrisbin.riaktor.op.Operation;
+import reactor.util.Assert;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A blocking facade over a {@link Riaktor} for thread-per-request callers. Requests still go through the event-driven
+ * transport underneath; the calling thread is only parked until the response arrives, without taking a lock or
+ * holding a {@link reactor.event.dispatch.Dispatcher} thread.
+ * <p>
+ * Errors Riak responds with are thrown as they are, e.g. as a {@link RiakException}. Any other failure is wrapped in
+ * an {@link IllegalStateException}.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public class RiaktorClient {
+
+	private final Riaktor riaktor;
+	private final long    timeout;
+
+	/**
+	 * Create a client that waits at most the given time for each response.
+	 *
+	 * @param riaktor
+	 * 		the started {@link Riaktor} to send requests through
+	 * @param timeout
+	 * 		the time to wait for a response
+	 * @param unit
+	 * 		the unit of the time
+	 */
+	public RiaktorClient(Riaktor riaktor, long timeout, TimeUnit unit) {
+		Assert.notNull(riaktor, "Riaktor cannot be null.");
+		Assert.isTrue(timeout > 0, "Timeout must be greater than 0.");
+		this.riaktor = riaktor;
+		this.timeout = unit.toNanos(timeout);
+	}
+
+	/**
+	 * Get the {@link Riaktor} requests are sent through, to build operations this client has no shortcut for.
+	 *
+	 * @return the underlying {@link Riaktor}
+	 */
+	public Riaktor riaktor() {
+		return riaktor;
+	}
+
+	/**
+	 * Get an object.
+	 *
+	 * @param bucket
+	 * 		the bucket the object is in
+	 * @param key
+	 * 		the key of the object
+	 * @param asType
+	 * 		the type to convert the value to
+	 * @param <T>
+	 * 		the type of the value
+	 *
+	 * @return the object or {@literal null} if it doesn't exist
+	 *
+	 * @throws InterruptedException
+	 * 		if the calling thread is interrupted while waiting
+	 * @throws TimeoutException
+	 * 		if no response arrives in time
+	 */
+	public <T> Entry<T> get(String bucket, String key, Class<T> asType) throws InterruptedException, TimeoutException {
+		return await(riaktor.get(bucket, key, asType));
+	}
+
+	/**
+	 * Store an object.
+	 *
+	 * @param bucket
+	 * 		the bucket to store the object in
+	 * @param key
+	 * 		the key to store the object under
+	 * @param obj
+	 * 		the object to store
+	 * @param <T>
+	 * 		the type of the object
+	 *
+	 * @return the stored object
+	 *
+	 * @throws InterruptedException
+	 * 		if the calling thread is interrupted while waiting
+	 * @throws TimeoutException
+	 * 		if no response arrives in time
+	 */
+	public <T> Entry<T> put(String bucket, String key, T obj) throws InterruptedException, TimeoutException {
+		return await(riaktor.put(bucket, key, obj));
+	}
+
+	/**
+	 * Delete an object.
+	 *
+	 * @param bucket
+	 * 		the bucket the object is in
+	 * @param key
+	 * 		the key of the object
+	 *
+	 * @throws InterruptedException
+	 * 		if the calling thread is interrupted while waiting
+	 * @throws TimeoutException
+	 * 		if no response arrives in time
+	 */
+	public void delete(String bucket, String key) throws InterruptedException, TimeoutException {
+		await(riaktor.delete(bucket, key));
+	}
+
+	/**
+	 * Add to a counter and get its new value.
+	 *
+	 * @param bucket
+	 * 		the bucket the counter is in
+	 * @param key
+	 * 		the key of the counter
+	 * @param amount
+	 * 		the amount to add, which may be negative
+	 *
+	 * @return the new value of the counter
+	 *
+	 * @throws InterruptedException
+	 * 		if the calling thread is interrupted while waiting
+	 * @throws TimeoutException
+	 * 		if no response arrives in time
+	 */
+	public Long increment(String bucket, String key, long amount) throws InterruptedException, TimeoutException {
+		return await(riaktor.increment(bucket, key, amount).returnValue(true));
+	}
+
+	/**
+	 * Get the value of a counter.
+	 *
+	 * @param bucket
+	 * 		the bucket the counter is in
+	 * @param key
+	 * 		the key of the counter
+	 *
+	 * @return the value of the counter
+	 *
+	 * @throws InterruptedException
+	 * 		if the calling thread is interrupted while waiting
+	 * @throws TimeoutException
+	 * 		if no response arrives in time
+	 */
+	public Long counter(String bucket, String key) throws InterruptedException, TimeoutException {
+		return await(riaktor.counter(bucket, key));
+	}
+
+	/**
+	 * List the keys in a bucket.
+	 *
+	 * @param bucket
+	 * 		the bucket to list
+	 *
+	 * @return the keys in the bucket
+	 *
+	 * @throws InterruptedException
+	 * 		if the calling thread is interrupted while waiting
+	 * @throws TimeoutException
+	 * 		if no response arrives in time
+	 */
+	public List<String> listKeys(String bucket) throws InterruptedException, TimeoutException {
+		return await(riaktor.listKeys(bucket));
+	}
+
+	/**
+	 * Commit an operation and wait for its value.
+	 *
+	 * @param op
+	 * 		the operation to commit
+	 * @param <T>
+	 * 		the type of the value
+	 *
+	 * @return the value of the operation
+	 *
+	 * @throws InterruptedException
+	 * 		if the calling thread is interrupted while waiting
+	 * @throws TimeoutException
+	 * 		if no response arrives in time
+	 */
+	public <T> T await(Operation<T, ?> op) throws InterruptedException, TimeoutException {
+		try {
+			return op.future().get(timeout, TimeUnit.NANOSECONDS);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IllegalStateException(cause.getMessage(), cause);
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+package com.jbrisbin.riaktor;
+
+import com.jbrisbin.riaktor.event.EventType;
+import com.jbrisbin.riaktor.policy.CircuitBreakerPolicy;
+import com.jbrisbin.riaktor.policy.HedgePolicy;
+import com.jbrisbin.riaktor.policy.NegativeCachePolicy;
+import com.jbrisbin.riaktor.policy.RetryPolicy;
+import com.jbrisbin.riaktor.ring.RingProvider;
+import com.jbrisbin.riaktor.support.RequestBudget;
+import com.jbrisbin.riaktor.support.RequestJournal;
+import com.jbrisbin.riaktor.support.TransportOptions;
+import com.jbrisbin.riaktor.trace.RequestInterceptor;
+import com.jbrisbin.riaktor.trace.Tracer;
+import reactor.convert.Converter;
+import reactor.event.dispatch.Dispatcher;
+import reactor.util.Assert;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything a {@link Riaktor} is created with, other than its {@link reactor.core.Environment} and {@link
+ * reactor.core.Reactor}. New settings are added here rather than to the constructor of {@link Riaktor}, and start out
+ * with a default that keeps existing behavior. {@link com.jbrisbin.riaktor.spec.RiaktorSpec} is the usual way to fill
+ * them in.
+ *
+ * @author Jon Brisbin
+ */
+public class RiaktorSettings {
+
+	private final List<URI>                        connectURIs           = new ArrayList<>();
+	private final Map<String, Converter>           converters            = new LinkedHashMap<>();
+	private final Map<EventType, RetryPolicy>      retryPolicies         = new EnumMap<>(EventType.class);
+	private final Map<String, NegativeCachePolicy> negativeCachePolicies = new HashMap<>();
+
+	private int                  timeout              = 60000;
+	private String               defaultContentType   = "application/json";
+	private HedgePolicy          hedgePolicy;
+	private RequestBudget        retryBudget          = new RequestBudget(0.1, 100);
+	private CircuitBreakerPolicy circuitBreakerPolicy = new CircuitBreakerPolicy();
+	private int                  connectionsPerNode   = 1;
+	private long                 warmupTimeout        = -1;
+	private long                 requestDeadline      = -1;
+	private long                 keepAliveInterval    = TimeUnit.SECONDS.toNanos(30);
+	private RequestJournal       journal;
+	private RingProvider         ringProvider;
+	private int                  nVal                 = 3;
+	private int                  writeBatchSize       = 64;
+	private long                 writeLinger          = 0;
+	private TransportOptions     transport            = new TransportOptions();
+	private Tracer               tracer               = new Tracer(Collections.<RequestInterceptor>emptyList(), 0);
+	private Dispatcher           conversionDispatcher;
+
+	public RiaktorSettings() {
+		retryPolicies.put(EventType.GetReq, new RetryPolicy());
+		retryPolicies.put(EventType.DelReq, new RetryPolicy());
+		retryPolicies.put(EventType.PutReq, new RetryPolicy());
+		retryPolicies.put(EventType.CounterGetReq, new RetryPolicy());
+	}
+
+	public int timeout() {
+		return timeout;
+	}
+
+	/**
+	 * Set the timeout Riak is asked to apply to each request, which is also how long to wait before reconnecting.
+	 *
+	 * @param timeoutInMilliseconds
+	 * 		the timeout in milliseconds
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSettings timeout(int timeoutInMilliseconds) {
+		this.timeout = timeoutInMilliseconds;
+		return this;
+	}
+
+	public List<URI> connectURIs() {
+		return connectURIs;
+	}
+
+	/**
+	 * Add a node to connect to. Without any, a single node on {@code localhost:8087} is connected to, without
+	 * reconnecting.
+	 *
+	 * @param uri
+	 * 		the {@code riakpb://host:port} URI of the node
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSettings connect(URI uri) {
+		Assert.notNull(uri, "URI cannot be null.");
+		connectURIs.add(uri);
+		return this;
+	}
+
+	public Map<String, Converter> converters() {
+		return converters;
+	}
+
+	public RiaktorSettings converter(String contentType, Converter converter) {
+		converters.put(contentType, converter);
+		return this;
+	}
+
+	public String defaultContentType() {
+		return defaultContentType;
+	}
+
+	public RiaktorSettings defaultContentType(String defaultContentType) {
+		this.defaultContentType = defaultContentType;
+		return this;
+	}
+
+	public HedgePolicy hedgePolicy() {
+		return hedgePolicy;
+	}
+
+	public RiaktorSettings hedgePolicy(HedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+		return this;
+	}
+
+	public Map<EventType, RetryPolicy> retryPolicies() {
+		return retryPolicies;
+	}
+
+	public RiaktorSettings retry(EventType requestType, RetryPolicy retryPolicy) {
+		retryPolicies.put(requestType, retryPolicy);
+		return this;
+	}
+
+	public RequestBudget retryBudget() {
+		return retryBudget;
+	}
+
+	public RiaktorSettings retryBudget(RequestBudget retryBudget) {
+		this.retryBudget = retryBudget;
+		return this;
+	}
+
+	public CircuitBreakerPolicy circuitBreakerPolicy() {
+		return circuitBreakerPolicy;
+	}
+
+	public RiaktorSettings circuitBreakerPolicy(CircuitBreakerPolicy circuitBreakerPolicy) {
+		this.circuitBreakerPolicy = circuitBreakerPolicy;
+		return this;
+	}
+
+	public int connectionsPerNode() {
+		return connectionsPerNode;
+	}
+
+	public RiaktorSettings connectionsPerNode(int connectionsPerNode) {
+		this.connectionsPerNode = connectionsPerNode;
+		return this;
+	}
+
+	/**
+	 * Get how long {@link Riaktor#start()} waits for every connection to open, which defaults to the request timeout.
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long warmupTimeout() {
+		return (warmupTimeout < 0 ? TimeUnit.MILLISECONDS.toNanos(timeout) : warmupTimeout);
+	}
+
+	public RiaktorSettings warmupTimeout(long warmupTimeout, TimeUnit unit) {
+		this.warmupTimeout = unit.toNanos(warmupTimeout);
+		return this;
+	}
+
+	/**
+	 * Get how long a connection waits for the response to its oldest request before it is closed and the requests on
+	 * it fail. Defaults to a second longer than the request timeout, by which time Riak should have answered with an
+	 * error of its own.
+	 *
+	 * @return the time in nanoseconds or {@literal 0} if connections wait for as long as the socket allows
+	 */
+	public long requestDeadline() {
+		return (requestDeadline < 0
+		        ? TimeUnit.MILLISECONDS.toNanos(timeout) + TimeUnit.SECONDS.toNanos(1)
+		        : requestDeadline);
+	}
+
+	public RiaktorSettings requestDeadline(long requestDeadline, TimeUnit unit) {
+		this.requestDeadline = unit.toNanos(requestDeadline);
+		return this;
+	}
+
+	public long keepAliveInterval() {
+		return keepAliveInterval;
+	}
+
+	public RiaktorSettings keepAliveInterval(long keepAliveInterval, TimeUnit unit) {
+		this.keepAliveInterval = unit.toNanos(keepAliveInterval);
+		return this;
+	}
+
+	public RequestJournal journal() {
+		return journal;
+	}
+
+	public RiaktorSettings journal(RequestJournal journal) {
+		this.journal = journal;
+		return this;
+	}
+
+	public RingProvider ringProvider() {
+		return ringProvider;
+	}
+
+	public int nVal() {
+		return nVal;
+	}
+
+	public RiaktorSettings ring(RingProvider ringProvider, int nVal) {
+		this.ringProvider = ringProvider;
+		this.nVal = nVal;
+		return this;
+	}
+
+	public int writeBatchSize() {
+		return writeBatchSize;
+	}
+
+	public long writeLinger() {
+		return writeLinger;
+	}
+
+	public RiaktorSettings writeBatch(int writeBatchSize, long writeLinger, TimeUnit unit) {
+		this.writeBatchSize = writeBatchSize;
+		this.writeLinger = unit.toNanos(writeLinger);
+		return this;
+	}
+
+	public TransportOptions transport() {
+		return transport;
+	}
+
+	public RiaktorSettings transport(TransportOptions transport) {
+		this.transport = transport;
+		return this;
+	}
+
+	public Tracer tracer() {
+		return tracer;
+	}
+
+	public RiaktorSettings tracer(Tracer tracer) {
+		this.tracer = tracer;
+		return this;
+	}
+
+	public Dispatcher conversionDispatcher() {
+		return conversionDispatcher;
+	}
+
+	public RiaktorSettings conversionDispatcher(Dispatcher conversionDispatcher) {
+		this.conversionDispatcher = conversionDispatcher;
+		return this;
+	}
+
+	public Map<String, NegativeCachePolicy> negativeCachePolicies() {
+		return negativeCachePolicies;
+	}
+
+	public RiaktorSettings negativeCache(String bucket, NegativeCachePolicy policy) {
+		negativeCachePolicies.put(bucket, policy);
+		return this;
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.jbrisbin.riaktor;
+
+/**
+ * Thrown when an object comes back with siblings and there is no conflict resolver to turn them into one value.
+ *
+ * @author Jon Brisbin
+ */
+public class SiblingsException extends IllegalStateException {
+
+	private static final long serialVersionUID = 4018269310544862617L;
+
+	private final String bucket;
+	private final String key;
+	private final int    siblings;
+
+	public SiblingsException(String bucket, String key, int siblings) {
+		super("Siblings found but no conflict resolver set.");
+		this.bucket = bucket;
+		this.key = key;
+		this.siblings = siblings;
+	}
+
+	public String getBucket() {
+		return bucket;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the number of siblings
+	 */
+	public int getSiblings() {
+		return siblings;
+	}
+
+}
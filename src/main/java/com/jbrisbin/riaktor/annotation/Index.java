@@ -0,0 +1,24 @@
+package com.jbrisbin.riaktor.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Stores the value of a field or getter as an entry in a secondary index when the object is put, e.g. {@code
+ * @Index("email_bin")}. The values of {@code _int} indexes must be whole numbers. A collection or array adds an entry
+ * for each of its elements, and {@literal null} adds none.
+ *
+ * @author Jon Brisbin
+ */
+@Target({ElementType.FIELD, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Index {
+
+	/**
+	 * @return the name of the index, ending in {@code _bin} or {@code _int}
+	 */
+	String value();
+
+}
@@ -0,0 +1,730 @@
+package com.jbrisbin.riaktor.backup;
+
+import com.jbrisbin.riaktor.Entry;
+import com.jbrisbin.riaktor.Headers;
+import com.jbrisbin.riaktor.Link;
+import com.jbrisbin.riaktor.Riaktor;
+import com.jbrisbin.riaktor.op.PutOperation;
+import com.jbrisbin.riaktor.support.RequestPipeline;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.composable.Deferred;
+import reactor.core.composable.Promise;
+import reactor.core.composable.spec.Promises;
+import reactor.function.Consumer;
+import reactor.function.Function;
+import reactor.support.NamedDaemonThreadFactory;
+import reactor.tuple.Tuple2;
+import reactor.util.Assert;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports the objects in a bucket to files in a directory and imports them back, into the same bucket or another one.
+ * <p>
+ * An export streams the bucket's keys and fetches their values as they are listed, with up to {@code parallelism}
+ * gets outstanding. A separate thread writes the values to files of about {@code maxFileSize} bytes, and the next get
+ * is only sent once a value has been written, so a slow disk holds back the gets instead of filling the heap. An
+ * import maps each file into memory and stores its records with up to {@code parallelism} puts outstanding.
+ * </p>
+ * <p>
+ * Both directions write a checkpoint to the directory every {@code checkpointInterval} records, and pick up from it if
+ * they are started again after failing or being killed. An export that resumes drops anything written after its
+ * checkpoint and skips the keys already written, while an import that resumes may store the records after its
+ * checkpoint a second time. Once a transfer has completed, starting it again does nothing until its checkpoint, {@code
+ * export.checkpoint} or {@code import.checkpoint}, is deleted.
+ * </p>
+ * <p>
+ * Values are exported as they are stored, with their content type, metadata, links and secondary index entries. An
+ * object with siblings is exported as a record for each sibling, and importing them into a bucket that allows siblings
+ * stores them as siblings again; anywhere else the last one imported wins.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public class BucketTransfer {
+
+	private static final Logger LOG               = LoggerFactory.getLogger(BucketTransfer.class);
+	private static final String EXPORT_CHECKPOINT = "export.checkpoint";
+	private static final String IMPORT_CHECKPOINT = "import.checkpoint";
+	private static final int    BUFFER_SIZE       = 64 * 1024;
+	private static final Object LISTED            = new Object();
+	private static final Object MISSING           = new Object();
+
+	// the siblings themselves are exported, so there is nothing to resolve
+	private static final Function<List<ByteBuffer>, ByteBuffer> FIRST_SIBLING = new Function<List<ByteBuffer>, ByteBuffer>() {
+		@Override
+		public ByteBuffer apply(List<ByteBuffer> siblings) {
+			return siblings.get(0);
+		}
+	};
+
+	private final Riaktor riaktor;
+	private final int     parallelism;
+
+	private Format                     format             = Format.NDJSON;
+	private long                       maxFileSize        = 256 * 1024 * 1024;
+	private int                        checkpointInterval = 1000;
+	private long                       progressInterval   = TimeUnit.SECONDS.toNanos(10);
+	private Consumer<TransferProgress> progress;
+
+	/**
+	 * Create a transfer that reads and writes through the given {@link Riaktor}.
+	 *
+	 * @param riaktor
+	 * 		the {@link Riaktor} to read and write through
+	 * @param parallelism
+	 * 		the number of gets or puts to have outstanding at once
+	 */
+	public BucketTransfer(Riaktor riaktor, int parallelism) {
+		Assert.notNull(riaktor, "Riaktor cannot be null.");
+		Assert.isTrue(parallelism > 0, "Parallelism must be greater than 0.");
+		this.riaktor = riaktor;
+		this.parallelism = parallelism;
+	}
+
+	public Format format() {
+		return format;
+	}
+
+	/**
+	 * Set the format of the files written and read. Defaults to {@link Format#NDJSON}.
+	 *
+	 * @param format
+	 * 		the format of the files
+	 *
+	 * @return {@literal this}
+	 */
+	public BucketTransfer format(Format format) {
+		Assert.notNull(format, "Format cannot be null.");
+		this.format = format;
+		return this;
+	}
+
+	public long maxFileSize() {
+		return maxFileSize;
+	}
+
+	/**
+	 * Set the size an export file can grow to before the next record is written to a new file. Files are mapped into
+	 * memory when they are imported, so no file can be larger than 2GB.
+	 *
+	 * @param maxFileSize
+	 * 		the size in bytes
+	 *
+	 * @return {@literal this}
+	 */
+	public BucketTransfer maxFileSize(long maxFileSize) {
+		Assert.isTrue(maxFileSize > 0 && maxFileSize <= Integer.MAX_VALUE, "Max file size must be between 1 and 2GB.");
+		this.maxFileSize = maxFileSize;
+		return this;
+	}
+
+	public int checkpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * Set the number of records transferred between checkpoints. Checkpoints of exports force the file being written
+	 * to disk.
+	 *
+	 * @param checkpointInterval
+	 * 		the number of records
+	 *
+	 * @return {@literal this}
+	 */
+	public BucketTransfer checkpointInterval(int checkpointInterval) {
+		Assert.isTrue(checkpointInterval > 0, "Checkpoint interval must be greater than 0.");
+		this.checkpointInterval = checkpointInterval;
+		return this;
+	}
+
+	/**
+	 * Report the progress of transfers to the given {@link Consumer} every so often, and once they complete. By default,
+	 * progress is logged.
+	 *
+	 * @param progress
+	 * 		the consumer of progress reports
+	 * @param interval
+	 * 		the time between reports
+	 * @param unit
+	 * 		the unit of the interval
+	 *
+	 * @return {@literal this}
+	 */
+	public BucketTransfer progress(Consumer<TransferProgress> progress, long interval, TimeUnit unit) {
+		this.progress = progress;
+		this.progressInterval = unit.toNanos(interval);
+		return this;
+	}
+
+	/**
+	 * Export the objects in a bucket to a directory, or resume an export that was interrupted.
+	 *
+	 * @param bucket
+	 * 		the bucket to export
+	 * @param directory
+	 * 		the directory to write files to, which is created if it doesn't exist
+	 *
+	 * @return a {@link Promise} that completes with the final progress once every object has been exported
+	 *
+	 * @throws IOException
+	 * 		if the directory or an interrupted export in it can't be read
+	 */
+	public Promise<TransferProgress> exportTo(String bucket, Path directory) throws IOException {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(directory, "Directory cannot be null.");
+
+		Deferred<TransferProgress, Promise<TransferProgress>> d = promise();
+		Checkpoint checkpoint = Checkpoint.read(Files.createDirectories(directory).resolve(EXPORT_CHECKPOINT));
+		if(null != checkpoint && checkpoint.complete) {
+			d.accept(new TransferProgress(checkpoint.records, checkpoint.bytes, 0, 0, 0, true));
+			return d.compose();
+		}
+
+		Export export = new Export(bucket, directory, checkpoint, d);
+		new NamedDaemonThreadFactory("riaktor-export").newThread(export).start();
+		riaktor.listKeys(bucket).publish().subscribe(export);
+		return d.compose();
+	}
+
+	/**
+	 * Import the objects in a directory written by {@link #exportTo(String, Path)} into a bucket, or resume an import
+	 * that was interrupted.
+	 *
+	 * @param directory
+	 * 		the directory to read files from
+	 * @param bucket
+	 * 		the bucket to store the objects in
+	 *
+	 * @return a {@link Promise} that completes with the final progress once every object has been imported
+	 *
+	 * @throws IOException
+	 * 		if the directory can't be read
+	 */
+	public Promise<TransferProgress> importFrom(Path directory, String bucket) throws IOException {
+		Assert.notNull(directory, "Directory cannot be null.");
+		Assert.notNull(bucket, "Bucket cannot be null.");
+
+		Deferred<TransferProgress, Promise<TransferProgress>> d = promise();
+		Checkpoint checkpoint = Checkpoint.read(directory.resolve(IMPORT_CHECKPOINT));
+		if(null != checkpoint && checkpoint.complete) {
+			d.accept(new TransferProgress(checkpoint.records, checkpoint.bytes, 0, 0, 0, true));
+			return d.compose();
+		}
+
+		List<Path> files = files(directory);
+		int file = 0;
+		long offset = 0;
+		if(null != checkpoint && null != checkpoint.file) {
+			file = files.indexOf(directory.resolve(checkpoint.file));
+			if(file < 0) {
+				throw new IOException("The file the import got to, " + checkpoint.file + ", is missing from " + directory);
+			}
+			offset = checkpoint.offset;
+		}
+		new Import(bucket, directory, files, checkpoint, d).start(file, offset);
+		return d.compose();
+	}
+
+	private List<Path> files(Path directory) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try(DirectoryStream<Path> dir = Files.newDirectoryStream(directory, "*" + format.suffix())) {
+			for(Path file : dir) {
+				files.add(file);
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private static ByteBuffer map(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to map.");
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	private void report(String what, TransferProgress p) {
+		if(null != progress) {
+			progress.accept(p);
+		} else if(LOG.isInfoEnabled()) {
+			LOG.info("{}: {}", what, p);
+		}
+	}
+
+	private <T> Deferred<T, Promise<T>> promise() {
+		return Promises.<T>defer().env(riaktor.environment()).synchronousDispatcher().get();
+	}
+
+	/**
+	 * Counts what a transfer has done and reports it.
+	 */
+	private abstract class Transfer {
+		final String                                                bucket;
+		final Path                                                  checkpointPath;
+		final Deferred<TransferProgress, Promise<TransferProgress>> d;
+		final long                                                  start = System.nanoTime();
+
+		long records;
+		long bytes;
+		long transferredRecords;
+		long transferredBytes;
+		int  sinceCheckpoint;
+		long lastReport = start;
+
+		Transfer(String bucket,
+		         Path checkpointPath,
+		         Checkpoint checkpoint,
+		         Deferred<TransferProgress, Promise<TransferProgress>> d) {
+			this.bucket = bucket;
+			this.checkpointPath = checkpointPath;
+			this.d = d;
+			if(null != checkpoint) {
+				this.records = checkpoint.records;
+				this.bytes = checkpoint.bytes;
+			}
+		}
+
+		/**
+		 * Count a record and write a checkpoint at the end of it if it's time to.
+		 */
+		void transferred(String file, long end, long length) throws IOException {
+			records++;
+			bytes += length;
+			transferredRecords++;
+			transferredBytes += length;
+			if(++sinceCheckpoint >= checkpointInterval) {
+				checkpoint(file, end, false);
+			}
+			long now = System.nanoTime();
+			if(now - lastReport >= progressInterval) {
+				lastReport = now;
+				report(toString(), progress(false));
+			}
+		}
+
+		void checkpoint(String file, long offset, boolean complete) throws IOException {
+			new Checkpoint(file, offset, records, bytes, complete).write(checkpointPath);
+			sinceCheckpoint = 0;
+		}
+
+		void complete() {
+			TransferProgress p = progress(true);
+			report(toString(), p);
+			d.accept(p);
+		}
+
+		TransferProgress progress(boolean complete) {
+			return new TransferProgress(records,
+			                            bytes,
+			                            transferredRecords,
+			                            transferredBytes,
+			                            System.nanoTime() - start,
+			                            complete);
+		}
+	}
+
+	/**
+	 * Fetches the values of the keys as they are listed and hands them to the thread that writes the files.
+	 */
+	private class Export extends Transfer implements Subscriber<String>, Runnable {
+		private final Path                  directory;
+		private final Set<String>           exported    = new HashSet<>();
+		private final Queue<String>         keys        = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger         outstanding = new AtomicInteger();
+		private final BlockingQueue<Object> results     = new LinkedBlockingQueue<>();
+		private final ByteArrayOutputStream record      = new ByteArrayOutputStream();
+
+		private volatile Subscription listing;
+		private int          file;
+		private long         offset;
+		private FileChannel  channel;
+		private OutputStream out;
+
+		private Export(String bucket,
+		               Path directory,
+		               Checkpoint checkpoint,
+		               Deferred<TransferProgress, Promise<TransferProgress>> d) throws IOException {
+			super(bucket, directory.resolve(EXPORT_CHECKPOINT), checkpoint, d);
+			this.directory = directory;
+
+			int file = 0;
+			long offset = 0;
+			if(null != checkpoint) {
+				file = index(checkpoint.file);
+				offset = checkpoint.offset;
+			}
+			for(Path path : files(directory)) {
+				int index = index(path.getFileName().toString());
+				if(index < file) {
+					readKeys(path, Long.MAX_VALUE);
+				} else if(index == file) {
+					readKeys(path, offset);
+				} else {
+					// written after the checkpoint, so its keys will be exported again
+					Files.delete(path);
+				}
+			}
+			open(file, offset);
+		}
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			listing = subscription;
+			// keys are small next to their values, so they are taken as fast as they come and the gets are limited
+			// instead, which also keeps the listing on the pooled connections
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(String key) {
+			if(!exported.remove(key)) {
+				keys.add(key);
+				fetch();
+			}
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			results.add(t);
+		}
+
+		@Override
+		public void onComplete() {
+			results.add(LISTED);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void run() {
+			boolean listed = false;
+			try {
+				while(!listed || outstanding.get() > 0 || !keys.isEmpty()) {
+					Object result = results.take();
+					if(LISTED == result) {
+						listed = true;
+						fetch();
+						continue;
+					}
+					if(result instanceof Throwable) {
+						fail((Throwable)result);
+						return;
+					}
+					if(MISSING != result) {
+						write((Entry<ByteBuffer>)result);
+					}
+					outstanding.decrementAndGet();
+					fetch();
+				}
+				flush();
+				checkpoint(name(file), offset, true);
+				channel.close();
+				complete();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail(e);
+			} catch(IOException | RuntimeException e) {
+				fail(e);
+			}
+		}
+
+		/**
+		 * Send gets for listed keys until {@code parallelism} are outstanding.
+		 */
+		private void fetch() {
+			while(true) {
+				int n = outstanding.get();
+				if(n >= parallelism) {
+					return;
+				}
+				if(!outstanding.compareAndSet(n, n + 1)) {
+					continue;
+				}
+				String key = keys.poll();
+				if(null == key) {
+					outstanding.decrementAndGet();
+					// a key may have been listed after the poll, by a thread that saw no room to fetch it
+					if(keys.isEmpty()) {
+						return;
+					}
+					continue;
+				}
+
+				Promise<Entry<ByteBuffer>> p = riaktor.get(bucket, key, ByteBuffer.class)
+				                                      .conflictResolver(FIRST_SIBLING)
+				                                      .commit();
+				p.onSuccess(new Consumer<Entry<ByteBuffer>>() {
+					@Override
+					public void accept(Entry<ByteBuffer> entry) {
+						// deleted since it was listed
+						results.add(null != entry ? entry : MISSING);
+					}
+				});
+				p.onError(new Consumer<Throwable>() {
+					@Override
+					public void accept(Throwable t) {
+						results.add(t);
+					}
+				});
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Export of " + bucket + " to " + directory;
+		}
+
+		private void write(Entry<ByteBuffer> entry) throws IOException {
+			record.reset();
+			// every sibling goes in the same write so a checkpoint never falls between them
+			List<Entry<ByteBuffer>> siblings = entry.getSiblings();
+			for(Entry<ByteBuffer> sibling : (siblings.isEmpty() ? Collections.singletonList(entry) : siblings)) {
+				Headers headers = sibling.getHeaders();
+				format.write(new Record(sibling.getKey(),
+				                        headers.getContentType(),
+				                        headers,
+				                        headers.getLinks(),
+				                        headers.getIndexes(),
+				                        sibling.getData()), record);
+			}
+			record.writeTo(out);
+			offset += record.size();
+			transferred(name(file), offset, record.size());
+
+			if(offset >= maxFileSize) {
+				flush();
+				channel.close();
+				open(file + 1, 0);
+				checkpoint(name(file), 0, false);
+			}
+		}
+
+		@Override
+		void checkpoint(String file, long offset, boolean complete) throws IOException {
+			flush();
+			super.checkpoint(file, offset, complete);
+		}
+
+		private void fail(Throwable t) {
+			if(null != listing) {
+				listing.cancel();
+			}
+			try {
+				// keep what was written so the export can be resumed from there
+				flush();
+				checkpoint(name(file), offset, false);
+				channel.close();
+			} catch(IOException e) {
+				if(LOG.isWarnEnabled()) {
+					LOG.warn("Could not write the checkpoint of " + this, e);
+				}
+			}
+			d.accept(t);
+		}
+
+		private void flush() throws IOException {
+			out.flush();
+			channel.force(false);
+		}
+
+		private void open(int file, long offset) throws IOException {
+			this.channel = FileChannel.open(directory.resolve(name(file)),
+			                                StandardOpenOption.CREATE,
+			                                StandardOpenOption.WRITE);
+			channel.truncate(offset);
+			channel.position(offset);
+			this.out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+			this.file = file;
+			this.offset = offset;
+		}
+
+		private void readKeys(Path path, long end) throws IOException {
+			ByteBuffer buffer = map(path);
+			if(end < buffer.limit()) {
+				buffer.limit((int)end);
+			}
+			int length;
+			while((length = format.length(buffer)) > 0) {
+				ByteBuffer slice = buffer.duplicate();
+				slice.limit(buffer.position() + length);
+				exported.add(format.read(slice).getKey());
+				buffer.position(buffer.position() + length);
+			}
+		}
+
+		private String name(int file) {
+			return String.format("%08d%s", file, format.suffix());
+		}
+
+		private int index(String name) throws IOException {
+			try {
+				return Integer.parseInt(name.substring(0, name.length() - format.suffix().length()));
+			} catch(NumberFormatException e) {
+				throw new IOException(name + " in " + directory + " is not an export file.");
+			}
+		}
+	}
+
+	/**
+	 * Stores the records of one file after another. The records of a file are stored several at a time, but their
+	 * results are handed on in order, so the checkpoint always lies just after the last of a run of stored records.
+	 */
+	private class Import extends Transfer {
+		private final Path            directory;
+		private final List<Path>      files;
+		private final ExecutorService reader;
+
+		private Import(String bucket,
+		               Path directory,
+		               List<Path> files,
+		               Checkpoint checkpoint,
+		               Deferred<TransferProgress, Promise<TransferProgress>> d) {
+			super(bucket, directory.resolve(IMPORT_CHECKPOINT), checkpoint, d);
+			this.directory = directory;
+			this.files = files;
+			this.reader = Executors.newSingleThreadExecutor(new NamedDaemonThreadFactory("riaktor-import"));
+		}
+
+		@Override
+		public String toString() {
+			return "Import of " + directory + " to " + bucket;
+		}
+
+		/**
+		 * Map and store the records of a file on the reader thread, so responses aren't held up while the file is read.
+		 */
+		private void start(final int file, final long offset) {
+			reader.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						store(file, offset);
+					} catch(IOException | RuntimeException e) {
+						fail(e);
+					}
+				}
+			});
+		}
+
+		private void store(final int file, long offset) throws IOException {
+			if(file >= files.size()) {
+				checkpoint(null, 0, true);
+				reader.shutdown();
+				complete();
+				return;
+			}
+
+			final Path path = files.get(file);
+			final String name = path.getFileName().toString();
+			final ByteBuffer buffer = map(path);
+			buffer.position((int)offset);
+			List<Integer> ends = new ArrayList<>();
+			int length;
+			while((length = format.length(buffer)) > 0) {
+				buffer.position(buffer.position() + length);
+				ends.add(buffer.position());
+			}
+			if(buffer.hasRemaining() && LOG.isWarnEnabled()) {
+				LOG.warn("Skipping the last {} bytes of {}, which don't make up a whole record", buffer.remaining(), path);
+			}
+
+			final int[] bounds = new int[ends.size() + 1];
+			bounds[0] = (int)offset;
+			for(int i = 0; i < ends.size(); i++) {
+				bounds[i + 1] = ends.get(i);
+			}
+			if(ends.isEmpty()) {
+				checkpoint(name, offset, false);
+				start(file + 1, 0);
+				return;
+			}
+
+			new RequestPipeline<Entry<ByteBuffer>>(ends.size(), parallelism) {
+				@Override
+				protected Promise<Entry<ByteBuffer>> request(int index) {
+					ByteBuffer slice = buffer.duplicate();
+					slice.limit(bounds[index + 1]);
+					slice.position(bounds[index]);
+					Record record;
+					try {
+						record = format.read(slice);
+					} catch(IOException e) {
+						Deferred<Entry<ByteBuffer>, Promise<Entry<ByteBuffer>>> failed = promise();
+						failed.accept(new IOException("Record " + index + " of " + path + " is corrupt.", e));
+						return failed.compose();
+					}
+					PutOperation<ByteBuffer> put = riaktor.put(bucket, record.getKey(), record.getValue())
+					                                      .contentType(record.getContentType())
+					                                      .returnBody(false);
+					put.metadata().putAll(record.getMetadata());
+					for(Link link : record.getLinks()) {
+						put.link(link.getBucket(), link.getKey(), link.getTag());
+					}
+					for(Tuple2<String, String> entry : record.getIndexes()) {
+						put.index(entry.getT1(), entry.getT2());
+					}
+					return put.commit();
+				}
+
+				@Override
+				protected void result(int index, Entry<ByteBuffer> result) {
+					try {
+						transferred(name, bounds[index + 1], bounds[index + 1] - bounds[index]);
+					} catch(IOException e) {
+						cancel();
+						fail(e);
+					}
+				}
+
+				@Override
+				protected void complete() {
+					try {
+						checkpoint(name, bounds[bounds.length - 1], false);
+						start(file + 1, 0);
+					} catch(IOException e) {
+						Import.this.fail(e);
+					}
+				}
+
+				@Override
+				protected void fail(Throwable t) {
+					Import.this.fail(t);
+				}
+			}.credit(Long.MAX_VALUE);
+		}
+
+		private void fail(Throwable t) {
+			reader.shutdown();
+			d.accept(t);
+		}
+	}
+
+}
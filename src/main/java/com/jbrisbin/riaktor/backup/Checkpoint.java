@@ -0,0 +1,71 @@
+package com.jbrisbin.riaktor.backup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Where a transfer had got to the last time everything before it was safely written: the file being written or read,
+ * the offset in it, and the totals so far. Checkpoints are written to a temporary file that is then moved over the
+ * previous one, so a crash leaves either the old checkpoint or the new one.
+ *
+ * @author Jon Brisbin
+ */
+final class Checkpoint {
+
+	final String  file;
+	final long    offset;
+	final long    records;
+	final long    bytes;
+	final boolean complete;
+
+	Checkpoint(String file, long offset, long records, long bytes, boolean complete) {
+		this.file = file;
+		this.offset = offset;
+		this.records = records;
+		this.bytes = bytes;
+		this.complete = complete;
+	}
+
+	/**
+	 * Read a checkpoint.
+	 *
+	 * @return the checkpoint, or {@literal null} if there is none
+	 */
+	static Checkpoint read(Path path) throws IOException {
+		if(!Files.exists(path)) {
+			return null;
+		}
+		Properties props = new Properties();
+		try(InputStream in = Files.newInputStream(path)) {
+			props.load(in);
+		}
+		return new Checkpoint(props.getProperty("file"),
+		                      Long.parseLong(props.getProperty("offset")),
+		                      Long.parseLong(props.getProperty("records")),
+		                      Long.parseLong(props.getProperty("bytes")),
+		                      Boolean.parseBoolean(props.getProperty("complete")));
+	}
+
+	void write(Path path) throws IOException {
+		Properties props = new Properties();
+		if(null != file) {
+			props.setProperty("file", file);
+		}
+		props.setProperty("offset", String.valueOf(offset));
+		props.setProperty("records", String.valueOf(records));
+		props.setProperty("bytes", String.valueOf(bytes));
+		props.setProperty("complete", String.valueOf(complete));
+
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try(OutputStream out = Files.newOutputStream(tmp)) {
+			props.store(out, null);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
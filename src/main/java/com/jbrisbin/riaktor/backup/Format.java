@@ -0,0 +1,370 @@
+package com.jbrisbin.riaktor.backup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.jbrisbin.riaktor.Link;
+import reactor.tuple.Tuple;
+import reactor.tuple.Tuple2;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The formats a bucket can be exported in. Records are written one after the other, so a file that was cut short ends
+ * with at most one incomplete record, which {@link #length(ByteBuffer)} reports as missing.
+ *
+ * @author Jon Brisbin
+ */
+public enum Format {
+
+	/**
+	 * One JSON object per line, with the value encoded as Base64, e.g. {@code {"key":"k","contentType":"text/plain",
+	 * "metadata":{},"links":[{"bucket":"b","key":"k2","tag":"t"}],"indexes":[{"name":"n_bin","value":"v"}],
+	 * "value":"aGk="}}. Links and indexes are left out when there are none. Easy to inspect and process with other
+	 * tools.
+	 */
+	NDJSON(".ndjson") {
+		@Override
+		public void write(Record record, OutputStream out) throws IOException {
+			try(JsonGenerator json = JSON.createGenerator(out)) {
+				json.writeStartObject();
+				json.writeStringField("key", record.getKey());
+				if(null != record.getContentType()) {
+					json.writeStringField("contentType", record.getContentType());
+				}
+				json.writeObjectFieldStart("metadata");
+				for(Map.Entry<String, String> entry : record.getMetadata().entrySet()) {
+					json.writeStringField(entry.getKey(), entry.getValue());
+				}
+				json.writeEndObject();
+				if(!record.getLinks().isEmpty()) {
+					json.writeArrayFieldStart("links");
+					for(Link link : record.getLinks()) {
+						json.writeStartObject();
+						json.writeStringField("bucket", link.getBucket());
+						json.writeStringField("key", link.getKey());
+						json.writeStringField("tag", link.getTag());
+						json.writeEndObject();
+					}
+					json.writeEndArray();
+				}
+				if(!record.getIndexes().isEmpty()) {
+					json.writeArrayFieldStart("indexes");
+					for(Tuple2<String, String> index : record.getIndexes()) {
+						json.writeStartObject();
+						json.writeStringField("name", index.getT1());
+						json.writeStringField("value", index.getT2());
+						json.writeEndObject();
+					}
+					json.writeEndArray();
+				}
+				json.writeFieldName("value");
+				ByteBuffer value = record.getValue();
+				if(value.hasArray()) {
+					json.writeBinary(value.array(), value.arrayOffset() + value.position(), value.remaining());
+				} else {
+					byte[] bytes = new byte[value.remaining()];
+					value.duplicate().get(bytes);
+					json.writeBinary(bytes);
+				}
+				json.writeEndObject();
+			}
+			out.write('\n');
+		}
+
+		@Override
+		public int length(ByteBuffer buffer) {
+			for(int i = buffer.position(); i < buffer.limit(); i++) {
+				if(buffer.get(i) == '\n') {
+					return i - buffer.position() + 1;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public Record read(ByteBuffer record) throws IOException {
+			byte[] line = new byte[record.remaining()];
+			record.get(line);
+
+			String key = null;
+			String contentType = null;
+			Map<String, String> metadata = new LinkedHashMap<>();
+			List<Link> links = new ArrayList<>();
+			List<Tuple2<String, String>> indexes = new ArrayList<>();
+			byte[] value = null;
+			try(JsonParser json = JSON.createParser(line)) {
+				expect(json.nextToken(), JsonToken.START_OBJECT);
+				while(json.nextToken() == JsonToken.FIELD_NAME) {
+					String field = json.getCurrentName();
+					JsonToken token = json.nextToken();
+					switch(field) {
+						case "key":
+							key = json.getText();
+							break;
+						case "contentType":
+							contentType = json.getText();
+							break;
+						case "metadata":
+							expect(token, JsonToken.START_OBJECT);
+							while(json.nextToken() == JsonToken.FIELD_NAME) {
+								String name = json.getCurrentName();
+								json.nextToken();
+								metadata.put(name, json.getText());
+							}
+							break;
+						case "links":
+							expect(token, JsonToken.START_ARRAY);
+							while(json.nextToken() == JsonToken.START_OBJECT) {
+								Map<String, String> link = readFields(json);
+								links.add(new Link(link.get("bucket"), link.get("key"), link.get("tag")));
+							}
+							break;
+						case "indexes":
+							expect(token, JsonToken.START_ARRAY);
+							while(json.nextToken() == JsonToken.START_OBJECT) {
+								Map<String, String> index = readFields(json);
+								indexes.add(Tuple.of(index.get("name"), index.get("value")));
+							}
+							break;
+						case "value":
+							value = json.getBinaryValue();
+							break;
+						default:
+							json.skipChildren();
+					}
+				}
+			}
+			if(null == key || null == value) {
+				throw new IOException("Record is missing its key or value: " + new String(line, UTF8));
+			}
+			return new Record(key, contentType, metadata, links, indexes, ByteBuffer.wrap(value));
+		}
+	},
+
+	/**
+	 * Length-prefixed binary records. Values are stored as they are, so importing one doesn't copy it out of the file
+	 * before it is sent.
+	 * <p>
+	 * Each record is the length of the rest of the record, followed by the key, the content type, the number of metadata
+	 * entries and the name and value of each, the number of links and the bucket, key and tag of each, the number of
+	 * secondary index entries and the name and value of each, and the value. Strings are stored as their length in
+	 * UTF-8 followed by their bytes, with a length of {@literal -1} for a missing content type. All lengths are 4-byte
+	 * big-endian integers.
+	 * </p>
+	 */
+	BINARY(".bin") {
+		@Override
+		public void write(Record record, OutputStream out) throws IOException {
+			byte[] key = record.getKey().getBytes(UTF8);
+			byte[] contentType = (null != record.getContentType() ? record.getContentType().getBytes(UTF8) : null);
+			List<byte[]> metadata = new ArrayList<>();
+			for(Map.Entry<String, String> entry : record.getMetadata().entrySet()) {
+				metadata.add(entry.getKey().getBytes(UTF8));
+				metadata.add(entry.getValue().getBytes(UTF8));
+			}
+			List<byte[]> links = new ArrayList<>();
+			for(Link link : record.getLinks()) {
+				links.add(link.getBucket().getBytes(UTF8));
+				links.add(link.getKey().getBytes(UTF8));
+				links.add(link.getTag().getBytes(UTF8));
+			}
+			List<byte[]> indexes = new ArrayList<>();
+			for(Tuple2<String, String> index : record.getIndexes()) {
+				indexes.add(index.getT1().getBytes(UTF8));
+				indexes.add(index.getT2().getBytes(UTF8));
+			}
+			ByteBuffer value = record.getValue();
+			int length = 4 + key.length + 4 + (null != contentType ? contentType.length : 0)
+					+ sizeOf(metadata) + sizeOf(links) + sizeOf(indexes)
+					+ 4 + value.remaining();
+
+			DataOutputStream data = new DataOutputStream(out);
+			data.writeInt(length);
+			writeBytes(data, key);
+			writeBytes(data, contentType);
+			data.writeInt(metadata.size() / 2);
+			for(byte[] bytes : metadata) {
+				writeBytes(data, bytes);
+			}
+			data.writeInt(links.size() / 3);
+			for(byte[] bytes : links) {
+				writeBytes(data, bytes);
+			}
+			data.writeInt(indexes.size() / 2);
+			for(byte[] bytes : indexes) {
+				writeBytes(data, bytes);
+			}
+			data.writeInt(value.remaining());
+			if(value.hasArray()) {
+				data.write(value.array(), value.arrayOffset() + value.position(), value.remaining());
+			} else {
+				byte[] bytes = new byte[value.remaining()];
+				value.duplicate().get(bytes);
+				data.write(bytes);
+			}
+			data.flush();
+		}
+
+		@Override
+		public int length(ByteBuffer buffer) {
+			if(buffer.remaining() < 4) {
+				return -1;
+			}
+			int length = buffer.getInt(buffer.position());
+			if(length <= 0 || buffer.remaining() - 4 < length) {
+				return -1;
+			}
+			return 4 + length;
+		}
+
+		@Override
+		public Record read(ByteBuffer record) throws IOException {
+			ByteBuffer buffer = record.slice();
+			record.position(record.limit());
+			buffer.getInt();
+			String key = readString(buffer);
+			String contentType = readString(buffer);
+			int entries = buffer.getInt();
+			Map<String, String> metadata = (entries == 0
+			                                ? Collections.<String, String>emptyMap()
+			                                : new LinkedHashMap<String, String>());
+			for(int i = 0; i < entries; i++) {
+				metadata.put(readString(buffer), readString(buffer));
+			}
+			entries = buffer.getInt();
+			List<Link> links = (entries == 0 ? Collections.<Link>emptyList() : new ArrayList<Link>(entries));
+			for(int i = 0; i < entries; i++) {
+				links.add(new Link(readString(buffer), readString(buffer), readString(buffer)));
+			}
+			entries = buffer.getInt();
+			List<Tuple2<String, String>> indexes = (entries == 0
+			                                        ? Collections.<Tuple2<String, String>>emptyList()
+			                                        : new ArrayList<Tuple2<String, String>>(entries));
+			for(int i = 0; i < entries; i++) {
+				indexes.add(Tuple.of(readString(buffer), readString(buffer)));
+			}
+			int length = buffer.getInt();
+			if(null == key || length < 0 || length > buffer.remaining()) {
+				throw new IOException("Record for key " + key + " is corrupt.");
+			}
+			buffer.limit(buffer.position() + length);
+			return new Record(key, contentType, metadata, links, indexes, buffer.slice());
+		}
+	};
+
+	private static final Charset     UTF8 = Charset.forName("UTF-8");
+	private static final JsonFactory JSON = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+	private final String suffix;
+
+	Format(String suffix) {
+		this.suffix = suffix;
+	}
+
+	/**
+	 * @return the suffix of the names of files in this format
+	 */
+	public String suffix() {
+		return suffix;
+	}
+
+	/**
+	 * Write a record.
+	 *
+	 * @param record
+	 * 		the record to write
+	 * @param out
+	 * 		the stream to write the record to
+	 *
+	 * @throws IOException
+	 * 		if the record can't be written
+	 */
+	public abstract void write(Record record, OutputStream out) throws IOException;
+
+	/**
+	 * Get the length of the record that starts at the buffer's position, without reading it.
+	 *
+	 * @param buffer
+	 * 		the records
+	 *
+	 * @return the length of the record in bytes, or {@literal -1} if the buffer doesn't hold a whole record
+	 */
+	public abstract int length(ByteBuffer buffer);
+
+	/**
+	 * Read a record. The value of the record may share its contents with the given buffer.
+	 *
+	 * @param record
+	 * 		a single record, from its position to its limit
+	 *
+	 * @return the record
+	 *
+	 * @throws IOException
+	 * 		if the record is corrupt
+	 */
+	public abstract Record read(ByteBuffer record) throws IOException;
+
+	private static void expect(JsonToken token, JsonToken expected) throws IOException {
+		if(token != expected) {
+			throw new IOException("Expected " + expected + " but found " + token);
+		}
+	}
+
+	/**
+	 * Read the string fields of a JSON object up to its end.
+	 */
+	private static Map<String, String> readFields(JsonParser json) throws IOException {
+		Map<String, String> fields = new LinkedHashMap<>();
+		while(json.nextToken() == JsonToken.FIELD_NAME) {
+			String name = json.getCurrentName();
+			json.nextToken();
+			fields.put(name, json.getText());
+		}
+		return fields;
+	}
+
+	/**
+	 * Get the number of bytes a count of strings takes up, followed by the strings.
+	 */
+	private static int sizeOf(List<byte[]> strings) {
+		int length = 4;
+		for(byte[] bytes : strings) {
+			length += 4 + bytes.length;
+		}
+		return length;
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		if(null == bytes) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if(length < 0) {
+			return null;
+		}
+		if(length > buffer.remaining()) {
+			throw new IOException("String of " + length + " bytes runs past the end of its record.");
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.jbrisbin.riaktor.backup;
+
+import com.jbrisbin.riaktor.Link;
+import reactor.tuple.Tuple2;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An object as it is written to and read from an export: its key, content type, metadata, links, secondary index
+ * entries and raw value. An object with siblings is exported as one record per sibling.
+ *
+ * @author Jon Brisbin
+ */
+public final class Record {
+
+	private final String                       key;
+	private final String                       contentType;
+	private final Map<String, String>          metadata;
+	private final List<Link>                   links;
+	private final List<Tuple2<String, String>> indexes;
+	private final ByteBuffer                   value;
+
+	public Record(String key,
+	              String contentType,
+	              Map<String, String> metadata,
+	              List<Link> links,
+	              List<Tuple2<String, String>> indexes,
+	              ByteBuffer value) {
+		this.key = key;
+		this.contentType = contentType;
+		this.metadata = metadata;
+		this.links = links;
+		this.indexes = indexes;
+		this.value = value;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the content type of the value, or {@literal null} if it had none
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	public Map<String, String> getMetadata() {
+		return metadata;
+	}
+
+	public List<Link> getLinks() {
+		return links;
+	}
+
+	/**
+	 * @return the name and value of each secondary index entry
+	 */
+	public List<Tuple2<String, String>> getIndexes() {
+		return indexes;
+	}
+
+	/**
+	 * @return the value, from its position to its limit
+	 */
+	public ByteBuffer getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return "Record{" +
+				"key='" + key + '\'' +
+				", contentType='" + contentType + '\'' +
+				", metadata=" + metadata +
+				", links=" + links.size() +
+				", indexes=" + indexes +
+				", size=" + value.remaining() +
+				'}';
+	}
+
+}
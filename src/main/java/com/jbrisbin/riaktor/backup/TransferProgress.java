@@ -0,0 +1,90 @@
+package com.jbrisbin.riaktor.backup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How far an export or import has got. Totals include what was transferred before the transfer was resumed, while
+ * throughput only counts what has been transferred since.
+ *
+ * @author Jon Brisbin
+ */
+public final class TransferProgress {
+
+	private final long    records;
+	private final long    bytes;
+	private final long    transferredRecords;
+	private final long    transferredBytes;
+	private final long    elapsed;
+	private final boolean complete;
+
+	TransferProgress(long records,
+	                 long bytes,
+	                 long transferredRecords,
+	                 long transferredBytes,
+	                 long elapsed,
+	                 boolean complete) {
+		this.records = records;
+		this.bytes = bytes;
+		this.transferredRecords = transferredRecords;
+		this.transferredBytes = transferredBytes;
+		this.elapsed = elapsed;
+		this.complete = complete;
+	}
+
+	/**
+	 * @return the number of records transferred in total
+	 */
+	public long records() {
+		return records;
+	}
+
+	/**
+	 * @return the number of bytes of records transferred in total
+	 */
+	public long bytes() {
+		return bytes;
+	}
+
+	/**
+	 * Get the time spent transferring since the transfer was started or resumed.
+	 *
+	 * @param unit
+	 * 		the unit to return the time in
+	 *
+	 * @return the time spent
+	 */
+	public long elapsed(TimeUnit unit) {
+		return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+	}
+
+	public double recordsPerSecond() {
+		return perSecond(transferredRecords);
+	}
+
+	public double bytesPerSecond() {
+		return perSecond(transferredBytes);
+	}
+
+	/**
+	 * @return {@literal true} if every record has been transferred
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	private double perSecond(long count) {
+		return (elapsed > 0 ? count * 1e9 / elapsed : 0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d records, %d bytes in %.1fs (%.0f records/s, %.1f MB/s)%s",
+		                     records,
+		                     bytes,
+		                     elapsed / 1e9,
+		                     recordsPerSecond(),
+		                     bytesPerSecond() / (1024 * 1024),
+		                     (complete ? ", complete" : ""));
+	}
+
+}
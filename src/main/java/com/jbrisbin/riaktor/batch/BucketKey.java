@@ -0,0 +1,48 @@
+package com.jbrisbin.riaktor.batch;
+
+/**
+ * Identifies an object by its bucket and key so pending operations on the same object can be merged.
+ *
+ * @author Jon Brisbin
+ */
+final class BucketKey {
+
+	private final String bucket;
+	private final String key;
+
+	BucketKey(String bucket, String key) {
+		this.bucket = bucket;
+		this.key = key;
+	}
+
+	String getBucket() {
+		return bucket;
+	}
+
+	String getKey() {
+		return key;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(this == o) {
+			return true;
+		}
+		if(!(o instanceof BucketKey)) {
+			return false;
+		}
+		BucketKey that = (BucketKey)o;
+		return bucket.equals(that.bucket) && key.equals(that.key);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * bucket.hashCode() + key.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return bucket + "/" + key;
+	}
+
+}
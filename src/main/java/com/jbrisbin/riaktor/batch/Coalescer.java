@@ -0,0 +1,151 @@
+package com.jbrisbin.riaktor.batch;
+
+import com.jbrisbin.riaktor.Riaktor;
+import reactor.support.NamedDaemonThreadFactory;
+import reactor.util.Assert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Merges operations on the same object that arrive within a window, so each object is sent once per window. A window
+ * is flushed every {@code flushInterval}, as soon as operations on {@code maxKeys} different objects are pending, or
+ * when the coalescer is closed.
+ *
+ * @param <V>
+ * 		the type of the values that are merged
+ * @param <P>
+ * 		the type of the pending operation values are merged into
+ *
+ * @author Jon Brisbin
+ */
+abstract class Coalescer<V, P extends Coalescer.Pending<V>> implements Closeable {
+
+	final Riaktor riaktor;
+
+	private final int                      maxKeys;
+	private final ScheduledExecutorService scheduler;
+
+	private volatile Window window = new Window();
+
+	Coalescer(Riaktor riaktor, int maxKeys, long flushInterval, TimeUnit unit, String threadName) {
+		Assert.notNull(riaktor, "Riaktor cannot be null.");
+		Assert.isTrue(maxKeys > 0, "Max keys must be greater than 0.");
+		Assert.isTrue(flushInterval > 0, "Flush interval must be greater than 0.");
+		this.riaktor = riaktor;
+		this.maxKeys = maxKeys;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory(threadName));
+		this.scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, flushInterval, flushInterval, unit);
+	}
+
+	/**
+	 * Create the pending operation on an object that values for it are merged into until its window is flushed.
+	 */
+	abstract P pending(BucketKey id);
+
+	/**
+	 * Send a pending operation whose window has been flushed. Flushes don't overlap, so an operation is sent after the
+	 * one on the same object from the window before it.
+	 */
+	abstract void send(P pending);
+
+	/**
+	 * Merge a value into the pending operation on an object in the current window.
+	 *
+	 * @return the pending operation the value was merged into
+	 */
+	P merge(BucketKey id, V value) {
+		for(; ; ) {
+			Window w = window;
+			P pending = w.pending.get(id);
+			boolean full = false;
+			if(null == pending) {
+				P created = pending(id);
+				if(null == (pending = w.pending.putIfAbsent(id, created))) {
+					pending = created;
+					full = (w.keys.incrementAndGet() >= maxKeys);
+				}
+			}
+			// the window may have been flushed between getting it and adding to it
+			if(pending.add(value)) {
+				if(full) {
+					flush(w);
+				}
+				return pending;
+			}
+		}
+	}
+
+	/**
+	 * Send every pending operation now.
+	 */
+	public void flush() {
+		flush(window);
+	}
+
+	@Override
+	public void close() throws IOException {
+		scheduler.shutdown();
+		flush();
+	}
+
+	private void flush(Window w) {
+		synchronized(this) {
+			if(window != w) {
+				return;
+			}
+			window = new Window();
+
+			for(P pending : w.pending.values()) {
+				pending.close();
+				send(pending);
+			}
+		}
+	}
+
+	private class Window {
+		private final ConcurrentHashMap<BucketKey, P> pending = new ConcurrentHashMap<>();
+		private final AtomicInteger                   keys    = new AtomicInteger();
+	}
+
+	/**
+	 * An operation on a single object that values are merged into until its window is flushed.
+	 */
+	abstract static class Pending<V> {
+		final BucketKey id;
+
+		private boolean closed;
+
+		Pending(BucketKey id) {
+			this.id = id;
+		}
+
+		/**
+		 * Merge a value into this operation. Called while holding its lock.
+		 */
+		abstract void merge(V value);
+
+		synchronized boolean add(V value) {
+			if(closed) {
+				return false;
+			}
+			merge(value);
+			return true;
+		}
+
+		synchronized void close() {
+			closed = true;
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+package com.jbrisbin.riaktor.batch;
+
+import com.jbrisbin.riaktor.Riaktor;
+import reactor.core.composable.Deferred;
+import reactor.core.composable.Promise;
+import reactor.core.composable.spec.Promises;
+import reactor.function.Consumer;
+import reactor.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges increments to Riak counters so that any number of increments to the same counter become a single {@code
+ * RpbCounterUpdateReq}. Pending increments are flushed every {@code flushInterval}, as soon as increments to {@code
+ * maxKeys} different counters are pending, or when the accumulator is closed. Every caller that increments a counter
+ * in the same window gets the same {@link Promise}, which completes when the merged increment does.
+ *
+ * @author Jon Brisbin
+ */
+public class CounterAccumulator extends Coalescer<Long, CounterAccumulator.PendingIncrement> {
+
+	private volatile boolean returnValue;
+
+	/**
+	 * Create an accumulator that sends merged increments through the given {@link Riaktor}.
+	 *
+	 * @param riaktor
+	 * 		the {@link Riaktor} to send increments through
+	 * @param maxKeys
+	 * 		the number of different counters that can have increments pending before they are flushed
+	 * @param flushInterval
+	 * 		the maximum time an increment is held before it is flushed
+	 * @param unit
+	 * 		the unit of the flush interval
+	 */
+	public CounterAccumulator(Riaktor riaktor, int maxKeys, long flushInterval, TimeUnit unit) {
+		super(riaktor, maxKeys, flushInterval, unit, "riaktor-counters");
+	}
+
+	/**
+	 * Set whether merged increments should return the new value of the counter. If not, the {@link Promise} returned by
+	 * {@link #increment(String, String, long)} completes with {@literal null}.
+	 *
+	 * @param returnValue
+	 *
+	 * @return {@literal this}
+	 */
+	public CounterAccumulator returnValue(boolean returnValue) {
+		this.returnValue = returnValue;
+		return this;
+	}
+
+	/**
+	 * Add the given amount to a counter the next time pending increments are flushed.
+	 *
+	 * @param bucket
+	 * 		the bucket the counter is in
+	 * @param key
+	 * 		the key of the counter
+	 * @param amount
+	 * 		the amount to add, which may be negative
+	 *
+	 * @return a {@link Promise} that completes when the merged increment has been applied
+	 */
+	public Promise<Long> increment(String bucket, String key, long amount) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(key, "Key cannot be null.");
+
+		return merge(new BucketKey(bucket, key), amount).deferred.compose();
+	}
+
+	@Override
+	PendingIncrement pending(BucketKey id) {
+		return new PendingIncrement(id);
+	}
+
+	@Override
+	void send(PendingIncrement pending) {
+		boolean returnValue = this.returnValue;
+		long amount = pending.amount();
+		if(amount == 0 && !returnValue) {
+			pending.deferred.accept((Long)null);
+			return;
+		}
+		riaktor.increment(pending.id.getBucket(), pending.id.getKey(), amount)
+		       .returnValue(returnValue)
+		       .commit()
+		       .onSuccess(pending)
+		       .onError(pending.errorConsumer());
+	}
+
+	class PendingIncrement extends Coalescer.Pending<Long> implements Consumer<Long> {
+		private final Deferred<Long, Promise<Long>> deferred;
+
+		private long amount;
+
+		private PendingIncrement(BucketKey id) {
+			super(id);
+			this.deferred = Promises.<Long>defer().env(riaktor.environment()).synchronousDispatcher().get();
+		}
+
+		@Override
+		void merge(Long delta) {
+			amount += delta;
+		}
+
+		private synchronized long amount() {
+			return amount;
+		}
+
+		@Override
+		public void accept(Long value) {
+			deferred.accept(value);
+		}
+
+		private Consumer<Throwable> errorConsumer() {
+			return new Consumer<Throwable>() {
+				@Override
+				public void accept(Throwable t) {
+					deferred.accept(t);
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,172 @@
+package com.jbrisbin.riaktor.batch;
+
+import com.jbrisbin.riaktor.Entry;
+import com.jbrisbin.riaktor.Riaktor;
+import com.jbrisbin.riaktor.op.PutOperation;
+import reactor.core.composable.Deferred;
+import reactor.core.composable.Promise;
+import reactor.core.composable.spec.Promises;
+import reactor.function.Consumer;
+import reactor.util.Assert;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers puts and writes them to Riak in the background. Puts to the same key within a flush window replace each
+ * other, so only the latest value is sent. Pending puts are flushed every {@code maxAge}, as soon as puts to {@code
+ * maxKeys} different keys are pending, or when the buffer is closed.
+ * <p>
+ * The vclock returned by each write is remembered and sent with the next write to the same key, and a write is not
+ * sent until the previous write to that key has finished, so buffered writes to a key never create siblings of each
+ * other.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public class WriteBehindBuffer extends Coalescer<Object, WriteBehindBuffer.PendingWrite> {
+
+	private final ConcurrentMap<BucketKey, Promise<Entry<Object>>> inFlight;
+	private final Map<BucketKey, byte[]>                           vclocks;
+
+	/**
+	 * Create a buffer that writes through the given {@link Riaktor}.
+	 *
+	 * @param riaktor
+	 * 		the {@link Riaktor} to write through
+	 * @param maxKeys
+	 * 		the number of different keys that can have puts pending before they are flushed
+	 * @param maxAge
+	 * 		the maximum time a put is held before it is flushed
+	 * @param unit
+	 * 		the unit of the maximum age
+	 */
+	public WriteBehindBuffer(Riaktor riaktor, final int maxKeys, long maxAge, TimeUnit unit) {
+		super(riaktor, maxKeys, maxAge, unit, "riaktor-write-behind");
+		this.inFlight = new ConcurrentHashMap<>();
+		this.vclocks = Collections.synchronizedMap(new LinkedHashMap<BucketKey, byte[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<BucketKey, byte[]> eldest) {
+				return size() > maxKeys * 16;
+			}
+		});
+	}
+
+	/**
+	 * Buffer a put. If another put to the same key is already pending, it is replaced and its callers get the result of
+	 * this one.
+	 *
+	 * @param bucket
+	 * 		the bucket to put the object in
+	 * @param key
+	 * 		the key to put the object under
+	 * @param obj
+	 * 		the object to put
+	 * @param <T>
+	 * 		the type of the object
+	 *
+	 * @return a {@link Promise} that completes when the put, or a later one that replaced it, has been written
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Promise<Entry<T>> put(String bucket, String key, T obj) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(key, "Key cannot be null.");
+		Assert.notNull(obj, "Object cannot be null.");
+
+		return (Promise<Entry<T>>)(Promise)merge(new BucketKey(bucket, key), obj).deferred.compose();
+	}
+
+	@Override
+	PendingWrite pending(BucketKey id) {
+		return new PendingWrite(id);
+	}
+
+	@Override
+	void send(final PendingWrite pending) {
+		final Promise<Entry<Object>> p = pending.deferred.compose();
+		Promise<Entry<Object>> previous = inFlight.put(pending.id, p);
+		whenDone(p, new Runnable() {
+			@Override
+			public void run() {
+				inFlight.remove(pending.id, p);
+			}
+		});
+
+		if(null != previous && previous.isPending()) {
+			// wait for the previous write to this key so we send the vclock it returns
+			whenDone(previous, new Runnable() {
+				@Override
+				public void run() {
+					write(pending);
+				}
+			});
+		} else {
+			write(pending);
+		}
+	}
+
+	private void write(final PendingWrite pending) {
+		PutOperation<Object> put = riaktor.put(pending.id.getBucket(), pending.id.getKey(), pending.obj);
+		byte[] vclock = vclocks.get(pending.id);
+		if(null != vclock) {
+			put.vclock(vclock);
+		}
+		Promise<Entry<Object>> p = put.returnBody(false).commit();
+		p.onSuccess(new Consumer<Entry<Object>>() {
+			@Override
+			public void accept(Entry<Object> entry) {
+				if(null != entry && null != entry.getHeaders()) {
+					vclocks.put(pending.id, entry.getHeaders().getVclock());
+				}
+				pending.deferred.accept(entry);
+			}
+		});
+		p.onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				vclocks.remove(pending.id);
+				pending.deferred.accept(t);
+			}
+		});
+	}
+
+	/**
+	 * Run a task once a promise completes either way. {@link Promise#onComplete(Consumer)} can miss a promise that
+	 * completes on another thread while the consumer is being added, so this uses {@code onSuccess} and {@code
+	 * onError}, which can't.
+	 */
+	private static <T> void whenDone(Promise<T> p, final Runnable task) {
+		p.onSuccess(new Consumer<T>() {
+			@Override
+			public void accept(T t) {
+				task.run();
+			}
+		}).onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				task.run();
+			}
+		});
+	}
+
+	class PendingWrite extends Coalescer.Pending<Object> {
+		private final Deferred<Entry<Object>, Promise<Entry<Object>>> deferred;
+
+		private Object obj;
+
+		private PendingWrite(BucketKey id) {
+			super(id);
+			this.deferred = Promises.<Entry<Object>>defer().env(riaktor.environment()).synchronousDispatcher().get();
+		}
+
+		@Override
+		void merge(Object obj) {
+			this.obj = obj;
+		}
+	}
+
+}
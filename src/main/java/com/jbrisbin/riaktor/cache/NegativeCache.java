@@ -0,0 +1,193 @@
+package com.jbrisbin.riaktor.cache;
+
+import com.jbrisbin.riaktor.policy.NegativeCachePolicy;
+import com.jbrisbin.riaktor.support.ScalableBloomFilter;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers gets for keys of a bucket that are known to be missing without asking Riak. A key is known to be missing if
+ * a get found it missing a short time ago, or if the bucket's keys have been loaded and the Bloom filter of the keys
+ * that exist definitely doesn't hold it.
+ * <p>
+ * Puts and deletes made through the same {@link com.jbrisbin.riaktor.Riaktor} keep the cache up to date. Keys written
+ * by other clients after the keys were loaded are not seen until they are loaded again, so the Bloom filter should
+ * only be used for buckets this client is the only writer of.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public class NegativeCache {
+
+	private final String                      bucket;
+	private final long                        missTtl;
+	private final int                         maxMisses;
+	private final ConcurrentMap<String, Long> misses = new ConcurrentHashMap<>();
+	private final AtomicLong                  writes = new AtomicLong();
+	private final AtomicLong                  hits   = new AtomicLong();
+	private final NegativeCachePolicy         policy;
+
+	private volatile ScalableBloomFilter keys;
+	private volatile boolean             loaded;
+
+	public NegativeCache(String bucket, NegativeCachePolicy policy) {
+		this.bucket = bucket;
+		this.policy = policy;
+		this.missTtl = policy.missTtl();
+		this.maxMisses = policy.maxMisses();
+		this.keys = newFilter();
+	}
+
+	public String bucket() {
+		return bucket;
+	}
+
+	/**
+	 * Whether a key is known to be missing. Counts a hit if it is.
+	 *
+	 * @param key
+	 * 		the key to check
+	 *
+	 * @return {@literal true} if a get of the key can be answered without asking Riak
+	 */
+	public boolean isMissing(String key) {
+		Long expires = misses.get(key);
+		boolean missing;
+		if(null != expires) {
+			missing = expires - System.nanoTime() > 0;
+			if(!missing) {
+				misses.remove(key, expires);
+			}
+		} else {
+			missing = false;
+		}
+		if(!missing && loaded) {
+			missing = !keys.mightContain(key);
+		}
+		if(missing) {
+			hits.incrementAndGet();
+		}
+		return missing;
+	}
+
+	/**
+	 * Get a stamp to pass to {@link #missing(String, long)} once a get started now finds its key missing.
+	 *
+	 * @return the number of writes made so far
+	 */
+	public long stamp() {
+		return writes.get();
+	}
+
+	/**
+	 * Remember that a get found a key missing, unless the bucket has been written to since the get was sent, since the
+	 * key may exist now.
+	 *
+	 * @param key
+	 * 		the missing key
+	 * @param stamp
+	 * 		the {@link #stamp()} taken when the get was sent
+	 */
+	public void missing(String key, long stamp) {
+		if(writes.get() != stamp) {
+			return;
+		}
+		if(misses.size() >= maxMisses) {
+			expire();
+			if(misses.size() >= maxMisses) {
+				return;
+			}
+		}
+		misses.put(key, System.nanoTime() + missTtl);
+	}
+
+	/**
+	 * Note that a key is being stored.
+	 *
+	 * @param key
+	 * 		the key being stored
+	 */
+	public void put(String key) {
+		writes.incrementAndGet();
+		// add again if the keys started loading into a new filter meanwhile
+		ScalableBloomFilter filter;
+		do {
+			filter = keys;
+			filter.add(key);
+		} while(filter != keys);
+		misses.remove(key);
+	}
+
+	/**
+	 * Note that a key is being deleted.
+	 *
+	 * @param key
+	 * 		the key being deleted
+	 *
+	 * @return the {@link #stamp()} to remember the key as missing with once the delete succeeds
+	 */
+	public long delete(String key) {
+		long stamp = writes.incrementAndGet();
+		misses.remove(key);
+		return stamp;
+	}
+
+	/**
+	 * Start loading the keys that exist in the bucket. Until {@link #loaded(ScalableBloomFilter)} is called, only recent misses are
+	 * answered locally.
+	 *
+	 * @return the filter to add the keys to, which {@link #put(String)} also adds to while the keys are loaded
+	 */
+	public synchronized ScalableBloomFilter loading() {
+		loaded = false;
+		keys = newFilter();
+		return keys;
+	}
+
+	/**
+	 * Note that every key in the bucket has been added to the filter returned by {@link #loading()}.
+	 *
+	 * @param filter
+	 * 		the filter the keys were added to, which is ignored if the keys have started loading again since
+	 */
+	public synchronized void loaded(ScalableBloomFilter filter) {
+		if(filter == keys) {
+			loaded = true;
+		}
+	}
+
+	/**
+	 * Whether the keys of the bucket have been loaded and the Bloom filter of them is being used.
+	 *
+	 * @return {@literal true} if the keys have been loaded and the filter isn't saturated
+	 */
+	public boolean isLoaded() {
+		return loaded && !keys.isSaturated();
+	}
+
+	/**
+	 * Get the number of gets answered locally.
+	 *
+	 * @return the number of hits
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	private ScalableBloomFilter newFilter() {
+		return new ScalableBloomFilter(policy.expectedKeys(), policy.falsePositiveRate(), policy.maxMemory() * 8);
+	}
+
+	private void expire() {
+		long now = System.nanoTime();
+		for(Iterator<Long> it = misses.values().iterator(); it.hasNext(); ) {
+			if(it.next() - now <= 0) {
+				it.remove();
+			}
+		}
+	}
+
+}
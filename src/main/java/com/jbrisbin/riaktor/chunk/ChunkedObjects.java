@@ -0,0 +1,577 @@
+package com.jbrisbin.riaktor.chunk;
+
+import com.jbrisbin.riaktor.Entry;
+import com.jbrisbin.riaktor.Riaktor;
+import com.jbrisbin.riaktor.op.DeleteOperation;
+import com.jbrisbin.riaktor.op.PutOperation;
+import com.jbrisbin.riaktor.support.RequestPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.composable.Deferred;
+import reactor.core.composable.Promise;
+import reactor.core.composable.Stream;
+import reactor.core.composable.spec.Promises;
+import reactor.core.composable.spec.Streams;
+import reactor.function.Consumer;
+import reactor.util.Assert;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stores objects too large to keep in a single Riak value by splitting them into fixed-size chunks. Each chunk is
+ * stored under its own key and a {@link Manifest} describing the chunks is stored under the object's key once every
+ * chunk has been written, so readers never see a partially written object. Objects no larger than a single chunk are
+ * stored as they are.
+ * <p>
+ * Chunks are written and read several at a time across the connection pool, and reads hand chunks on in order as
+ * they arrive, so the whole object never has to be held in memory.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public class ChunkedObjects {
+
+	private static final Logger LOG          = LoggerFactory.getLogger(ChunkedObjects.class);
+	private static final String CONTENT_TYPE = "application/octet-stream";
+
+	private final Riaktor riaktor;
+	private final int     chunkSize;
+	private final int     parallelism;
+
+	/**
+	 * Create a store for chunked objects that reads and writes through the given {@link Riaktor}.
+	 *
+	 * @param riaktor
+	 * 		the {@link Riaktor} to read and write through
+	 * @param chunkSize
+	 * 		the size of each chunk in bytes, above which objects are chunked
+	 * @param parallelism
+	 * 		the number of chunks of a single object to read or write at once
+	 */
+	public ChunkedObjects(Riaktor riaktor, int chunkSize, int parallelism) {
+		Assert.notNull(riaktor, "Riaktor cannot be null.");
+		Assert.isTrue(chunkSize > 0, "Chunk size must be greater than 0.");
+		Assert.isTrue(parallelism > 0, "Parallelism must be greater than 0.");
+		this.riaktor = riaktor;
+		this.chunkSize = chunkSize;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Store an object, splitting it into chunks if it is larger than the chunk size. The chunks of the version of the
+	 * object being replaced are deleted once the new version has been stored.
+	 *
+	 * @param bucket
+	 * 		the bucket to store the object in
+	 * @param key
+	 * 		the key to store the object under
+	 * @param value
+	 * 		the contents of the object, from its position to its limit
+	 *
+	 * @return a {@link Promise} that completes with the {@link Manifest} of the object, or {@literal null} if it wasn't
+	 * chunked, once it has been stored
+	 */
+	public Promise<Manifest> put(final String bucket, final String key, ByteBuffer value) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(key, "Key cannot be null.");
+		Assert.notNull(value, "Value cannot be null.");
+
+		final Deferred<Manifest, Promise<Manifest>> d = promise();
+		final ByteBuffer buffer = value.duplicate();
+		final int size = buffer.remaining();
+
+		if(size <= chunkSize) {
+			replace(d, bucket, key, buffer, null);
+			return d.compose();
+		}
+
+		final Manifest manifest = new Manifest(bucket,
+		                                       key,
+		                                       Long.toHexString(ThreadLocalRandom.current().nextLong()),
+		                                       size,
+		                                       chunkSize,
+		                                       (size + chunkSize - 1) / chunkSize);
+		new RequestPipeline<Entry<ByteBuffer>>(manifest.getChunkCount(), parallelism) {
+			private int       outstanding;
+			private Throwable failure;
+
+			@Override
+			protected Promise<Entry<ByteBuffer>> request(int index) {
+				ByteBuffer chunk = buffer.duplicate();
+				chunk.position(index * chunkSize);
+				chunk.limit(Math.min(size, (index + 1) * chunkSize));
+				synchronized(this) {
+					outstanding++;
+				}
+				Promise<Entry<ByteBuffer>> p = riaktor.put(bucket, manifest.chunkKey(index), chunk.slice())
+				                                      .contentType(CONTENT_TYPE)
+				                                      .returnBody(false)
+				                                      .commit();
+				p.onSuccess(new Consumer<Entry<ByteBuffer>>() {
+					@Override
+					public void accept(Entry<ByteBuffer> entry) {
+						settled();
+					}
+				});
+				p.onError(new Consumer<Throwable>() {
+					@Override
+					public void accept(Throwable t) {
+						settled();
+					}
+				});
+				return p;
+			}
+
+			@Override
+			protected void result(int index, Entry<ByteBuffer> result) {
+			}
+
+			@Override
+			protected void complete() {
+				replace(d, bucket, key, ByteBuffer.allocate(0), manifest);
+			}
+
+			@Override
+			protected void fail(Throwable t) {
+				boolean settled;
+				synchronized(this) {
+					failure = t;
+					settled = (outstanding == 0);
+				}
+				if(settled) {
+					abort(d, manifest, t);
+				}
+			}
+
+			private void settled() {
+				Throwable t;
+				synchronized(this) {
+					t = (--outstanding == 0 ? failure : null);
+				}
+				// chunks still being written when one failed are only deleted once they've landed
+				if(null != t) {
+					abort(d, manifest, t);
+				}
+			}
+		}.credit(Long.MAX_VALUE);
+
+		return d.compose();
+	}
+
+	/**
+	 * Read an object as a {@link Stream} of its chunks, in order. The stream's batch size is the number of chunks, so
+	 * aggregating operations like {@link Stream#collect()} see the whole object. Chunks start flowing once every
+	 * consumer of the returned {@link Promise} has been called, so consumers should be attached to the stream there.
+	 *
+	 * @param bucket
+	 * 		the bucket the object is in
+	 * @param key
+	 * 		the key of the object
+	 *
+	 * @return a {@link Promise} that completes with a {@link Stream} of the chunks of the object, or {@literal null} if
+	 * the object doesn't exist
+	 */
+	public Promise<Stream<ByteBuffer>> get(final String bucket, final String key) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(key, "Key cannot be null.");
+
+		final Deferred<Stream<ByteBuffer>, Promise<Stream<ByteBuffer>>> d = promise();
+		read(bucket, key, new ChunkConsumer() {
+			private Deferred<ByteBuffer, Stream<ByteBuffer>> chunks;
+
+			@Override
+			public void found(Manifest manifest, ByteBuffer value) {
+				chunks = Streams.<ByteBuffer>defer()
+				                .env(riaktor.environment())
+				                .synchronousDispatcher()
+				                .batchSize(null != manifest ? manifest.getChunkCount() : 1)
+				                .get();
+				d.accept(chunks.compose());
+				if(null == manifest) {
+					chunks.accept(value);
+				} else {
+					pipeline(manifest, this).credit(Long.MAX_VALUE);
+				}
+			}
+
+			@Override
+			public void chunk(ByteBuffer chunk) {
+				chunks.accept(chunk);
+			}
+
+			@Override
+			public void complete() {
+				if(null == chunks) {
+					d.accept((Stream<ByteBuffer>)null);
+				}
+			}
+
+			@Override
+			public void fail(Throwable t) {
+				if(null == chunks) {
+					d.accept(t);
+				} else {
+					chunks.accept(t);
+				}
+			}
+		});
+		return d.compose();
+	}
+
+	/**
+	 * Open an object for reading as an {@link InputStream}. Chunks are fetched ahead of the reader, but no more than
+	 * {@code parallelism} of them are held at once, so a slow reader doesn't fill the heap. Reads block until the next
+	 * chunk has arrived, and the first read throws a {@link FileNotFoundException} if the object doesn't exist.
+	 *
+	 * @param bucket
+	 * 		the bucket the object is in
+	 * @param key
+	 * 		the key of the object
+	 *
+	 * @return an {@link InputStream} over the contents of the object
+	 */
+	public InputStream open(String bucket, String key) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(key, "Key cannot be null.");
+
+		ChunkInputStream in = new ChunkInputStream(bucket, key);
+		read(bucket, key, in);
+		return in;
+	}
+
+	/**
+	 * Delete an object and, if it was chunked, its chunks.
+	 *
+	 * @param bucket
+	 * 		the bucket the object is in
+	 * @param key
+	 * 		the key of the object
+	 *
+	 * @return a {@link Promise} that completes once the object and its chunks have been deleted
+	 */
+	public Promise<Void> delete(final String bucket, final String key) {
+		Assert.notNull(bucket, "Bucket cannot be null.");
+		Assert.notNull(key, "Key cannot be null.");
+
+		final Deferred<Void, Promise<Void>> d = promise();
+		fail(d, riaktor.get(bucket, key, ByteBuffer.class).head(true).commit())
+				.onSuccess(new Consumer<Entry<ByteBuffer>>() {
+					@Override
+					public void accept(Entry<ByteBuffer> entry) {
+						// delete the manifest first so nobody reads an object whose chunks are going away
+						final Manifest manifest = (null != entry ? Manifest.from(bucket, key, entry.getHeaders()) : null);
+						fail(d, delete(riaktor.delete(bucket, key)))
+								.onSuccess(new Consumer<Void>() {
+									@Override
+									public void accept(Void v) {
+										if(null == manifest) {
+											d.accept((Void)null);
+										} else {
+											deleteChunks(d, manifest);
+										}
+									}
+								});
+					}
+				});
+		return d.compose();
+	}
+
+	/**
+	 * Write the value or manifest stored under the object's key over the version it replaces, carrying that version's
+	 * vclock so the two don't become siblings, and delete the chunks of the replaced version if it was chunked.
+	 *
+	 * @param manifest
+	 * 		the manifest of the new version, or {@literal null} if it isn't chunked, whose chunks are deleted again if it
+	 * 		can't be written
+	 */
+	private void replace(final Deferred<Manifest, Promise<Manifest>> d,
+	                     final String bucket,
+	                     final String key,
+	                     final ByteBuffer value,
+	                     final Manifest manifest) {
+		abort(d, manifest, riaktor.get(bucket, key, ByteBuffer.class).head(true).commit())
+				.onSuccess(new Consumer<Entry<ByteBuffer>>() {
+					@Override
+					public void accept(Entry<ByteBuffer> entry) {
+						final Manifest previous = (null != entry ? Manifest.from(bucket, key, entry.getHeaders()) : null);
+						PutOperation<ByteBuffer> put = riaktor.put(bucket, key, value)
+						                                      .vclock(null != entry ? entry.getHeaders().getVclock() : null)
+						                                      .contentType(CONTENT_TYPE)
+						                                      .returnBody(false);
+						if(null != manifest) {
+							put.metadata(Manifest.SIZE, String.valueOf(manifest.getSize()))
+							   .metadata(Manifest.CHUNK_SIZE, String.valueOf(manifest.getChunkSize()))
+							   .metadata(Manifest.CHUNKS, String.valueOf(manifest.getChunkCount()))
+							   .metadata(Manifest.ID, manifest.getId());
+						}
+						abort(d, manifest, put.commit())
+								.onSuccess(new Consumer<Entry<ByteBuffer>>() {
+									@Override
+									public void accept(Entry<ByteBuffer> stored) {
+										d.accept(manifest);
+										if(null != previous && (null == manifest || !previous.getId().equals(manifest.getId()))) {
+											deleteChunks(null, previous);
+										}
+									}
+								});
+					}
+				});
+	}
+
+	private void deleteChunks(final Deferred<Void, Promise<Void>> d, final Manifest manifest) {
+		new RequestPipeline<Void>(manifest.getChunkCount(), parallelism) {
+			@Override
+			protected Promise<Void> request(int index) {
+				return delete(riaktor.delete(manifest.getBucket(), manifest.chunkKey(index)));
+			}
+
+			@Override
+			protected void result(int index, Void result) {
+			}
+
+			@Override
+			protected void complete() {
+				if(null != d) {
+					d.accept((Void)null);
+				}
+			}
+
+			@Override
+			protected void fail(Throwable t) {
+				if(null != d) {
+					d.accept(t);
+				} else if(LOG.isWarnEnabled()) {
+					LOG.warn("Could not delete the chunks of " + manifest, t);
+				}
+			}
+		}.credit(Long.MAX_VALUE);
+	}
+
+	private void read(final String bucket, final String key, final ChunkConsumer consumer) {
+		Promise<Entry<ByteBuffer>> p = riaktor.get(bucket, key, ByteBuffer.class).commit();
+		p.onSuccess(new Consumer<Entry<ByteBuffer>>() {
+			@Override
+			public void accept(Entry<ByteBuffer> entry) {
+				if(null == entry) {
+					consumer.complete();
+					return;
+				}
+				consumer.found(Manifest.from(bucket, key, entry.getHeaders()), entry.getData());
+			}
+		});
+		p.onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				consumer.fail(t);
+			}
+		});
+	}
+
+	private RequestPipeline<ByteBuffer> pipeline(final Manifest manifest, final ChunkConsumer consumer) {
+		return new RequestPipeline<ByteBuffer>(manifest.getChunkCount(), parallelism) {
+			@Override
+			protected Promise<ByteBuffer> request(final int index) {
+				final Deferred<ByteBuffer, Promise<ByteBuffer>> d = promise();
+				ChunkedObjects.fail(d, riaktor.get(manifest.getBucket(), manifest.chunkKey(index), ByteBuffer.class).commit())
+						.onSuccess(new Consumer<Entry<ByteBuffer>>() {
+							@Override
+							public void accept(Entry<ByteBuffer> entry) {
+								if(null == entry) {
+									d.accept(new IllegalStateException("Chunk " + index + " of " + manifest + " is missing"));
+								} else {
+									d.accept(entry.getData());
+								}
+							}
+						});
+				return d.compose();
+			}
+
+			@Override
+			protected void result(int index, ByteBuffer chunk) {
+				consumer.chunk(chunk);
+			}
+
+			@Override
+			protected void complete() {
+				consumer.complete();
+			}
+
+			@Override
+			protected void fail(Throwable t) {
+				consumer.fail(t);
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Promise<Void> delete(DeleteOperation op) {
+		return (Promise<Void>)op.commit();
+	}
+
+	private <T> Deferred<T, Promise<T>> promise() {
+		return Promises.<T>defer().env(riaktor.environment()).synchronousDispatcher().get();
+	}
+
+	/**
+	 * Pass errors from a step on to the {@link Deferred} of the whole operation.
+	 */
+	private static <T> Promise<T> fail(final Deferred<?, ?> d, Promise<T> p) {
+		return p.onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				d.accept(t);
+			}
+		});
+	}
+
+	/**
+	 * Pass errors from a step of storing an object on to the {@link Deferred} of the whole operation, deleting the
+	 * chunks that were written for it first so they aren't left behind without a manifest.
+	 */
+	private <T> Promise<T> abort(final Deferred<?, ?> d, final Manifest manifest, Promise<T> p) {
+		return p.onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				abort(d, manifest, t);
+			}
+		});
+	}
+
+	private void abort(Deferred<?, ?> d, Manifest manifest, Throwable t) {
+		if(null != manifest) {
+			deleteChunks(null, manifest);
+		}
+		d.accept(t);
+	}
+
+	private interface ChunkConsumer {
+		/**
+		 * Called with the manifest of a chunked object, or with the value of an object that isn't chunked.
+		 */
+		void found(Manifest manifest, ByteBuffer value);
+
+		void chunk(ByteBuffer chunk);
+
+		void complete();
+
+		void fail(Throwable t);
+	}
+
+	private class ChunkInputStream extends InputStream implements ChunkConsumer {
+		private final Object                END    = new Object();
+		private final BlockingQueue<Object> chunks = new LinkedBlockingQueue<>();
+		private final String                bucket;
+		private final String                key;
+
+		private volatile RequestPipeline<ByteBuffer> pipeline;
+
+		private ByteBuffer current;
+		private boolean    done;
+		private boolean    found;
+
+		private ChunkInputStream(String bucket, String key) {
+			this.bucket = bucket;
+			this.key = key;
+		}
+
+		@Override
+		public void found(Manifest manifest, ByteBuffer value) {
+			if(null == manifest) {
+				chunk(value);
+				complete();
+				return;
+			}
+			pipeline = pipeline(manifest, this);
+			pipeline.credit(parallelism);
+		}
+
+		@Override
+		public void chunk(ByteBuffer chunk) {
+			chunks.add(chunk);
+		}
+
+		@Override
+		public void complete() {
+			chunks.add(END);
+		}
+
+		@Override
+		public void fail(Throwable t) {
+			chunks.add(t);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(!next()) {
+				return -1;
+			}
+			return current.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0) {
+				return 0;
+			}
+			if(!next()) {
+				return -1;
+			}
+			int n = Math.min(len, current.remaining());
+			current.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (null != current ? current.remaining() : 0);
+		}
+
+		@Override
+		public void close() {
+			done = true;
+			current = null;
+			chunks.clear();
+		}
+
+		private boolean next() throws IOException {
+			while(null == current || !current.hasRemaining()) {
+				if(done) {
+					return false;
+				}
+				Object next;
+				try {
+					next = chunks.take();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while reading " + bucket + "/" + key);
+				}
+				if(next == END) {
+					done = true;
+					if(!found) {
+						throw new FileNotFoundException(bucket + "/" + key);
+					}
+					return false;
+				}
+				if(next instanceof Throwable) {
+					done = true;
+					throw new IOException("Could not read " + bucket + "/" + key, (Throwable)next);
+				}
+				found = true;
+				if(null != current && null != pipeline) {
+					// the reader is done with a chunk, so there's room to fetch another one
+					pipeline.credit(1);
+				}
+				current = (ByteBuffer)next;
+			}
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.jbrisbin.riaktor.chunk;
+
+import com.jbrisbin.riaktor.Headers;
+
+/**
+ * Describes an object that was split into chunks: how big it is and where its chunks are. The manifest is stored
+ * under the object's own key as user metadata on an empty value, and each chunk under a key derived from it.
+ *
+ * @author Jon Brisbin
+ */
+public final class Manifest {
+
+	static final String SIZE       = "riaktor-size";
+	static final String CHUNK_SIZE = "riaktor-chunk-size";
+	static final String CHUNKS     = "riaktor-chunks";
+	static final String ID         = "riaktor-chunks-id";
+
+	private final String bucket;
+	private final String key;
+	private final String id;
+	private final long   size;
+	private final int    chunkSize;
+	private final int    chunkCount;
+
+	Manifest(String bucket, String key, String id, long size, int chunkSize, int chunkCount) {
+		this.bucket = bucket;
+		this.key = key;
+		this.id = id;
+		this.size = size;
+		this.chunkSize = chunkSize;
+		this.chunkCount = chunkCount;
+	}
+
+	/**
+	 * Read a manifest from the metadata of the object stored under its key.
+	 *
+	 * @return the manifest or {@literal null} if the object wasn't chunked
+	 */
+	static Manifest from(String bucket, String key, Headers headers) {
+		if(null == headers || null == headers.get(CHUNKS)) {
+			return null;
+		}
+		return new Manifest(bucket,
+		                    key,
+		                    headers.get(ID),
+		                    Long.parseLong(headers.get(SIZE)),
+		                    Integer.parseInt(headers.get(CHUNK_SIZE)),
+		                    Integer.parseInt(headers.get(CHUNKS)));
+	}
+
+	public String getBucket() {
+		return bucket;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Get the id that makes the keys of this manifest's chunks unique, so chunks from different versions of the object
+	 * never mix.
+	 *
+	 * @return the id of this version of the object
+	 */
+	public String getId() {
+		return id;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public int getChunkCount() {
+		return chunkCount;
+	}
+
+	/**
+	 * Get the key the chunk at the given index is stored under.
+	 *
+	 * @param index
+	 * 		the index of the chunk
+	 *
+	 * @return the key of the chunk
+	 */
+	public String chunkKey(int index) {
+		return key + "/chunks/" + id + "/" + index;
+	}
+
+	@Override
+	public String toString() {
+		return "Manifest{" +
+				"bucket='" + bucket + '\'' +
+				", key='" + key + '\'' +
+				", id='" + id + '\'' +
+				", size=" + size +
+				", chunkSize=" + chunkSize +
+				", chunkCount=" + chunkCount +
+				'}';
+	}
+
+}
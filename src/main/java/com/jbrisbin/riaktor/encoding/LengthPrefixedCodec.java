@@ -0,0 +1,50 @@
+package com.jbrisbin.riaktor.encoding;
+
+import reactor.function.Consumer;
+import reactor.function.Function;
+import reactor.io.Buffer;
+import reactor.tcp.encoding.Codec;
+import reactor.tcp.encoding.LengthFieldCodec;
+
+/**
+ * Frames messages with a 4-byte length like {@link LengthFieldCodec}, but writes each frame into a buffer sized for
+ * it up front. {@link LengthFieldCodec} prepends the length to the encoded buffer, which fails once a frame is larger
+ * than {@link Buffer#SMALL_BUFFER_SIZE} because a {@link Buffer} can't grow by more than that at once.
+ *
+ * @author Jon Brisbin
+ */
+public class LengthPrefixedCodec<IN, OUT> implements Codec<Buffer, IN, OUT> {
+
+	private final Codec<Buffer, IN, OUT>    delegate;
+	private final LengthFieldCodec<IN, OUT>    lengthFieldCodec;
+
+	public LengthPrefixedCodec(Codec<Buffer, IN, OUT> delegate) {
+		this.delegate = delegate;
+		this.lengthFieldCodec = new LengthFieldCodec<>(delegate);
+	}
+
+	@Override
+	public Function<Buffer, IN> decoder(Consumer<IN> next) {
+		return lengthFieldCodec.decoder(next);
+	}
+
+	@Override
+	public Function<OUT, Buffer> encoder() {
+		final Function<OUT, Buffer> encoder = delegate.encoder();
+		return new Function<OUT, Buffer>() {
+			@Override
+			public Buffer apply(OUT out) {
+				if(null == out) {
+					return null;
+				}
+				Buffer frame = encoder.apply(out);
+				int len = frame.remaining();
+				return new Buffer(4 + len, true)
+						.append(len)
+						.append(frame)
+						.flip();
+			}
+		};
+	}
+
+}
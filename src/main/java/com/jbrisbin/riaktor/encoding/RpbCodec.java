@@ -3,6 +3,7 @@ package com.jbrisbin.riaktor.encoding;
 import com.basho.riak.protobuf.RiakKvPB;
 import com.basho.riak.protobuf.RiakPB;
 import com.basho.riak.protobuf.RiakSearchPB;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import com.jbrisbin.riaktor.event.EventType;
@@ -12,16 +13,46 @@ import reactor.function.Function;
 import reactor.io.Buffer;
 import reactor.tcp.encoding.Codec;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 /**
+ * Encodes requests to and decodes responses from Riak's protocol buffers frames. Decoded responses carry the times
+ * decoding started and finished, so a traced request can tell decoding apart from the network round trip.
+ *
  * @author Jon Brisbin
  */
-public class RpbCodec implements Codec<Buffer, Message, RiakEvent<Message>> {
+public class RpbCodec implements Codec<Buffer, RiakEvent<Message>, RiakEvent<Message>> {
+
+	/**
+	 * Whether a response is one of several frames of a streamed response, like a key listing, and more frames of the
+	 * same response follow it.
+	 *
+	 * @param msg
+	 * 		the decoded response
+	 *
+	 * @return {@literal true} if more frames of the response follow
+	 */
+	public static boolean isPartial(Message msg) {
+		if(msg instanceof RiakKvPB.RpbListKeysResp) {
+			return !((RiakKvPB.RpbListKeysResp)msg).getDone();
+		}
+		if(msg instanceof RiakKvPB.RpbIndexResp) {
+			return !((RiakKvPB.RpbIndexResp)msg).getDone();
+		}
+		if(msg instanceof RiakKvPB.RpbMapRedResp) {
+			return !((RiakKvPB.RpbMapRedResp)msg).getDone();
+		}
+		return false;
+	}
+
 	@Override
-	public Function<Buffer, Message> decoder(final Consumer<Message> next) {
-		return new Function<Buffer, Message>() {
+	public Function<Buffer, RiakEvent<Message>> decoder(final Consumer<RiakEvent<Message>> next) {
+		return new Function<Buffer, RiakEvent<Message>>() {
 			@Override
-			public Message apply(Buffer buffer) {
+			public RiakEvent<Message> apply(Buffer buffer) {
 				while(buffer.remaining() > 0) {
+					long received = System.nanoTime();
 					EventType type = EventType.fromByteFlag(buffer.read());
 					byte[] msgbytes = buffer.asBytes();
 					buffer.skip(msgbytes.length);
@@ -30,7 +61,7 @@ public class RpbCodec implements Codec<Buffer, Message, RiakEvent<Message>> {
 					try {
 						switch(type) {
 							case ErrorResp:
-								msg = RiakPB.RpbGetServerInfoResp.parseFrom(msgbytes);
+								msg = RiakPB.RpbErrorResp.parseFrom(msgbytes);
 								break;
 							case GetClientIdResp:
 								msg = RiakKvPB.RpbGetClientIdResp.parseFrom(msgbytes);
@@ -62,12 +93,19 @@ public class RpbCodec implements Codec<Buffer, Message, RiakEvent<Message>> {
 							case SearchQueryResp:
 								msg = RiakSearchPB.RpbSearchQueryResp.parseFrom(msgbytes);
 								break;
+							case CounterUpdateResp:
+								msg = RiakKvPB.RpbCounterUpdateResp.parseFrom(msgbytes);
+								break;
+							case CounterGetResp:
+								msg = RiakKvPB.RpbCounterGetResp.parseFrom(msgbytes);
+								break;
 						}
 
+						RiakEvent<Message> ev = new RiakEvent<>(msg, type, received, System.nanoTime());
 						if(null != next) {
-							next.accept(msg);
+							next.accept(ev);
 						} else {
-							return msg;
+							return ev;
 						}
 					} catch(InvalidProtocolBufferException e) {
 						throw new IllegalStateException(e);
@@ -87,11 +125,20 @@ public class RpbCodec implements Codec<Buffer, Message, RiakEvent<Message>> {
 				EventType type = ev.getType();
 				Message outmsg = ev.getData();
 
-				byte[] msgbytes = (null != outmsg ? outmsg.toByteArray() : new byte[0]);
-				int len = msgbytes.length + 1;
-				Buffer buff = new Buffer().append(type.byteFlag());
-				if(len > 0) {
-					buff.append(msgbytes);
+				int size = (null != outmsg ? outmsg.getSerializedSize() : 0);
+				// size the buffer up front since a Buffer can't grow past Buffer.SMALL_BUFFER_SIZE
+				Buffer buff = new Buffer(size + 1, true).append(type.byteFlag());
+				if(size > 0) {
+					// serialize straight into the buffer rather than through an intermediate byte[]
+					ByteBuffer bb = buff.byteBuffer();
+					CodedOutputStream out = CodedOutputStream.newInstance(bb.array(), bb.arrayOffset() + bb.position(), size);
+					try {
+						outmsg.writeTo(out);
+						out.checkNoSpaceLeft();
+					} catch(IOException e) {
+						throw new IllegalStateException(e.getMessage(), e);
+					}
+					bb.position(bb.position() + size);
 				}
 
 				return buff.flip();
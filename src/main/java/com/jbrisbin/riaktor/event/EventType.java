@@ -33,7 +33,11 @@ public enum EventType {
 	IndexReq,
 	IndexResp,
 	SearchQueryReq,
-	SearchQueryResp;
+	SearchQueryResp,
+	CounterUpdateReq,
+	CounterUpdateResp,
+	CounterGetReq,
+	CounterGetResp;
 
 	public static EventType fromByteFlag(byte b) {
 		switch(b) {
@@ -95,6 +99,14 @@ public enum EventType {
 				return SearchQueryReq;
 			case 28:
 				return SearchQueryResp;
+			case 50:
+				return CounterUpdateReq;
+			case 51:
+				return CounterUpdateResp;
+			case 52:
+				return CounterGetReq;
+			case 53:
+				return CounterGetResp;
 			default:
 				throw new IllegalArgumentException(b + " not a valid message type.");
 		}
@@ -160,6 +172,14 @@ public enum EventType {
 				return 0x1B;
 			case SearchQueryResp:
 				return 0x1C;
+			case CounterUpdateReq:
+				return 0x32;
+			case CounterUpdateResp:
+				return 0x33;
+			case CounterGetReq:
+				return 0x34;
+			case CounterGetResp:
+				return 0x35;
 			default:
 				return -1;
 		}
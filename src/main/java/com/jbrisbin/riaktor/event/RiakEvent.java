@@ -1,5 +1,6 @@
 package com.jbrisbin.riaktor.event;
 
+import com.jbrisbin.riaktor.trace.Trace;
 import reactor.event.Event;
 
 /**
@@ -9,15 +10,62 @@ public class RiakEvent<T> extends Event<T> {
 
 	private static final long serialVersionUID = 5936580452183790570L;
 	private final EventType type;
+	private final long      received;
+	private final long      decoded;
+
+	private transient Trace trace;
 
 	public RiakEvent(T obj,
 	                 EventType type) {
+		this(obj, type, 0, 0);
+	}
+
+	/**
+	 * Create a decoded response.
+	 *
+	 * @param obj
+	 * 		the response
+	 * @param type
+	 * 		the type of the response
+	 * @param received
+	 * 		the time decoding started, from {@link System#nanoTime()}
+	 * @param decoded
+	 * 		the time decoding finished, from {@link System#nanoTime()}
+	 */
+	public RiakEvent(T obj,
+	                 EventType type,
+	                 long received,
+	                 long decoded) {
 		super(obj);
 		this.type = type;
+		this.received = received;
+		this.decoded = decoded;
 	}
 
 	public EventType getType() {
 		return type;
 	}
 
+	public long getReceived() {
+		return received;
+	}
+
+	public long getDecoded() {
+		return decoded;
+	}
+
+	/**
+	 * Get the {@link Trace} of this request.
+	 *
+	 * @return the trace or {@literal null} if the request isn't sampled
+	 */
+	public Trace getTrace() {
+		return trace;
+	}
+
+	public RiakEvent<T> setTrace(Trace trace) {
+		this.trace = trace;
+		return this;
+	}
+
 }
@@ -0,0 +1,36 @@
+package com.jbrisbin.riaktor.op;
+
+import reactor.core.composable.Promise;
+
+/**
+ * An operation on a Riak counter. The result is the value of the counter, or {@literal null} if an increment was
+ * committed without asking for the new value.
+ *
+ * @author Jon Brisbin
+ */
+public abstract class CounterOperation extends Operation<Long, Promise<Long>> {
+
+	private boolean returnValue;
+
+	/**
+	 * Set whether an increment should return the new value of the counter.
+	 *
+	 * @param returnValue
+	 *
+	 * @return {@literal this}
+	 */
+	public CounterOperation returnValue(boolean returnValue) {
+		this.returnValue = returnValue;
+		return this;
+	}
+
+	/**
+	 * Get whether an increment should return the new value of the counter.
+	 *
+	 * @return {@literal true} if the new value is returned
+	 */
+	public boolean returnValue() {
+		return returnValue;
+	}
+
+}
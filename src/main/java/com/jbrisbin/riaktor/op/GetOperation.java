@@ -1,6 +1,8 @@
 package com.jbrisbin.riaktor.op;
 
 import com.jbrisbin.riaktor.Entry;
+import com.jbrisbin.riaktor.Headers;
+import com.jbrisbin.riaktor.policy.HedgePolicy;
 import reactor.core.composable.Promise;
 import reactor.function.Function;
 
@@ -13,9 +15,13 @@ public abstract class GetOperation<T> extends Operation<Entry<T>, Promise<Entry<
 
 	private Function<List<T>, T> conflictResolver;
 	private String               etag;
+	private byte[]               ifModified;
+	private boolean              head;
+	private HedgePolicy          hedgePolicy;
 
 	/**
-	 * Set the conflict resolver to use to resolve sibling conflicts.
+	 * Set the conflict resolver to use to resolve sibling conflicts. The siblings it was given are still available from
+	 * {@link Entry#getSiblings()}.
 	 *
 	 * @param conflictResolver
 	 *
@@ -36,7 +42,10 @@ public abstract class GetOperation<T> extends Operation<Entry<T>, Promise<Entry<
 	}
 
 	/**
-	 * Specify an entity tag for operations that use If-None-Match semantics.
+	 * Specify an entity tag for operations that use If-None-Match semantics. Riak has no server-side equivalent for
+	 * gets, so the tag is compared to the vtag of the object that comes back and, if they match, the result is marked
+	 * {@link Entry#isUnchanged() unchanged} without converting the value. Use {@link #ifModified(byte[])} to also avoid
+	 * transferring the value.
 	 *
 	 * @param etag
 	 * 		the entity tag to use
@@ -57,4 +66,71 @@ public abstract class GetOperation<T> extends Operation<Entry<T>, Promise<Entry<
 		return etag;
 	}
 
+	/**
+	 * Only fetch the object if its vclock no longer matches the given vclock. If it still matches, Riak sends back no
+	 * content and the result is marked {@link Entry#isUnchanged() unchanged}.
+	 *
+	 * @param vclock
+	 * 		the vclock of the copy of the object already held
+	 *
+	 * @return {@literal this}
+	 */
+	public GetOperation<T> ifModified(byte[] vclock) {
+		this.ifModified = vclock;
+		return this;
+	}
+
+	/**
+	 * Get the vclock the object must no longer match to be fetched.
+	 *
+	 * @return the vclock to compare to
+	 */
+	public byte[] ifModified() {
+		return ifModified;
+	}
+
+	/**
+	 * Only fetch the object's metadata. The result has {@link Headers} but no data.
+	 *
+	 * @param head
+	 * 		whether to leave the value out of the response
+	 *
+	 * @return {@literal this}
+	 */
+	public GetOperation<T> head(boolean head) {
+		this.head = head;
+		return this;
+	}
+
+	/**
+	 * Whether to only fetch the object's metadata.
+	 *
+	 * @return {@literal true} if the value is left out of the response
+	 */
+	public boolean head() {
+		return head;
+	}
+
+	/**
+	 * Set the {@link HedgePolicy} that decides when this get is also sent to a second node.
+	 *
+	 * @param hedgePolicy
+	 * 		the hedge policy to use or {@literal null} to disable hedging
+	 *
+	 * @return {@literal this}
+	 */
+	public GetOperation<T> hedge(HedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+		return this;
+	}
+
+	/**
+	 * Get the {@link HedgePolicy} that decides when this get is also sent to a second node.
+	 *
+	 * @return the hedge policy to use.
+	 */
+	public HedgePolicy hedge() {
+		return hedgePolicy;
+	}
+
 }
@@ -0,0 +1,34 @@
+package com.jbrisbin.riaktor.op;
+
+/**
+ * A secondary index query. The result is the keys of the objects whose index entries match.
+ *
+ * @author Jon Brisbin
+ */
+public abstract class IndexOperation extends StreamingOperation<String> {
+
+	private int maxResults;
+
+	/**
+	 * Set the maximum number of keys to return.
+	 *
+	 * @param maxResults
+	 * 		the maximum number of keys or {@literal 0} to return every key
+	 *
+	 * @return {@literal this}
+	 */
+	public IndexOperation maxResults(int maxResults) {
+		this.maxResults = maxResults;
+		return this;
+	}
+
+	/**
+	 * Get the maximum number of keys to return.
+	 *
+	 * @return the maximum number of keys or {@literal 0} to return every key
+	 */
+	public int maxResults() {
+		return maxResults;
+	}
+
+}
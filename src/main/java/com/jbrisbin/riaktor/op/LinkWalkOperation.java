@@ -0,0 +1,73 @@
+package com.jbrisbin.riaktor.op;
+
+import com.jbrisbin.riaktor.Entry;
+import reactor.util.Assert;
+
+/**
+ * A walk of the links from an object. The result is every object reached, level by level, with each object appearing
+ * once however many links lead to it.
+ *
+ * @author Jon Brisbin
+ */
+public abstract class LinkWalkOperation<T> extends StreamingOperation<Entry<T>> {
+
+	private int     fanOut = 1000;
+	private int     parallelism;
+	private boolean mapReduce;
+
+	/**
+	 * Set the maximum number of objects to fetch at each level. Links beyond that are not followed.
+	 *
+	 * @param fanOut
+	 * 		the maximum number of objects per level
+	 *
+	 * @return {@literal this}
+	 */
+	public LinkWalkOperation<T> fanOut(int fanOut) {
+		Assert.isTrue(fanOut > 0, "Fan-out must be greater than 0.");
+		this.fanOut = fanOut;
+		return this;
+	}
+
+	public int fanOut() {
+		return fanOut;
+	}
+
+	/**
+	 * Set the maximum number of gets outstanding at a time.
+	 *
+	 * @param parallelism
+	 * 		the maximum number of gets or {@literal 0} to use one per connection
+	 *
+	 * @return {@literal this}
+	 */
+	public LinkWalkOperation<T> parallelism(int parallelism) {
+		Assert.isTrue(parallelism >= 0, "Parallelism cannot be negative.");
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	public int parallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Set whether to follow the links with the link phases of a MapReduce job. Riak then finds the links of every level
+	 * in one request, and only the objects themselves are fetched by the client, rather than each level having to be
+	 * fetched before the links of the next one are known.
+	 *
+	 * @param mapReduce
+	 * 		{@literal true} to follow the links with MapReduce
+	 *
+	 * @return {@literal this}
+	 */
+	public LinkWalkOperation<T> mapReduce(boolean mapReduce) {
+		this.mapReduce = mapReduce;
+		return this;
+	}
+
+	public boolean mapReduce() {
+		return mapReduce;
+	}
+
+}
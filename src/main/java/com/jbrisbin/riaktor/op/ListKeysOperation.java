@@ -1,11 +1,7 @@
 package com.jbrisbin.riaktor.op;
 
-import reactor.core.composable.Promise;
-
-import java.util.List;
-
 /**
  * @author Jon Brisbin
  */
-public abstract class ListKeysOperation extends Operation<List<String>, Promise<List<String>>> {
+public abstract class ListKeysOperation extends StreamingOperation<String> {
 }
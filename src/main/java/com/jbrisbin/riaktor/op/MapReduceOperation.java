@@ -0,0 +1,10 @@
+package com.jbrisbin.riaktor.op;
+
+/**
+ * A MapReduce job. The result is each response Riak sends back for the phases whose results are kept, converted to
+ * the requested type.
+ *
+ * @author Jon Brisbin
+ */
+public abstract class MapReduceOperation<T> extends StreamingOperation<T> {
+}
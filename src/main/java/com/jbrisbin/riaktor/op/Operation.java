@@ -1,10 +1,15 @@
 package com.jbrisbin.riaktor.op;
 
+import com.jbrisbin.riaktor.policy.RetryPolicy;
 import com.jbrisbin.riaktor.spec.QuorumSpec;
+import com.jbrisbin.riaktor.support.PromiseFuture;
+import com.jbrisbin.riaktor.trace.TraceContext;
 import reactor.core.composable.Composable;
+import reactor.core.composable.Promise;
 import reactor.function.Function;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Encapsulates information about a CAP operation.
@@ -14,6 +19,8 @@ import java.util.List;
 public abstract class Operation<T, C extends Composable<T>> {
 
 	private QuorumSpec           qSpec;
+	private RetryPolicy          retryPolicy;
+	private TraceContext         traceContext;
 
 	/**
 	 * Set the {@link QuorumSpec} to define what quorum values should be used during this request.
@@ -36,6 +43,49 @@ public abstract class Operation<T, C extends Composable<T>> {
 		return qSpec;
 	}
 
+	/**
+	 * Set the {@link RetryPolicy} to use for this request instead of the default for this type of operation.
+	 *
+	 * @param retryPolicy
+	 *
+	 * @return {@literal this}
+	 */
+	public Operation<T, C> retry(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+		return this;
+	}
+
+	/**
+	 * Get the {@link RetryPolicy} to use for this request instead of the default for this type of operation.
+	 *
+	 * @return the {@link RetryPolicy} to use or {@literal null} to use the default.
+	 */
+	public RetryPolicy retry() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Set the {@link TraceContext} of the work this request is part of, so its {@link
+	 * com.jbrisbin.riaktor.trace.Trace} is tied to it. The request is traced if the context is sampled.
+	 *
+	 * @param traceContext
+	 *
+	 * @return {@literal this}
+	 */
+	public Operation<T, C> traceContext(TraceContext traceContext) {
+		this.traceContext = traceContext;
+		return this;
+	}
+
+	/**
+	 * Get the {@link TraceContext} of the work this request is part of.
+	 *
+	 * @return the {@link TraceContext} or {@literal null} if none was propagated.
+	 */
+	public TraceContext traceContext() {
+		return traceContext;
+	}
+
 	/**
 	 * Commit this {@code Operation} to the server.
 	 *
@@ -43,4 +93,16 @@ public abstract class Operation<T, C extends Composable<T>> {
 	 */
 	public abstract C commit();
 
+	/**
+	 * Commit this {@code Operation} to the server and get a {@link Future} of its value, for callers that would rather
+	 * block than compose.
+	 *
+	 * @return a {@link Future} of the value of this operation
+	 */
+	@SuppressWarnings("unchecked")
+	public Future<T> future() {
+		// every operation commits to a Promise
+		return new PromiseFuture<>((Promise<T>)commit());
+	}
+
 }
@@ -1,9 +1,15 @@
 package com.jbrisbin.riaktor.op;
 
 import com.jbrisbin.riaktor.Entry;
+import com.jbrisbin.riaktor.Link;
 import reactor.core.composable.Promise;
+import reactor.function.Function;
+import reactor.tuple.Tuple;
+import reactor.tuple.Tuple2;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -11,12 +17,15 @@ import java.util.Map;
  */
 public abstract class PutOperation<T> extends Operation<Entry<T>, Promise<Entry<T>>> {
 
-	private final Map<String, String> metadata   = new HashMap<>();
-	private       boolean             returnBody = true;
+	private final Map<String, String>          metadata   = new HashMap<>();
+	private final List<Link>                   links      = new ArrayList<>();
+	private final List<Tuple2<String, String>> indexes    = new ArrayList<>();
+	private       boolean                      returnBody = true;
 
-	private String etag;
-	private byte[] vclock;
-	private String contentType;
+	private String               etag;
+	private byte[]               vclock;
+	private String               contentType;
+	private Function<List<T>, T> conflictResolver;
 
 	public String contentType() {
 		return contentType;
@@ -57,6 +66,23 @@ public abstract class PutOperation<T> extends Operation<Entry<T>, Promise<Entry<
 		return this;
 	}
 
+	/**
+	 * Set the conflict resolver to use when the object comes back with siblings, which fail the put without one. The
+	 * value has been written either way.
+	 *
+	 * @param conflictResolver
+	 *
+	 * @return {@literal this}
+	 */
+	public PutOperation<T> conflictResolver(Function<List<T>, T> conflictResolver) {
+		this.conflictResolver = conflictResolver;
+		return this;
+	}
+
+	public Function<List<T>, T> conflictResolver() {
+		return conflictResolver;
+	}
+
 	public PutOperation<T> metadata(String key, String value) {
 		metadata.put(key, value);
 		return this;
@@ -66,6 +92,47 @@ public abstract class PutOperation<T> extends Operation<Entry<T>, Promise<Entry<
 		return metadata;
 	}
 
+	/**
+	 * Link the object to another one.
+	 *
+	 * @param bucket
+	 * 		the bucket of the linked object
+	 * @param key
+	 * 		the key of the linked object
+	 * @param tag
+	 * 		the tag of the link
+	 *
+	 * @return {@literal this}
+	 */
+	public PutOperation<T> link(String bucket, String key, String tag) {
+		links.add(new Link(bucket, key, tag));
+		return this;
+	}
+
+	public List<Link> links() {
+		return links;
+	}
+
+	/**
+	 * Add a secondary index entry to the object, on top of any from its {@link com.jbrisbin.riaktor.annotation.Index}
+	 * annotated fields and getters.
+	 *
+	 * @param name
+	 * 		the name of the index, including its {@code _bin} or {@code _int} suffix
+	 * @param value
+	 * 		the value to index the object under
+	 *
+	 * @return {@literal this}
+	 */
+	public PutOperation<T> index(String name, String value) {
+		indexes.add(Tuple.of(name, value));
+		return this;
+	}
+
+	public List<Tuple2<String, String>> indexes() {
+		return indexes;
+	}
+
 	/**
 	 * Specify an entity tag for operations that use If-None-Match semantics.
 	 *
@@ -0,0 +1,31 @@
+package com.jbrisbin.riaktor.op;
+
+import org.reactivestreams.Publisher;
+import reactor.core.composable.Promise;
+
+import java.util.List;
+
+/**
+ * An operation whose result Riak sends back as a stream of items. {@link #commit()} collects every item into a list,
+ * while {@link #publish()} hands them to a subscriber only as fast as it asks for them.
+ *
+ * @author Jon Brisbin
+ */
+public abstract class StreamingOperation<T> extends Operation<List<T>, Promise<List<T>>> {
+
+	/**
+	 * Get a {@link Publisher} of the items. The request is sent when a subscriber first asks for items, and the
+	 * response is read no faster than the subscriber asks for them.
+	 * <p>
+	 * Reading a response no faster than it is consumed means not reading anything else from its connection in the
+	 * meantime, so unless a subscriber asks for every item up front, its request is sent over a new connection that
+	 * nothing else uses. That connection stays open, and Riak keeps working on the request, until the subscriber has
+	 * taken every item or cancelled, so a subscriber that stops asking for items should cancel. Subscribers that ask
+	 * for every item up front share the pooled connections like any other request.
+	 * </p>
+	 *
+	 * @return a {@link Publisher} of the items
+	 */
+	public abstract Publisher<T> publish();
+
+}
@@ -0,0 +1,59 @@
+package com.jbrisbin.riaktor.op;
+
+import com.jbrisbin.riaktor.Entry;
+import com.jbrisbin.riaktor.policy.RetryPolicy;
+import reactor.core.composable.Promise;
+import reactor.function.Function;
+import reactor.util.Assert;
+
+import java.util.List;
+
+/**
+ * A read-modify-write of an object. The object is read, changed and written back on condition that nobody else has
+ * written it in between, and the whole cycle starts over if somebody has.
+ *
+ * @author Jon Brisbin
+ */
+public abstract class UpdateOperation<T> extends Operation<Entry<T>, Promise<Entry<T>>> {
+
+	private Function<List<T>, T> conflictResolver;
+	private RetryPolicy          conflictRetry = new RetryPolicy().maxAttempts(5).retryOn(RetryPolicy.CONFLICTS);
+
+	/**
+	 * Set the conflict resolver to use when the object is read with siblings, or when the write comes back with siblings
+	 * and the resolution is written over them. Without one, siblings that are read fail the update, and the value just
+	 * written wins over siblings that come back from the write.
+	 *
+	 * @param conflictResolver
+	 *
+	 * @return {@literal this}
+	 */
+	public UpdateOperation<T> conflictResolver(Function<List<T>, T> conflictResolver) {
+		this.conflictResolver = conflictResolver;
+		return this;
+	}
+
+	public Function<List<T>, T> conflictResolver() {
+		return conflictResolver;
+	}
+
+	/**
+	 * Set how often the read-modify-write is started over when the object was changed concurrently, and how long to
+	 * back off in between. Failures of the individual get and put are retried according to {@link #retry()} instead.
+	 *
+	 * @param conflictRetry
+	 * 		the {@link RetryPolicy} for concurrent changes
+	 *
+	 * @return {@literal this}
+	 */
+	public UpdateOperation<T> conflictRetry(RetryPolicy conflictRetry) {
+		Assert.notNull(conflictRetry, "Conflict RetryPolicy cannot be null.");
+		this.conflictRetry = conflictRetry;
+		return this;
+	}
+
+	public RetryPolicy conflictRetry() {
+		return conflictRetry;
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.jbrisbin.riaktor.policy;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracks the outcome of the most recent requests to a single node and decides whether that node should receive
+ * requests.
+ *
+ * @author Jon Brisbin
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		/**
+		 * The node is healthy and receives requests.
+		 */
+		CLOSED,
+		/**
+		 * The breaker has tripped and the node receives no requests.
+		 */
+		OPEN,
+		/**
+		 * The breaker has tripped and a probe is in flight to see if the node is healthy again.
+		 */
+		HALF_OPEN
+	}
+
+	private final CircuitBreakerPolicy   policy;
+	private final AtomicIntegerArray     outcomes;
+	private final AtomicLong             requests = new AtomicLong();
+	private final AtomicLong             failures = new AtomicLong();
+	private final AtomicLong             trips    = new AtomicLong();
+	private final AtomicReference<State> state    = new AtomicReference<>(State.CLOSED);
+
+	public CircuitBreaker(CircuitBreakerPolicy policy) {
+		this.policy = policy;
+		this.outcomes = new AtomicIntegerArray(policy.windowSize());
+	}
+
+	public State getState() {
+		return state.get();
+	}
+
+	/**
+	 * Get the share of failed or slow requests in the current window.
+	 *
+	 * @return the failure rate, between 0 and 1
+	 */
+	public double getFailureRate() {
+		long n = Math.min(requests.get(), outcomes.length());
+		return (n > 0 ? (double)failures.get() / n : 0);
+	}
+
+	/**
+	 * Get the number of times this breaker has tripped.
+	 *
+	 * @return the number of trips
+	 */
+	public long getTrips() {
+		return trips.get();
+	}
+
+	public boolean allowsRequests() {
+		return state.get() == State.CLOSED;
+	}
+
+	/**
+	 * Record a successful request.
+	 *
+	 * @param latency
+	 * 		the time the request took in nanoseconds
+	 *
+	 * @return {@literal true} if recording this request tripped the breaker
+	 */
+	public boolean onSuccess(long latency) {
+		return record(latency > policy.slowCallTimeout());
+	}
+
+	/**
+	 * Record a failed request.
+	 *
+	 * @return {@literal true} if recording this request tripped the breaker
+	 */
+	public boolean onFailure() {
+		return record(true);
+	}
+
+	/**
+	 * Mark a probe as sent.
+	 *
+	 * @return {@literal true} if the breaker was open and should be probed
+	 */
+	public boolean probe() {
+		return state.compareAndSet(State.OPEN, State.HALF_OPEN);
+	}
+
+	/**
+	 * Record the result of a probe.
+	 *
+	 * @param healthy
+	 * 		whether the node answered the probe in time
+	 *
+	 * @return {@literal true} if the breaker closed
+	 */
+	public boolean onProbe(boolean healthy) {
+		if(!healthy) {
+			state.compareAndSet(State.HALF_OPEN, State.OPEN);
+			return false;
+		}
+		reset();
+		return state.compareAndSet(State.HALF_OPEN, State.CLOSED);
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreaker{" +
+				"state=" + state.get() +
+				", failureRate=" + getFailureRate() +
+				", trips=" + trips.get() +
+				'}';
+	}
+
+	private boolean record(boolean failed) {
+		long n = requests.getAndIncrement();
+		int outcome = (failed ? 1 : 0);
+		int prev = outcomes.getAndSet((int)(n % outcomes.length()), outcome);
+		long f = failures.addAndGet(outcome - prev);
+
+		long window = Math.min(n + 1, outcomes.length());
+		if(window < policy.minRequests() || (double)f / window < policy.failureRate()) {
+			return false;
+		}
+		if(state.compareAndSet(State.CLOSED, State.OPEN)) {
+			trips.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	private void reset() {
+		for(int i = 0; i < outcomes.length(); i++) {
+			outcomes.set(i, 0);
+		}
+		failures.set(0);
+		requests.set(0);
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.jbrisbin.riaktor.policy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines when the circuit breaker kept for each node trips. A breaker trips when, over the last {@code windowSize}
+ * requests to its node, the share of requests that failed or took longer than the slow-call threshold reaches the
+ * failure rate. A tripped node receives no requests and is probed with {@code RpbPingReq} until it answers again.
+ *
+ * @author Jon Brisbin
+ */
+public class CircuitBreakerPolicy {
+
+	private int    windowSize      = 100;
+	private int    minRequests     = 20;
+	private double failureRate     = 0.5;
+	private long   slowCallTimeout = Long.MAX_VALUE;
+	private long   probeInterval   = TimeUnit.SECONDS.toNanos(1);
+
+	public int windowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Set the number of most recent requests the failure rate is computed over.
+	 *
+	 * @param windowSize
+	 * 		the number of requests
+	 *
+	 * @return {@literal this}
+	 */
+	public CircuitBreakerPolicy windowSize(int windowSize) {
+		this.windowSize = windowSize;
+		return this;
+	}
+
+	public int minRequests() {
+		return minRequests;
+	}
+
+	/**
+	 * Set the number of requests a node must have handled before its breaker can trip.
+	 *
+	 * @param minRequests
+	 * 		the number of requests
+	 *
+	 * @return {@literal this}
+	 */
+	public CircuitBreakerPolicy minRequests(int minRequests) {
+		this.minRequests = minRequests;
+		return this;
+	}
+
+	public double failureRate() {
+		return failureRate;
+	}
+
+	/**
+	 * Set the share of failed or slow requests at which the breaker trips.
+	 *
+	 * @param failureRate
+	 * 		the failure rate, between 0 and 1
+	 *
+	 * @return {@literal this}
+	 */
+	public CircuitBreakerPolicy failureRate(double failureRate) {
+		this.failureRate = failureRate;
+		return this;
+	}
+
+	public long slowCallTimeout() {
+		return slowCallTimeout;
+	}
+
+	/**
+	 * Count requests that take longer than the given time as failures.
+	 *
+	 * @param slowCallTimeout
+	 * 		the time after which a request is considered slow
+	 * @param unit
+	 * 		the unit of the time
+	 *
+	 * @return {@literal this}
+	 */
+	public CircuitBreakerPolicy slowCallTimeout(long slowCallTimeout, TimeUnit unit) {
+		this.slowCallTimeout = unit.toNanos(slowCallTimeout);
+		return this;
+	}
+
+	public long probeInterval() {
+		return probeInterval;
+	}
+
+	/**
+	 * Set how often a node whose breaker has tripped is probed with {@code RpbPingReq}.
+	 *
+	 * @param probeInterval
+	 * 		the time between probes
+	 * @param unit
+	 * 		the unit of the time
+	 *
+	 * @return {@literal this}
+	 */
+	public CircuitBreakerPolicy probeInterval(long probeInterval, TimeUnit unit) {
+		this.probeInterval = unit.toNanos(probeInterval);
+		return this;
+	}
+
+}
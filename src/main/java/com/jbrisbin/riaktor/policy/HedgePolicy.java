@@ -0,0 +1,114 @@
+package com.jbrisbin.riaktor.policy;
+
+import com.jbrisbin.riaktor.support.LatencyTracker;
+import com.jbrisbin.riaktor.support.RequestBudget;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines when a get should be hedged by sending the same request to a second node. A get is hedged once it has been
+ * outstanding longer than the given percentile of recently-observed get latency. The number of hedged requests is
+ * capped by a {@link RequestBudget} shared by every operation that uses this policy.
+ *
+ * @author Jon Brisbin
+ */
+public class HedgePolicy {
+
+	private final LatencyTracker latencies = new LatencyTracker();
+
+	private double        percentile = 95.0;
+	private long          minDelay   = TimeUnit.MILLISECONDS.toNanos(1);
+	private int           minSamples = 100;
+	private RequestBudget budget     = new RequestBudget(0.05, 100);
+
+	public static HedgePolicy percentile(double percentile) {
+		return new HedgePolicy().atPercentile(percentile);
+	}
+
+	public double atPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * Set the percentile of recent latency after which a get is hedged.
+	 *
+	 * @param percentile
+	 * 		the percentile, between 0 and 100
+	 *
+	 * @return {@literal this}
+	 */
+	public HedgePolicy atPercentile(double percentile) {
+		this.percentile = percentile;
+		return this;
+	}
+
+	public long minDelay() {
+		return minDelay;
+	}
+
+	/**
+	 * Set the minimum time to wait before hedging, regardless of recent latency.
+	 *
+	 * @param minDelay
+	 * 		the minimum delay
+	 * @param unit
+	 * 		the unit of the delay
+	 *
+	 * @return {@literal this}
+	 */
+	public HedgePolicy minDelay(long minDelay, TimeUnit unit) {
+		this.minDelay = unit.toNanos(minDelay);
+		return this;
+	}
+
+	public int minSamples() {
+		return minSamples;
+	}
+
+	/**
+	 * Set the number of latency samples that must be recorded before any request is hedged.
+	 *
+	 * @param minSamples
+	 * 		the number of samples
+	 *
+	 * @return {@literal this}
+	 */
+	public HedgePolicy minSamples(int minSamples) {
+		this.minSamples = minSamples;
+		return this;
+	}
+
+	public RequestBudget budget() {
+		return budget;
+	}
+
+	/**
+	 * Cap hedged requests at the given ratio of gets, e.g. {@literal 0.05} for at most 5% extra requests.
+	 *
+	 * @param ratio
+	 * 		the ratio of hedged requests to gets
+	 *
+	 * @return {@literal this}
+	 */
+	public HedgePolicy budget(double ratio) {
+		this.budget = new RequestBudget(ratio, 100);
+		return this;
+	}
+
+	public LatencyTracker latencies() {
+		return latencies;
+	}
+
+	/**
+	 * Get the time to wait before hedging a get.
+	 *
+	 * @return the delay in nanoseconds or {@literal -1} if not enough latency samples have been recorded yet
+	 */
+	public long delay() {
+		if(latencies.count() < minSamples) {
+			return -1;
+		}
+		return Math.max(minDelay, latencies.percentile(percentile));
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.jbrisbin.riaktor.policy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines the negative cache kept for a bucket. Keys a get found missing are remembered for a short time, and once the
+ * bucket's keys have been loaded, a Bloom filter of the keys known to exist answers gets for any other key that is
+ * definitely missing without asking Riak.
+ *
+ * @author Jon Brisbin
+ */
+public class NegativeCachePolicy {
+
+	private long   missTtl           = TimeUnit.SECONDS.toNanos(5);
+	private int    maxMisses         = 10000;
+	private int    expectedKeys      = 100000;
+	private double falsePositiveRate = 0.01;
+	private long   maxMemory         = 16 * 1024 * 1024;
+
+	public long missTtl() {
+		return missTtl;
+	}
+
+	/**
+	 * Set how long a key a get found missing is remembered.
+	 *
+	 * @param missTtl
+	 * 		the time to remember a missing key
+	 * @param unit
+	 * 		the unit of the time
+	 *
+	 * @return {@literal this}
+	 */
+	public NegativeCachePolicy missTtl(long missTtl, TimeUnit unit) {
+		this.missTtl = unit.toNanos(missTtl);
+		return this;
+	}
+
+	public int maxMisses() {
+		return maxMisses;
+	}
+
+	/**
+	 * Set the number of missing keys to remember at most.
+	 *
+	 * @param maxMisses
+	 * 		the number of keys
+	 *
+	 * @return {@literal this}
+	 */
+	public NegativeCachePolicy maxMisses(int maxMisses) {
+		this.maxMisses = maxMisses;
+		return this;
+	}
+
+	public int expectedKeys() {
+		return expectedKeys;
+	}
+
+	/**
+	 * Set the number of keys the Bloom filter is first sized for. It grows as more keys are added.
+	 *
+	 * @param expectedKeys
+	 * 		the number of keys
+	 *
+	 * @return {@literal this}
+	 */
+	public NegativeCachePolicy expectedKeys(int expectedKeys) {
+		this.expectedKeys = expectedKeys;
+		return this;
+	}
+
+	public double falsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+	/**
+	 * Set the share of missing keys the Bloom filter may mistake for existing ones, which are then fetched from Riak.
+	 *
+	 * @param falsePositiveRate
+	 * 		the false positive rate, between 0 and 1
+	 *
+	 * @return {@literal this}
+	 */
+	public NegativeCachePolicy falsePositiveRate(double falsePositiveRate) {
+		this.falsePositiveRate = falsePositiveRate;
+		return this;
+	}
+
+	public long maxMemory() {
+		return maxMemory;
+	}
+
+	/**
+	 * Set the most memory the Bloom filter may take up. Once growing it would take more, it stops answering gets, and
+	 * only missing keys remembered from earlier gets are answered locally.
+	 *
+	 * @param maxMemory
+	 * 		the memory in bytes
+	 *
+	 * @return {@literal this}
+	 */
+	public NegativeCachePolicy maxMemory(long maxMemory) {
+		this.maxMemory = maxMemory;
+		return this;
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.jbrisbin.riaktor.policy;
+
+import com.jbrisbin.riaktor.RiakException;
+import reactor.function.Predicate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines how a failed request is retried. Retries back off exponentially with full jitter and are sent to a
+ * different node than the attempt that failed. Whether a retry is actually sent also depends on the retry budget
+ * shared by every caller of a {@link com.jbrisbin.riaktor.Riaktor}.
+ *
+ * @author Jon Brisbin
+ */
+public class RetryPolicy {
+
+	/**
+	 * A policy that never retries.
+	 */
+	public static final RetryPolicy NONE = new RetryPolicy().maxAttempts(1);
+
+	/**
+	 * Riak errors that mean a node couldn't get enough replicas to answer in time, which may well work out on the next
+	 * attempt. Riak reports these either by name or as a tuple that starts with the name.
+	 */
+	private static final Set<String> TRANSIENT_RIAK_ERRORS = new HashSet<>(Arrays.asList(
+			"timeout",
+			"overload",
+			"all_nodes_down",
+			"insufficient_vnodes",
+			"pr_val_unsatisfied",
+			"r_val_unsatisfied",
+			"pw_val_unsatisfied",
+			"w_val_unsatisfied",
+			"dw_val_unsatisfied"
+	));
+
+	/**
+	 * Retry connection failures and the Riak errors that come from a shortage of replicas or time. Every other Riak
+	 * error, like a failed precondition or an invalid request, comes back the same no matter how often it is retried.
+	 */
+	public static final Predicate<Throwable> TRANSIENT_ERRORS = new Predicate<Throwable>() {
+		@Override
+		public boolean test(Throwable t) {
+			if(t instanceof IOException) {
+				return true;
+			}
+			return t instanceof RiakException && TRANSIENT_RIAK_ERRORS.contains(errorName(t.getMessage()));
+		}
+	};
+
+	/**
+	 * Retry the errors that mean an object was changed by someone else after it was read: a failed {@code
+	 * if_not_modified} or {@code if_none_match} precondition. Siblings are not among them, since a write that comes back
+	 * with siblings has already been applied.
+	 */
+	public static final Predicate<Throwable> CONFLICTS = new Predicate<Throwable>() {
+		@Override
+		public boolean test(Throwable t) {
+			return t instanceof RiakException && ("modified".equals(t.getMessage()) || "match_found".equals(t.getMessage()));
+		}
+	};
+
+	private int                  maxAttempts    = 3;
+	private long                 initialBackoff = TimeUnit.MILLISECONDS.toNanos(50);
+	private long                 maxBackoff     = TimeUnit.SECONDS.toNanos(1);
+	private Predicate<Throwable> retryOn        = TRANSIENT_ERRORS;
+
+	public static RetryPolicy attempts(int maxAttempts) {
+		return new RetryPolicy().maxAttempts(maxAttempts);
+	}
+
+	public int maxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Set the maximum number of times a request is sent, including the first attempt.
+	 *
+	 * @param maxAttempts
+	 * 		the maximum number of attempts
+	 *
+	 * @return {@literal this}
+	 */
+	public RetryPolicy maxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	/**
+	 * Set the bounds of the exponential backoff between attempts.
+	 *
+	 * @param initialBackoff
+	 * 		the upper bound of the delay before the first retry
+	 * @param maxBackoff
+	 * 		the upper bound of the delay before any retry
+	 * @param unit
+	 * 		the unit of the delays
+	 *
+	 * @return {@literal this}
+	 */
+	public RetryPolicy backoff(long initialBackoff, long maxBackoff, TimeUnit unit) {
+		this.initialBackoff = unit.toNanos(initialBackoff);
+		this.maxBackoff = unit.toNanos(maxBackoff);
+		return this;
+	}
+
+	/**
+	 * Set the {@link Predicate} that decides which errors are retried.
+	 *
+	 * @param retryOn
+	 * 		the predicate to test errors with
+	 *
+	 * @return {@literal this}
+	 */
+	public RetryPolicy retryOn(Predicate<Throwable> retryOn) {
+		this.retryOn = retryOn;
+		return this;
+	}
+
+	/**
+	 * Whether a request that failed with the given error on the given attempt should be retried.
+	 *
+	 * @param attempt
+	 * 		the attempt that failed, starting at {@literal 1}
+	 * @param t
+	 * 		the error
+	 *
+	 * @return {@literal true} if the request should be retried
+	 */
+	public boolean shouldRetry(int attempt, Throwable t) {
+		return attempt < maxAttempts && retryOn.test(t);
+	}
+
+	/**
+	 * Get the delay before retrying a request that failed on the given attempt.
+	 *
+	 * @param attempt
+	 * 		the attempt that failed, starting at {@literal 1}
+	 *
+	 * @return the delay in nanoseconds
+	 */
+	public long backoff(int attempt) {
+		long ceiling = initialBackoff << Math.min(attempt - 1, 30);
+		if(ceiling <= 0 || ceiling > maxBackoff) {
+			ceiling = maxBackoff;
+		}
+		return (ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling) : 0);
+	}
+
+	/**
+	 * Get the name of a Riak error from a message like {@code timeout} or {@code {r_val_unsatisfied,2,1}}.
+	 */
+	private static String errorName(String errmsg) {
+		if(null == errmsg) {
+			return null;
+		}
+		int start = (errmsg.startsWith("{") ? 1 : 0);
+		int end = start;
+		while(end < errmsg.length() && (Character.isLetterOrDigit(errmsg.charAt(end)) || errmsg.charAt(end) == '_')) {
+			end++;
+		}
+		return errmsg.substring(start, end);
+	}
+
+}
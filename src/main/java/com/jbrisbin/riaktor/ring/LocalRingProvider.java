@@ -0,0 +1,41 @@
+package com.jbrisbin.riaktor.ring;
+
+import reactor.util.Assert;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link RingProvider} that lays out a ring locally by handing out partitions to the given nodes in turn, the same
+ * way a new Riak cluster claims them. Useful in tests or when the real ring is known to follow that layout.
+ *
+ * @author Jon Brisbin
+ */
+public class LocalRingProvider implements RingProvider {
+
+	private final Ring ring;
+
+	/**
+	 * Lay out a ring of the given size over the given nodes.
+	 *
+	 * @param ringSize
+	 * 		the number of partitions, which must be a power of 2
+	 * @param nodes
+	 * 		the addresses of the nodes in the cluster
+	 */
+	public LocalRingProvider(int ringSize, List<InetSocketAddress> nodes) {
+		Assert.notEmpty(nodes, "Nodes cannot be empty.");
+		List<InetSocketAddress> owners = new ArrayList<>(ringSize);
+		for(int i = 0; i < ringSize; i++) {
+			owners.add(nodes.get(i % nodes.size()));
+		}
+		this.ring = new Ring(owners);
+	}
+
+	@Override
+	public Ring ring() {
+		return ring;
+	}
+
+}
@@ -0,0 +1,131 @@
+package com.jbrisbin.riaktor.ring;
+
+import com.google.protobuf.ByteString;
+import reactor.util.Assert;
+
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The layout of a Riak ring: which node owns each partition. Riak places an object on the ring by taking the SHA-1 of
+ * {@code term_to_binary({Bucket, Key})} as a 160-bit integer. The first partition after that point, and the partitions
+ * that follow it up to the bucket's {@code n_val}, hold the object's primary replicas.
+ *
+ * @author Jon Brisbin
+ */
+public final class Ring {
+
+	private static final byte VERSION_MAGIC   = (byte)131;
+	private static final byte SMALL_TUPLE_EXT = 104;
+	private static final byte BINARY_EXT      = 109;
+
+	private final List<InetSocketAddress> owners;
+	private final int                     partitionBits;
+
+	/**
+	 * Create a ring with the given owners.
+	 *
+	 * @param owners
+	 * 		the address of the node that owns each partition, in ring order. The number of partitions must be a power of
+	 * 		2.
+	 */
+	public Ring(List<InetSocketAddress> owners) {
+		Assert.notEmpty(owners, "Owners cannot be empty.");
+		int size = owners.size();
+		Assert.isTrue(Integer.bitCount(size) == 1, "Ring size must be a power of 2.");
+		this.owners = Collections.unmodifiableList(new ArrayList<>(owners));
+		this.partitionBits = Integer.numberOfTrailingZeros(size);
+	}
+
+	/**
+	 * Hash a bucket and key the way Riak does to find their place on the ring.
+	 *
+	 * @param bucket
+	 * 		the bucket
+	 * @param key
+	 * 		the key
+	 *
+	 * @return the 20-byte SHA-1 of {@code term_to_binary({Bucket, Key})}
+	 */
+	public static byte[] hash(ByteString bucket, ByteString key) {
+		MessageDigest sha1;
+		try {
+			sha1 = MessageDigest.getInstance("SHA-1");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		sha1.update(new byte[]{VERSION_MAGIC, SMALL_TUPLE_EXT, 2});
+		updateBinary(sha1, bucket);
+		updateBinary(sha1, key);
+		return sha1.digest();
+	}
+
+	public int size() {
+		return owners.size();
+	}
+
+	public List<InetSocketAddress> owners() {
+		return owners;
+	}
+
+	/**
+	 * Find the partition responsible for the given hash, which is the first partition after it on the ring.
+	 *
+	 * @param hash
+	 * 		the hash of a bucket and key
+	 *
+	 * @return the index of the partition, between {@literal 0} and {@link #size()}
+	 */
+	public int partition(byte[] hash) {
+		// the partitions divide the ring evenly, so the top bits of the hash are the partition it falls in
+		int index = 0;
+		for(int bit = 0; bit < partitionBits; bit++) {
+			int b = hash[bit / 8] >> (7 - bit % 8) & 1;
+			index = (index << 1) | b;
+		}
+		return (index + 1) & (owners.size() - 1);
+	}
+
+	/**
+	 * Find the nodes that hold the primary replicas of an object.
+	 *
+	 * @param bucket
+	 * 		the bucket of the object
+	 * @param key
+	 * 		the key of the object
+	 * @param nVal
+	 * 		the number of replicas
+	 *
+	 * @return the address of each node holding a primary replica, in preference order and without duplicates
+	 */
+	public List<InetSocketAddress> primaries(ByteString bucket, ByteString key, int nVal) {
+		int partition = partition(hash(bucket, key));
+		int size = owners.size();
+		List<InetSocketAddress> primaries = new ArrayList<>(nVal);
+		for(int i = 0; i < Math.min(nVal, size); i++) {
+			InetSocketAddress owner = owners.get((partition + i) & (size - 1));
+			if(!primaries.contains(owner)) {
+				primaries.add(owner);
+			}
+		}
+		return primaries;
+	}
+
+	@Override
+	public String toString() {
+		return "Ring{" +
+				"size=" + owners.size() +
+				'}';
+	}
+
+	private static void updateBinary(MessageDigest sha1, ByteString bytes) {
+		int len = bytes.size();
+		sha1.update(new byte[]{BINARY_EXT, (byte)(len >>> 24), (byte)(len >>> 16), (byte)(len >>> 8), (byte)len});
+		sha1.update(bytes.toByteArray());
+	}
+
+}
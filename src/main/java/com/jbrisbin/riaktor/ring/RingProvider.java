@@ -0,0 +1,17 @@
+package com.jbrisbin.riaktor.ring;
+
+/**
+ * Supplies the current layout of the Riak ring so requests can be sent straight to a node that holds a replica.
+ *
+ * @author Jon Brisbin
+ */
+public interface RingProvider {
+
+	/**
+	 * Get the current layout of the ring. Called periodically, so implementations should cache what they load.
+	 *
+	 * @return the current ring or {@literal null} if it isn't known
+	 */
+	Ring ring();
+
+}
@@ -0,0 +1,69 @@
+package com.jbrisbin.riaktor.ring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.util.Assert;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link RingProvider} that reads the ring from a file, which is reloaded whenever it changes. The file lists the
+ * Protocol Buffers address of the owner of each partition as {@code host:port}, one partition per line in ring order.
+ * Blank lines and lines starting with {@code #} are ignored.
+ *
+ * @author Jon Brisbin
+ */
+public class StaticRingProvider implements RingProvider {
+
+	private static final Logger  LOG   = LoggerFactory.getLogger(StaticRingProvider.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final Path file;
+
+	private long lastModified = -1;
+	private Ring ring;
+
+	public StaticRingProvider(Path file) {
+		Assert.notNull(file, "File cannot be null.");
+		this.file = file;
+	}
+
+	@Override
+	public synchronized Ring ring() {
+		try {
+			long modified = Files.getLastModifiedTime(file).toMillis();
+			if(modified != lastModified) {
+				ring = load();
+				lastModified = modified;
+			}
+		} catch(IOException | IllegalArgumentException e) {
+			if(LOG.isWarnEnabled()) {
+				LOG.warn("Could not load ring from " + file + ": " + e.getMessage(), e);
+			}
+		}
+		return ring;
+	}
+
+	private Ring load() throws IOException {
+		List<InetSocketAddress> owners = new ArrayList<>();
+		for(String line : Files.readAllLines(file, UTF_8)) {
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			int colon = line.lastIndexOf(':');
+			if(colon < 1) {
+				throw new IllegalArgumentException("Invalid owner '" + line + "', expected host:port");
+			}
+			owners.add(new InetSocketAddress(line.substring(0, colon), Integer.parseInt(line.substring(colon + 1))));
+		}
+		return new Ring(owners);
+	}
+
+}
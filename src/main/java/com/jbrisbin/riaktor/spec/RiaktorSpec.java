@@ -4,30 +4,48 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 import com.jbrisbin.riaktor.Riaktor;
+import com.jbrisbin.riaktor.RiaktorSettings;
 import com.jbrisbin.riaktor.convert.ObjectMapperConverter;
+import com.jbrisbin.riaktor.event.EventType;
+import com.jbrisbin.riaktor.policy.CircuitBreakerPolicy;
+import com.jbrisbin.riaktor.policy.HedgePolicy;
+import com.jbrisbin.riaktor.policy.NegativeCachePolicy;
+import com.jbrisbin.riaktor.policy.RetryPolicy;
+import com.jbrisbin.riaktor.ring.RingProvider;
+import com.jbrisbin.riaktor.support.RequestBudget;
+import com.jbrisbin.riaktor.support.RequestJournal;
+import com.jbrisbin.riaktor.support.TransportOptions;
+import com.jbrisbin.riaktor.trace.RequestInterceptor;
+import com.jbrisbin.riaktor.trace.Tracer;
 import reactor.convert.Converter;
 import reactor.core.Environment;
 import reactor.core.Reactor;
 import reactor.core.spec.support.EventRoutingComponentSpec;
+import reactor.event.dispatch.Dispatcher;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Jon Brisbin
  */
 public class RiaktorSpec extends EventRoutingComponentSpec<RiaktorSpec, Riaktor> {
 
-	private       int                    timeout            = 60000;
-	private final Map<String, Converter> converters         = new LinkedHashMap<>();
-	private final List<URI>              connectURIs        = new ArrayList<>();
-	private       String                 defaultContentType = "application/json";
+	private final RiaktorSettings          settings           = new RiaktorSettings();
+	private       double                   retryBudget        = 0.1;
+	private       Path                     journalDirectory;
+	private       int                      journalSegmentSize = 16 * 1024 * 1024;
+	private       RequestJournal.Fsync     journalFsync       = RequestJournal.Fsync.PERIODIC;
+	private final List<RequestInterceptor> interceptors       = new ArrayList<>();
+	private       double                   traceSampleRate    = 0.01;
+	private       String                   conversionDispatcherName;
 
 	public RiaktorSpec timeout(int timeoutInMilliseconds) {
-		this.timeout = timeoutInMilliseconds;
+		settings.timeout(timeoutInMilliseconds);
 		return this;
 	}
 
@@ -36,36 +54,336 @@ public class RiaktorSpec extends EventRoutingComponentSpec<RiaktorSpec, Riaktor>
 	}
 
 	public RiaktorSpec connect(String host, int port) {
-		connectURIs.add(URI.create(String.format("riakpb://%s:%s", host, port)));
+		settings.connect(URI.create(String.format("riakpb://%s:%s", host, port)));
 		return this;
 	}
 
 	public RiaktorSpec converter(String contentType, Converter converter) {
-		converters.put(contentType, converter);
+		settings.converter(contentType, converter);
 		return this;
 	}
 
 	public RiaktorSpec defaultContentType(String contentType) {
-		this.defaultContentType = contentType;
+		settings.defaultContentType(contentType);
+		return this;
+	}
+
+	/**
+	 * Set the {@link HedgePolicy} to use for every get that doesn't set its own.
+	 *
+	 * @param hedgePolicy
+	 * 		the hedge policy to use
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec hedge(HedgePolicy hedgePolicy) {
+		settings.hedgePolicy(hedgePolicy);
+		return this;
+	}
+
+	/**
+	 * Set the default {@link RetryPolicy} for a type of request. Gets and deletes are retried by default. Puts are only
+	 * retried by default when they have a key and carry a vclock or use If-None-Match semantics. Any other put is sent
+	 * once unless it sets a {@link RetryPolicy} of its own.
+	 *
+	 * @param requestType
+	 * 		the type of request, e.g. {@link EventType#GetReq}
+	 * @param retryPolicy
+	 * 		the retry policy to use or {@link RetryPolicy#NONE} to not retry
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec retry(EventType requestType, RetryPolicy retryPolicy) {
+		settings.retry(requestType, retryPolicy);
+		return this;
+	}
+
+	/**
+	 * Cap retries at the given ratio of requests across every caller of the {@link Riaktor}.
+	 *
+	 * @param ratio
+	 * 		the ratio of retries to requests, e.g. {@literal 0.1} for at most 10% extra requests
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec retryBudget(double ratio) {
+		this.retryBudget = ratio;
+		return this;
+	}
+
+	/**
+	 * Set the {@link CircuitBreakerPolicy} that decides when a node stops receiving requests.
+	 *
+	 * @param circuitBreaker
+	 * 		the circuit breaker policy to use for every node
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec circuitBreaker(CircuitBreakerPolicy circuitBreaker) {
+		settings.circuitBreakerPolicy(circuitBreaker);
+		return this;
+	}
+
+	/**
+	 * Set the number of connections to open to each node.
+	 *
+	 * @param connectionsPerNode
+	 * 		the number of connections
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec connectionsPerNode(int connectionsPerNode) {
+		settings.connectionsPerNode(connectionsPerNode);
+		return this;
+	}
+
+	/**
+	 * Set how long {@link Riaktor#start()} waits for every connection to open before starting with only the
+	 * connections that are ready. Defaults to the request timeout.
+	 *
+	 * @param warmupTimeout
+	 * 		the time to wait
+	 * @param unit
+	 * 		the unit of the time
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec warmup(long warmupTimeout, TimeUnit unit) {
+		settings.warmupTimeout(warmupTimeout, unit);
+		return this;
+	}
+
+	/**
+	 * Set how long to wait for a response before the connection it should arrive on is closed and every request on it
+	 * fails, counting against the node's circuit breaker. Requests are then retried on another node if their retry
+	 * policy allows. Defaults to a second longer than the request timeout. A time of {@literal 0} turns the deadline
+	 * off.
+	 *
+	 * @param requestDeadline
+	 * 		the time to wait for a response
+	 * @param unit
+	 * 		the unit of the time
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec requestDeadline(long requestDeadline, TimeUnit unit) {
+		settings.requestDeadline(requestDeadline, unit);
+		return this;
+	}
+
+	/**
+	 * Ping connections that have been idle for the given time so NATs and firewalls don't drop them. A time of {@literal
+	 * 0} turns keepalive pings off.
+	 *
+	 * @param keepAliveInterval
+	 * 		the idle time after which a connection is pinged
+	 * @param unit
+	 * 		the unit of the time
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec keepAlive(long keepAliveInterval, TimeUnit unit) {
+		settings.keepAliveInterval(keepAliveInterval, unit);
+		return this;
+	}
+
+	/**
+	 * Journal writes to disk while no node is available instead of queueing them in memory, so they survive a restart.
+	 *
+	 * @param directory
+	 * 		the directory to keep the journal in
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec journal(Path directory) {
+		this.journalDirectory = directory;
+		return this;
+	}
+
+	/**
+	 * Journal writes to disk while no node is available instead of queueing them in memory, so they survive a restart.
+	 *
+	 * @param directory
+	 * 		the directory to keep the journal in
+	 * @param segmentSize
+	 * 		the size of each journal file in bytes
+	 * @param fsync
+	 * 		when journaled writes are forced to disk
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec journal(Path directory, int segmentSize, RequestJournal.Fsync fsync) {
+		this.journalDirectory = directory;
+		this.journalSegmentSize = segmentSize;
+		this.journalFsync = fsync;
+		return this;
+	}
+
+	/**
+	 * Send gets, puts and deletes straight to a node that holds a primary replica of the object, using the ring layout
+	 * from the given {@link RingProvider}. Assumes every bucket uses the default {@code n_val} of 3.
+	 *
+	 * @param ringProvider
+	 * 		supplies the layout of the ring
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec ring(RingProvider ringProvider) {
+		return ring(ringProvider, 3);
+	}
+
+	/**
+	 * Send gets, puts and deletes straight to a node that holds a primary replica of the object, using the ring layout
+	 * from the given {@link RingProvider}.
+	 *
+	 * @param ringProvider
+	 * 		supplies the layout of the ring
+	 * @param nVal
+	 * 		the number of replicas buckets are configured with
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec ring(RingProvider ringProvider, int nVal) {
+		settings.ring(ringProvider, nVal);
+		return this;
+	}
+
+	/**
+	 * Set how many queued requests are written to a connection at once, and how long to wait for more requests to
+	 * write along with the first one. Waiting trades latency for fewer, larger writes when requests arrive at a high
+	 * rate. By default, up to 64 requests are written at once without waiting.
+	 *
+	 * @param writeBatchSize
+	 * 		the maximum number of requests written at once
+	 * @param writeLinger
+	 * 		the time to wait for more requests or {@literal 0} to write right away
+	 * @param unit
+	 * 		the unit of the time
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec writeBatch(int writeBatchSize, long writeLinger, TimeUnit unit) {
+		settings.writeBatch(writeBatchSize, writeLinger, unit);
+		return this;
+	}
+
+	/**
+	 * Set the socket and channel settings to open connections with, e.g. to turn off {@code TCP_NODELAY}, size the
+	 * socket buffers or use pooled buffers.
+	 *
+	 * @param transport
+	 * 		the transport options to use for every connection
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec transport(TransportOptions transport) {
+		settings.transport(transport);
+		return this;
+	}
+
+	/**
+	 * Add a {@link RequestInterceptor} to call around every traced request. Interceptors are called in the order they
+	 * are added.
+	 *
+	 * @param interceptor
+	 * 		the interceptor to add
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec intercept(RequestInterceptor interceptor) {
+		interceptors.add(interceptor);
+		return this;
+	}
+
+	/**
+	 * Set the share of requests to trace when no {@link com.jbrisbin.riaktor.trace.TraceContext} is propagated with
+	 * them. Defaults to 1%. Requests are only traced if there are interceptors.
+	 *
+	 * @param sampleRate
+	 * 		the share of requests to trace, between 0 and 1
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec traceSampleRate(double sampleRate) {
+		this.traceSampleRate = sampleRate;
+		return this;
+	}
+
+	/**
+	 * Convert the values of gets and puts, including resolving siblings and populating annotated properties, on the
+	 * given {@link Dispatcher} instead of the thread that delivers responses. Responses are then not held up behind the
+	 * conversion of a large value. By default, values are converted as soon as their response is delivered.
+	 *
+	 * @param dispatcher
+	 * 		the dispatcher to convert values on, e.g. a {@link reactor.event.dispatch.ThreadPoolExecutorDispatcher}
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec convertOn(Dispatcher dispatcher) {
+		settings.conversionDispatcher(dispatcher);
+		this.conversionDispatcherName = null;
+		return this;
+	}
+
+	/**
+	 * Convert the values of gets and puts on the {@link Environment}'s dispatcher with the given name, e.g. {@link
+	 * Environment#THREAD_POOL}.
+	 *
+	 * @param dispatcherName
+	 * 		the name of the dispatcher to convert values on
+	 *
+	 * @return {@literal this}
+	 *
+	 * @see #convertOn(Dispatcher)
+	 */
+	public RiaktorSpec convertOn(String dispatcherName) {
+		this.conversionDispatcherName = dispatcherName;
+		settings.conversionDispatcher(null);
+		return this;
+	}
+
+	/**
+	 * Keep a {@link com.jbrisbin.riaktor.cache.NegativeCache} for a bucket, so gets for keys known to be missing are
+	 * answered without asking Riak. Keys a get found missing are remembered right away, while the Bloom filter of the
+	 * keys that exist is only used once {@link Riaktor#loadKeys(String)} has been called.
+	 *
+	 * @param bucket
+	 * 		the bucket to cache missing keys of
+	 * @param policy
+	 * 		the policy of the cache
+	 *
+	 * @return {@literal this}
+	 */
+	public RiaktorSpec negativeCache(String bucket, NegativeCachePolicy policy) {
+		settings.negativeCache(bucket, policy);
 		return this;
 	}
 
 	@Override
 	protected Riaktor configure(Reactor reactor, Environment environment) {
-		if(!converters.containsKey("application/json")) {
+		if(!settings.converters().containsKey("application/json")) {
 			ObjectMapper mapper = new ObjectMapper();
 			mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
 			mapper.enable(SerializationFeature.INDENT_OUTPUT);
 			mapper.registerModule(new AfterburnerModule());
-			converters.put("application/json", new ObjectMapperConverter(mapper));
+			settings.converter("application/json", new ObjectMapperConverter(mapper));
+		}
+
+		if(null != journalDirectory) {
+			try {
+				settings.journal(new RequestJournal(journalDirectory, journalSegmentSize, journalFsync));
+			} catch(IOException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+		if(null != conversionDispatcherName) {
+			settings.conversionDispatcher(environment.getDispatcher(conversionDispatcherName));
 		}
 
 		return new Riaktor(environment,
 		                   reactor,
-		                   timeout,
-		                   connectURIs,
-		                   converters,
-		                   defaultContentType);
+		                   settings.retryBudget(new RequestBudget(retryBudget, 100))
+		                           .tracer(new Tracer(interceptors, traceSampleRate)));
 	}
 
 }
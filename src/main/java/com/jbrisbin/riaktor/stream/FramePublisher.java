@@ -0,0 +1,229 @@
+package com.jbrisbin.riaktor.stream;
+
+import com.google.protobuf.Message;
+import com.jbrisbin.riaktor.encoding.RpbCodec;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import reactor.core.composable.Deferred;
+import reactor.core.composable.Promise;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * A {@link Publisher} of the items in a response Riak streams back in several frames, like a key listing, an index
+ * query or a MapReduce job. The request is sent once the subscriber first requests items, and each subscriber gets its
+ * own request.
+ * <p>
+ * A subscriber that first asks for every item gets them as fast as Riak sends them, over a pooled connection.
+ * Otherwise the request is sent over a connection of its own, and reading from it is paused whenever the items read
+ * so far cover what the subscriber has asked for and resumed once it asks for more, so a slow subscriber slows down
+ * Riak rather than having the response pile up in memory. That connection is closed once the response is complete.
+ * A subscriber that cancels stops getting items, but the rest of the response is still read and dropped.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public abstract class FramePublisher<T> implements Publisher<T> {
+
+	@Override
+	public void subscribe(Subscriber<? super T> subscriber) {
+		if(null == subscriber) {
+			throw new NullPointerException("Subscriber cannot be null.");
+		}
+		subscriber.onSubscribe(new FrameSubscription(subscriber));
+	}
+
+	/**
+	 * Send the request. Every frame of the response, or the error that ends it, must be passed to the given {@link
+	 * Deferred}.
+	 *
+	 * @param frames
+	 * 		receives the frames of the response
+	 */
+	protected abstract void send(Deferred<Message, Promise<Message>> frames);
+
+	/**
+	 * Add the items in a frame of the response to the given queue.
+	 *
+	 * @param frame
+	 * 		a frame of the response
+	 * @param items
+	 * 		the items waiting to be handed to the subscriber
+	 */
+	protected abstract void decode(Message frame, Queue<T> items);
+
+	/**
+	 * Receives the frames of the response directly, rather than through a composable, and hands their items to the
+	 * subscriber as it asks for them.
+	 */
+	private class FrameSubscription extends Deferred<Message, Promise<Message>>
+			implements Subscription, ReadControl.Aware {
+		private final Subscriber<? super T> subscriber;
+		private final Queue<T>              items = new ArrayDeque<>();
+
+		private ReadControl reads;
+		private long        demand;
+		private Throwable   error;
+		private boolean     started;
+		private boolean     done;
+		private boolean     paused;
+		private boolean     cancelled;
+		private boolean     terminated;
+		private boolean     emitting;
+		private boolean     missed;
+
+		private FrameSubscription(Subscriber<? super T> subscriber) {
+			super(null);
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public synchronized boolean pausesReads() {
+			return demand != Long.MAX_VALUE;
+		}
+
+		@Override
+		public synchronized void readControl(ReadControl reads) {
+			this.reads = reads;
+		}
+
+		@Override
+		public void request(long n) {
+			boolean start;
+			synchronized(this) {
+				if(cancelled || terminated) {
+					return;
+				}
+				if(n <= 0) {
+					error = new IllegalArgumentException("The number of items requested must be greater than 0.");
+					start = false;
+				} else {
+					demand = (Long.MAX_VALUE - demand < n ? Long.MAX_VALUE : demand + n);
+					start = !started;
+					started = true;
+				}
+			}
+			if(start) {
+				send(this);
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			synchronized(this) {
+				cancelled = true;
+				items.clear();
+				// keep reading so the rest of the response is taken off the connection
+				resumeReads();
+			}
+		}
+
+		@Override
+		public void accept(Message frame) {
+			synchronized(this) {
+				if(RpbCodec.isPartial(frame)) {
+					if(cancelled || terminated) {
+						return;
+					}
+				} else {
+					done = true;
+				}
+				if(!cancelled && null == error) {
+					try {
+						decode(frame, items);
+					} catch(RuntimeException e) {
+						error = e;
+					}
+				}
+			}
+			drain();
+		}
+
+		@Override
+		public void accept(Throwable t) {
+			synchronized(this) {
+				done = true;
+				if(null == error) {
+					error = t;
+				}
+			}
+			drain();
+		}
+
+		/**
+		 * Hand items to the subscriber for as long as it has demand. Only one thread does this at a time, and the
+		 * subscriber is called without holding the lock so it can request more from within {@code onNext}.
+		 */
+		private void drain() {
+			synchronized(this) {
+				if(emitting) {
+					missed = true;
+					return;
+				}
+				emitting = true;
+			}
+
+			while(true) {
+				T item = null;
+				Throwable err = null;
+				boolean complete = false;
+				synchronized(this) {
+					if(cancelled || terminated) {
+						emitting = false;
+						return;
+					}
+					if(null != error) {
+						err = error;
+						items.clear();
+						terminated = true;
+					} else if(!items.isEmpty() && demand > 0) {
+						item = items.poll();
+						if(demand != Long.MAX_VALUE) {
+							demand--;
+						}
+					} else if(items.isEmpty() && done) {
+						complete = true;
+						terminated = true;
+					} else if(missed) {
+						missed = false;
+						continue;
+					} else {
+						// only read more of the response while the subscriber wants more than has already been read
+						if(demand > 0) {
+							resumeReads();
+						} else if(!paused && !done && null != reads) {
+							paused = true;
+							reads.pause();
+						}
+						emitting = false;
+						return;
+					}
+					if(terminated) {
+						resumeReads();
+					}
+				}
+
+				if(null != err) {
+					subscriber.onError(err);
+					return;
+				}
+				if(complete) {
+					subscriber.onComplete();
+					return;
+				}
+				subscriber.onNext(item);
+			}
+		}
+
+		private void resumeReads() {
+			if(paused) {
+				paused = false;
+				reads.resume();
+			}
+		}
+	}
+
+}
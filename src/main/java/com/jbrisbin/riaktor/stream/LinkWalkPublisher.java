@@ -0,0 +1,370 @@
+package com.jbrisbin.riaktor.stream;
+
+import com.jbrisbin.riaktor.Entry;
+import com.jbrisbin.riaktor.Headers;
+import com.jbrisbin.riaktor.Link;
+import com.jbrisbin.riaktor.support.RequestPipeline;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import reactor.core.composable.Promise;
+import reactor.function.Consumer;
+import reactor.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * A {@link Publisher} of the objects reached by following links from an entry, level by level. Every object linked
+ * from one level is fetched at once, with at most {@code parallelism} gets outstanding, and published in link order.
+ * The next level is only fetched once the subscriber has taken the objects of the previous one.
+ * <p>
+ * Each object is fetched at most once however many links lead to it, so a cycle ends the walk instead of repeating
+ * it. At most {@code fanOut} objects are fetched per level and any further links are dropped. Links to objects that
+ * don't exist are skipped.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public abstract class LinkWalkPublisher<T> implements Publisher<Entry<T>> {
+
+	private final Entry<?>         from;
+	private final String           tag;
+	private final int              depth;
+	private final int              fanOut;
+	private final int              parallelism;
+
+	/**
+	 * Create a publisher of the objects reached by following links.
+	 *
+	 * @param from
+	 * 		the entry to start from
+	 * @param tag
+	 * 		the tag of the links to follow, or {@literal null} to follow every link
+	 * @param depth
+	 * 		the number of levels to follow links for
+	 * @param fanOut
+	 * 		the maximum number of objects to fetch per level
+	 * @param parallelism
+	 * 		the maximum number of gets outstanding at a time
+	 */
+	protected LinkWalkPublisher(Entry<?> from, String tag, int depth, int fanOut, int parallelism) {
+		Assert.notNull(from, "Entry cannot be null.");
+		Assert.isTrue(depth > 0, "Depth must be greater than 0.");
+		Assert.isTrue(fanOut > 0, "Fan-out must be greater than 0.");
+		Assert.isTrue(parallelism > 0, "Parallelism must be greater than 0.");
+		this.from = from;
+		this.tag = ("_".equals(tag) ? null : tag);
+		this.depth = depth;
+		this.fanOut = fanOut;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Get the object at the end of a link.
+	 *
+	 * @param link
+	 * 		the link to follow
+	 *
+	 * @return a {@link Promise} of the object, or of {@literal null} if it doesn't exist
+	 */
+	protected abstract Promise<Entry<T>> fetch(Link link);
+
+	/**
+	 * Find the links of every level before any object is fetched, like with the link phases of a MapReduce job. This is
+	 * called when the subscriber first asks for objects. Links found this way are still filtered by tag, visited only
+	 * once and limited to {@code fanOut} per level.
+	 *
+	 * @return a {@link Promise} of the links of each level, or {@literal null} to find the links of each level in the
+	 * objects fetched at the level before it
+	 */
+	protected Promise<List<List<Link>>> follow() {
+		return null;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super Entry<T>> subscriber) {
+		if(null == subscriber) {
+			throw new NullPointerException("Subscriber cannot be null.");
+		}
+		subscriber.onSubscribe(new Walk(subscriber));
+	}
+
+	private static List<Link> linksOf(Entry<?> entry) {
+		Headers headers = entry.getHeaders();
+		return (null != headers ? headers.getLinks() : Collections.<Link>emptyList());
+	}
+
+	private class Walk implements Subscription {
+		private final Subscriber<? super Entry<T>> subscriber;
+		private final Queue<Entry<T>>              items   = new ArrayDeque<>();
+		private final Map<String, Set<String>>     visited = new HashMap<>();
+
+		private List<List<Link>>          levels;
+		private List<Link>                found;
+		private List<Link>                pending;
+		private RequestPipeline<Entry<T>> pipeline;
+		private int                       level;
+		private long                      demand;
+		private Throwable                 error;
+		private boolean                   followed;
+		private boolean                   fetching;
+		private boolean                   cancelled;
+		private boolean                   terminated;
+		private boolean                   emitting;
+		private boolean                   missed;
+
+		private Walk(Subscriber<? super Entry<T>> subscriber) {
+			this.subscriber = subscriber;
+			this.found = new ArrayList<>(linksOf(from));
+			visit(from.getBucket(), from.getKey());
+		}
+
+		@Override
+		public void request(long n) {
+			synchronized(this) {
+				if(cancelled || terminated) {
+					return;
+				}
+				if(n <= 0) {
+					error = new IllegalArgumentException("The number of items requested must be greater than 0.");
+				} else {
+					demand = (Long.MAX_VALUE - demand < n ? Long.MAX_VALUE : demand + n);
+				}
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			RequestPipeline<Entry<T>> p;
+			synchronized(this) {
+				cancelled = true;
+				items.clear();
+				p = pipeline;
+			}
+			if(null != p) {
+				p.cancel();
+			}
+		}
+
+		/**
+		 * Hand objects to the subscriber for as long as it has demand, and start on the next level once the objects
+		 * of the last one have all been handed over.
+		 */
+		private void drain() {
+			synchronized(this) {
+				if(emitting) {
+					missed = true;
+					return;
+				}
+				emitting = true;
+			}
+
+			while(true) {
+				Entry<T> item = null;
+				Throwable err = null;
+				boolean complete = false;
+				boolean follow = false;
+				List<Link> links = null;
+				synchronized(this) {
+					if(cancelled || terminated) {
+						emitting = false;
+						return;
+					}
+					if(null != error) {
+						err = error;
+						items.clear();
+						terminated = true;
+					} else if(!items.isEmpty() && demand > 0) {
+						item = items.poll();
+						if(demand != Long.MAX_VALUE) {
+							demand--;
+						}
+					} else if(items.isEmpty() && !fetching && !followed) {
+						if(demand > 0) {
+							followed = true;
+							fetching = true;
+							follow = true;
+						} else if(missed) {
+							missed = false;
+							continue;
+						} else {
+							emitting = false;
+							return;
+						}
+					} else if(items.isEmpty() && !fetching) {
+						if(null == pending) {
+							pending = nextLevel();
+						}
+						if(pending.isEmpty()) {
+							complete = true;
+							terminated = true;
+						} else if(demand > 0) {
+							links = pending;
+							pending = null;
+							fetching = true;
+						} else if(missed) {
+							missed = false;
+							continue;
+						} else {
+							emitting = false;
+							return;
+						}
+					} else if(missed) {
+						missed = false;
+						continue;
+					} else {
+						emitting = false;
+						return;
+					}
+				}
+
+				if(null != err) {
+					subscriber.onError(err);
+					return;
+				} else if(complete) {
+					subscriber.onComplete();
+					return;
+				} else if(follow) {
+					follow();
+				} else if(null != links) {
+					fetch(links);
+				} else {
+					subscriber.onNext(item);
+				}
+			}
+		}
+
+		/**
+		 * Work out which objects to fetch at the next level that has any.
+		 *
+		 * @return the links to the objects, or an empty list if the walk is over
+		 */
+		private List<Link> nextLevel() {
+			List<Link> links = new ArrayList<>();
+			while(links.isEmpty() && level < depth) {
+				List<Link> candidates;
+				if(null != levels) {
+					candidates = (level < levels.size() ? levels.get(level) : Collections.<Link>emptyList());
+				} else {
+					candidates = found;
+					found = new ArrayList<>();
+				}
+				level++;
+
+				for(Link link : candidates) {
+					if(links.size() == fanOut) {
+						break;
+					}
+					if((null == tag || tag.equals(link.getTag())) && visit(link.getBucket(), link.getKey())) {
+						links.add(link);
+					}
+				}
+				if(null == levels) {
+					// nothing was fetched at this level, so there's nothing to follow from it either
+					break;
+				}
+			}
+			return links;
+		}
+
+		private boolean visit(String bucket, String key) {
+			Set<String> keys = visited.get(bucket);
+			if(null == keys) {
+				keys = new HashSet<>();
+				visited.put(bucket, keys);
+			}
+			return keys.add(key);
+		}
+
+		private void follow() {
+			Promise<List<List<Link>>> p = LinkWalkPublisher.this.follow();
+			if(null == p) {
+				synchronized(this) {
+					fetching = false;
+				}
+				return;
+			}
+			p.onSuccess(new Consumer<List<List<Link>>>() {
+				@Override
+				public void accept(List<List<Link>> links) {
+					synchronized(Walk.this) {
+						levels = links;
+						fetching = false;
+					}
+					drain();
+				}
+			});
+			p.onError(new Consumer<Throwable>() {
+				@Override
+				public void accept(Throwable t) {
+					synchronized(Walk.this) {
+						error = t;
+					}
+					drain();
+				}
+			});
+		}
+
+		private void fetch(final List<Link> links) {
+			RequestPipeline<Entry<T>> p = new RequestPipeline<Entry<T>>(links.size(), parallelism) {
+				@Override
+				protected Promise<Entry<T>> request(int index) {
+					return LinkWalkPublisher.this.fetch(links.get(index));
+				}
+
+				@Override
+				protected void result(int index, Entry<T> entry) {
+					if(null == entry) {
+						return;
+					}
+					synchronized(Walk.this) {
+						if(cancelled) {
+							return;
+						}
+						items.add(entry);
+						if(null == levels && level < depth) {
+							found.addAll(linksOf(entry));
+						}
+					}
+					drain();
+				}
+
+				@Override
+				protected void complete() {
+					synchronized(Walk.this) {
+						fetching = false;
+						pipeline = null;
+					}
+					drain();
+				}
+
+				@Override
+				protected void fail(Throwable t) {
+					synchronized(Walk.this) {
+						if(null == error) {
+							error = t;
+						}
+					}
+					drain();
+				}
+			};
+			synchronized(this) {
+				if(cancelled) {
+					return;
+				}
+				pipeline = p;
+			}
+			p.credit(Long.MAX_VALUE);
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.jbrisbin.riaktor.stream;
+
+/**
+ * Pauses and resumes reading from the connection a streamed response arrives on. While reads are paused, Riak is held
+ * back by TCP flow control instead of responses piling up in memory. Nothing else is read from the connection either,
+ * which is why a request whose reads may be paused is sent over a connection of its own rather than one from the pool.
+ *
+ * @author Jon Brisbin
+ */
+public interface ReadControl {
+
+	/**
+	 * Stop reading from the connection. Frames that have already been read are still delivered.
+	 */
+	void pause();
+
+	/**
+	 * Start reading from the connection again.
+	 */
+	void resume();
+
+	/**
+	 * Implemented by the handler of a streamed response to be given the {@link ReadControl} of the connection its
+	 * request is sent over, before the request is sent.
+	 */
+	interface Aware {
+		/**
+		 * Whether reads may be paused while this response is read. If not, the request is sent over a pooled connection
+		 * and {@link #readControl(ReadControl)} is never called.
+		 *
+		 * @return {@literal true} if the request needs a connection of its own
+		 */
+		boolean pausesReads();
+
+		void readControl(ReadControl reads);
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.jbrisbin.riaktor.stream;
+
+import com.jbrisbin.riaktor.support.RequestPipeline;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import reactor.core.composable.Promise;
+import reactor.util.Assert;
+
+/**
+ * A {@link Publisher} that makes one request per item, like a get per key of a multi-get, and publishes the results
+ * in item order. A request is only made once the subscriber has asked for its result, and at most {@code parallelism}
+ * requests are outstanding at a time, so a slow subscriber holds back the requests instead of having results pile up
+ * in memory.
+ *
+ * @author Jon Brisbin
+ */
+public abstract class RequestPublisher<T> implements Publisher<T> {
+
+	private final int count;
+	private final int parallelism;
+
+	/**
+	 * Create a publisher of the results of the given number of requests.
+	 *
+	 * @param count
+	 * 		the number of requests to make
+	 * @param parallelism
+	 * 		the maximum number of requests outstanding at a time
+	 */
+	protected RequestPublisher(int count, int parallelism) {
+		Assert.isTrue(count >= 0, "Count cannot be negative.");
+		Assert.isTrue(parallelism > 0, "Parallelism must be greater than 0.");
+		this.count = count;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Make the request for the item at the given index. The result must not be {@literal null}.
+	 *
+	 * @param index
+	 * 		the index of the item
+	 *
+	 * @return a {@link Promise} of the result
+	 */
+	protected abstract Promise<T> request(int index);
+
+	@Override
+	public void subscribe(final Subscriber<? super T> subscriber) {
+		if(null == subscriber) {
+			throw new NullPointerException("Subscriber cannot be null.");
+		}
+
+		final RequestPipeline<T> pipeline = new RequestPipeline<T>(count, parallelism) {
+			@Override
+			protected Promise<T> request(int index) {
+				return RequestPublisher.this.request(index);
+			}
+
+			@Override
+			protected void result(int index, T result) {
+				subscriber.onNext(result);
+			}
+
+			@Override
+			protected void complete() {
+				subscriber.onComplete();
+			}
+
+			@Override
+			protected void fail(Throwable t) {
+				subscriber.onError(t);
+			}
+		};
+
+		subscriber.onSubscribe(new Subscription() {
+			@Override
+			public void request(long n) {
+				if(n <= 0) {
+					pipeline.cancel();
+					subscriber.onError(new IllegalArgumentException("The number of items requested must be greater than 0."));
+					return;
+				}
+				pipeline.credit(n);
+			}
+
+			@Override
+			public void cancel() {
+				pipeline.cancel();
+			}
+		});
+		if(count == 0) {
+			subscriber.onComplete();
+		}
+	}
+
+}
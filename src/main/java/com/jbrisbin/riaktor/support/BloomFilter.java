@@ -0,0 +1,128 @@
+package com.jbrisbin.riaktor.support;
+
+import reactor.util.Assert;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size Bloom filter of strings that can be added to from many threads at once. The bit positions of a string
+ * are derived from two 64-bit hashes of its characters, so checking a key doesn't allocate.
+ *
+ * @author Jon Brisbin
+ */
+public final class BloomFilter {
+
+	private final AtomicLongArray bits;
+	private final long            numBits;
+	private final int             numHashes;
+	private final int             capacity;
+	private final AtomicInteger   count = new AtomicInteger();
+
+	/**
+	 * Create a filter sized to hold the given number of strings at the given false positive rate.
+	 *
+	 * @param capacity
+	 * 		the number of strings
+	 * @param falsePositiveRate
+	 * 		the false positive rate once the filter holds {@code capacity} strings, between 0 and 1
+	 */
+	public BloomFilter(int capacity, double falsePositiveRate) {
+		Assert.isTrue(capacity > 0, "Capacity must be greater than 0.");
+		Assert.isTrue(falsePositiveRate > 0 && falsePositiveRate < 1, "False positive rate must be between 0 and 1.");
+		this.capacity = capacity;
+		this.numBits = bitsFor(capacity, falsePositiveRate);
+		this.numHashes = Math.max(1, (int)Math.round((double)numBits / capacity * Math.log(2)));
+		this.bits = new AtomicLongArray((int)((numBits + 63) / 64));
+	}
+
+	/**
+	 * Get the number of bits a filter for the given number of strings and false positive rate needs.
+	 *
+	 * @param capacity
+	 * 		the number of strings
+	 * @param falsePositiveRate
+	 * 		the false positive rate, between 0 and 1
+	 *
+	 * @return the number of bits
+	 */
+	public static long bitsFor(int capacity, double falsePositiveRate) {
+		return Math.max(64, (long)Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+	}
+
+	/**
+	 * Add a string.
+	 *
+	 * @param s
+	 * 		the string to add
+	 */
+	public void add(String s) {
+		long h1 = hash(s, 0x9E3779B97F4A7C15L);
+		long h2 = hash(s, 0xC2B2AE3D27D4EB4FL);
+		for(int i = 0; i < numHashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+			int idx = (int)(bit >>> 6);
+			long mask = 1L << bit;
+			long word;
+			do {
+				word = bits.get(idx);
+				if((word & mask) != 0) {
+					break;
+				}
+			} while(!bits.compareAndSet(idx, word, word | mask));
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Check whether a string may have been added.
+	 *
+	 * @param s
+	 * 		the string to check
+	 *
+	 * @return {@literal false} if the string has definitely not been added
+	 */
+	public boolean mightContain(String s) {
+		long h1 = hash(s, 0x9E3779B97F4A7C15L);
+		long h2 = hash(s, 0xC2B2AE3D27D4EB4FL);
+		for(int i = 0; i < numHashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+			if((bits.get((int)(bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether the filter holds as many strings as it was sized for.
+	 *
+	 * @return {@literal true} if adding more strings would raise the false positive rate past what it was sized for
+	 */
+	public boolean isFull() {
+		return count.get() >= capacity;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public long numBits() {
+		return numBits;
+	}
+
+	private static long hash(String s, long seed) {
+		long h = seed ^ s.length();
+		for(int i = 0; i < s.length(); i++) {
+			h = (h ^ s.charAt(i)) * 0x100000001B3L;
+		}
+		// finish with MurmurHash3's fmix64 so every bit of the input affects every bit of the hash
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
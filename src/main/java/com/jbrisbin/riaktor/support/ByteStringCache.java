@@ -0,0 +1,55 @@
+package com.jbrisbin.riaktor.support;
+
+import com.google.protobuf.ByteString;
+import reactor.util.Assert;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns the UTF-8 encoding of strings, like bucket names and content types, that go into nearly every request, so
+ * they aren't encoded again for each one. Once the cache holds {@code maxSize} strings, strings that aren't in it are
+ * encoded on every call rather than evicting anything.
+ *
+ * @author Jon Brisbin
+ */
+public final class ByteStringCache {
+
+	private final ConcurrentMap<String, ByteString> cache = new ConcurrentHashMap<>();
+	private final int                               maxSize;
+
+	/**
+	 * Create a cache that interns at most the given number of strings.
+	 *
+	 * @param maxSize
+	 * 		the maximum number of strings to intern
+	 */
+	public ByteStringCache(int maxSize) {
+		Assert.isTrue(maxSize >= 0, "Max size cannot be negative.");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Get the UTF-8 encoding of a string.
+	 *
+	 * @param s
+	 * 		the string to encode
+	 *
+	 * @return the encoded string
+	 */
+	public ByteString get(String s) {
+		ByteString bytes = cache.get(s);
+		if(null != bytes) {
+			return bytes;
+		}
+		bytes = ByteString.copyFromUtf8(s);
+		if(cache.size() < maxSize) {
+			ByteString existing = cache.putIfAbsent(s, bytes);
+			if(null != existing) {
+				return existing;
+			}
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.jbrisbin.riaktor.support;
+
+import reactor.util.Assert;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps a sliding window of the most recent latency samples and computes percentiles over them.
+ *
+ * @author Jon Brisbin
+ */
+public final class LatencyTracker {
+
+	private final AtomicLongArray samples;
+	private final AtomicLong      count = new AtomicLong();
+	private final int             recalcInterval;
+
+	private volatile long[] sorted      = new long[0];
+	private volatile long   sortedCount = 0;
+
+	public LatencyTracker() {
+		this(1024);
+	}
+
+	public LatencyTracker(int windowSize) {
+		Assert.isTrue(windowSize > 0, "Window size must be greater than 0.");
+		this.samples = new AtomicLongArray(windowSize);
+		this.recalcInterval = Math.max(1, windowSize / 16);
+	}
+
+	/**
+	 * Record a latency sample.
+	 *
+	 * @param nanos
+	 * 		the latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		long i = count.getAndIncrement();
+		samples.set((int)(i % samples.length()), nanos);
+	}
+
+	/**
+	 * Get the total number of samples recorded.
+	 *
+	 * @return the number of samples recorded
+	 */
+	public long count() {
+		return count.get();
+	}
+
+	/**
+	 * Get the latency at the given percentile of the current window.
+	 *
+	 * @param percentile
+	 * 		the percentile, between 0 and 100
+	 *
+	 * @return the latency in nanoseconds or {@literal -1} if no samples have been recorded
+	 */
+	public long percentile(double percentile) {
+		long[] s = sorted();
+		if(s.length == 0) {
+			return -1;
+		}
+		int idx = (int)Math.ceil((percentile / 100.0) * s.length) - 1;
+		return s[Math.min(s.length - 1, Math.max(0, idx))];
+	}
+
+	private long[] sorted() {
+		long c = count.get();
+		if(c - sortedCount < recalcInterval && sorted.length > 0) {
+			return sorted;
+		}
+		int len = (int)Math.min(c, samples.length());
+		long[] s = new long[len];
+		for(int i = 0; i < len; i++) {
+			s[i] = samples.get(i);
+		}
+		Arrays.sort(s);
+		sorted = s;
+		sortedCount = c;
+		return s;
+	}
+
+}
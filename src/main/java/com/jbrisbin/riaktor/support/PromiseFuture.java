@@ -0,0 +1,128 @@
+package com.jbrisbin.riaktor.support;
+
+import reactor.core.composable.Promise;
+import reactor.function.Consumer;
+import reactor.util.Assert;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+/**
+ * A {@link Future} of the value of a {@link Promise}. Unlike {@link Promise#await()}, waiting callers are parked on a
+ * lock-free queue instead of a monitor, so many threads can wait at once without contending for a lock, and the value
+ * is handed over without going through a {@link reactor.event.dispatch.Dispatcher}.
+ * <p>
+ * Cancelling the future only releases the callers waiting on it. A request that has already been sent can't be taken
+ * back.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public final class PromiseFuture<T> implements Future<T> {
+
+	private static final int PENDING   = 0;
+	private static final int SUCCESS   = 1;
+	private static final int ERROR     = 2;
+	private static final int CANCELLED = 3;
+
+	private final Sync sync = new Sync();
+
+	private T         value;
+	private Throwable error;
+
+	/**
+	 * Create a future that completes when the given {@link Promise} does.
+	 *
+	 * @param promise
+	 * 		the promise to wait on
+	 */
+	public PromiseFuture(Promise<T> promise) {
+		Assert.notNull(promise, "Promise cannot be null.");
+		promise.onSuccess(new Consumer<T>() {
+			@Override
+			public void accept(T t) {
+				value = t;
+				sync.complete(SUCCESS);
+			}
+		});
+		promise.onError(new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				error = t;
+				sync.complete(ERROR);
+			}
+		});
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return sync.complete(CANCELLED);
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return sync.state() == CANCELLED;
+	}
+
+	@Override
+	public boolean isDone() {
+		return sync.state() != PENDING;
+	}
+
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		sync.acquireSharedInterruptibly(0);
+		return result();
+	}
+
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if(!sync.tryAcquireSharedNanos(0, unit.toNanos(timeout))) {
+			throw new TimeoutException("No result after " + timeout + " " + unit.toString().toLowerCase());
+		}
+		return result();
+	}
+
+	private T result() throws ExecutionException {
+		switch(sync.state()) {
+			case SUCCESS:
+				return value;
+			case ERROR:
+				throw new ExecutionException(error);
+			default:
+				throw new CancellationException();
+		}
+	}
+
+	private static class Sync extends AbstractQueuedSynchronizer {
+		private static final long serialVersionUID = 4237520393841427035L;
+
+		private int state() {
+			return getState();
+		}
+
+		// the value or error is written before the state, so it is visible to anyone who sees the state change
+		private boolean complete(int state) {
+			if(!compareAndSetState(PENDING, state)) {
+				return false;
+			}
+			releaseShared(0);
+			return true;
+		}
+
+		@Override
+		protected int tryAcquireShared(int ignored) {
+			return (getState() != PENDING ? 1 : -1);
+		}
+
+		@Override
+		protected boolean tryReleaseShared(int ignored) {
+			return true;
+		}
+	}
+
+}
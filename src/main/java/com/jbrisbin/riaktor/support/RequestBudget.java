@@ -0,0 +1,68 @@
+package com.jbrisbin.riaktor.support;
+
+import reactor.util.Assert;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that caps extra requests (hedges, retries) at a ratio of the normal request volume. Every normal
+ * request deposits {@code ratio} tokens and every extra request withdraws one whole token.
+ *
+ * @author Jon Brisbin
+ */
+public final class RequestBudget {
+
+	private static final long UNIT = 1000;
+
+	private final long       deposit;
+	private final long       maxTokens;
+	private final AtomicLong tokens;
+
+	/**
+	 * Create a budget that allows extra requests up to the given ratio of normal requests.
+	 *
+	 * @param ratio
+	 * 		the ratio of extra requests to normal requests, e.g. {@literal 0.05} for 5%
+	 * @param maxTokens
+	 * 		the maximum number of extra requests that can be saved up
+	 */
+	public RequestBudget(double ratio, int maxTokens) {
+		Assert.isTrue(ratio >= 0, "Ratio cannot be negative.");
+		Assert.isTrue(maxTokens > 0, "Max tokens must be greater than 0.");
+		this.deposit = (long)(ratio * UNIT);
+		this.maxTokens = maxTokens * UNIT;
+		this.tokens = new AtomicLong(UNIT);
+	}
+
+	/**
+	 * Credit the budget for a normal request.
+	 */
+	public void deposit() {
+		long current;
+		long next;
+		do {
+			current = tokens.get();
+			if(current >= maxTokens) {
+				return;
+			}
+			next = Math.min(maxTokens, current + deposit);
+		} while(!tokens.compareAndSet(current, next));
+	}
+
+	/**
+	 * Try to spend one token on an extra request.
+	 *
+	 * @return {@literal true} if the extra request is within budget, {@literal false} otherwise
+	 */
+	public boolean tryAcquire() {
+		long current;
+		do {
+			current = tokens.get();
+			if(current < UNIT) {
+				return false;
+			}
+		} while(!tokens.compareAndSet(current, current - UNIT));
+		return true;
+	}
+
+}
@@ -0,0 +1,352 @@
+package com.jbrisbin.riaktor.support;
+
+import com.basho.riak.protobuf.RiakKvPB;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.jbrisbin.riaktor.encoding.RpbCodec;
+import com.jbrisbin.riaktor.event.EventType;
+import com.jbrisbin.riaktor.event.RiakEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.function.Function;
+import reactor.function.Predicate;
+import reactor.io.Buffer;
+import reactor.tuple.Tuple;
+import reactor.tuple.Tuple2;
+import reactor.util.Assert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * An append-only journal of write requests that couldn't be sent because no node was available. Requests are stored
+ * as the frames {@link RpbCodec} encodes them to, in memory-mapped segment files, and are replayed in the order they
+ * were written once a node is available again, even if the process was restarted in between.
+ * <p>
+ * Each segment starts with the offset of the first record that hasn't been replayed yet, followed by records made up
+ * of a length and an encoded frame. A length of {@literal 0} marks the end of the records written so far. A request
+ * is marked as replayed after it has been sent, so a request may be sent twice if the process dies in between.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public class RequestJournal implements Closeable {
+
+	public enum Fsync {
+		/**
+		 * Force every record to disk as soon as it is written.
+		 */
+		ALWAYS,
+		/**
+		 * Force records to disk once a second.
+		 */
+		PERIODIC,
+		/**
+		 * Leave it to the operating system to write records to disk.
+		 */
+		NEVER
+	}
+
+	private static final Logger LOG           = LoggerFactory.getLogger(RequestJournal.class);
+	private static final String SUFFIX        = ".journal";
+	private static final int    HEADER_LENGTH = 4;
+
+	private final Path                                 directory;
+	private final int                                  segmentSize;
+	private final Fsync                                fsync;
+	private final Function<RiakEvent<Message>, Buffer> encoder;
+	private final LinkedList<Segment>                  segments;
+
+	private long nextSegment;
+	private long nextSequence;
+	private long readSequence;
+
+	/**
+	 * Open the journal in the given directory, recovering any records left in it.
+	 *
+	 * @param directory
+	 * 		the directory to keep segment files in
+	 * @param segmentSize
+	 * 		the size of each segment file in bytes
+	 * @param fsync
+	 * 		when records are forced to disk
+	 *
+	 * @throws IOException
+	 * 		if the directory or its segments can't be read
+	 */
+	public RequestJournal(Path directory, int segmentSize, Fsync fsync) throws IOException {
+		Assert.notNull(directory, "Directory cannot be null.");
+		Assert.isTrue(segmentSize > HEADER_LENGTH + 4, "Segment size is too small.");
+		Assert.notNull(fsync, "Fsync policy cannot be null.");
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+		this.fsync = fsync;
+		this.encoder = new RpbCodec().encoder();
+		this.segments = new LinkedList<>();
+
+		List<Path> files = new ArrayList<>();
+		try(DirectoryStream<Path> dir = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for(Path file : dir) {
+				files.add(file);
+			}
+		}
+		Collections.sort(files);
+
+		int recovered = 0;
+		for(Path file : files) {
+			String name = file.getFileName().toString();
+			try {
+				long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+				nextSegment = Math.max(nextSegment, id + 1);
+			} catch(NumberFormatException e) {
+				continue;
+			}
+			Segment segment = new Segment(file, 0);
+			if(segment.isConsumed()) {
+				segment.delete();
+				continue;
+			}
+			recovered += segment.countUnread();
+			segments.add(segment);
+		}
+		nextSequence = recovered;
+		if(recovered > 0 && LOG.isInfoEnabled()) {
+			LOG.info("Recovered {} journaled requests from {}", recovered, directory);
+		}
+	}
+
+	/**
+	 * Whether requests of the given type should be journaled. Only writes are, since reads are worthless once the
+	 * caller has gone away.
+	 *
+	 * @param type
+	 * 		the type of request
+	 *
+	 * @return {@literal true} if the request should be journaled
+	 */
+	public static boolean isJournaled(EventType type) {
+		switch(type) {
+			case PutReq:
+			case DelReq:
+			case CounterUpdateReq:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	public Fsync fsync() {
+		return fsync;
+	}
+
+	/**
+	 * Whether every journaled request has been replayed.
+	 *
+	 * @return {@literal true} if there is nothing to replay
+	 */
+	public synchronized boolean isEmpty() {
+		return readSequence == nextSequence;
+	}
+
+	/**
+	 * Append a request to the journal.
+	 *
+	 * @param ev
+	 * 		the request to append
+	 *
+	 * @return the sequence number of the request
+	 *
+	 * @throws IOException
+	 * 		if a new segment can't be created
+	 */
+	public synchronized long append(RiakEvent<Message> ev) throws IOException {
+		byte[] frame = encoder.apply(ev).asBytes();
+		int recordLength = 4 + frame.length;
+
+		Segment segment = segments.peekLast();
+		// leave room for the zero length that marks the end of the records
+		if(null == segment || segment.remaining() < recordLength + 4) {
+			segment = new Segment(directory.resolve(String.format("%020d%s", nextSegment++, SUFFIX)),
+			                      Math.max(segmentSize, HEADER_LENGTH + recordLength + 4));
+			segments.add(segment);
+		}
+		segment.append(frame);
+		if(fsync == Fsync.ALWAYS) {
+			segment.buffer.force();
+		}
+		return nextSequence++;
+	}
+
+	/**
+	 * Replay journaled requests in order. Replay stops at the first request the given {@link Predicate} doesn't accept,
+	 * which is left in the journal to be replayed next time.
+	 *
+	 * @param sender
+	 * 		tries to send a request, given as its sequence number and the request itself
+	 *
+	 * @return {@literal true} if every request was replayed, {@literal false} otherwise
+	 */
+	public synchronized boolean replay(Predicate<Tuple2<Long, RiakEvent<Message>>> sender) {
+		Segment segment;
+		while(null != (segment = segments.peekFirst())) {
+			byte[] frame = segment.peek();
+			if(null == frame) {
+				if(segment == segments.peekLast()) {
+					return true;
+				}
+				segments.removeFirst();
+				try {
+					segment.delete();
+				} catch(IOException e) {
+					if(LOG.isWarnEnabled()) {
+						LOG.warn("Could not delete replayed journal segment " + segment.path, e);
+					}
+				}
+				continue;
+			}
+
+			long seq = readSequence;
+			RiakEvent<Message> ev;
+			try {
+				ev = decode(frame);
+			} catch(InvalidProtocolBufferException | RuntimeException e) {
+				// an unknown request type or a truncated frame is as corrupt as a message that doesn't parse
+				if(LOG.isErrorEnabled()) {
+					LOG.error("Skipping corrupt journaled request " + seq, e);
+				}
+				segment.advance();
+				readSequence++;
+				continue;
+			}
+			if(!sender.test(Tuple.of(seq, ev))) {
+				return false;
+			}
+			segment.advance();
+			readSequence++;
+		}
+		return true;
+	}
+
+	/**
+	 * Force every record written so far to disk.
+	 */
+	public synchronized void force() {
+		for(Segment segment : segments) {
+			segment.buffer.force();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if(fsync != Fsync.NEVER) {
+			force();
+		}
+		for(Segment segment : segments) {
+			segment.file.close();
+		}
+	}
+
+	private static RiakEvent<Message> decode(byte[] frame) throws InvalidProtocolBufferException {
+		EventType type = EventType.fromByteFlag(frame[0]);
+		byte[] msgbytes = new byte[frame.length - 1];
+		System.arraycopy(frame, 1, msgbytes, 0, msgbytes.length);
+
+		Message msg;
+		switch(type) {
+			case PutReq:
+				msg = RiakKvPB.RpbPutReq.parseFrom(msgbytes);
+				break;
+			case DelReq:
+				msg = RiakKvPB.RpbDelReq.parseFrom(msgbytes);
+				break;
+			case CounterUpdateReq:
+				msg = RiakKvPB.RpbCounterUpdateReq.parseFrom(msgbytes);
+				break;
+			default:
+				throw new InvalidProtocolBufferException(type + " requests are not journaled.");
+		}
+		return new RiakEvent<>(msg, type);
+	}
+
+	private static class Segment {
+		private final Path             path;
+		private final RandomAccessFile file;
+		private final MappedByteBuffer buffer;
+
+		private int readPosition;
+		private int writePosition;
+
+		private Segment(Path path, int size) throws IOException {
+			this.path = path;
+			this.file = new RandomAccessFile(path.toFile(), "rw");
+			this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, file.length()));
+
+			readPosition = Math.max(HEADER_LENGTH, buffer.getInt(0));
+			writePosition = readPosition;
+			int len;
+			while(writePosition + 4 <= buffer.limit()
+					&& (len = buffer.getInt(writePosition)) > 0
+					&& writePosition + 4 + len <= buffer.limit()) {
+				writePosition += 4 + len;
+			}
+		}
+
+		private int remaining() {
+			return buffer.limit() - writePosition;
+		}
+
+		private boolean isConsumed() {
+			return readPosition == writePosition;
+		}
+
+		private int countUnread() {
+			int count = 0;
+			for(int pos = readPosition; pos < writePosition; pos += 4 + buffer.getInt(pos)) {
+				count++;
+			}
+			return count;
+		}
+
+		private void append(byte[] frame) {
+			// write the frame and the end marker after it before the frame's length, so a torn write reads as the end of
+			// the records, and whatever a torn write left past this record isn't read as one
+			buffer.position(writePosition + 4);
+			buffer.put(frame);
+			buffer.putInt(writePosition + 4 + frame.length, 0);
+			buffer.putInt(writePosition, frame.length);
+			writePosition += 4 + frame.length;
+		}
+
+		private byte[] peek() {
+			if(readPosition >= writePosition) {
+				return null;
+			}
+			int len = buffer.getInt(readPosition);
+			byte[] frame = new byte[len];
+			buffer.position(readPosition + 4);
+			buffer.get(frame);
+			return frame;
+		}
+
+		private void advance() {
+			readPosition += 4 + buffer.getInt(readPosition);
+			buffer.putInt(0, readPosition);
+		}
+
+		private void delete() throws IOException {
+			file.close();
+			Files.deleteIfExists(path);
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+package com.jbrisbin.riaktor.support;
+
+import reactor.core.composable.Promise;
+import reactor.function.Consumer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs one request per item, like the chunks of a large object or the keys of a multi-get, with at most {@code
+ * parallelism} requests outstanding and hands the results on in item order. An item is only requested once there is
+ * credit for it, so a slow reader limits how many results are held in memory.
+ *
+ * @author Jon Brisbin
+ */
+public abstract class RequestPipeline<T> {
+
+	private final int             count;
+	private final int             parallelism;
+	private final Map<Integer, T> ready = new HashMap<>();
+
+	private long    credit;
+	private int     nextRequest;
+	private int     nextResult;
+	private int     outstanding;
+	private boolean failed;
+
+	public RequestPipeline(int count, int parallelism) {
+		this.count = count;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Start the request for the item at the given index.
+	 */
+	protected abstract Promise<T> request(int index);
+
+	/**
+	 * Called with the result of each item, in item order.
+	 */
+	protected abstract void result(int index, T result);
+
+	/**
+	 * Called once every item has a result.
+	 */
+	protected abstract void complete();
+
+	/**
+	 * Called the first time a request fails, after which nothing else is requested.
+	 */
+	protected abstract void fail(Throwable t);
+
+	/**
+	 * Allow the given number of additional items to be requested.
+	 *
+	 * @param n
+	 * 		the number of items, or {@link Long#MAX_VALUE} to request every item as fast as possible
+	 */
+	public void credit(long n) {
+		synchronized(this) {
+			credit = (Long.MAX_VALUE - credit < n ? Long.MAX_VALUE : credit + n);
+		}
+		fill();
+	}
+
+	/**
+	 * Stop requesting items. Results of requests that are still outstanding are dropped, and neither {@link
+	 * #complete()} nor {@link #fail(Throwable)} is called.
+	 */
+	public synchronized void cancel() {
+		failed = true;
+		ready.clear();
+	}
+
+	private void fill() {
+		while(true) {
+			final int index;
+			synchronized(this) {
+				if(failed || credit == 0 || outstanding >= parallelism || nextRequest >= count) {
+					return;
+				}
+				if(credit != Long.MAX_VALUE) {
+					credit--;
+				}
+				outstanding++;
+				index = nextRequest++;
+			}
+
+			Promise<T> p = request(index);
+			p.onSuccess(new Consumer<T>() {
+				@Override
+				public void accept(T result) {
+					done(index, result);
+				}
+			});
+			p.onError(new Consumer<Throwable>() {
+				@Override
+				public void accept(Throwable t) {
+					synchronized(RequestPipeline.this) {
+						if(failed) {
+							return;
+						}
+						failed = true;
+					}
+					fail(t);
+				}
+			});
+		}
+	}
+
+	private void done(int index, T result) {
+		boolean finished = false;
+		synchronized(this) {
+			outstanding--;
+			if(failed) {
+				return;
+			}
+			ready.put(index, result);
+			while(ready.containsKey(nextResult)) {
+				result(nextResult, ready.remove(nextResult));
+				nextResult++;
+			}
+			if(nextResult == count) {
+				finished = true;
+			}
+		}
+		if(finished) {
+			complete();
+		} else {
+			fill();
+		}
+	}
+
+}
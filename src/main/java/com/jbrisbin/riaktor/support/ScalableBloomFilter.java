@@ -0,0 +1,119 @@
+package com.jbrisbin.riaktor.support;
+
+import reactor.util.Assert;
+
+import java.util.Arrays;
+
+/**
+ * A Bloom filter that grows as strings are added while keeping its overall false positive rate. Once the newest
+ * filter is full, another twice its size is added with half its false positive rate, so the rates of all the filters
+ * add up to no more than the one asked for.
+ * <p>
+ * Growth is capped at a number of bits. Once another filter would take more, the filter is saturated and can no longer
+ * tell that a string has definitely not been added.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public final class ScalableBloomFilter {
+
+	private final double falsePositiveRate;
+	private final long   maxBits;
+
+	private volatile BloomFilter[] filters;
+	private volatile boolean       saturated;
+	private          long          totalBits;
+
+	/**
+	 * Create a filter.
+	 *
+	 * @param initialCapacity
+	 * 		the number of strings the first filter holds
+	 * @param falsePositiveRate
+	 * 		the overall false positive rate, between 0 and 1
+	 * @param maxBits
+	 * 		the number of bits the filters may take up in total
+	 */
+	public ScalableBloomFilter(int initialCapacity, double falsePositiveRate, long maxBits) {
+		BloomFilter first = new BloomFilter(initialCapacity, falsePositiveRate / 2);
+		Assert.isTrue(first.numBits() <= maxBits, "The initial capacity needs more than the maximum number of bits.");
+		this.falsePositiveRate = falsePositiveRate;
+		this.maxBits = maxBits;
+		this.filters = new BloomFilter[]{first};
+		this.totalBits = first.numBits();
+	}
+
+	/**
+	 * Add a string, unless it may already have been added.
+	 *
+	 * @param s
+	 * 		the string to add
+	 */
+	public void add(String s) {
+		if(saturated || mightContain(s)) {
+			return;
+		}
+		BloomFilter[] fs = filters;
+		BloomFilter current = fs[fs.length - 1];
+		if(current.isFull()) {
+			if(null == (current = grow(current))) {
+				return;
+			}
+		}
+		current.add(s);
+	}
+
+	/**
+	 * Check whether a string may have been added.
+	 *
+	 * @param s
+	 * 		the string to check
+	 *
+	 * @return {@literal false} if the string has definitely not been added
+	 */
+	public boolean mightContain(String s) {
+		if(saturated) {
+			return true;
+		}
+		for(BloomFilter f : filters) {
+			if(f.mightContain(s)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether the filter has stopped growing, so it takes every string to possibly have been added.
+	 *
+	 * @return {@literal true} if the filter is saturated
+	 */
+	public boolean isSaturated() {
+		return saturated;
+	}
+
+	private synchronized BloomFilter grow(BloomFilter full) {
+		BloomFilter[] fs = filters;
+		BloomFilter current = fs[fs.length - 1];
+		if(current != full) {
+			// another thread grew the filter already
+			return current;
+		}
+
+		// each filter has half the false positive rate of the one before, so the rates sum to the overall rate
+		double rate = falsePositiveRate / Math.pow(2, fs.length + 1);
+		int capacity = (int)Math.min(Integer.MAX_VALUE, full.capacity() * 2L);
+		long bits = BloomFilter.bitsFor(capacity, rate);
+		if(saturated || totalBits + bits > maxBits) {
+			saturated = true;
+			return null;
+		}
+		BloomFilter next = new BloomFilter(capacity, rate);
+		totalBits += bits;
+		fs = Arrays.copyOf(fs, fs.length + 1);
+		fs[fs.length - 1] = next;
+		filters = fs;
+		return next;
+	}
+
+}
@@ -0,0 +1,172 @@
+package com.jbrisbin.riaktor.support;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.socket.SocketChannelConfig;
+import reactor.io.Buffer;
+import reactor.tcp.config.ClientSocketOptions;
+import reactor.util.Assert;
+
+/**
+ * Socket and Netty channel settings for the connections Riaktor opens to each node. The defaults are the ones Riaktor
+ * has always connected with.
+ * <p>
+ * The write buffer water marks bound how much a connection buffers while the node reads requests slower than they are
+ * sent. Once more than the high water mark is waiting to be written, requests stay queued on the connection until what
+ * is waiting drops below the low water mark, instead of piling up in Netty's outbound buffer.
+ * </p>
+ *
+ * @author Jon Brisbin
+ */
+public class TransportOptions {
+
+	private boolean tcpNoDelay               = true;
+	private boolean keepAlive                = true;
+	private int     sndbuf                   = Buffer.SMALL_BUFFER_SIZE;
+	private int     rcvbuf                   = Buffer.SMALL_BUFFER_SIZE;
+	private int     writeBufferLowWaterMark  = 32 * 1024;
+	private int     writeBufferHighWaterMark = 64 * 1024;
+	private boolean pooledBuffers            = false;
+
+	public boolean tcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	/**
+	 * Set whether {@code TCP_NODELAY} is set, so small requests are sent right away instead of being held back by
+	 * Nagle's algorithm.
+	 *
+	 * @param tcpNoDelay
+	 * 		{@literal true} to turn Nagle's algorithm off
+	 *
+	 * @return {@literal this}
+	 */
+	public TransportOptions tcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+		return this;
+	}
+
+	public boolean keepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Set whether {@code SO_KEEPALIVE} is set on the socket.
+	 *
+	 * @param keepAlive
+	 * 		{@literal true} to have the OS probe idle connections
+	 *
+	 * @return {@literal this}
+	 */
+	public TransportOptions keepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+		return this;
+	}
+
+	public int sndbuf() {
+		return sndbuf;
+	}
+
+	public int rcvbuf() {
+		return rcvbuf;
+	}
+
+	/**
+	 * Set the sizes of the socket's send and receive buffers, {@code SO_SNDBUF} and {@code SO_RCVBUF}.
+	 *
+	 * @param sndbuf
+	 * 		the size of the send buffer in bytes
+	 * @param rcvbuf
+	 * 		the size of the receive buffer in bytes
+	 *
+	 * @return {@literal this}
+	 */
+	public TransportOptions socketBuffers(int sndbuf, int rcvbuf) {
+		Assert.isTrue(sndbuf > 0, "Send buffer size must be greater than 0.");
+		Assert.isTrue(rcvbuf > 0, "Receive buffer size must be greater than 0.");
+		this.sndbuf = sndbuf;
+		this.rcvbuf = rcvbuf;
+		return this;
+	}
+
+	public int writeBufferLowWaterMark() {
+		return writeBufferLowWaterMark;
+	}
+
+	public int writeBufferHighWaterMark() {
+		return writeBufferHighWaterMark;
+	}
+
+	/**
+	 * Set the number of bytes waiting to be written above which a connection stops writing requests, and below which it
+	 * starts again.
+	 *
+	 * @param low
+	 * 		the low water mark in bytes
+	 * @param high
+	 * 		the high water mark in bytes
+	 *
+	 * @return {@literal this}
+	 */
+	public TransportOptions writeBufferWaterMarks(int low, int high) {
+		Assert.isTrue(low >= 0, "Low water mark cannot be negative.");
+		Assert.isTrue(high >= low, "High water mark cannot be less than the low water mark.");
+		this.writeBufferLowWaterMark = low;
+		this.writeBufferHighWaterMark = high;
+		return this;
+	}
+
+	public boolean pooledBuffers() {
+		return pooledBuffers;
+	}
+
+	/**
+	 * Set whether the buffers requests are written from come from Netty's pooled allocator, which saves allocating and
+	 * zeroing a buffer for every write at the cost of keeping memory around in per-thread arenas.
+	 *
+	 * @param pooledBuffers
+	 * 		{@literal true} to use {@link PooledByteBufAllocator}
+	 *
+	 * @return {@literal this}
+	 */
+	public TransportOptions pooledBuffers(boolean pooledBuffers) {
+		this.pooledBuffers = pooledBuffers;
+		return this;
+	}
+
+	/**
+	 * Create the {@link ClientSocketOptions} to open connections with.
+	 *
+	 * @param timeout
+	 * 		the connect timeout in milliseconds
+	 *
+	 * @return the socket options
+	 */
+	public ClientSocketOptions socketOptions(int timeout) {
+		return new ClientSocketOptions()
+				.timeout(timeout)
+				.tcpNoDelay(tcpNoDelay)
+				.keepAlive(keepAlive)
+				.sndbuf(sndbuf)
+				.rcvbuf(rcvbuf);
+	}
+
+	/**
+	 * Apply the channel settings the socket options don't cover to a newly opened connection.
+	 *
+	 * @param config
+	 * 		the configuration of the connection's channel
+	 */
+	public void configure(SocketChannelConfig config) {
+		// Netty rejects a low water mark above the current high one, and vice versa
+		if(writeBufferLowWaterMark > config.getWriteBufferHighWaterMark()) {
+			config.setWriteBufferHighWaterMark(writeBufferHighWaterMark);
+			config.setWriteBufferLowWaterMark(writeBufferLowWaterMark);
+		} else {
+			config.setWriteBufferLowWaterMark(writeBufferLowWaterMark);
+			config.setWriteBufferHighWaterMark(writeBufferHighWaterMark);
+		}
+		config.setAllocator(pooledBuffers ? PooledByteBufAllocator.DEFAULT : UnpooledByteBufAllocator.DEFAULT);
+	}
+
+}
@@ -1,14 +1,22 @@
 package com.jbrisbin.riaktor.support;
 
+import com.jbrisbin.riaktor.annotation.Index;
 import com.jbrisbin.riaktor.annotation.Key;
 import com.jbrisbin.riaktor.annotation.Metadata;
 import com.jbrisbin.riaktor.annotation.Vclock;
 import reactor.function.Consumer;
 import reactor.function.Supplier;
+import reactor.tuple.Tuple;
+import reactor.tuple.Tuple2;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.math.BigInteger;
 import java.util.*;
 
 /**
@@ -19,6 +27,10 @@ public final class TypeMeta {
 	private static final Map<Class<?>, TypeMeta> typeMetaCache = Collections.synchronizedMap(
 			new HashMap<Class<?>, TypeMeta>()
 	);
+	private static final MethodType              GETTER_TYPE   = MethodType.methodType(Object.class, Object.class);
+
+	private final List<IndexGetter> indexGetters = new ArrayList<>();
+
 	private Field  metadataField;
 	private Method metadataSetter;
 	private Method metadataGetter;
@@ -61,6 +73,35 @@ public final class TypeMeta {
 		};
 	}
 
+	public boolean hasVclock() {
+		return null != vclockField || null != vclockSetter;
+	}
+
+	public boolean hasIndexes() {
+		return !indexGetters.isEmpty();
+	}
+
+	/**
+	 * Get the secondary index entries of an object from its fields and getters annotated with {@link Index}.
+	 *
+	 * @param obj
+	 * 		the object to index
+	 *
+	 * @return a {@link Supplier} of the name and value of each entry
+	 */
+	public Supplier<List<Tuple2<String, String>>> indexesSupplier(final Object obj) {
+		return new Supplier<List<Tuple2<String, String>>>() {
+			@Override
+			public List<Tuple2<String, String>> get() {
+				List<Tuple2<String, String>> entries = new ArrayList<>();
+				for(IndexGetter getter : indexGetters) {
+					getter.addEntries(obj, entries);
+				}
+				return entries;
+			}
+		};
+	}
+
 	public Consumer<byte[]> vclockConsumer(final Object obj) {
 		return new Consumer<byte[]>() {
 			@Override
@@ -106,7 +147,7 @@ public final class TypeMeta {
 				fld.setAccessible(true);
 				fields.add(fld);
 			}
-		} while(Object.class != (superType = type.getSuperclass()));
+		} while(null != (superType = superType.getSuperclass()) && Object.class != superType);
 
 		for(Field fld : fields) {
 			Annotation[] annos = fld.getDeclaredAnnotations();
@@ -119,6 +160,14 @@ public final class TypeMeta {
 			if(hasAnnotation(Key.class, annos)) {
 				keyField = fld;
 			}
+			Index index = fld.getAnnotation(Index.class);
+			if(null != index) {
+				try {
+					indexGetters.add(new IndexGetter(index.value(), MethodHandles.lookup().unreflectGetter(fld)));
+				} catch(IllegalAccessException e) {
+					throw new IllegalArgumentException(e);
+				}
+			}
 		}
 	}
 
@@ -131,7 +180,7 @@ public final class TypeMeta {
 				mth.setAccessible(true);
 				methods.add(mth);
 			}
-		} while(Object.class != (superType = type.getSuperclass()));
+		} while(null != (superType = superType.getSuperclass()) && Object.class != superType);
 
 		for(Method mth : methods) {
 			Annotation[] annos = mth.getDeclaredAnnotations();
@@ -157,6 +206,17 @@ public final class TypeMeta {
 					keySetter = mth;
 				}
 			}
+			Index index = mth.getAnnotation(Index.class);
+			if(null != index) {
+				if(!isGetter || mth.getReturnType() == void.class) {
+					throw new IllegalArgumentException("@Index can only be put on getters, not on " + mth);
+				}
+				try {
+					indexGetters.add(new IndexGetter(index.value(), MethodHandles.lookup().unreflect(mth)));
+				} catch(IllegalAccessException e) {
+					throw new IllegalArgumentException(e);
+				}
+			}
 		}
 	}
 
@@ -196,4 +256,58 @@ public final class TypeMeta {
 		return false;
 	}
 
+	/**
+	 * Reads the value of an indexed field or getter through a {@link MethodHandle} rather than reflection, so no access
+	 * checks are made and no argument array is allocated when an object is put.
+	 */
+	private static final class IndexGetter {
+		private final String       name;
+		private final boolean      integer;
+		private final MethodHandle getter;
+
+		private IndexGetter(String name, MethodHandle getter) {
+			if(!name.endsWith("_bin") && !name.endsWith("_int")) {
+				throw new IllegalArgumentException("Index name '" + name + "' must end in _bin or _int");
+			}
+			this.name = name;
+			this.integer = name.endsWith("_int");
+			this.getter = getter.asType(GETTER_TYPE);
+		}
+
+		private void addEntries(Object obj, List<Tuple2<String, String>> entries) {
+			Object value;
+			try {
+				value = (Object)getter.invokeExact(obj);
+			} catch(Throwable t) {
+				throw new IllegalArgumentException(t);
+			}
+
+			if(value instanceof Iterable) {
+				for(Object o : (Iterable<?>)value) {
+					addEntry(o, entries);
+				}
+			} else if(null != value && value.getClass().isArray()) {
+				for(int i = 0, len = Array.getLength(value); i < len; i++) {
+					addEntry(Array.get(value, i), entries);
+				}
+			} else {
+				addEntry(value, entries);
+			}
+		}
+
+		private void addEntry(Object value, List<Tuple2<String, String>> entries) {
+			if(null == value) {
+				return;
+			}
+			if(integer && !(value instanceof Long
+					|| value instanceof Integer
+					|| value instanceof Short
+					|| value instanceof Byte
+					|| value instanceof BigInteger)) {
+				throw new IllegalArgumentException("Value of integer index '" + name + "' is not a whole number: " + value);
+			}
+			entries.add(Tuple.of(name, value.toString()));
+		}
+	}
+
 }
@@ -0,0 +1,37 @@
+package com.jbrisbin.riaktor.trace;
+
+/**
+ * The phases a traced request goes through, in order.
+ *
+ * @author Jon Brisbin
+ */
+public enum Phase {
+
+	/**
+	 * Building the request, including converting the value of a put.
+	 */
+	ENCODE,
+	/**
+	 * Waiting to be written to a connection, either because no node was available or behind other requests on the
+	 * connection.
+	 */
+	QUEUE,
+	/**
+	 * From being written to the connection until the response starts to be decoded. This is the network round trip
+	 * plus the time Riak took to answer.
+	 */
+	NETWORK,
+	/**
+	 * Decoding the response frame.
+	 */
+	DECODE,
+	/**
+	 * Waiting for a {@link reactor.event.dispatch.Dispatcher} thread to hand the decoded response to its request.
+	 */
+	DISPATCH,
+	/**
+	 * Converting the response into the result of the operation.
+	 */
+	CONVERT
+
+}
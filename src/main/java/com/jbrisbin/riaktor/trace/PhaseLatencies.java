@@ -0,0 +1,75 @@
+package com.jbrisbin.riaktor.trace;
+
+import com.jbrisbin.riaktor.support.LatencyTracker;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A {@link RequestInterceptor} that keeps percentiles of how long each {@link Phase} of a request takes, so a rise in
+ * overall latency can be pinned on encoding, queueing, Riak or decoding. Only requests that succeed are counted.
+ *
+ * @author Jon Brisbin
+ */
+public class PhaseLatencies implements RequestInterceptor {
+
+	private final Map<Phase, LatencyTracker> phases = new EnumMap<>(Phase.class);
+	private final LatencyTracker             total;
+
+	public PhaseLatencies() {
+		this(1024);
+	}
+
+	/**
+	 * Keep percentiles over the given number of most recent requests.
+	 *
+	 * @param windowSize
+	 * 		the number of requests
+	 */
+	public PhaseLatencies(int windowSize) {
+		for(Phase phase : Phase.values()) {
+			phases.put(phase, new LatencyTracker(windowSize));
+		}
+		this.total = new LatencyTracker(windowSize);
+	}
+
+	/**
+	 * Get the latencies of a phase.
+	 *
+	 * @param phase
+	 * 		the phase
+	 *
+	 * @return the latencies of the phase
+	 */
+	public LatencyTracker latencies(Phase phase) {
+		return phases.get(phase);
+	}
+
+	/**
+	 * Get the latencies of whole requests.
+	 *
+	 * @return the latencies of requests from being committed until they completed
+	 */
+	public LatencyTracker total() {
+		return total;
+	}
+
+	@Override
+	public void onStart(Trace trace) {
+	}
+
+	@Override
+	public void onComplete(Trace trace) {
+		if(null != trace.error()) {
+			return;
+		}
+		for(Map.Entry<Phase, LatencyTracker> entry : phases.entrySet()) {
+			long nanos = trace.duration(entry.getKey());
+			if(nanos >= 0) {
+				entry.getValue().record(nanos);
+			}
+		}
+		total.record(trace.total());
+	}
+
+}
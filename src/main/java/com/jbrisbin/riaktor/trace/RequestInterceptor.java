@@ -0,0 +1,28 @@
+package com.jbrisbin.riaktor.trace;
+
+/**
+ * Called around every sampled request, e.g. to report its timings to a tracing system. Interceptors are called in the
+ * order they were added, and an exception thrown by one is logged rather than affecting the request.
+ *
+ * @author Jon Brisbin
+ */
+public interface RequestInterceptor {
+
+	/**
+	 * Called on the thread committing the operation, before the request is built.
+	 *
+	 * @param trace
+	 * 		the trace of the request
+	 */
+	void onStart(Trace trace);
+
+	/**
+	 * Called once the result of the operation is available or the request has failed. Check {@link Trace#error()} to
+	 * tell which.
+	 *
+	 * @param trace
+	 * 		the trace of the request
+	 */
+	void onComplete(Trace trace);
+
+}
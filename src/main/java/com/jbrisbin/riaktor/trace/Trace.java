@@ -0,0 +1,122 @@
+package com.jbrisbin.riaktor.trace;
+
+import com.jbrisbin.riaktor.event.EventType;
+
+/**
+ * The timings of a single sampled request. The time each {@link Phase} ends is marked as the request passes through
+ * it, from whichever thread is handling the request at the time. If a request is retried or hedged, the marks are
+ * those of the attempt that answered, or of the last attempt if none did.
+ *
+ * @author Jon Brisbin
+ */
+public final class Trace {
+
+	private static final Phase[] PHASES = Phase.values();
+
+	private final EventType    type;
+	private final TraceContext context;
+	private final long         start;
+	private final long[]       marks = new long[PHASES.length];
+
+	private long      end;
+	private Throwable error;
+
+	Trace(EventType type, TraceContext context) {
+		this.type = type;
+		this.context = context;
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * Mark the end of a phase as now.
+	 *
+	 * @param phase
+	 * 		the phase that ended
+	 */
+	public void mark(Phase phase) {
+		marks[phase.ordinal()] = System.nanoTime();
+	}
+
+	/**
+	 * Mark the end of a phase at the given time.
+	 *
+	 * @param phase
+	 * 		the phase that ended
+	 * @param nanoTime
+	 * 		the time it ended, from {@link System#nanoTime()}
+	 */
+	public void mark(Phase phase, long nanoTime) {
+		marks[phase.ordinal()] = nanoTime;
+	}
+
+	/**
+	 * Get the type of the request.
+	 *
+	 * @return the type of request, e.g. {@link EventType#GetReq}
+	 */
+	public EventType type() {
+		return type;
+	}
+
+	/**
+	 * Get the context identifying this request within its trace.
+	 *
+	 * @return the trace context of this request
+	 */
+	public TraceContext context() {
+		return context;
+	}
+
+	/**
+	 * Get how long a phase took.
+	 *
+	 * @param phase
+	 * 		the phase
+	 *
+	 * @return the time in nanoseconds or {@literal -1} if the request didn't get through the phase
+	 */
+	public long duration(Phase phase) {
+		int i = phase.ordinal();
+		long phaseStart = (i == 0 ? start : marks[i - 1]);
+		if(phaseStart == 0 || marks[i] == 0) {
+			return -1;
+		}
+		return marks[i] - phaseStart;
+	}
+
+	/**
+	 * Get how long the request took from being committed until it completed.
+	 *
+	 * @return the time in nanoseconds or {@literal -1} if the request hasn't completed
+	 */
+	public long total() {
+		return (end == 0 ? -1 : end - start);
+	}
+
+	/**
+	 * Get the error the request failed with.
+	 *
+	 * @return the error or {@literal null} if the request succeeded or hasn't completed
+	 */
+	public Throwable error() {
+		return error;
+	}
+
+	void complete(Throwable error) {
+		this.error = error;
+		this.end = System.nanoTime();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Trace{type=").append(type)
+		                                                    .append(", context=").append(context);
+		for(Phase phase : PHASES) {
+			sb.append(", ").append(phase.name().toLowerCase()).append('=').append(duration(phase));
+		}
+		return sb.append(", total=").append(total())
+		         .append(", error=").append(error)
+		         .append('}').toString();
+	}
+
+}
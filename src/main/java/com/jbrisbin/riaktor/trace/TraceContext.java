@@ -0,0 +1,91 @@
+package com.jbrisbin.riaktor.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Identifies a request within a wider trace, so the timings of a request can be tied to the work that caused it. A
+ * context taken from an incoming request can be set on an operation with {@link
+ * com.jbrisbin.riaktor.op.Operation#trace(TraceContext)}, and the request is then traced as a child of it, if the
+ * context is sampled, regardless of the sample rate.
+ *
+ * @author Jon Brisbin
+ */
+public final class TraceContext {
+
+	private final long    traceId;
+	private final long    spanId;
+	private final long    parentId;
+	private final boolean sampled;
+
+	/**
+	 * Create a context propagated from elsewhere.
+	 *
+	 * @param traceId
+	 * 		the id of the whole trace
+	 * @param spanId
+	 * 		the id of the unit of work within the trace
+	 * @param parentId
+	 * 		the id of the unit of work that caused this one or {@literal 0} if there is none
+	 * @param sampled
+	 * 		whether the trace is being recorded
+	 */
+	public TraceContext(long traceId, long spanId, long parentId, boolean sampled) {
+		this.traceId = traceId;
+		this.spanId = spanId;
+		this.parentId = parentId;
+		this.sampled = sampled;
+	}
+
+	/**
+	 * Start a new trace.
+	 *
+	 * @param sampled
+	 * 		whether the trace is being recorded
+	 *
+	 * @return the context of the first unit of work in the trace
+	 */
+	public static TraceContext root(boolean sampled) {
+		long id = nextId();
+		return new TraceContext(id, id, 0, sampled);
+	}
+
+	/**
+	 * Create the context of a unit of work caused by this one.
+	 *
+	 * @return a context in the same trace whose parent is this one
+	 */
+	public TraceContext child() {
+		return new TraceContext(traceId, nextId(), spanId, sampled);
+	}
+
+	public long traceId() {
+		return traceId;
+	}
+
+	public long spanId() {
+		return spanId;
+	}
+
+	public long parentId() {
+		return parentId;
+	}
+
+	public boolean sampled() {
+		return sampled;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toHexString(traceId) + ":" + Long.toHexString(spanId) + ":" + Long.toHexString(parentId);
+	}
+
+	private static long nextId() {
+		// 0 means there is no parent, so it is never used as an id
+		long id;
+		do {
+			id = ThreadLocalRandom.current().nextLong();
+		} while(id == 0);
+		return id;
+	}
+
+}
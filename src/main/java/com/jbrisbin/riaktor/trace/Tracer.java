@@ -0,0 +1,103 @@
+package com.jbrisbin.riaktor.trace;
+
+import com.jbrisbin.riaktor.event.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.util.Assert;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which requests are traced and runs the {@link RequestInterceptor} chain for them. Requests that aren't
+ * sampled aren't traced at all, so with no interceptors or a sample rate of {@literal 0} tracing costs nothing.
+ *
+ * @author Jon Brisbin
+ */
+public class Tracer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(Tracer.class);
+
+	private final RequestInterceptor[] interceptors;
+	private final double               sampleRate;
+
+	/**
+	 * Create a tracer.
+	 *
+	 * @param interceptors
+	 * 		the interceptors to call around each sampled request, in order
+	 * @param sampleRate
+	 * 		the share of requests without a propagated {@link TraceContext} to trace, between 0 and 1
+	 */
+	public Tracer(List<RequestInterceptor> interceptors, double sampleRate) {
+		Assert.notNull(interceptors, "Interceptors cannot be null.");
+		Assert.isTrue(sampleRate >= 0 && sampleRate <= 1, "Sample rate must be between 0 and 1.");
+		this.interceptors = interceptors.toArray(new RequestInterceptor[interceptors.size()]);
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Start tracing a request if it is sampled. A request with a propagated {@link TraceContext} is traced if that
+	 * context is sampled. Any other request is traced at the sample rate.
+	 *
+	 * @param type
+	 * 		the type of request
+	 * @param parent
+	 * 		the context propagated from the caller or {@literal null} if there is none
+	 *
+	 * @return the {@link Trace} of the request or {@literal null} if it isn't sampled
+	 */
+	public Trace start(EventType type, TraceContext parent) {
+		if(interceptors.length == 0) {
+			return null;
+		}
+		TraceContext context;
+		if(null != parent) {
+			if(!parent.sampled()) {
+				return null;
+			}
+			context = parent.child();
+		} else if(sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+			context = TraceContext.root(true);
+		} else {
+			return null;
+		}
+
+		Trace trace = new Trace(type, context);
+		for(RequestInterceptor interceptor : interceptors) {
+			try {
+				interceptor.onStart(trace);
+			} catch(RuntimeException e) {
+				if(LOG.isWarnEnabled()) {
+					LOG.warn("Interceptor {} failed", interceptor, e);
+				}
+			}
+		}
+		return trace;
+	}
+
+	/**
+	 * Finish tracing a request.
+	 *
+	 * @param trace
+	 * 		the trace of the request or {@literal null} if it isn't sampled
+	 * @param error
+	 * 		the error the request failed with or {@literal null} if it succeeded
+	 */
+	public void complete(Trace trace, Throwable error) {
+		if(null == trace) {
+			return;
+		}
+		trace.complete(error);
+		for(RequestInterceptor interceptor : interceptors) {
+			try {
+				interceptor.onComplete(trace);
+			} catch(RuntimeException e) {
+				if(LOG.isWarnEnabled()) {
+					LOG.warn("Interceptor {} failed", interceptor, e);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.jbrisbin.riaktor
+
+import com.basho.riak.protobuf.RiakKvPB
+import com.google.protobuf.ByteString
+import com.jbrisbin.riaktor.policy.HedgePolicy
+import reactor.core.Environment
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Jon Brisbin
+ */
+class HedgingSpec extends Specification {
+
+	Environment env
+	StubRiak fast
+	StubRiak slow
+	Riaktor riaktor
+	volatile long slowDelay
+
+	def setup() {
+		env = new Environment()
+		fast = new StubRiak(answer("fast", 0))
+		slow = new StubRiak(answer("slow", -1))
+		riaktor = new com.jbrisbin.riaktor.spec.RiaktorSpec().
+				env(env).
+				dispatcher(Environment.RING_BUFFER).
+				connect("localhost", fast.port).
+				connect("localhost", slow.port).
+				hedge(HedgePolicy.percentile(99).minSamples(10).minDelay(50, TimeUnit.MILLISECONDS).budget(1.0)).
+				get().
+				start().
+				await()
+	}
+
+	def cleanup() {
+		riaktor?.close()
+		fast.close()
+		slow.close()
+	}
+
+	/**
+	 * Answer gets with the given value after the given delay, or after {@code slowDelay} if it is negative.
+	 */
+	Closure answer(String value, long delay) {
+		return { int code, byte[] body ->
+			if(code == 1) {
+				return [2, null]
+			}
+			long wait = (delay < 0 ? slowDelay : delay)
+			if(wait > 0) {
+				Thread.sleep(wait)
+			}
+			def content = RiakKvPB.RpbContent.newBuilder().setValue(ByteString.copyFromUtf8(value)).build()
+			[10, RiakKvPB.RpbGetResp.newBuilder().addContent(content).setVclock(ByteString.copyFromUtf8("vc")).build()]
+		}
+	}
+
+	String read() {
+		new String(riaktor.get("test", "key", byte[]).commit().await(5, TimeUnit.SECONDS).data)
+	}
+
+	@Timeout(30)
+	def "hedges gets that take longer than the threshold"() {
+
+		given:
+			'enough latency samples to hedge with'
+			20.times { read() }
+			def gets = fast.count(9) + slow.count(9)
+
+		when:
+			'gets that are answered in time are not hedged'
+			def values = (1..10).collect { read() }
+
+		then:
+			'a get only goes out twice if a pause on this side pushes it past the threshold, which the budget caps'
+			values as Set == ["fast", "slow"] as Set
+			fast.count(9) + slow.count(9) in (gets + 10)..(gets + 20)
+
+		when:
+			'one node becomes slow'
+			slowDelay = 500
+			long start = System.nanoTime()
+			values = (1..10).collect { read() }
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+		then:
+			'the gets sent to it are answered by the other node once the threshold passes'
+			values.every { it == "fast" }
+			elapsed < 5 * 500
+
+		when:
+			'the slow node recovers'
+			slowDelay = 0
+			Thread.sleep(600)
+			values = (1..10).collect { read() }
+
+		then:
+			'the late answers to the hedged gets were dropped rather than taken for answers to later ones'
+			values as Set == ["fast", "slow"] as Set
+			values.count { it == "slow" } == 5
+
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.jbrisbin.riaktor
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import com.jbrisbin.riaktor.annotation.Index
+
+/**
+ * @author Jon Brisbin
+ */
+@JsonIgnoreProperties(value = ["metaClass"], ignoreUnknown = true)
+class Member extends Person {
+
+	@Index("email_bin")
+	String       email
+	@Index("age_int")
+	int          age
+	@Index("tags_bin")
+	List<String> tags
+
+	@Index("domain_bin")
+	String getDomain() {
+		return email.substring(email.indexOf('@') + 1)
+	}
+
+}
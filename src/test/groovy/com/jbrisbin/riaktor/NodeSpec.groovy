@@ -0,0 +1,313 @@
+package com.jbrisbin.riaktor
+
+import com.basho.riak.protobuf.RiakKvPB
+import com.google.protobuf.ByteString
+import com.jbrisbin.riaktor.policy.CircuitBreaker
+import com.jbrisbin.riaktor.policy.CircuitBreakerPolicy
+import com.jbrisbin.riaktor.policy.RetryPolicy
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import reactor.core.Environment
+import spock.lang.Specification
+import spock.lang.Timeout
+import spock.lang.Unroll
+
+import java.net.SocketTimeoutException
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Jon Brisbin
+ */
+@Timeout(30)
+class NodeSpec extends Specification {
+
+	Environment env
+	StubRiak stub
+	Riaktor riaktor
+
+	def setup() {
+		env = new Environment()
+		stub = new StubRiak()
+	}
+
+	def cleanup() {
+		riaktor?.close()
+		stub.close()
+	}
+
+	Riaktor connect(Closure<com.jbrisbin.riaktor.spec.RiaktorSpec> configure = { it }) {
+		riaktor = configure(new com.jbrisbin.riaktor.spec.RiaktorSpec().
+				env(env).
+				dispatcher(Environment.RING_BUFFER).
+				connect("localhost", stub.port)).
+				get().
+				start().
+				await()
+	}
+
+	def "counts requests lost with a closed connection against the node"() {
+
+		given:
+			'a node that never answers gets'
+			connect {
+				it.circuitBreaker(new CircuitBreakerPolicy().minRequests(5).probeInterval(1, TimeUnit.MINUTES))
+			}
+			def node = riaktor.nodes()[0]
+
+		when:
+			'the connection drops with gets in flight'
+			def gets = (1..5).collect { riaktor.get("test", "key$it", String).retry(RetryPolicy.NONE).commit() }
+			while(stub.count(9) < 5) {
+				Thread.sleep(10)
+			}
+			stub.reset()
+			def errors = gets.collect {
+				try {
+					it.await(5, TimeUnit.SECONDS)
+					null
+				} catch(Exception e) {
+					e
+				}
+			}
+
+		then:
+			errors.every { it instanceof IOException || it?.cause instanceof IOException }
+			node.circuitBreaker.state == CircuitBreaker.State.OPEN
+
+	}
+
+	def "fails requests to a node that stops answering and counts them against it"() {
+
+		given:
+			'a node that accepts connections but never answers gets'
+			connect {
+				it.requestDeadline(200, TimeUnit.MILLISECONDS).
+						circuitBreaker(new CircuitBreakerPolicy().minRequests(5).probeInterval(1, TimeUnit.MINUTES))
+			}
+			def node = riaktor.nodes()[0]
+
+		when:
+			def gets = (1..5).collect { riaktor.get("test", "key$it", String).retry(RetryPolicy.NONE).commit() }
+			def errors = gets.collect {
+				try {
+					it.await(5, TimeUnit.SECONDS)
+					null
+				} catch(Exception e) {
+					e
+				}
+			}
+
+		then:
+			'every get failed once the deadline passed, without waiting for the socket'
+			errors.every { it instanceof SocketTimeoutException || it?.cause instanceof SocketTimeoutException }
+			node.circuitBreaker.state == CircuitBreaker.State.OPEN
+
+	}
+
+	def "retries requests to a node that stops answering on another node"() {
+
+		given:
+			'one node that answers gets and one that does not'
+			stub.handler = { int code, byte[] body ->
+				code == 9 ? [10, RiakKvPB.RpbGetResp.newBuilder().
+						addContent(RiakKvPB.RpbContent.newBuilder().setValue(ByteString.copyFromUtf8("value"))).
+						build()] : [2, null]
+			}
+			def hung = new StubRiak()
+			connect {
+				it.connect("localhost", hung.port).
+						requestDeadline(200, TimeUnit.MILLISECONDS).
+						retryBudget(10)
+			}
+
+		when:
+			def values = (1..10).collect {
+				riaktor.get("test", "key$it", byte[]).retry(RetryPolicy.attempts(3)).commit()
+			}.collect {
+				new String(it.await(5, TimeUnit.SECONDS).data)
+			}
+
+		then:
+			values.every { it == "value" }
+			hung.count(9) > 0
+
+		cleanup:
+			hung.close()
+
+	}
+
+	def "reads the response to a paced listing on a connection of its own"() {
+
+		given:
+			'a node that lists lots of keys and answers gets right away'
+			stub.handler = { int code, byte[] body ->
+				switch(code) {
+					case 1:
+						return [2, null]
+					case 9:
+						return [10, RiakKvPB.RpbGetResp.newBuilder().
+								addContent(RiakKvPB.RpbContent.newBuilder().setValue(ByteString.copyFromUtf8("value"))).
+								build()]
+					case 17:
+						def frames = (0..<1000).collect { frame ->
+							[18, RiakKvPB.RpbListKeysResp.newBuilder().
+									addAllKeys((0..<100).collect { ByteString.copyFromUtf8("key-$frame-$it") }).
+									build()]
+						}
+						return frames + [[18, RiakKvPB.RpbListKeysResp.newBuilder().setDone(true).build()]]
+				}
+			}
+			connect { it.connectionsPerNode(1) }
+			while(stub.connections < 1) {
+				Thread.sleep(10)
+			}
+			Subscription subscription
+			def keys = []
+			def complete = false
+
+		when:
+			'a subscriber takes a single key and then waits'
+			riaktor.listKeys("test").publish().subscribe([
+					onSubscribe: { Subscription s -> subscription = s; s.request(1) },
+					onNext     : { String key -> keys << key },
+					onError    : { Throwable t -> },
+					onComplete : { complete = true }
+			] as Subscriber<String>)
+			while(keys.empty) {
+				Thread.sleep(10)
+			}
+			def value = riaktor.get("test", "key", byte[]).commit().await(5, TimeUnit.SECONDS)
+
+		then:
+			'requests on the pooled connection are answered in the meantime'
+			new String(value.data) == "value"
+			keys.size() == 1
+			stub.connections == 2
+
+		when:
+			'the subscriber cancels'
+			subscription.cancel()
+			long deadline = System.currentTimeMillis() + 5000
+			while(stub.connections > 1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10)
+			}
+
+		then:
+			'the rest of the listing is read and its connection closed'
+			stub.connections == 1
+			!complete
+
+	}
+
+	def "lists keys over a pooled connection when every key is asked for"() {
+
+		given:
+			stub.handler = { int code, byte[] body ->
+				if(code == 1) {
+					return [2, null]
+				}
+				[[18, RiakKvPB.RpbListKeysResp.newBuilder().addKeys(ByteString.copyFromUtf8("key")).build()],
+				 [18, RiakKvPB.RpbListKeysResp.newBuilder().setDone(true).build()]]
+			}
+			connect { it.connectionsPerNode(1) }
+
+		when:
+			def keys = riaktor.listKeys("test").commit().await(5, TimeUnit.SECONDS)
+
+		then:
+			keys == ["key"]
+			stub.connections == 1
+
+	}
+
+	def "writes bursts of requests in batches"() {
+
+		given:
+			'a node that answers each get with its key'
+			def received = new CopyOnWriteArrayList<String>()
+			stub.handler = { int code, byte[] body ->
+				if(code == 1) {
+					return [2, null]
+				}
+				def key = RiakKvPB.RpbGetReq.parseFrom(body).key
+				received << key.toStringUtf8()
+				[10, RiakKvPB.RpbGetResp.newBuilder().addContent(RiakKvPB.RpbContent.newBuilder().setValue(key)).build()]
+			}
+			connect { it.writeBatch(4, 20, TimeUnit.MILLISECONDS) }
+
+		when:
+			'many more requests than fit in a batch are sent at once'
+			def keys = (1..50).collect { "key$it".toString() }
+			def gets = keys.collect { riaktor.get("test", it, byte[]).commit() }
+			def values = gets.collect { new String(it.await(5, TimeUnit.SECONDS).data) }
+
+		then:
+			'every request is written in order and gets its own response'
+			received == keys
+			values == keys
+
+	}
+
+	@Unroll
+	def "fails requests waiting to be written when #closer closes the connection"() {
+
+		given:
+			'requests that linger a long time before being written'
+			connect { it.writeBatch(4, 10, TimeUnit.SECONDS) }
+			while(stub.connections < 1) {
+				Thread.sleep(10)
+			}
+
+		when:
+			def gets = (1..10).collect { riaktor.get("test", "key$it", byte[]).retry(RetryPolicy.NONE).commit() }
+			if(closer == "the node") {
+				stub.reset()
+			} else {
+				riaktor.close()
+			}
+			long start = System.currentTimeMillis()
+			def errors = gets.collect {
+				try {
+					it.await(5, TimeUnit.SECONDS)
+					null
+				} catch(Exception e) {
+					e
+				}
+			}
+
+		then:
+			'they fail right away instead of waiting to be written'
+			errors.every { it instanceof IOException || it?.cause instanceof IOException }
+			System.currentTimeMillis() - start < 5000
+			stub.count(9) == 0
+
+		where:
+			closer << ["the node", "the client"]
+
+	}
+
+	def "fails to start when no connection can be opened"() {
+
+		given:
+			'a port nothing listens on'
+			def closed = new ServerSocket(0)
+			int port = closed.localPort
+			closed.close()
+			riaktor = new com.jbrisbin.riaktor.spec.RiaktorSpec().
+					env(env).
+					dispatcher(Environment.RING_BUFFER).
+					connect("localhost", port).
+					warmup(200, TimeUnit.MILLISECONDS).
+					get()
+
+		when:
+			riaktor.start().await(5, TimeUnit.SECONDS)
+
+		then:
+			def e = thrown(Exception)
+			e instanceof IOException || e.cause instanceof IOException
+
+	}
+
+}
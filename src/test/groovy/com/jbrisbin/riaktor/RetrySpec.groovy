@@ -0,0 +1,151 @@
+package com.jbrisbin.riaktor
+
+import com.basho.riak.protobuf.RiakKvPB
+import com.basho.riak.protobuf.RiakPB
+import com.google.protobuf.ByteString
+import com.jbrisbin.riaktor.op.PutOperation
+import com.jbrisbin.riaktor.policy.RetryPolicy
+import reactor.core.Environment
+import reactor.function.Function
+import spock.lang.Specification
+import spock.lang.Timeout
+import spock.lang.Unroll
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Jon Brisbin
+ */
+@Timeout(30)
+class RetrySpec extends Specification {
+
+	Environment env
+	StubRiak stub
+	Riaktor riaktor
+	volatile String errmsg = "timeout"
+
+	def setup() {
+		env = new Environment()
+		stub = new StubRiak({ int code, byte[] body ->
+			code == 1 ? [2, null] : [0, RiakPB.RpbErrorResp.newBuilder().setErrmsg(ByteString.copyFromUtf8(errmsg)).setErrcode(1).build()]
+		})
+		riaktor = new com.jbrisbin.riaktor.spec.RiaktorSpec().
+				env(env).
+				dispatcher(Environment.RING_BUFFER).
+				connect("localhost", stub.port).
+				retryBudget(10).
+				get().
+				start().
+				await()
+	}
+
+	def cleanup() {
+		riaktor?.close()
+		stub.close()
+	}
+
+	int puts(Closure<PutOperation> put) {
+		int before = stub.count(11)
+		try {
+			put().commit().await(5, TimeUnit.SECONDS)
+		} catch(RiakException ignored) {
+		}
+		stub.count(11) - before
+	}
+
+	def "retries only puts that can be applied twice without harm"() {
+
+		expect:
+			'blind puts and puts without a key are sent once'
+			puts { riaktor.put("test", "key", "value") } == 1
+			puts { riaktor.put("test", null, "value") } == 1
+			puts { riaktor.put("test", null, "value").ifNoneMatch("*") } == 1
+
+		and:
+			'puts that carry a vclock or must not overwrite are retried'
+			puts { riaktor.put("test", "key", "value").vclock("vc".bytes) } == 3
+			puts { riaktor.put("test", "key", "value").ifNoneMatch("*") } == 3
+
+		and:
+			'a blind put is retried if it asks to be'
+			puts { riaktor.put("test", "key", "value").retry(RetryPolicy.attempts(2)) } == 2
+
+	}
+
+	def "does not retry errors that will come back the same"() {
+
+		given:
+			errmsg = "Bucket cannot be zero-length"
+
+		expect:
+			puts { riaktor.put("test", "key", "value").vclock("vc".bytes) } == 1
+
+	}
+
+	static Function<List<ByteString>, ByteString> join = { List<ByteString> siblings ->
+		ByteString.copyFromUtf8(siblings*.toStringUtf8().sort().join("+"))
+	} as Function
+
+	static RiakKvPB.RpbContent text(String value) {
+		RiakKvPB.RpbContent.newBuilder().
+				setValue(ByteString.copyFromUtf8(value)).
+				setContentType(ByteString.copyFromUtf8("text/plain")).
+				build()
+	}
+
+	@Unroll
+	def "settles the siblings an update's write leaves #how without updating again"() {
+
+		given:
+			'a write that lands next to a concurrent one'
+			List<RiakKvPB.RpbPutReq> written = new CopyOnWriteArrayList<>()
+			stub.handler = { int code, byte[] body ->
+				switch(code) {
+					case 9:
+						return [10, RiakKvPB.RpbGetResp.newBuilder().
+								addContent(text("1")).
+								setVclock(ByteString.copyFromUtf8("vc1")).
+								build()]
+					case 11:
+						def put = RiakKvPB.RpbPutReq.parseFrom(body)
+						written << put
+						def resp = RiakKvPB.RpbPutResp.newBuilder().setVclock(ByteString.copyFromUtf8("vc${written.size() + 1}"))
+						return [12, (written.size() == 1
+						             ? resp.addContent(put.content).addContent(text("concurrent"))
+						             : resp.addContent(put.content)).build()]
+				}
+				[2, null]
+			}
+			List<String> applied = new CopyOnWriteArrayList<>()
+			def update = riaktor.update("test", "key", ByteString, { ByteString s ->
+				applied << s.toStringUtf8()
+				ByteString.copyFromUtf8("2")
+			} as Function)
+			if(null != resolver) {
+				update.conflictResolver(resolver)
+			}
+
+		when:
+			def entry = update.commit().await(5, TimeUnit.SECONDS)
+
+		then:
+			'the function was applied once'
+			applied == ["1"]
+
+		and:
+			'the resolution was written over the siblings with the vclock the write returned'
+			written.size() == 2
+			written[1].vclock.toStringUtf8() == "vc2"
+			!written[1].ifNotModified
+			written[1].content.value.toStringUtf8() == value
+			entry.data.toStringUtf8() == value
+
+		where:
+			how                | resolver | value
+			"without resolver" | null     | "2"
+			"with a resolver"  | join     | "2+concurrent"
+
+	}
+
+}
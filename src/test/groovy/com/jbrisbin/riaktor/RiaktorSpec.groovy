@@ -1,14 +1,43 @@
 package com.jbrisbin.riaktor
 
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.protobuf.ByteString
+import com.jbrisbin.riaktor.backup.BucketTransfer
+import com.jbrisbin.riaktor.backup.Format
+import com.jbrisbin.riaktor.batch.CounterAccumulator
+import com.jbrisbin.riaktor.chunk.ChunkedObjects
+import com.jbrisbin.riaktor.convert.ObjectMapperConverter
+import com.jbrisbin.riaktor.event.EventType
+import com.jbrisbin.riaktor.policy.NegativeCachePolicy
+import com.jbrisbin.riaktor.policy.RetryPolicy
+import com.jbrisbin.riaktor.support.TransportOptions
+import com.jbrisbin.riaktor.trace.Phase
+import com.jbrisbin.riaktor.trace.PhaseLatencies
+import com.jbrisbin.riaktor.trace.RequestInterceptor
+import com.jbrisbin.riaktor.trace.Trace
+import com.jbrisbin.riaktor.trace.TraceContext
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
+import reactor.convert.Converter
 import reactor.core.Environment
 import reactor.core.composable.Promise
+import reactor.event.dispatch.ThreadPoolExecutorDispatcher
+import reactor.function.Consumer
+import reactor.function.Function
 import reactor.function.Suppliers
 import reactor.queue.BlockingQueueFactory
 import spock.lang.Specification
 import spock.lang.Timeout
 
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.file.Files
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
 import static org.hamcrest.MatcherAssert.assertThat
 import static org.hamcrest.Matchers.is
 /**
@@ -26,11 +55,12 @@ class RiaktorSpec extends Specification {
 		riaktor = connect()
 	}
 
-	Riaktor connect() {
+	Riaktor connect(TransportOptions transport = new TransportOptions()) {
 		new com.jbrisbin.riaktor.spec.RiaktorSpec().
 				env(env).
 				dispatcher(Environment.RING_BUFFER).
 				connect("localhost").
+				transport(transport).
 				get().
 				start().
 				await()
@@ -84,6 +114,135 @@ class RiaktorSpec extends Specification {
 
 	}
 
+	@Timeout(60)
+	def "updates an object without losing concurrent changes"() {
+
+		given:
+			def increment = { String value -> String.valueOf((value ?: "0").toInteger() + 1) } as Function
+			def retry = RetryPolicy.attempts(100).retryOn(RetryPolicy.CONFLICTS).backoff(1, 20, TimeUnit.MILLISECONDS)
+
+		when:
+			'several threads increment the same value at once'
+			def threads = (1..8).collect {
+				Thread.start {
+					5.times {
+						riaktor.update("updates", "count", String, increment).conflictRetry(retry).commit().await()
+					}
+				}
+			}
+			threads*.join()
+			def unchanged = riaktor.update("updates", "count", String, { null } as Function).commit().await()
+
+		then:
+			'every increment was applied once'
+			riaktor.get("updates", "count", String).commit().await().data == "40"
+			'nothing was written when the function returned null'
+			unchanged.data == "40"
+
+	}
+
+	def "looks up metadata by name"() {
+
+		given:
+			def put = riaktor.put("metadata", "object", "value")
+			(1..40).each {
+				put.metadata("meta$it" as String, "value$it" as String)
+			}
+			put.commit().await()
+
+		when:
+			def headers = riaktor.get("metadata", "object", String).commit().await().headers
+
+		then:
+			'every entry is counted and found by name'
+			headers.size() == 40
+			headers.get("meta1") == "value1"
+			headers.get("meta40") == "value40"
+			headers.containsKey("meta17")
+			!headers.containsKey("meta41")
+			headers.entrySet().collect { it.key } as Set == (1..40).collect { "meta$it" as String } as Set
+
+	}
+
+	@Timeout(60)
+	def "fetches only what has changed"() {
+
+		given:
+			riaktor.put("test", "person", new Person(name: "John Doe")).
+					metadata("test", "value").
+					commit().
+					await()
+
+		when:
+			'only the metadata is fetched'
+			def e2 = riaktor.get("test", "person", Person).
+					head(true).
+					commit().
+					await()
+
+		then:
+			'the headers are there but the data is not'
+			e2.headers["test"] == "value"
+			null == e2.data
+
+		when:
+			'the object is fetched only if it has been modified'
+			def e3 = riaktor.get("test", "person", Person).
+					ifModified(e2.headers.getVclock()).
+					commit().
+					await()
+
+		then:
+			'the object is unchanged'
+			e3.unchanged
+			null == e3.data
+
+	}
+
+	@Timeout(60)
+	def "stores raw values"() {
+
+		given:
+			def value = ByteString.copyFromUtf8("raw value")
+
+		when:
+			'a ByteString is stored and fetched as a ByteBuffer'
+			riaktor.put("raw", "value", value).
+					contentType("application/octet-stream").
+					commit().
+					await()
+			def e = riaktor.get("raw", "value", ByteBuffer).
+					commit().
+					await()
+
+		then:
+			'the value is intact and read-only'
+			e.data.readOnly
+			ByteString.copyFrom(e.data) == value
+
+	}
+
+	@Timeout(60)
+	def "merges counter increments"() {
+
+		given:
+			def counters = new CounterAccumulator(riaktor, 100, 50, TimeUnit.MILLISECONDS).returnValue(true)
+			def start = riaktor.counter("counters", "hits").commit().await()
+
+		when:
+			'a counter is incremented many times'
+			def promises = (1..100).collect { counters.increment("counters", "hits", 1) }
+			promises.each { it.await(5, TimeUnit.SECONDS) }
+
+		then:
+			'the increments were applied'
+			riaktor.counter("counters", "hits").commit().await() == start + 100
+
+		cleanup:
+			counters?.close()
+
+	}
+
 	@Timeout(60)
 	def "performs well"() {
 
@@ -125,6 +284,269 @@ class RiaktorSpec extends Specification {
 
 	}
 
+	@Timeout(60)
+	def "compares transport settings for small pipelined requests"() {
+
+		given:
+			def tuned = connect(transport)
+			def runs = 10000
+			tuned.put("transport", "small", "value").commit().await()
+			def done = new CountDownLatch(runs)
+			long[] latencies = new long[runs]
+			long start = System.nanoTime()
+
+		when:
+			(0..<runs).each { i ->
+				long sent = System.nanoTime()
+				tuned.get("transport", "small", String).commit().onSuccess({
+					latencies[i] = System.nanoTime() - sent
+					done.countDown()
+				} as Consumer)
+			}
+			done.await(30, TimeUnit.SECONDS)
+			double elapsed = (System.nanoTime() - start) / 1e9
+			Arrays.sort(latencies)
+			LOG.info "$name: throughput: ${Math.floor(runs / elapsed)}/s, " +
+					"mean latency: ${TimeUnit.NANOSECONDS.toMicros((long)((latencies as List).sum() / runs))}us, " +
+					"p99 latency: ${TimeUnit.NANOSECONDS.toMicros(latencies[(int)(runs * 0.99)])}us"
+
+		then:
+			done.count == 0
+
+		cleanup:
+			tuned.close()
+
+		where:
+			name               | transport
+			"defaults"         | new TransportOptions()
+			"nagle"            | new TransportOptions().tcpNoDelay(false)
+			"large buffers"    | new TransportOptions().socketBuffers(256 * 1024, 256 * 1024)
+			"low water marks"  | new TransportOptions().writeBufferWaterMarks(4 * 1024, 8 * 1024)
+			"pooled buffers"   | new TransportOptions().pooledBuffers(true)
+			"pooled and large" | new TransportOptions().pooledBuffers(true).socketBuffers(256 * 1024, 256 * 1024)
+
+	}
+
+	@Timeout(60)
+	def "traces the phases of sampled requests"() {
+
+		given:
+			def traces = new LinkedBlockingQueue<Trace>()
+			def latencies = new PhaseLatencies()
+			def traced = new com.jbrisbin.riaktor.spec.RiaktorSpec().
+					env(env).
+					dispatcher(Environment.RING_BUFFER).
+					connect("localhost").
+					intercept(latencies).
+					intercept([onStart: {}, onComplete: { traces << it }] as RequestInterceptor).
+					traceSampleRate(1).
+					get().
+					start().
+					await()
+			def parent = TraceContext.root(true)
+
+		when:
+			traced.put("traced", "person", new Person(name: "John Doe")).commit().await()
+			traced.get("traced", "person", Person).traceContext(parent).commit().await()
+			traced.get("traced", "person", Person).traceContext(TraceContext.root(false)).commit().await()
+			def put = traces.poll(5, TimeUnit.SECONDS)
+			def get = traces.poll(5, TimeUnit.SECONDS)
+
+		then:
+			'every phase of both requests was timed'
+			put.type() == EventType.PutReq
+			Phase.values().every { put.duration(it) >= 0 && get.duration(it) >= 0 }
+			Phase.values().every { latencies.latencies(it).count() == 2 }
+			'the get was traced as a child of the propagated context'
+			get.context().traceId() == parent.traceId()
+			get.context().parentId() == parent.spanId()
+			'the request whose context is not sampled was not traced'
+			!traces.poll(100, TimeUnit.MILLISECONDS)
+
+		cleanup:
+			traced.close()
+
+	}
+
+	@Timeout(60)
+	def "converts values on the conversion dispatcher"() {
+
+		given:
+			def threads = new LinkedBlockingQueue<String>()
+			def json = new ObjectMapperConverter(new ObjectMapper())
+			def recording = [
+					canConvert: { Class source, Class target -> json.canConvert(source, target) },
+					convert   : { Object source, Class target ->
+						threads << Thread.currentThread().name
+						json.convert(source, target)
+					}
+			] as Converter
+			def converting = new com.jbrisbin.riaktor.spec.RiaktorSpec().
+					env(env).
+					dispatcher(Environment.RING_BUFFER).
+					connect("localhost").
+					converter("application/json", recording).
+					convertOn(new ThreadPoolExecutorDispatcher(2, 128, "riaktor-convert")).
+					get().
+					start().
+					await()
+
+		when:
+			converting.put("converted", "person", new Person(name: "John Doe")).commit().await()
+			threads.clear()
+			def entry = converting.get("converted", "person", Person).commit().await()
+
+		then:
+			'the value was converted off the thread responses are delivered on'
+			entry.data.name == "John Doe"
+			threads.size() == 1
+			threads.peek().startsWith("riaktor-convert")
+
+		cleanup:
+			converting.close()
+
+	}
+
+	def "answers gets for missing keys from the negative cache"() {
+
+		given:
+			def caching = new com.jbrisbin.riaktor.spec.RiaktorSpec().
+					env(env).
+					dispatcher(Environment.RING_BUFFER).
+					connect("localhost").
+					negativeCache("negative", new NegativeCachePolicy().expectedKeys(100)).
+					get().
+					start().
+					await()
+			def cache = caching.negativeCache("negative")
+			caching.put("negative", "exists", new Person(name: "John Doe")).commit().await()
+
+		when:
+			def loaded = caching.loadKeys("negative").await()
+			def missing = caching.get("negative", "missing", Person).commit().await()
+
+		then:
+			'the missing key was answered without asking Riak'
+			loaded >= 1
+			!missing
+			cache.hits() == 1
+
+		when:
+			def exists = caching.get("negative", "exists", Person).commit().await()
+			caching.delete("negative", "exists").commit().await()
+			def deleted = caching.get("negative", "exists", Person).commit().await()
+
+		then:
+			'keys that exist are fetched and deleted ones are remembered as missing'
+			exists.data.name == "John Doe"
+			!deleted
+			cache.hits() == 2
+
+		cleanup:
+			caching.close()
+
+	}
+
+	def "exports a bucket and imports it into another"() {
+
+		given:
+			def dir = Files.createTempDirectory("riaktor-export")
+			def transfer = new BucketTransfer(riaktor, 4).
+					format(format).
+					maxFileSize(256).
+					checkpointInterval(3)
+			(1..10).each {
+				riaktor.put("export-$format", "key$it", ByteString.copyFromUtf8("value $it")).
+						contentType("text/plain").
+						metadata("n", "$it").
+						commit().
+						await()
+			}
+
+		when:
+			def exported = transfer.exportTo("export-$format", dir).await()
+			def imported = transfer.importFrom(dir, "import-$format").await()
+			def entries = (1..10).collect { riaktor.get("import-$format", "key$it", ByteBuffer).commit().await() }
+
+		then:
+			'every object was copied with its content type and metadata, across several files'
+			exported.records() == 10
+			imported.records() == 10
+			imported.complete
+			dir.toFile().listFiles().count { it.name.endsWith(format.suffix()) } > 1
+			entries.every { it.headers.getContentType() == "text/plain" }
+			entries.collect { ByteString.copyFrom(it.data).toStringUtf8() } == (1..10).collect { "value $it" }
+			entries.collect { it.headers.n } == (1..10).collect { "$it" }
+
+		when:
+			def again = transfer.exportTo("export-$format", dir).await()
+
+		then:
+			'a completed export is not repeated'
+			again.complete
+			again.records() == 10
+			again.recordsPerSecond() == 0
+
+		cleanup:
+			dir.toFile().deleteDir()
+
+		where:
+			format << [Format.NDJSON, Format.BINARY]
+
+	}
+
+	def "indexes objects by their annotated fields and getters"() {
+
+		when:
+			riaktor.put("members", "jdoe", new Member(name: "John Doe", email: "jdoe@example.com", age: 42, tags: ["admin", "ops"])).
+					commit().
+					await()
+			riaktor.put("members", "jsmith", new Member(name: "Jane Smith", email: "jsmith@example.org", age: 35, tags: ["ops"])).
+					commit().
+					await()
+
+		then:
+			'every annotated value was indexed, including each element of a collection'
+			riaktor.index("members", "email_bin", "jdoe@example.com").commit().await() == ["jdoe"]
+			riaktor.index("members", "age_int", "30", "40").commit().await() == ["jsmith"]
+			riaktor.index("members", "tags_bin", "ops").commit().await().sort() == ["jdoe", "jsmith"]
+			riaktor.index("members", "domain_bin", "example.org").commit().await() == ["jsmith"]
+			'properties inherited from a superclass are still read'
+			riaktor.get("members", "jdoe", Member).commit().await().data.name == "John Doe"
+
+	}
+
+	@Timeout(60)
+	def "walks links level by level"() {
+
+		given:
+			'a graph with a cycle back to where the walk starts'
+			riaktor.put("graph", "b", "b").link("graph", "d", "friend").link("graph", "c", "friend").commit().await()
+			riaktor.put("graph", "c", "c").link("graph", "x", "boss").commit().await()
+			riaktor.put("graph", "d", "d").link("graph", "a", "friend").commit().await()
+			riaktor.put("graph", "x", "x").commit().await()
+			def a = riaktor.put("graph", "a", "a").
+					link("graph", "b", "friend").
+					link("graph", "c", "friend").
+					link("graph", "missing", "friend").
+					commit().
+					await()
+
+		when:
+			def found = riaktor.walk(a, "friend", 3, String).mapReduce(mapReduce).commit().await()
+			def limited = riaktor.walk(a, "friend", 3, String).mapReduce(mapReduce).fanOut(1).commit().await()
+
+		then:
+			'each object was published once, level by level, without following other tags'
+			found*.data == ["b", "c", "d"]
+			'only one object was fetched per level'
+			limited*.data == ["b", "d"]
+
+		where:
+			mapReduce << [false, true]
+
+	}
+
 	@Timeout(60)
 	def "lists keys in bucket"() {
 
@@ -136,4 +558,153 @@ class RiaktorSpec extends Specification {
 
 	}
 
+	def "stores large objects in chunks"() {
+
+		given:
+			def objects = new ChunkedObjects(riaktor, 16 * 1024, 4)
+			def value = new byte[100 * 1024 + 1]
+			for(int i = 0; i < value.length; i++) {
+				value[i] = (byte)(i % 251)
+			}
+
+		when:
+			'a large object is stored and read back as a stream'
+			def manifest = objects.put("chunks", "large", ByteBuffer.wrap(value)).await()
+			def read = new ByteArrayOutputStream()
+			read << objects.open("chunks", "large")
+
+		then:
+			'it was split into chunks and reassembled intact'
+			manifest.chunkCount == 7
+			read.toByteArray() == value
+
+	}
+
+	def "deletes the chunks of an object that shrinks"() {
+
+		given:
+			def objects = new ChunkedObjects(riaktor, 1024, 4)
+			def manifest = objects.put("chunks", "shrinking", ByteBuffer.wrap(new byte[4000])).await()
+
+		when:
+			'the object is replaced by one that fits in a single value'
+			def small = objects.put("chunks", "shrinking", ByteBuffer.wrap("small".bytes)).await()
+			def read = new ByteArrayOutputStream()
+			read << objects.open("chunks", "shrinking")
+			Thread.sleep(500)
+			def chunks = (0..<manifest.chunkCount).collect {
+				riaktor.get("chunks", manifest.chunkKey(it), ByteBuffer).commit().await()
+			}
+
+		then:
+			'it is stored as it is and the old chunks are gone'
+			!small
+			new String(read.toByteArray()) == "small"
+			chunks.every { !it }
+
+	}
+
+	def "streams values to and from channels"() {
+
+		given:
+			def file = Files.createTempFile("riaktor", ".bin")
+			Files.write(file, "file contents".bytes)
+			def out = new ByteArrayOutputStream()
+
+		when:
+			'a file is stored and written back out to a channel'
+			riaktor.put("files", "file", file).
+					commit().
+					await()
+			def e = riaktor.getTo("files", "file", Channels.newChannel(out)).
+					commit().
+					await()
+
+		then:
+			'every byte was written'
+			e.data == 13
+			new String(out.toByteArray()) == "file contents"
+
+		cleanup:
+			Files.deleteIfExists(file)
+
+	}
+
+	@Timeout(60)
+	def "blocks callers on many threads"() {
+
+		given:
+			def client = new RiaktorClient(riaktor, 30, TimeUnit.SECONDS)
+			def threads = (1..64).collect { i ->
+				Thread.start {
+					client.put("blocking", "key$i" as String, "value$i" as String)
+				}
+			}
+			threads*.join()
+
+		when:
+			'every object is read back by a blocked thread'
+			def values = Collections.synchronizedList([])
+			threads = (1..64).collect { i ->
+				Thread.start {
+					values << client.get("blocking", "key$i" as String, String).data
+				}
+			}
+			threads*.join()
+
+		then:
+			'every thread got its value'
+			values.size() == 64
+			values as Set == (1..64).collect { "value$it" as String } as Set
+			client.get("blocking", "missing", String) == null
+
+	}
+
+	@Timeout(60)
+	def "publishes keys only as fast as they are requested"() {
+
+		given:
+			(1..10).each {
+				riaktor.put("published", "key$it" as String, "value$it" as String).commit().await()
+			}
+			def received = BlockingQueueFactory.createQueue()
+			Subscription subscription
+			def complete = new CountDownLatch(2)
+
+		when:
+			'keys are requested one at a time'
+			riaktor.listKeys("published").publish().subscribe([
+					onSubscribe: { subscription = it },
+					onNext     : { received << it },
+					onError    : { Throwable t -> LOG.error(t.message, t) },
+					onComplete : { complete.countDown() }
+			] as Subscriber)
+			subscription.request(1)
+			def first = received.poll(5, TimeUnit.SECONDS)
+			Thread.sleep(100)
+
+		then:
+			'only the requested key was published'
+			first
+			received.isEmpty()
+
+		when:
+			'the rest are requested'
+			subscription.request(Long.MAX_VALUE)
+			def entries = []
+			riaktor.getAll("published", ["key1", "missing"], String).subscribe([
+					onSubscribe: { it.request(2) },
+					onNext     : { entries << it },
+					onError    : { Throwable t -> LOG.error(t.message, t) },
+					onComplete : { complete.countDown() }
+			] as Subscriber)
+
+		then:
+			'every key was published and multi-get returned entries in order'
+			complete.await(5, TimeUnit.SECONDS)
+			received.size() == 9
+			entries*.data == ["value1", null]
+
+	}
+
 }
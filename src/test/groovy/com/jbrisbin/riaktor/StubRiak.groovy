@@ -0,0 +1,106 @@
+package com.jbrisbin.riaktor
+
+import com.google.protobuf.Message
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * A stand-in for a Riak node that answers each request with whatever its handler returns, for specs that need to
+ * control how long responses take or when connections drop. Requests on a connection are answered one at a time and
+ * in order, as Riak does.
+ *
+ * @author Jon Brisbin
+ */
+class StubRiak implements Closeable {
+
+	final ServerSocket  server   = new ServerSocket(0, 50, InetAddress.getByName("localhost"))
+	final List<Socket>  sockets  = new CopyOnWriteArrayList<>()
+	final List<Integer> requests = new CopyOnWriteArrayList<>()
+
+	/**
+	 * Called with the message code and body of each request. Returns the code and {@link Message} to answer with, a
+	 * list of them to stream several frames, or {@literal null} to not answer at all.
+	 */
+	volatile Closure handler
+
+	StubRiak(Closure handler = { code, body -> code == 1 ? [2, null] : null }) {
+		this.handler = handler
+		Thread.startDaemon("stub-riak-accept") {
+			while(!server.closed) {
+				try {
+					Socket socket = server.accept()
+					sockets << socket
+					Thread.startDaemon("stub-riak-connection") { serve(socket) }
+				} catch(IOException ignored) {
+				}
+			}
+		}
+	}
+
+	int getPort() {
+		server.localPort
+	}
+
+	/**
+	 * @return the number of connections currently open
+	 */
+	int getConnections() {
+		sockets.size()
+	}
+
+	int count(int code) {
+		requests.count { it == code }
+	}
+
+	/**
+	 * Drop every open connection, like a node that resets them.
+	 */
+	void reset() {
+		sockets.each {
+			try {
+				it.setSoLinger(true, 0)
+				it.close()
+			} catch(IOException ignored) {
+				// closed by the other side in the meantime
+			}
+		}
+	}
+
+	@Override
+	void close() {
+		server.close()
+		reset()
+	}
+
+	private void serve(Socket socket) {
+		def input = new DataInputStream(new BufferedInputStream(socket.inputStream))
+		def output = new DataOutputStream(new BufferedOutputStream(socket.outputStream))
+		try {
+			while(true) {
+				int length = input.readInt()
+				int code = input.readUnsignedByte()
+				byte[] body = new byte[length - 1]
+				input.readFully(body)
+				requests << code
+
+				def response = handler.call(code, body)
+				if(null == response) {
+					continue
+				}
+				def frames = (response[0] instanceof List ? response : [response])
+				frames.each { frame ->
+					byte[] bytes = (null != frame[1] ? ((Message)frame[1]).toByteArray() : new byte[0])
+					output.writeInt(bytes.length + 1)
+					output.writeByte(frame[0] as int)
+					output.write(bytes)
+				}
+				output.flush()
+			}
+		} catch(IOException ignored) {
+		} finally {
+			sockets.remove(socket)
+			socket.close()
+		}
+	}
+
+}
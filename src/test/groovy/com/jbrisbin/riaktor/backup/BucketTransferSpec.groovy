@@ -0,0 +1,238 @@
+package com.jbrisbin.riaktor.backup
+
+import com.basho.riak.protobuf.RiakKvPB
+import com.basho.riak.protobuf.RiakPB
+import com.google.protobuf.ByteString
+import com.jbrisbin.riaktor.Riaktor
+import com.jbrisbin.riaktor.RiakException
+import com.jbrisbin.riaktor.StubRiak
+import reactor.core.Environment
+import spock.lang.Specification
+import spock.lang.Timeout
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentSkipListMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Jon Brisbin
+ */
+@Timeout(30)
+class BucketTransferSpec extends Specification {
+
+	Environment env
+	StubRiak stub
+	Riaktor riaktor
+	Path dir
+
+	/**
+	 * The contents stored under each bucket and key. Buckets whose names start with "mult" keep blind writes as
+	 * siblings, the others replace what was there.
+	 */
+	Map<String, List<RiakKvPB.RpbContent>> store = new ConcurrentSkipListMap<>()
+
+	/**
+	 * Keys whose next get or put fails.
+	 */
+	Set<String> failures = Collections.synchronizedSet(new HashSet<String>())
+
+	def setup() {
+		env = new Environment()
+		stub = new StubRiak({ int code, byte[] body -> answer(code, body) })
+		riaktor = new com.jbrisbin.riaktor.spec.RiaktorSpec().
+				env(env).
+				dispatcher(Environment.RING_BUFFER).
+				connect("localhost", stub.port).
+				get().
+				start().
+				await()
+		dir = Files.createTempDirectory("bucket-transfer")
+	}
+
+	def cleanup() {
+		riaktor?.close()
+		stub.close()
+		dir.toFile().deleteDir()
+	}
+
+	def answer(int code, byte[] body) {
+		switch(code) {
+			case 1:
+				return [2, null]
+			case 9:
+				def get = RiakKvPB.RpbGetReq.parseFrom(body)
+				def key = "${get.bucket.toStringUtf8()}/${get.key.toStringUtf8()}".toString()
+				if(failures.remove(key)) {
+					return failure()
+				}
+				def contents = store[key]
+				def resp = RiakKvPB.RpbGetResp.newBuilder()
+				if(contents) {
+					resp.addAllContent(contents).setVclock(ByteString.copyFromUtf8("vc${contents.size()}"))
+				}
+				return [10, resp.build()]
+			case 11:
+				def put = RiakKvPB.RpbPutReq.parseFrom(body)
+				def key = "${put.bucket.toStringUtf8()}/${put.key.toStringUtf8()}".toString()
+				if(failures.remove(key)) {
+					return failure()
+				}
+				def siblings = (put.bucket.toStringUtf8().startsWith("mult") && !put.hasVclock() ? store[key] ?: [] : [])
+				store[key] = siblings + [put.content]
+				return [12, RiakKvPB.RpbPutResp.newBuilder().build()]
+			case 17:
+				def bucket = RiakKvPB.RpbListKeysReq.parseFrom(body).bucket.toStringUtf8()
+				def keys = store.keySet().
+						findAll { it.startsWith("$bucket/") }.
+						collect { ByteString.copyFromUtf8(it.substring(bucket.length() + 1)) }
+				return [[18, RiakKvPB.RpbListKeysResp.newBuilder().addAllKeys(keys).build()],
+				        [18, RiakKvPB.RpbListKeysResp.newBuilder().setDone(true).build()]]
+		}
+		null
+	}
+
+	static failure() {
+		[0, RiakPB.RpbErrorResp.newBuilder().setErrmsg(ByteString.copyFromUtf8("disk full")).setErrcode(1).build()]
+	}
+
+	static RiakKvPB.RpbContent content(String value, Map<String, String> metadata = [:]) {
+		def content = RiakKvPB.RpbContent.newBuilder().
+				setValue(ByteString.copyFromUtf8(value)).
+				setContentType(ByteString.copyFromUtf8("text/plain"))
+		metadata.each { k, v ->
+			content.addUsermeta(RiakPB.RpbPair.newBuilder().
+					setKey(ByteString.copyFromUtf8(k)).
+					setValue(ByteString.copyFromUtf8(v)))
+		}
+		content.build()
+	}
+
+	def seed(String bucket, int count) {
+		(1..count).each { store["$bucket/key$it".toString()] = [content("value $it")] }
+	}
+
+	def values(String bucket) {
+		store.findAll { k, v -> k.startsWith("$bucket/") }.
+				collectEntries { k, v -> [(k.substring(bucket.length() + 1)): v*.value*.toStringUtf8()] }
+	}
+
+	@Unroll
+	def "exports and imports links and secondary indexes as #format"() {
+
+		given:
+			def transfer = new BucketTransfer(riaktor, 2).format(format)
+			riaktor.put("src", "key", ByteString.copyFromUtf8("value")).
+					contentType("text/plain").
+					link("people", "jon", "friend").
+					link("people", "stephane", "colleague").
+					index("email_bin", "jon@example.com").
+					index("age_int", "40").
+					commit().
+					await(5, TimeUnit.SECONDS)
+
+		when:
+			transfer.exportTo("src", dir).await(5, TimeUnit.SECONDS)
+			transfer.importFrom(dir, "dst").await(5, TimeUnit.SECONDS)
+			def entry = riaktor.get("dst", "key", ByteBuffer).commit().await(5, TimeUnit.SECONDS)
+
+		then:
+			ByteString.copyFrom(entry.data).toStringUtf8() == "value"
+			entry.headers.getLinks().collect { [it.bucket, it.key, it.tag] } ==
+					[["people", "jon", "friend"], ["people", "stephane", "colleague"]]
+			entry.headers.getIndexes().collect { [it.t1, it.t2] } == [["email_bin", "jon@example.com"], ["age_int", "40"]]
+
+		where:
+			format << Format.values()
+
+	}
+
+	@Unroll
+	def "exports every sibling of an object as #format"() {
+
+		given:
+			def transfer = new BucketTransfer(riaktor, 2).format(format)
+			seed("mult-src", 3)
+			store["mult-src/key2"] = [content("left", [side: "l"]), content("right", [side: "r"])]
+
+		when:
+			def exported = transfer.exportTo("mult-src", dir).await(5, TimeUnit.SECONDS)
+			transfer.importFrom(dir, "mult-dst").await(5, TimeUnit.SECONDS)
+
+		then:
+			'the export did not stop at the object with siblings'
+			exported.complete
+
+		and:
+			'importing into a bucket that allows siblings stores them as siblings again'
+			values("mult-dst") == [key1: ["value 1"], key2: ["left", "right"], key3: ["value 3"]]
+			store["mult-dst/key2"]*.usermetaList*.first()*.value*.toStringUtf8() == ["l", "r"]
+
+		where:
+			format << Format.values()
+
+	}
+
+	def "resumes an interrupted export from its checkpoint"() {
+
+		given:
+			def transfer = new BucketTransfer(riaktor, 2).checkpointInterval(2)
+			seed("src", 20)
+			failures << "src/key5"
+
+		when:
+			transfer.exportTo("src", dir).await(5, TimeUnit.SECONDS)
+
+		then:
+			thrown(RiakException)
+
+		when:
+			int before = stub.count(9)
+			def exported = transfer.exportTo("src", dir).await(5, TimeUnit.SECONDS)
+			transfer.importFrom(dir, "dst").await(5, TimeUnit.SECONDS)
+
+		then:
+			'the keys written before the failure were not fetched again'
+			exported.complete
+			exported.records() == 20
+			stub.count(9) - before < 20
+
+		and:
+			'every key was exported once'
+			values("dst") == values("src")
+
+	}
+
+	def "resumes an interrupted import from its checkpoint"() {
+
+		given:
+			def transfer = new BucketTransfer(riaktor, 2).checkpointInterval(2)
+			seed("src", 20)
+			transfer.exportTo("src", dir).await(5, TimeUnit.SECONDS)
+			failures << "dst/key5"
+
+		when:
+			transfer.importFrom(dir, "dst").await(5, TimeUnit.SECONDS)
+
+		then:
+			thrown(RiakException)
+			values("dst").size() < 20
+
+		when:
+			int before = stub.count(11)
+			def imported = transfer.importFrom(dir, "dst").await(5, TimeUnit.SECONDS)
+
+		then:
+			'the records stored before the checkpoint were not stored again'
+			imported.complete
+			imported.records() == 20
+			stub.count(11) - before < 20
+
+		and:
+			values("dst") == values("src")
+
+	}
+
+}
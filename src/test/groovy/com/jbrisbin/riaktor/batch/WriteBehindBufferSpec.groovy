@@ -0,0 +1,150 @@
+package com.jbrisbin.riaktor.batch
+
+import com.basho.riak.protobuf.RiakKvPB
+import com.google.protobuf.ByteString
+import com.jbrisbin.riaktor.Riaktor
+import com.jbrisbin.riaktor.StubRiak
+import reactor.core.Environment
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Jon Brisbin
+ */
+@Timeout(30)
+class WriteBehindBufferSpec extends Specification {
+
+	Environment env
+	StubRiak stub
+	Riaktor riaktor
+	WriteBehindBuffer buffer
+	List<RiakKvPB.RpbPutReq> puts = new CopyOnWriteArrayList<>()
+	volatile CountDownLatch hold
+
+	def setup() {
+		env = new Environment()
+		stub = new StubRiak({ int code, byte[] body ->
+			if(code == 1) {
+				return [2, null]
+			}
+			puts << RiakKvPB.RpbPutReq.parseFrom(body)
+			hold?.await(10, TimeUnit.SECONDS)
+			[12, RiakKvPB.RpbPutResp.newBuilder().setVclock(ByteString.copyFromUtf8("v" + puts.size())).build()]
+		})
+		riaktor = new com.jbrisbin.riaktor.spec.RiaktorSpec().
+				env(env).
+				dispatcher(Environment.RING_BUFFER).
+				connect("localhost", stub.port).
+				get().
+				start().
+				await()
+		buffer = new WriteBehindBuffer(riaktor, 100, 1, TimeUnit.HOURS)
+	}
+
+	def cleanup() {
+		buffer?.close()
+		riaktor?.close()
+		stub.close()
+	}
+
+	static String value(RiakKvPB.RpbPutReq put) {
+		put.content.value.toStringUtf8()
+	}
+
+	static String vclock(RiakKvPB.RpbPutReq put) {
+		put.hasVclock() ? put.vclock.toStringUtf8() : null
+	}
+
+	def "coalesces puts to a key within a window into one write"() {
+
+		when:
+			def written = ["one", "two", "three"].collect { buffer.put("test", "key", it.bytes) }
+			buffer.put("test", "other", "four".bytes)
+			buffer.flush()
+			def entries = written.collect { it.await(5, TimeUnit.SECONDS) }
+
+		then:
+			'only the latest value of each key is written'
+			puts.size() == 2
+			puts.find { it.key.toStringUtf8() == "key" }.with { value(it) } == "three"
+			puts.find { it.key.toStringUtf8() == "other" }.with { value(it) } == "four"
+
+		and:
+			'every caller gets the result of the write'
+			entries.every { it.is(entries[0]) }
+			entries[0].key == "key"
+
+	}
+
+	def "sends the vclock of the previous write with the next one"() {
+
+		when:
+			def first = buffer.put("test", "key", "one".bytes)
+			buffer.flush()
+			first.await(5, TimeUnit.SECONDS)
+			def second = buffer.put("test", "key", "two".bytes)
+			buffer.flush()
+			second.await(5, TimeUnit.SECONDS)
+
+		then:
+			puts.collect { value(it) } == ["one", "two"]
+			puts.collect { vclock(it) } == [null, "v1"]
+
+	}
+
+	def "holds a write back until the previous write to the key has finished"() {
+
+		given:
+			'a node that is slow to answer'
+			hold = new CountDownLatch(1)
+
+		when:
+			'the key is written again while the first write is in flight'
+			def first = buffer.put("test", "key", "one".bytes)
+			buffer.flush()
+			while(puts.size() < 1) {
+				Thread.sleep(10)
+			}
+			def second = buffer.put("test", "key", "two".bytes)
+			buffer.flush()
+			Thread.sleep(200)
+
+		then:
+			'the second write has not been sent'
+			first.pending
+			second.pending
+			puts.size() == 1
+
+		when:
+			hold.countDown()
+			second.await(5, TimeUnit.SECONDS)
+
+		then:
+			'it goes out afterwards, carrying the vclock the first write returned'
+			puts.collect { value(it) } == ["one", "two"]
+			puts.collect { vclock(it) } == [null, "v1"]
+
+	}
+
+	def "flushes pending writes on close"() {
+
+		given:
+			def written = (1..5).collect { buffer.put("test", "key$it", "value$it".bytes) }
+
+		expect:
+			puts.empty
+
+		when:
+			buffer.close()
+			written.each { it.await(5, TimeUnit.SECONDS) }
+
+		then:
+			puts.collect { value(it) } as Set == (1..5).collect { "value$it" } as Set
+
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.jbrisbin.riaktor.chunk
+
+import com.basho.riak.protobuf.RiakKvPB
+import com.basho.riak.protobuf.RiakPB
+import com.google.protobuf.ByteString
+import com.jbrisbin.riaktor.RiakException
+import com.jbrisbin.riaktor.Riaktor
+import com.jbrisbin.riaktor.StubRiak
+import reactor.core.Environment
+import spock.lang.Specification
+import spock.lang.Timeout
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentSkipListMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Jon Brisbin
+ */
+@Timeout(30)
+class ChunkedObjectsSpec extends Specification {
+
+	Environment env
+	StubRiak stub
+	Riaktor riaktor
+
+	/**
+	 * The value stored under each bucket and key.
+	 */
+	Map<String, RiakKvPB.RpbContent> store = new ConcurrentSkipListMap<>()
+
+	/**
+	 * Matched against the key of each put, which fails if it matches.
+	 */
+	volatile String failing = /^$/
+
+	def setup() {
+		env = new Environment()
+		stub = new StubRiak({ int code, byte[] body -> answer(code, body) })
+		riaktor = new com.jbrisbin.riaktor.spec.RiaktorSpec().
+				env(env).
+				dispatcher(Environment.RING_BUFFER).
+				connect("localhost", stub.port).
+				get().
+				start().
+				await()
+	}
+
+	def cleanup() {
+		riaktor?.close()
+		stub.close()
+	}
+
+	def answer(int code, byte[] body) {
+		switch(code) {
+			case 1:
+				return [2, null]
+			case 9:
+				def get = RiakKvPB.RpbGetReq.parseFrom(body)
+				def content = store["${get.bucket.toStringUtf8()}/${get.key.toStringUtf8()}".toString()]
+				def resp = RiakKvPB.RpbGetResp.newBuilder()
+				if(content) {
+					resp.addContent(content).setVclock(ByteString.copyFromUtf8("vc"))
+				}
+				return [10, resp.build()]
+			case 11:
+				def put = RiakKvPB.RpbPutReq.parseFrom(body)
+				if(put.key.toStringUtf8() ==~ failing) {
+					return [0, RiakPB.RpbErrorResp.newBuilder().
+							setErrmsg(ByteString.copyFromUtf8("disk full")).
+							setErrcode(1).
+							build()]
+				}
+				store["${put.bucket.toStringUtf8()}/${put.key.toStringUtf8()}".toString()] = put.content
+				return [12, RiakKvPB.RpbPutResp.newBuilder().build()]
+			case 13:
+				def del = RiakKvPB.RpbDelReq.parseFrom(body)
+				store.remove("${del.bucket.toStringUtf8()}/${del.key.toStringUtf8()}".toString())
+				return [14, null]
+		}
+		null
+	}
+
+	@Unroll
+	def "deletes the chunks it wrote when #what can't be stored"() {
+
+		given:
+			def objects = new ChunkedObjects(riaktor, 1024, 4)
+			failing = pattern
+
+		when:
+			objects.put("chunks", "large", ByteBuffer.wrap(new byte[10 * 1024])).await(5, TimeUnit.SECONDS)
+
+		then:
+			thrown(RiakException)
+
+		when:
+			'the chunks that were written are deleted after the put has failed'
+			while(!store.isEmpty()) {
+				Thread.sleep(10)
+			}
+
+		then:
+			'no chunk is left behind without a manifest'
+			store.isEmpty()
+
+		where:
+			what           | pattern
+			"a chunk"      | /.*\/chunks\/.*\/6/
+			"the manifest" | /large/
+
+	}
+
+}
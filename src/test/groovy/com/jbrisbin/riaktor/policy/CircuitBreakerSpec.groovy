@@ -0,0 +1,155 @@
+package com.jbrisbin.riaktor.policy
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+import static com.jbrisbin.riaktor.policy.CircuitBreaker.State.*
+
+/**
+ * @author Jon Brisbin
+ */
+class CircuitBreakerSpec extends Specification {
+
+	def policy = new CircuitBreakerPolicy().windowSize(10).minRequests(4).failureRate(0.5)
+
+	def "trips once enough requests have failed"() {
+
+		given:
+			def breaker = new CircuitBreaker(policy)
+
+		when:
+			'too few requests have been made to judge'
+			def tripped = (1..3).collect { breaker.onFailure() }
+
+		then:
+			tripped.every { !it }
+			breaker.state == CLOSED
+			breaker.allowsRequests()
+
+		when:
+			'the minimum number of requests is reached'
+			def trips = breaker.onFailure()
+
+		then:
+			trips
+			breaker.state == OPEN
+			!breaker.allowsRequests()
+			breaker.trips == 1
+
+		when:
+			'more requests fail while it is open'
+			trips = breaker.onFailure()
+
+		then:
+			!trips
+			breaker.trips == 1
+
+	}
+
+	def "stays closed while the failure rate is below the threshold"() {
+
+		given:
+			def breaker = new CircuitBreaker(policy)
+
+		when:
+			10.times {
+				breaker.onSuccess(0)
+				breaker.onSuccess(0)
+				breaker.onFailure()
+			}
+
+		then:
+			'four of the last ten requests failed'
+			breaker.state == CLOSED
+			breaker.failureRate == 0.4
+
+	}
+
+	def "only counts the most recent requests"() {
+
+		given:
+			def breaker = new CircuitBreaker(policy.minRequests(10).failureRate(0.8))
+
+		when:
+			'old failures slide out of the window'
+			7.times { breaker.onFailure() }
+			10.times { breaker.onSuccess(0) }
+
+		then:
+			breaker.failureRate == 0
+			breaker.state == CLOSED
+
+		when:
+			'failures in the window reach the threshold'
+			def tripped = (1..8).collect { breaker.onFailure() }
+
+		then:
+			tripped == [false] * 7 + [true]
+			breaker.failureRate == 0.8
+			breaker.state == OPEN
+
+	}
+
+	def "counts slow requests as failures"() {
+
+		given:
+			def breaker = new CircuitBreaker(policy.slowCallTimeout(10, TimeUnit.MILLISECONDS))
+
+		when:
+			4.times { breaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(20)) }
+
+		then:
+			breaker.state == OPEN
+
+	}
+
+	def "closes again after a healthy probe"() {
+
+		given:
+			def breaker = new CircuitBreaker(policy)
+			4.times { breaker.onFailure() }
+
+		expect:
+			'a closed breaker is not probed'
+			!new CircuitBreaker(policy).probe()
+
+		when:
+			'a probe is sent and the node does not answer'
+			def probed = breaker.probe()
+
+		then:
+			probed
+			breaker.state == HALF_OPEN
+			!breaker.allowsRequests()
+			'only one probe is sent at a time'
+			!breaker.probe()
+
+		when:
+			breaker.onProbe(false)
+
+		then:
+			breaker.state == OPEN
+
+		when:
+			'the next probe is answered'
+			breaker.probe()
+			def closed = breaker.onProbe(true)
+
+		then:
+			closed
+			breaker.state == CLOSED
+			breaker.allowsRequests()
+			breaker.failureRate == 0
+
+		when:
+			'the window starts over after closing'
+			def tripped = (1..3).collect { breaker.onFailure() }
+
+		then:
+			tripped.every { !it }
+			breaker.state == CLOSED
+
+	}
+
+}
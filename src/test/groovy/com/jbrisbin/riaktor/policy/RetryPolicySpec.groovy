@@ -0,0 +1,93 @@
+package com.jbrisbin.riaktor.policy
+
+import com.jbrisbin.riaktor.RiakException
+import com.jbrisbin.riaktor.SiblingsException
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Jon Brisbin
+ */
+class RetryPolicySpec extends Specification {
+
+	def "retries transient errors only"() {
+
+		expect:
+			RetryPolicy.TRANSIENT_ERRORS.test(error) == retried
+
+		where:
+			error                                                  | retried
+			new IOException("Connection reset")                    | true
+			new RiakException("timeout", 0)                        | true
+			new RiakException("overload", 0)                       | true
+			new RiakException("{insufficient_vnodes,0,need,1}", 0) | true
+			new RiakException("{r_val_unsatisfied,2,1}", 0)        | true
+			new RiakException("modified", 0)                       | false
+			new RiakException("match_found", 0)                    | false
+			new RiakException("notfound", 0)                       | false
+			new RiakException("Bucket cannot be zero-length", 0)   | false
+			new RiakException("{n_val_violation,3}", 0)            | false
+			new RiakException("timeouts", 0)                       | false
+			new SiblingsException("b", "k", 2)                     | false
+			new IllegalArgumentException("timeout")                | false
+
+	}
+
+	def "retries conflicts only"() {
+
+		expect:
+			RetryPolicy.CONFLICTS.test(error) == conflict
+
+		where:
+			error                               | conflict
+			new SiblingsException("b", "k", 2)  | false
+			new RiakException("modified", 0)    | true
+			new RiakException("match_found", 0) | true
+			new RiakException("timeout", 0)     | false
+			new IOException("Connection reset") | false
+
+	}
+
+	def "gives up after the maximum number of attempts"() {
+
+		given:
+			def policy = RetryPolicy.attempts(3)
+			def error = new IOException()
+
+		expect:
+			policy.shouldRetry(1, error)
+			policy.shouldRetry(2, error)
+			!policy.shouldRetry(3, error)
+			!RetryPolicy.NONE.shouldRetry(1, error)
+
+	}
+
+	def "backs off exponentially up to the maximum"() {
+
+		given:
+			def policy = new RetryPolicy().backoff(10, 100, TimeUnit.MILLISECONDS)
+			def ceilings = [1: 10, 2: 20, 3: 40, 4: 80, 5: 100, 40: 100]
+
+		expect:
+			'every delay is jittered below the ceiling of its attempt'
+			ceilings.every { attempt, ceiling ->
+				def delays = (1..200).collect { policy.backoff(attempt) }
+				delays.every { it >= 0 && it < TimeUnit.MILLISECONDS.toNanos(ceiling) } &&
+						delays.max() > TimeUnit.MILLISECONDS.toNanos(ceiling) / 2
+			}
+
+	}
+
+	def "does not back off without a delay"() {
+
+		given:
+			def policy = new RetryPolicy().backoff(0, 0, TimeUnit.MILLISECONDS)
+
+		expect:
+			policy.backoff(1) == 0
+			policy.backoff(5) == 0
+
+	}
+
+}
@@ -0,0 +1,41 @@
+package com.jbrisbin.riaktor.ring
+
+import com.google.protobuf.ByteString
+import spock.lang.Specification
+
+/**
+ * @author Jon Brisbin
+ */
+class RingSpec extends Specification {
+
+	def "hashes bucket and key like Riak"() {
+
+		when:
+			'a bucket and key are hashed'
+			def hash = Ring.hash(ByteString.copyFromUtf8("test"), ByteString.copyFromUtf8("person"))
+
+		then:
+			'the hash is the SHA-1 of term_to_binary({Bucket, Key})'
+			hash.encodeHex().toString() == "7099b6caf06173ad9601ca1508f3de1c7d6e9046"
+
+	}
+
+	def "finds the primary replicas of an object"() {
+
+		given:
+			def nodes = (1..4).collect { new InetSocketAddress("localhost", 8086 + it) }
+			def ring = new LocalRingProvider(64, nodes).ring()
+			def hash = Ring.hash(ByteString.copyFromUtf8("test"), ByteString.copyFromUtf8("person"))
+
+		when:
+			'the primaries are found'
+			def primaries = ring.primaries(ByteString.copyFromUtf8("test"), ByteString.copyFromUtf8("person"), 3)
+
+		then:
+			'they start at the partition after the hash'
+			ring.partition(hash) == 29
+			primaries == [nodes[1], nodes[2], nodes[3]]
+
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.jbrisbin.riaktor.support
+
+import spock.lang.Specification
+
+/**
+ * @author Jon Brisbin
+ */
+class LatencyTrackerSpec extends Specification {
+
+	def "computes percentiles of recorded latencies"() {
+
+		given:
+			def tracker = new LatencyTracker(100)
+
+		expect:
+			'nothing has been recorded yet'
+			tracker.percentile(50) == -1
+
+		when:
+			(1..100).each { tracker.record(it) }
+
+		then:
+			tracker.count() == 100
+			tracker.percentile(50) == 50
+			tracker.percentile(99) == 99
+			tracker.percentile(100) == 100
+			tracker.percentile(0) == 1
+
+	}
+
+	def "only keeps the most recent samples"() {
+
+		given:
+			def tracker = new LatencyTracker(16)
+
+		when:
+			'the window is filled with slow samples and then overwritten with fast ones'
+			16.times { tracker.record(1000) }
+			16.times { tracker.record(10) }
+
+		then:
+			tracker.count() == 32
+			tracker.percentile(100) == 10
+
+	}
+
+}
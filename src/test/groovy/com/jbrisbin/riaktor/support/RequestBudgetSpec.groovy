@@ -0,0 +1,59 @@
+package com.jbrisbin.riaktor.support
+
+import spock.lang.Specification
+
+/**
+ * @author Jon Brisbin
+ */
+class RequestBudgetSpec extends Specification {
+
+	def "allows extra requests in proportion to normal ones"() {
+
+		given:
+			def budget = new RequestBudget(0.1, 100)
+
+		expect:
+			'the budget starts out with one token'
+			budget.tryAcquire()
+			!budget.tryAcquire()
+
+		when:
+			'ten normal requests are made'
+			10.times { budget.deposit() }
+
+		then:
+			'one extra request is allowed'
+			budget.tryAcquire()
+			!budget.tryAcquire()
+
+	}
+
+	def "saves up no more than the maximum number of tokens"() {
+
+		given:
+			def budget = new RequestBudget(1.0, 3)
+
+		when:
+			100.times { budget.deposit() }
+			def acquired = (1..10).count { budget.tryAcquire() }
+
+		then:
+			acquired == 3
+
+	}
+
+	def "a zero ratio allows no more than the initial token"() {
+
+		given:
+			def budget = new RequestBudget(0, 10)
+
+		when:
+			100.times { budget.deposit() }
+			def acquired = (1..10).count { budget.tryAcquire() }
+
+		then:
+			acquired == 1
+
+	}
+
+}
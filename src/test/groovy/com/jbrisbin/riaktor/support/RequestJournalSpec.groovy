@@ -0,0 +1,282 @@
+package com.jbrisbin.riaktor.support
+
+import com.basho.riak.protobuf.RiakKvPB
+import com.google.protobuf.ByteString
+import com.jbrisbin.riaktor.encoding.RpbCodec
+import com.jbrisbin.riaktor.event.EventType
+import com.jbrisbin.riaktor.event.RiakEvent
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * @author Jon Brisbin
+ */
+class RequestJournalSpec extends Specification {
+
+	Path dir
+	RequestJournal journal
+
+	def setup() {
+		dir = Files.createTempDirectory("riaktor-journal")
+	}
+
+	def cleanup() {
+		journal?.close()
+		dir.toFile().deleteDir()
+	}
+
+	static RiakEvent put(String key) {
+		new RiakEvent(RiakKvPB.RpbPutReq.newBuilder().
+				setBucket(ByteString.copyFromUtf8("test")).
+				setKey(ByteString.copyFromUtf8(key)).
+				setContent(RiakKvPB.RpbContent.newBuilder().setValue(ByteString.copyFromUtf8("value of $key"))).
+				build(), EventType.PutReq)
+	}
+
+	static RiakEvent delete(String key) {
+		new RiakEvent(RiakKvPB.RpbDelReq.newBuilder().
+				setBucket(ByteString.copyFromUtf8("test")).
+				setKey(ByteString.copyFromUtf8(key)).
+				build(), EventType.DelReq)
+	}
+
+	/**
+	 * Replay the journal, accepting at most {@code limit} requests.
+	 */
+	static List<String> replay(RequestJournal journal, int limit = Integer.MAX_VALUE) {
+		def keys = []
+		journal.replay({ tup ->
+			if(keys.size() == limit) {
+				return false
+			}
+			def msg = tup.t2.data
+			keys << "${tup.t2.type}:${msg.key.toStringUtf8()}".toString()
+			true
+		} as reactor.function.Predicate)
+		keys
+	}
+
+	List<Path> segments() {
+		dir.toFile().listFiles().findAll { it.name.endsWith(".journal") }*.toPath().sort()
+	}
+
+	@Unroll
+	def "recovers appended requests after a restart with fsync #fsync"() {
+
+		given:
+			journal = new RequestJournal(dir, 4096, fsync)
+
+		when:
+			def seqs = [put("one"), delete("two"), put("three")].collect { journal.append(it) }
+			journal.close()
+			journal = new RequestJournal(dir, 4096, fsync)
+
+		then:
+			seqs == [0, 1, 2]
+			!journal.empty
+			replay(journal) == ["PutReq:one", "DelReq:two", "PutReq:three"]
+			journal.empty
+
+		when:
+			'the replayed requests are gone after another restart'
+			journal.close()
+			journal = new RequestJournal(dir, 4096, fsync)
+
+		then:
+			journal.empty
+			replay(journal) == []
+
+		where:
+			fsync << RequestJournal.Fsync.values()
+
+	}
+
+	def "leaves requests that couldn't be sent for the next replay"() {
+
+		given:
+			journal = new RequestJournal(dir, 4096, RequestJournal.Fsync.NEVER)
+			(1..5).each { journal.append(put("key$it")) }
+
+		when:
+			'only some requests are sent'
+			def sent = replay(journal, 2)
+
+		then:
+			sent == ["PutReq:key1", "PutReq:key2"]
+			!journal.empty
+
+		when:
+			'the process restarts before the rest are sent'
+			journal.close()
+			journal = new RequestJournal(dir, 4096, RequestJournal.Fsync.NEVER)
+			sent = replay(journal)
+
+		then:
+			"only the requests that weren't acknowledged are sent again"
+			sent == ["PutReq:key3", "PutReq:key4", "PutReq:key5"]
+			journal.empty
+
+	}
+
+	def "ignores a record that was torn by a crash"() {
+
+		given:
+			journal = new RequestJournal(dir, 4096, RequestJournal.Fsync.ALWAYS)
+			(1..3).each { journal.append(put("key$it")) }
+			journal.close()
+
+		when:
+			'the length of the last record never made it to disk'
+			def file = segments()[0]
+			def bytes = Files.readAllBytes(file)
+			def buf = ByteBuffer.wrap(bytes)
+			int pos = 4
+			2.times { pos += 4 + buf.getInt(pos) }
+			buf.putInt(pos, 0)
+
+		and:
+			'what the torn write left would read as a record after a shorter one'
+			def encoder = new RpbCodec().encoder()
+			byte[] ghost = encoder.apply(put("ghost")).asBytes()
+			buf.position(pos + 4 + encoder.apply(put("k4")).asBytes().length)
+			buf.putInt(ghost.length).put(ghost)
+			Files.write(file, bytes)
+			journal = new RequestJournal(dir, 4096, RequestJournal.Fsync.ALWAYS)
+
+		then:
+			replay(journal) == ["PutReq:key1", "PutReq:key2"]
+
+		when:
+			'a shorter request is appended after recovering'
+			journal.append(put("k4"))
+
+		then:
+			'it takes the place of the torn record'
+			replay(journal) == ["PutReq:k4"]
+
+		when:
+			'the journal is opened again'
+			journal.close()
+			journal = new RequestJournal(dir, 4096, RequestJournal.Fsync.ALWAYS)
+
+		then:
+			'nothing of the torn record is left'
+			journal.empty
+			replay(journal) == []
+
+	}
+
+	def "skips a record that can't be decoded"() {
+
+		given:
+			journal = new RequestJournal(dir, 4096, RequestJournal.Fsync.ALWAYS)
+			(1..2).each { journal.append(put("key$it")) }
+			journal.close()
+
+		when:
+			'the first record has a request type that was never journaled'
+			def file = segments()[0]
+			def bytes = Files.readAllBytes(file)
+			bytes[8] = (byte)0x7f
+			Files.write(file, bytes)
+			journal = new RequestJournal(dir, 4096, RequestJournal.Fsync.ALWAYS)
+
+		then:
+			replay(journal) == ["PutReq:key2"]
+			journal.empty
+
+	}
+
+	def "ignores a record whose length runs past the end of its segment"() {
+
+		given:
+			journal = new RequestJournal(dir, 4096, RequestJournal.Fsync.ALWAYS)
+			(1..2).each { journal.append(put("key$it")) }
+			journal.close()
+
+		when:
+			def file = segments()[0]
+			def bytes = Files.readAllBytes(file)
+			def buf = ByteBuffer.wrap(bytes)
+			buf.putInt(4 + 4 + buf.getInt(4), bytes.length)
+			Files.write(file, bytes)
+			journal = new RequestJournal(dir, 4096, RequestJournal.Fsync.ALWAYS)
+
+		then:
+			replay(journal) == ["PutReq:key1"]
+
+	}
+
+	def "rolls over to new segments and deletes the ones that were replayed"() {
+
+		given:
+			'segments that only hold a couple of records each'
+			def size = 4 + 2 * (4 + 1 + put("key1").data.serializedSize) + 4
+			journal = new RequestJournal(dir, size, RequestJournal.Fsync.NEVER)
+
+		when:
+			(1..6).each { journal.append(put("key$it")) }
+
+		then:
+			segments().size() == 3
+
+		when:
+			'the first few requests are sent'
+			def sent = replay(journal, 3)
+
+		then:
+			'the segment that was fully replayed is deleted'
+			sent == ["PutReq:key1", "PutReq:key2", "PutReq:key3"]
+			segments().size() == 2
+
+		when:
+			sent = replay(journal)
+
+		then:
+			'the last segment is kept to append to'
+			sent == ["PutReq:key4", "PutReq:key5", "PutReq:key6"]
+			segments().size() == 1
+
+		when:
+			'the journal is reopened with nothing left to replay'
+			journal.close()
+			journal = new RequestJournal(dir, size, RequestJournal.Fsync.NEVER)
+
+		then:
+			segments().empty
+			journal.empty
+
+		when:
+			'new segments continue the numbering'
+			journal.append(put("key7"))
+
+		then:
+			segments()*.fileName*.toString() == [String.format("%020d.journal", 3)]
+			replay(journal) == ["PutReq:key7"]
+
+	}
+
+	def "grows a segment for a request larger than the segment size"() {
+
+		given:
+			journal = new RequestJournal(dir, 64, RequestJournal.Fsync.NEVER)
+			def big = new RiakEvent(RiakKvPB.RpbPutReq.newBuilder().
+					setBucket(ByteString.copyFromUtf8("test")).
+					setKey(ByteString.copyFromUtf8("big")).
+					setContent(RiakKvPB.RpbContent.newBuilder().setValue(ByteString.copyFrom(new byte[1000]))).
+					build(), EventType.PutReq)
+
+		when:
+			journal.append(big)
+			journal.append(put("small"))
+
+		then:
+			replay(journal) == ["PutReq:big", "PutReq:small"]
+
+	}
+
+}